@@ -25,6 +25,7 @@ import com.google.common.util.concurrent.RateLimiter;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleSupplier;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 
 /**
@@ -45,8 +46,15 @@ public abstract class AbstractLogCompactor {
     protected final LogRemovalListener logRemovalListener;
 
     public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener) {
+        this(conf, new Throttler(conf), logRemovalListener);
+    }
+
+    /**
+     * Create a compactor sharing the rate budget of other compactors through the same throttler.
+     */
+    AbstractLogCompactor(ServerConfiguration conf, Throttler throttler, LogRemovalListener logRemovalListener) {
         this.conf = conf;
-        this.throttler = new Throttler(conf);
+        this.throttler = throttler;
         this.logRemovalListener = logRemovalListener;
     }
 
@@ -66,14 +74,38 @@ public abstract class AbstractLogCompactor {
      * class Throttler.
      */
     public static class Throttler {
+        private static final long RATE_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
         private final RateLimiter rateLimiter;
         private final boolean isThrottleByBytes;
+        private final double rate;
         private final AtomicBoolean cancelled = new AtomicBoolean(false);
 
+        // Factor applied to the configured rate, checked at most once per RATE_CHECK_INTERVAL_NANOS
+        private volatile DoubleSupplier rateFactor = null;
+        private volatile long lastRateCheckNanos = 0;
+
         Throttler(ServerConfiguration conf) {
             this.isThrottleByBytes  = conf.getIsThrottleByBytes();
-            this.rateLimiter = RateLimiter.create(this.isThrottleByBytes
-                ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries());
+            this.rate = this.isThrottleByBytes ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries();
+            this.rateLimiter = RateLimiter.create(rate);
+        }
+
+        void setRateFactor(DoubleSupplier rateFactor) {
+            this.rateFactor = rateFactor;
+        }
+
+        private void adjustRate() {
+            DoubleSupplier factor = rateFactor;
+            long now = System.nanoTime();
+            if (factor == null || now - lastRateCheckNanos < RATE_CHECK_INTERVAL_NANOS) {
+                return;
+            }
+            lastRateCheckNanos = now;
+            double newRate = rate * factor.getAsDouble();
+            if (newRate != rateLimiter.getRate()) {
+                rateLimiter.setRate(newRate);
+            }
         }
 
         // acquire. if bybytes: bytes of this entry; if byentries: 1.
@@ -85,6 +117,7 @@ public abstract class AbstractLogCompactor {
         // If the compactor is being stopped by other threads,
         // and the GC thread is still limited, the compact task will be stopped.
         public void acquire(int permits) throws IOException {
+            adjustRate();
             long timeout = 100;
             long start = System.currentTimeMillis();
             while (!tryAcquire(permits, timeout, TimeUnit.MILLISECONDS)) {
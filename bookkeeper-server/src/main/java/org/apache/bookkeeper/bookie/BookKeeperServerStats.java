@@ -48,6 +48,8 @@ public interface BookKeeperServerStats {
     String ADD_ENTRY = "ADD_ENTRY";
     String WRITE_THREAD_QUEUED_LATENCY = "WRITE_THREAD_QUEUED_LATENCY";
     String ADD_ENTRY_REJECTED = "ADD_ENTRY_REJECTED";
+    String RANGE_ADD_ENTRY_REQUEST = "RANGE_ADD_ENTRY_REQUEST";
+    String RANGE_ADD_ENTRY = "RANGE_ADD_ENTRY";
     String FORCE_LEDGER_REQUEST = "FORCE_LEDGER_REQUEST";
     String FORCE_LEDGER = "FORCE_LEDGER";
     String READ_ENTRY_REQUEST = "READ_ENTRY_REQUEST";
@@ -61,6 +63,8 @@ public interface BookKeeperServerStats {
     String READ_ENTRY_LONG_POLL_PRE_WAIT = "READ_ENTRY_LONG_POLL_PRE_WAIT";
     String READ_ENTRY_LONG_POLL_WAIT = "READ_ENTRY_LONG_POLL_WAIT";
     String READ_ENTRY_LONG_POLL_READ = "READ_ENTRY_LONG_POLL_READ";
+    String RANGE_READ_ENTRY_REQUEST = "RANGE_READ_ENTRY_REQUEST";
+    String RANGE_READ_ENTRY = "RANGE_READ_ENTRY";
     String WRITE_LAC_REQUEST = "WRITE_LAC_REQUEST";
     String WRITE_LAC = "WRITE_LAC";
     String READ_LAC_REQUEST = "READ_LAC_REQUEST";
@@ -116,6 +120,8 @@ public interface BookKeeperServerStats {
     String JOURNAL_CREATION_LATENCY = "JOURNAL_CREATION_LATENCY";
     String JOURNAL_MEMORY_MAX = "JOURNAL_MEMORY_MAX";
     String JOURNAL_MEMORY_USED = "JOURNAL_MEMORY_USED";
+    String JOURNAL_FLUSH_GROUP_WAIT = "JOURNAL_FLUSH_GROUP_WAIT";
+    String JOURNAL_FORCE_WRITE_BATCHING_RATIO = "JOURNAL_FORCE_WRITE_BATCHING_RATIO";
 
     // Ledger Storage Stats
     String STORAGE_GET_OFFSET = "STORAGE_GET_OFFSET";
@@ -98,6 +98,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     final LedgerStorage ledgerStorage;
     final RegistrationManager registrationManager;
     final List<Journal> journals;
+    private final JournalSelector journalSelector;
 
     final HandleFactory handles;
     final boolean entryLogPerLedgerEnabled;
@@ -436,6 +437,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             journals.add(new Journal(i, journalDirectories.get(i),
                     conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, journalAliveListener));
         }
+        journalSelector = new JournalSelector(journals, conf.getJournalLoadAwarePlacement());
 
         this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
         CheckpointSource checkpointSource = new CheckpointSourceList(journals);
@@ -483,6 +485,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             @Override
             public void ledgerDeleted(long ledgerId) {
                 masterKeyCache.remove(ledgerId);
+                journalSelector.ledgerDeleted(ledgerId);
             }
         };
 
@@ -906,7 +909,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     }
 
     private Journal getJournal(long ledgerId) {
-        return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
+        return journalSelector.getJournal(ledgerId);
     }
 
     @VisibleForTesting
@@ -926,24 +929,37 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     private void addEntryInternal(LedgerDescriptor handle, ByteBuf entry,
                                   boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException {
-        long ledgerId = handle.getLedgerId();
         long entryId = handle.addEntry(entry);
 
         bookieStats.getWriteBytes().addCount(entry.readableBytes());
 
+        logAddEntryInternal(handle.getLedgerId(), entryId, entry, ackBeforeSync, cb, ctx, masterKey);
+    }
+
+    /**
+     * Log an entry that was added to the ledger storage in the journal.
+     */
+    private void logAddEntryInternal(long ledgerId, long entryId, ByteBuf entry,
+                                     boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws InterruptedException {
+        int journalIndex = journalSelector.selectForAdd(ledgerId, ackBeforeSync);
+        Journal journal = journals.get(journalIndex);
+
         // journal `addEntry` should happen after the entry is added to ledger storage.
         // otherwise the journal entry can potentially be rolled before the ledger is created in ledger storage.
+        boolean logMasterKey = false;
         if (masterKeyCache.get(ledgerId) == null) {
             // Force the load into masterKey cache
             byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
-            if (oldValue == null) {
-                ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
-                try {
-                    getJournal(ledgerId).logAddEntry(
-                            masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null);
-                } finally {
-                    ReferenceCountUtil.release(masterKeyEntry);
-                }
+            logMasterKey = oldValue == null;
+        }
+        // A ledger moved to another journal needs its master key there too, to replay that journal on its own
+        if (journalSelector.markMasterKeyLogged(ledgerId, journalIndex) || logMasterKey) {
+            ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
+            try {
+                journal.logAddEntry(masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null);
+            } finally {
+                ReferenceCountUtil.release(masterKeyEntry);
             }
         }
 
@@ -955,7 +971,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Adding {}@{}", entryId, ledgerId);
         }
-        getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
+        journal.logAddEntry(entry, ackBeforeSync, cb, ctx);
     }
 
     /**
@@ -1087,6 +1103,60 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         }
     }
 
+    /**
+     * Add consecutive entries of a ledger as a group.
+     *
+     * <p>All the entries are added to the ledger storage before any of them is logged in the journal, and they
+     * are logged back to back under the lock of the ledger, so they are written and synced by the same journal
+     * flush. The callback is invoked for every entry. If an entry cannot be added to the ledger storage, none
+     * of them is logged and the callback is not invoked.
+     */
+    @Override
+    public void addEntries(List<ByteBuf> entries, boolean ackBeforeSync, WriteCallback cb, Object ctx,
+                           byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            LedgerDescriptor handle = getLedgerForEntry(entries.get(0), masterKey);
+            synchronized (handle) {
+                if (handle.isFenced()) {
+                    throw BookieException
+                            .create(BookieException.Code.LedgerFencedException);
+                }
+                long[] entryIds = new long[entries.size()];
+                long size = 0;
+                for (int i = 0; i < entries.size(); i++) {
+                    entryIds[i] = handle.addEntry(entries.get(i));
+                    size += entries.get(i).readableBytes();
+                }
+                bookieStats.getWriteBytes().addCount(size);
+
+                for (int i = 0; i < entries.size(); i++) {
+                    logAddEntryInternal(handle.getLedgerId(), entryIds[i], entries.get(i), ackBeforeSync, cb, ctx,
+                            masterKey);
+                }
+            }
+            success = true;
+        } catch (NoWritableLedgerDirException e) {
+            stateManager.transitionToReadOnlyMode();
+            throw new IOException(e);
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            for (ByteBuf entry : entries) {
+                if (success) {
+                    bookieStats.getAddEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerSuccessfulValue(entry.readableBytes());
+                } else {
+                    bookieStats.getAddEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerFailedValue(entry.readableBytes());
+                }
+
+                ReferenceCountUtil.release(entry);
+            }
+        }
+    }
+
     /**
      * Fences a ledger. From this point on, clients will be unable to
      * write to this ledger. Only recoveryAddEntry will be
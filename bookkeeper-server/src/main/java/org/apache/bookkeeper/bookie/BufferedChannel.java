@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.util.FileRangeCopier;
 
 /**
  * Provides a buffering layer in front of a FileChannel.
@@ -144,6 +145,32 @@ public class BufferedChannel extends BufferedReadChannel implements Closeable {
         }
     }
 
+    /**
+     * Append a range of another file to the channel, copied by the given copier without going through
+     * the write buffer.
+     *
+     * @return the position the range was appended at
+     */
+    public long append(FileRangeCopier copier, long srcPosition, long length) throws IOException {
+        boolean shouldForceWrite = false;
+        long dstPosition;
+        synchronized (this) {
+            flush();
+            dstPosition = position;
+            copier.copy(srcPosition, dstPosition, length);
+            fileChannel.position(dstPosition + length);
+            writeBufferStartPosition.set(dstPosition + length);
+            position = dstPosition + length;
+            if (doRegularFlushes) {
+                shouldForceWrite = unpersistedBytes.addAndGet(length) >= unpersistedBytesBound;
+            }
+        }
+        if (shouldForceWrite) {
+            forceWrite(false);
+        }
+        return dstPosition;
+    }
+
     /**
      * Get the position where the next write operation will begin writing from.
      * @return
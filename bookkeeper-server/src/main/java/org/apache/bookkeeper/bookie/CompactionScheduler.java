@@ -0,0 +1,265 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+
+/**
+ * Decides when the garbage collector compacts entry logs, and which ones, from the cost and benefit of the
+ * compaction instead of fixed intervals.
+ *
+ * <p>Compacting an entry log reclaims its garbage, at the cost of rewriting its live bytes and of updating
+ * the locations of its entries in the index. The usage threshold below which entry logs are compacted moves
+ * from the minor to the major compaction threshold as the disk fills up, starting from half the disk usage
+ * warn threshold. A compaction only runs when the entry logs below the threshold hold enough garbage, and
+ * when that garbage is worth its cost at the threshold, both estimated from a histogram of the live bytes
+ * of all the entry logs. It is also deferred while the latency of the adds and reads of the ledger storage
+ * is above its target, unless the disk is under full pressure.
+ * While compacting, the compaction rate is halved whenever that latency goes above the target, and
+ * recovers gradually once it is back below.
+ */
+class CompactionScheduler {
+
+    static final int NUM_BUCKETS = 10;
+
+    // Cost of updating the locations of the entries of a ledger in the index, counted as bytes rewritten
+    static final long LEDGER_INDEX_UPDATE_COST_BYTES = 64 * 1024;
+
+    private static final long LOAD_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final double LATENCY_AVERAGE_WEIGHT = 0.25;
+    private static final double MIN_RATE_FACTOR = 0.1;
+    private static final double RATE_RECOVERY_FACTOR = 1.25;
+
+    private final LedgerDirsManager ledgerDirsManager;
+    private final double minThreshold;
+    private final double maxThreshold;
+    private final float pressureStart;
+    private final float pressureFull;
+    private final long minReclaimableBytes;
+    private final long latencyTargetNanos;
+
+    private final LongAdder foregroundLatencySum = new LongAdder();
+    private final LongAdder foregroundRequests = new LongAdder();
+    private volatile double avgForegroundLatencyNanos = 0;
+    private volatile long lastLoadCheckNanos = MathUtils.nowInNano();
+    private volatile double rateFactor = 1;
+
+    private volatile LiveBytesHistogram histogram = new LiveBytesHistogram();
+    private volatile String lastDecision = "none";
+    private volatile double usageThreshold = 0;
+    private volatile float diskUsage = 0;
+
+    CompactionScheduler(ServerConfiguration conf, LedgerDirsManager ledgerDirsManager) {
+        this.ledgerDirsManager = ledgerDirsManager;
+        this.maxThreshold = conf.getMajorCompactionThreshold();
+        this.minThreshold = Math.min(Math.max(conf.getMinorCompactionThreshold(), 0), maxThreshold);
+        this.pressureFull = conf.getDiskUsageWarnThreshold();
+        this.pressureStart = pressureFull / 2;
+        this.minReclaimableBytes = conf.getEntryLogSizeLimit();
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(conf.getCompactionForegroundLatencyTargetMs());
+    }
+
+    /**
+     * Record the latency of an add or a read of the ledger storage.
+     */
+    void recordForegroundLatency(long latencyNanos) {
+        foregroundLatencySum.add(latencyNanos);
+        foregroundRequests.increment();
+    }
+
+    void setHistogram(LiveBytesHistogram histogram) {
+        this.histogram = histogram;
+    }
+
+    /**
+     * Estimate the bytes reclaimed by compacting an entry log, for each byte of cost.
+     */
+    static double benefitPerCost(EntryLogMetadata meta) {
+        long reclaimed = meta.getTotalSize() - meta.getRemainingSize();
+        long cost = meta.getRemainingSize() + meta.getLedgersMap().size() * LEDGER_INDEX_UPDATE_COST_BYTES;
+        return (double) reclaimed / Math.max(cost, 1);
+    }
+
+    /**
+     * Decide whether to compact now.
+     *
+     * @return the usage threshold below which entry logs should be compacted, or 0 to skip compaction
+     */
+    double decide(boolean suspendMajor, boolean suspendMinor) {
+        float usage = 0;
+        for (Float dirUsage : ledgerDirsManager.getDiskUsages().values()) {
+            usage = Math.max(usage, dirUsage);
+        }
+        diskUsage = usage;
+        double pressure = pressureFull > pressureStart
+                ? Math.min(Math.max((usage - pressureStart) / (pressureFull - pressureStart), 0), 1)
+                : 1;
+
+        double threshold = minThreshold + (maxThreshold - minThreshold) * pressure;
+        if (suspendMajor) {
+            threshold = Math.min(threshold, minThreshold);
+        }
+        usageThreshold = threshold;
+        refreshLoad();
+
+        if (suspendMinor) {
+            // Suspended by the ledger dirs listener when a disk is full, or by an administrator
+            return skip(ledgerDirsManager.getFullFilledLedgerDirs().isEmpty()
+                    ? "suspended by an administrator" : "suspended, disk full");
+        } else if (threshold <= 0) {
+            return skip("no compaction threshold");
+        }
+
+        long reclaimable = histogram.reclaimableBytesBelow(threshold);
+        long cost = histogram.costBelow(threshold);
+        long required = (long) (minReclaimableBytes * (1 - pressure));
+        if (reclaimable <= 0 || reclaimable < required) {
+            return skip(String.format("deferred, %d bytes reclaimable below usage %.2f, %d required",
+                    reclaimable, threshold, required));
+        }
+        // An entry log right at the threshold reclaims (1 - threshold) / threshold bytes per byte rewritten
+        if (reclaimable * threshold < cost * (1 - threshold)) {
+            return skip(String.format("deferred, %d bytes reclaimable below usage %.2f not worth a cost of %d",
+                    reclaimable, threshold, cost));
+        }
+        if (pressure < 1 && isOverloaded()) {
+            return skip(String.format("deferred, foreground latency %.2f ms above target",
+                    avgForegroundLatencyNanos / TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+
+        lastDecision = String.format("compacting, %d bytes reclaimable below usage %.2f for a cost of %d,"
+                + " disk usage %.2f", reclaimable, threshold, cost, usage);
+        return threshold;
+    }
+
+    private double skip(String decision) {
+        lastDecision = decision;
+        return 0;
+    }
+
+    /**
+     * Get the factor to apply to the compaction rate, from the latency of the foreground requests.
+     */
+    double getRateFactor() {
+        if (MathUtils.nowInNano() - lastLoadCheckNanos >= LOAD_CHECK_INTERVAL_NANOS) {
+            refreshLoad();
+            if (isOverloaded()) {
+                rateFactor = Math.max(rateFactor / 2, MIN_RATE_FACTOR);
+            } else {
+                rateFactor = Math.min(rateFactor * RATE_RECOVERY_FACTOR, 1);
+            }
+        }
+        return rateFactor;
+    }
+
+    private boolean isOverloaded() {
+        return latencyTargetNanos > 0 && avgForegroundLatencyNanos > latencyTargetNanos;
+    }
+
+    private synchronized void refreshLoad() {
+        lastLoadCheckNanos = MathUtils.nowInNano();
+        long requests = foregroundRequests.sumThenReset();
+        long latencySum = foregroundLatencySum.sumThenReset();
+        if (requests > 0) {
+            double latency = (double) latencySum / requests;
+            avgForegroundLatencyNanos += LATENCY_AVERAGE_WEIGHT * (latency - avgForegroundLatencyNanos);
+        }
+    }
+
+    String getLastDecision() {
+        return lastDecision;
+    }
+
+    double getUsageThreshold() {
+        return usageThreshold;
+    }
+
+    float getDiskUsage() {
+        return diskUsage;
+    }
+
+    double getForegroundLatencyMillis() {
+        return avgForegroundLatencyNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    double getCurrentRateFactor() {
+        return rateFactor;
+    }
+
+    LiveBytesHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Live and total bytes of the entry logs, and number of ledgers in them, by usage buckets of 10%.
+     */
+    static class LiveBytesHistogram {
+        private final long[] liveBytes = new long[NUM_BUCKETS];
+        private final long[] totalBytes = new long[NUM_BUCKETS];
+        private final long[] ledgers = new long[NUM_BUCKETS];
+
+        void add(double usage, EntryLogMetadata meta) {
+            int bucket = Math.min(NUM_BUCKETS - 1, Math.max(0, (int) Math.floor(usage * NUM_BUCKETS)));
+            liveBytes[bucket] += meta.getRemainingSize();
+            totalBytes[bucket] += meta.getTotalSize();
+            ledgers[bucket] += meta.getLedgersMap().size();
+        }
+
+        /**
+         * Estimate the garbage of the entry logs whose usage is below a threshold, counting the bucket the
+         * threshold falls into in proportion.
+         */
+        long reclaimableBytesBelow(double usage) {
+            double reclaimable = 0;
+            for (int i = 0; i < NUM_BUCKETS && i < usage * NUM_BUCKETS; i++) {
+                double fraction = Math.min(1, usage * NUM_BUCKETS - i);
+                reclaimable += fraction * (totalBytes[i] - liveBytes[i]);
+            }
+            return (long) reclaimable;
+        }
+
+        /**
+         * Estimate the cost of compacting the entry logs whose usage is below a threshold, like
+         * {@link #reclaimableBytesBelow(double)}.
+         */
+        long costBelow(double usage) {
+            double cost = 0;
+            for (int i = 0; i < NUM_BUCKETS && i < usage * NUM_BUCKETS; i++) {
+                double fraction = Math.min(1, usage * NUM_BUCKETS - i);
+                cost += fraction * (liveBytes[i] + ledgers[i] * LEDGER_INDEX_UPDATE_COST_BYTES);
+            }
+            return (long) cost;
+        }
+
+        long[] getLiveBytes() {
+            return Arrays.copyOf(liveBytes, NUM_BUCKETS);
+        }
+
+        long[] getTotalBytes() {
+            return Arrays.copyOf(totalBytes, NUM_BUCKETS);
+        }
+    }
+}
@@ -50,6 +50,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -58,12 +59,15 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLocationScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogMetadataCheckpoint;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.bookkeeper.util.FileRangeCopier;
 import org.apache.bookkeeper.util.HardLink;
 import org.apache.bookkeeper.util.IOUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
@@ -89,6 +93,8 @@ public class DefaultEntryLogger implements EntryLogger {
         private final EntryLogMetadata entryLogMetadata;
         private final File logFile;
         private long ledgerIdAssigned = UNASSIGNED_LEDGERID;
+        // Position after the last entry added to the ledgers map
+        private volatile long ledgersMapPosition = LOGFILE_HEADER_SIZE;
 
         public BufferedLogChannel(ByteBufAllocator allocator, FileChannel fc, int writeCapacity, int readCapacity,
                 long logId, File logFile, long unpersistedBytesBound) throws IOException {
@@ -107,6 +113,7 @@ public class DefaultEntryLogger implements EntryLogger {
 
         public void registerWrittenEntry(long ledgerId, long entrySize) {
             entryLogMetadata.addLedgerSize(ledgerId, entrySize);
+            ledgersMapPosition = position();
         }
 
         public ConcurrentLongLongHashMap getLedgersMap() {
@@ -130,6 +137,26 @@ public class DefaultEntryLogger implements EntryLogger {
                 .toString();
         }
 
+        /**
+         * Flush and sync the entry log, then checkpoint its ledgers map next to it, so that the map can be
+         * recovered without scanning the whole log if the bookie stops before the log is rolled.
+         */
+        void flushAndCheckpointLedgersMap(boolean forceMetadata) throws IOException {
+            // Read the position before copying the map, so that the map covers all the entries before it
+            long position = ledgersMapPosition;
+            EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.of(entryLogMetadata, position);
+            flushAndForceWrite(forceMetadata);
+            try {
+                checkpoint.write(getLedgersMapCheckpointFile());
+            } catch (IOException e) {
+                LOG.warn("Failed to checkpoint the ledgers map of entry log {}", logId, e);
+            }
+        }
+
+        File getLedgersMapCheckpointFile() {
+            return EntryLogMetadataCheckpoint.checkpointFile(logFile.getParentFile(), logId);
+        }
+
         /**
          * Append the ledger map at the end of the entry log.
          * Updates the entry log file header with the offset and size of the map.
@@ -322,6 +349,9 @@ public class DefaultEntryLogger implements EntryLogger {
         this.ledgerDirsManager = ledgerDirsManager;
         this.conf = conf;
         entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
+        this.mappedEntryLogs = conf.isEntryLogMmapReadEnabled()
+                ? new MappedEntryLogCache(conf.getEntryLogMmapMaxBytes())
+                : null;
         if (listener != null) {
             addListener(listener);
         }
@@ -386,6 +416,10 @@ public class DefaultEntryLogger implements EntryLogger {
         BufferedLogChannel bc = entryLogManager.getCurrentLogIfPresent(entryLogId);
         if (null != bc) {
             synchronized (bc) {
+                if (pos >= bc.position()) {
+                    // Past the end of the current entry log, as BufferedReadChannel reports it for the other logs
+                    return -1;
+                }
                 if (pos + buff.writableBytes() >= bc.getFileChannelPosition()) {
                     return bc.read(buff, pos);
                 }
@@ -419,6 +453,12 @@ public class DefaultEntryLogger implements EntryLogger {
      */
     private final ConcurrentMap<Long, FileChannel> logid2FileChannel = new ConcurrentHashMap<Long, FileChannel>();
 
+    /**
+     * Mappings of the sealed entry logs, shared by all the read threads, or null if the entries are only read
+     * through the buffered read channels.
+     */
+    private final MappedEntryLogCache mappedEntryLogs;
+
     /**
      * Put the logId, bc pair in the map responsible for the current thread.
      * @param logId
@@ -518,6 +558,9 @@ public class DefaultEntryLogger implements EntryLogger {
     @Override
     public boolean removeEntryLog(long entryLogId) {
         removeFromChannelsAndClose(entryLogId);
+        if (mappedEntryLogs != null) {
+            mappedEntryLogs.remove(entryLogId);
+        }
         File entryLogFile;
         try {
             entryLogFile = findFile(entryLogId);
@@ -529,6 +572,8 @@ public class DefaultEntryLogger implements EntryLogger {
         if (!entryLogFile.delete()) {
             LOG.warn("Could not delete entry log file {}", entryLogFile);
         }
+        EntryLogMetadataCheckpoint.delete(
+                EntryLogMetadataCheckpoint.checkpointFile(entryLogFile.getParentFile(), entryLogId));
         return true;
     }
 
@@ -627,6 +672,26 @@ public class DefaultEntryLogger implements EntryLogger {
         }
     }
 
+    private long copyEntriesForCompaction(EntryLoggerCompactionEntryLog compactionLog, long srcOffset, long length,
+                                          EntryLogMetadata entries) throws IOException {
+        synchronized (compactionLogLock) {
+            // The locations of the copied entries are in the compaction log, so they can't go to a new one
+            if (compactionLogChannel == null || compactionLogChannel.getLogId() != compactionLog.compactionLogId) {
+                throw new IOException("Compaction log " + compactionLog.compactionLogId
+                        + " is not the current compaction log");
+            }
+            if (compactionLog.copier == null) {
+                compactionLog.copier = new FileRangeCopier(findFile(compactionLog.logIdToCompact),
+                        compactionLogChannel.getLogFile());
+            }
+
+            long pos = compactionLogChannel.append(compactionLog.copier, srcOffset, length);
+            entries.getLedgersMap().forEach(compactionLogChannel::registerWrittenEntry);
+            // Location of the first entry, after its size
+            return (compactionLogChannel.getLogId() << 32L) | (pos + 4);
+        }
+    }
+
     private void flushCompactionLog() throws IOException {
         synchronized (compactionLogLock) {
             if (compactionLogChannel != null) {
@@ -788,8 +853,12 @@ public class DefaultEntryLogger implements EntryLogger {
 
     private void validateEntry(long ledgerId, long entryId, long entryLogId, long pos, ByteBuf sizeBuff)
             throws IOException, EntryLookupException {
-        int entrySize = sizeBuff.readInt();
+        validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff.readInt(),
+                sizeBuff.getLong(4), sizeBuff.getLong(12));
+    }
 
+    private void validateEntry(long ledgerId, long entryId, long entryLogId, long pos, int entrySize,
+                               long thisLedgerId, long thisEntryId) throws EntryLookupException {
         // entrySize does not include the ledgerId
         if (entrySize > maxSaneEntrySize) {
             LOG.warn("Sanity check failed for entry size of " + entrySize + " at location " + pos + " in "
@@ -800,8 +869,6 @@ public class DefaultEntryLogger implements EntryLogger {
             throw new EntryLookupException.InvalidEntryLengthException(ledgerId, entryId, entryLogId, pos);
         }
 
-        long thisLedgerId = sizeBuff.getLong(4);
-        long thisEntryId = sizeBuff.getLong(12);
         if (thisLedgerId != ledgerId || thisEntryId != entryId) {
             throw new EntryLookupException.WrongEntryException(
                     thisEntryId, thisLedgerId, ledgerId, entryId, entryLogId, pos);
@@ -816,7 +883,7 @@ public class DefaultEntryLogger implements EntryLogger {
 
     @Override
     public ByteBuf readEntry(long location) throws IOException, Bookie.NoEntryException {
-        return internalReadEntry(location, -1L, -1L, false /* validateEntry */);
+        return internalReadEntry(-1L, -1L, location, false /* validateEntry */);
     }
 
 
@@ -826,6 +893,13 @@ public class DefaultEntryLogger implements EntryLogger {
         long pos = posForOffset(location);
 
 
+        if (mappedEntryLogs != null) {
+            ByteBuf entry = readMappedEntry(ledgerId, entryId, entryLogId, pos, validateEntry);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
         BufferedReadChannel fc = null;
         int entrySize = -1;
         try {
@@ -836,6 +910,9 @@ public class DefaultEntryLogger implements EntryLogger {
             if (validateEntry) {
                 validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
             }
+        } catch (EntryLookupException.MissingEntryException e) {
+            // Past the end of the entry log, like DirectEntryLogger reports it
+            throw new Bookie.NoEntryException(e.getMessage(), ledgerId, entryId);
         } catch (EntryLookupException e) {
             throw new IOException("Bad entry read from log file id: " + entryLogId, e);
         }
@@ -854,6 +931,56 @@ public class DefaultEntryLogger implements EntryLogger {
         return data;
     }
 
+    /**
+     * Read an entry from the mapping of its entry log, if the entry log is sealed.
+     *
+     * @return a read only buffer over the mapped entry, holding a reference to the mapping until it is
+     *         released, or null to read it from the log channel
+     */
+    private ByteBuf readMappedEntry(long ledgerId, long entryId, long entryLogId, long pos, boolean validateEntry)
+            throws IOException {
+        ByteBuf log = mappedEntryLogs.get(entryLogId);
+        if (log == null) {
+            if (!recentlyCreatedEntryLogsStatus.isFlushedLogId(entryLogId)
+                    || entryLogManager.getCurrentLogIfPresent(entryLogId) != null) {
+                return null;
+            }
+            try {
+                log = mappedEntryLogs.map(entryLogId, findFile(entryLogId));
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+            if (log == null) {
+                return null;
+            }
+        }
+        try {
+            long entrySizePos = pos - 4;
+            if (entrySizePos < LOGFILE_HEADER_SIZE || pos + 16 > log.capacity()) {
+                // let the log channel report the missing entry
+                return null;
+            }
+            int entrySize = log.getInt((int) entrySizePos);
+            if (validateEntry) {
+                try {
+                    validateEntry(ledgerId, entryId, entryLogId, pos, entrySize,
+                            log.getLong((int) pos), log.getLong((int) pos + 8));
+                } catch (EntryLookupException e) {
+                    throw new IOException("Bad entry read from log file id: " + entryLogId, e);
+                }
+            }
+            if (entrySize < 0 || pos + entrySize > log.capacity()) {
+                throw new IOException("Bad entry read from log file id: " + entryLogId,
+                        new EntryLookupException("Short read for " + ledgerId + "@"
+                                                  + entryId + " in " + entryLogId + "@"
+                                                  + pos + "(" + (log.capacity() - pos) + "!=" + entrySize + ")"));
+            }
+            return log.retainedSlice((int) pos, entrySize).asReadOnly();
+        } finally {
+            log.release();
+        }
+    }
+
     /**
      * Read the header of an entry log.
      */
@@ -964,6 +1091,12 @@ public class DefaultEntryLogger implements EntryLogger {
      */
     @Override
     public void scanEntryLog(long entryLogId, EntryLogScanner scanner) throws IOException {
+        // Start the read position in the current entry log file to be after
+        // the header where all of the ledger entries are.
+        scanEntryLog(entryLogId, LOGFILE_HEADER_SIZE, scanner);
+    }
+
+    private void scanEntryLog(long entryLogId, long startPos, EntryLogScanner scanner) throws IOException {
         // Buffer where to read the entrySize (4 bytes) and the ledgerId (8 bytes)
         ByteBuf headerBuffer = Unpooled.buffer(4 + 8);
         BufferedReadChannel bc;
@@ -974,9 +1107,7 @@ public class DefaultEntryLogger implements EntryLogger {
             LOG.warn("Failed to get channel to scan entry log: " + entryLogId + ".log");
             throw e;
         }
-        // Start the read position in the current entry log file to be after
-        // the header where all of the ledger entries are.
-        long pos = LOGFILE_HEADER_SIZE;
+        long pos = startPos;
 
         // Start with a reasonably sized buffer size
         ByteBuf data = allocator.directBuffer(1024 * 1024);
@@ -1030,20 +1161,82 @@ public class DefaultEntryLogger implements EntryLogger {
         }
     }
 
+    /**
+     * Scan the locations of the entries of an entry log, reading only their size, ledger id and entry id.
+     */
+    private void scanEntryLogLocations(long entryLogId, EntryLocationScanner scanner) throws IOException {
+        // Buffer where to read the entrySize (4 bytes), the ledgerId (8 bytes) and the entryId (8 bytes)
+        ByteBuf headerBuffer = Unpooled.buffer(4 + 8 + 8);
+        BufferedReadChannel bc = getChannelForLogId(entryLogId);
+        long pos = LOGFILE_HEADER_SIZE;
+
+        while (pos < bc.size()) {
+            if (readFromLogChannel(entryLogId, bc, headerBuffer, pos) != headerBuffer.capacity()) {
+                LOG.warn("Short read for entry header from entrylog {}", entryLogId);
+                return;
+            }
+            int entrySize = headerBuffer.readInt();
+            if (entrySize <= 0) { // hitting padding
+                pos++;
+                headerBuffer.clear();
+                continue;
+            }
+            long ledgerId = headerBuffer.readLong();
+            long entryId = headerBuffer.readLong();
+            headerBuffer.clear();
+
+            if (ledgerId != INVALID_LID && scanner.accept(ledgerId)) {
+                scanner.process(ledgerId, entryId, pos, entrySize);
+            }
+            // Advance position to the next entry
+            pos += 4 + entrySize;
+        }
+    }
+
     public EntryLogMetadata getEntryLogMetadata(long entryLogId, AbstractLogCompactor.Throttler throttler)
         throws IOException {
-        // First try to extract the EntryLogMetadata from the index, if there's no index then fallback to scanning the
-        // entry log
+        // First try to extract the EntryLogMetadata from the index, if there's no index then fallback to the
+        // checkpoint of the ledgers map, and then to scanning the entry log
         try {
             return extractEntryLogMetadataFromIndex(entryLogId);
         } catch (Exception e) {
             LOG.info("Failed to get ledgers map index from: {}.log : {}", entryLogId, e.getMessage());
+        }
+        try {
+            return extractEntryLogMetadataFromCheckpoint(entryLogId, throttler);
+        } catch (Exception e) {
+            LOG.info("Failed to get ledgers map checkpoint of: {}.log : {}", entryLogId, e.getMessage());
 
             // Fall-back to scanning
             return extractEntryLogMetadataByScanning(entryLogId, throttler);
         }
     }
 
+    /**
+     * Recover the EntryLogMetadata of an entry log without index from the checkpoint of its ledgers map,
+     * scanning only the entries written after the checkpoint.
+     */
+    EntryLogMetadata extractEntryLogMetadataFromCheckpoint(long entryLogId, AbstractLogCompactor.Throttler throttler)
+            throws IOException {
+        File checkpointFile = EntryLogMetadataCheckpoint.checkpointFile(findFile(entryLogId).getParentFile(),
+                entryLogId);
+        EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.read(checkpointFile, entryLogId);
+        BufferedReadChannel bc = getChannelForLogId(entryLogId);
+        if (checkpoint.getPosition() < LOGFILE_HEADER_SIZE || checkpoint.getPosition() > bc.size()) {
+            throw new IOException("Ledgers map checkpoint position " + checkpoint.getPosition()
+                    + " out of entryLogId " + entryLogId + " of size " + bc.size());
+        }
+
+        EntryLogMetadata meta = checkpoint.getMetadata();
+        scanEntryLog(entryLogId, checkpoint.getPosition(), newMetadataScanner(meta, throttler));
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Recovered entry log meta data entryLogId: {} from checkpoint at {}, meta: {}",
+                    entryLogId, checkpoint.getPosition(), meta);
+        }
+        return meta;
+    }
+
     EntryLogMetadata extractEntryLogMetadataFromIndex(long entryLogId) throws IOException {
         Header header = getHeaderForLogId(entryLogId);
 
@@ -1135,7 +1328,17 @@ public class DefaultEntryLogger implements EntryLogger {
         final EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
 
         // Read through the entry log file and extract the entry log meta
-        scanEntryLog(entryLogId, new EntryLogScanner() {
+        scanEntryLog(entryLogId, newMetadataScanner(meta, throttler));
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Retrieved entry log meta data entryLogId: {}, meta: {}", entryLogId, meta);
+        }
+        return meta;
+    }
+
+    private static EntryLogScanner newMetadataScanner(EntryLogMetadata meta,
+                                                      AbstractLogCompactor.Throttler throttler) {
+        return new EntryLogScanner() {
             @Override
             public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
                 if (throttler != null) {
@@ -1149,12 +1352,7 @@ public class DefaultEntryLogger implements EntryLogger {
             public boolean accept(long ledgerId) {
                 return ledgerId >= 0;
             }
-        });
-
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Retrieved entry log meta data entryLogId: {}, meta: {}", entryLogId, meta);
-        }
-        return meta;
+        };
     }
 
     /**
@@ -1171,6 +1369,9 @@ public class DefaultEntryLogger implements EntryLogger {
             }
             // clear the mapping, so we don't need to go through the channels again in finally block in normal case.
             logid2FileChannel.clear();
+            if (mappedEntryLogs != null) {
+                mappedEntryLogs.clear();
+            }
             entryLogManager.close();
             synchronized (compactionLogLock) {
                 if (compactionLogChannel != null) {
@@ -1276,12 +1477,13 @@ public class DefaultEntryLogger implements EntryLogger {
 
     }
 
-    private class EntryLoggerCompactionEntryLog implements CompactionEntryLog {
+    private class EntryLoggerCompactionEntryLog implements CompactionEntryLog, CompactionEntryLog.EntryRangeCopier {
         private final long compactionLogId;
         private final long logIdToCompact;
         private final File compactingLogFile;
         private final File compactedLogFile;
         private final File finalLogFile;
+        private FileRangeCopier copier;
 
         EntryLoggerCompactionEntryLog(long compactionLogId, long logIdToCompact,
                                       File compactingLogFile,
@@ -1303,11 +1505,25 @@ public class DefaultEntryLogger implements EntryLogger {
             scanEntryLog(compactionLogId, scanner);
         }
         @Override
+        public Optional<EntryRangeCopier> entryRangeCopier() {
+            return Optional.of(this);
+        }
+        @Override
+        public void scanSrcLocations(EntryLocationScanner scanner) throws IOException {
+            scanEntryLogLocations(logIdToCompact, scanner);
+        }
+        @Override
+        public long copyEntries(long srcOffset, long length, EntryLogMetadata entries) throws IOException {
+            return copyEntriesForCompaction(this, srcOffset, length, entries);
+        }
+        @Override
         public void flush() throws IOException {
+            closeCopier();
             flushCompactionLog();
         }
         @Override
         public void abort() {
+            closeCopier();
             removeCurCompactionLog();
             if (compactedLogFile.exists()) {
                 if (!compactedLogFile.delete()) {
@@ -1348,6 +1564,17 @@ public class DefaultEntryLogger implements EntryLogger {
             }
         }
 
+        private void closeCopier() {
+            if (copier != null) {
+                try {
+                    copier.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close the files copied for compaction log {}", compactionLogId, e);
+                }
+                copier = null;
+            }
+        }
+
         @Override
         public long getDstLogId() {
             return compactionLogId;
@@ -43,16 +43,33 @@ public class EntryLogCompactor extends AbstractLogCompactor {
     final EntryLogger entryLogger;
     final CompactableLedgerStorage ledgerStorage;
     private final int maxOutstandingRequests;
+    // Shared by the compactors running concurrently, see CompactionScannerFactory#flush
+    final Object locationsUpdateLock;
 
     public EntryLogCompactor(
             ServerConfiguration conf,
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
-        super(conf, logRemover);
+        this(conf, entryLogger, ledgerStorage, new Throttler(conf), new Object(), logRemover);
+    }
+
+    /**
+     * Create a compactor running concurrently with other compactors, sharing their throttler and the lock
+     * serializing their updates of the entry locations.
+     */
+    EntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            Throttler throttler,
+            Object locationsUpdateLock,
+            LogRemovalListener logRemover) {
+        super(conf, throttler, logRemover);
         this.maxOutstandingRequests = conf.getCompactionMaxOutstandingRequests();
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
+        this.locationsUpdateLock = locationsUpdateLock;
     }
 
     @Override
@@ -118,8 +135,12 @@ public class EntryLogCompactor extends AbstractLogCompactor {
             // entryLog
             try {
                 entryLogger.flush();
-                ledgerStorage.updateEntriesLocations(offsets);
-                ledgerStorage.flushEntriesLocationsIndex();
+                // The ledger storages expect a single writer of the relocated entries, so the updates of
+                // the compactors running concurrently are applied one after the other
+                synchronized (locationsUpdateLock) {
+                    ledgerStorage.updateEntriesLocations(offsets);
+                    ledgerStorage.flushEntriesLocationsIndex();
+                }
             } finally {
                 offsets.clear();
             }
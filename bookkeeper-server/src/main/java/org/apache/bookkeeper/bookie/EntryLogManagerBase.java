@@ -125,7 +125,7 @@ abstract class EntryLogManagerBase implements EntryLogManager {
 
     void flushLogChannel(BufferedLogChannel logChannel, boolean forceMetadata) throws IOException {
         if (logChannel != null) {
-            logChannel.flushAndForceWrite(forceMetadata);
+            logChannel.flushAndCheckpointLedgersMap(forceMetadata);
             if (log.isDebugEnabled()) {
                 log.debug("Flush and sync current entry logger {}", logChannel.getLogId());
             }
@@ -55,6 +55,7 @@ import java.util.concurrent.locks.ReentrantLock;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger.BufferedLogChannel;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
+import org.apache.bookkeeper.bookie.storage.EntryLogMetadataCheckpoint;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.OpStatsLogger;
@@ -684,6 +685,8 @@ class EntryLogManagerForEntryLogPerLedger extends EntryLogManagerBase {
     public void flushRotatedLogs() throws IOException {
         for (BufferedLogChannel channel : rotatedLogChannels) {
             channel.flushAndForceWrite(true);
+            // the ledgers map was appended to the log when it was rotated
+            EntryLogMetadataCheckpoint.delete(channel.getLedgersMapCheckpointFile());
             // since this channel is only used for writing, after flushing the channel,
             // we had to close the underlying file channel. Otherwise, we might end up
             // leaking fds which cause the disk spaces could not be reclaimed.
@@ -35,6 +35,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger.BufferedLogChannel;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
+import org.apache.bookkeeper.bookie.storage.EntryLogMetadataCheckpoint;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.util.IOUtils;
 
@@ -188,6 +189,8 @@ class EntryLogManagerForSingleEntryLog extends EntryLogManagerBase {
             BufferedLogChannel channel = chIter.next();
             try {
                 channel.flushAndForceWrite(true);
+                // the ledgers map was appended to the log when it was rotated
+                EntryLogMetadataCheckpoint.delete(channel.getLedgersMapCheckpointFile());
             } catch (IOException ioe) {
                 // rescue from flush exception, add unflushed channels back
                 synchronized (this) {
@@ -44,4 +44,23 @@ public class GarbageCollectionStatus {
     private long lastMinorCompactionTime;
     private long majorCompactionCounter;
     private long minorCompactionCounter;
+
+    // progress of the ongoing or last compaction: number of entry logs left to compact,
+    // being compacted and done, and space reclaimed so far.
+    private int compactionPendingEntryLogs;
+    private int compactionRunningEntryLogs;
+    private int compactionCompletedEntryLogs;
+    private long compactionReclaimedBytes;
+
+    // decisions of the cost based compaction scheduler, when enabled: usage threshold of the compacted
+    // entry logs, the disk usage and foreground latency it was picked from, and the live and total bytes
+    // of the entry logs by usage buckets of 10%.
+    private boolean costBasedCompaction;
+    private String compactionDecision;
+    private double compactionUsageThreshold;
+    private float diskUsage;
+    private double foregroundLatencyMillis;
+    private double compactionRateFactor;
+    private long[] liveBytesByUsage;
+    private long[] totalBytesByUsage;
 }
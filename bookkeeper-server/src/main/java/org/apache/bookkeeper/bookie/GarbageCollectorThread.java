@@ -25,17 +25,25 @@ import static org.apache.bookkeeper.util.BookKeeperConstants.METADATA_CACHE;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.Uninterruptibles;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import lombok.Getter;
 import org.apache.bookkeeper.bookie.BookieException.EntryLogMetadataMapException;
 import org.apache.bookkeeper.bookie.GarbageCollector.GarbageCleaner;
@@ -90,6 +98,21 @@ public class GarbageCollectorThread implements Runnable {
     final EntryLogger entryLogger;
     final AbstractLogCompactor compactor;
 
+    // When compacting several entry logs concurrently, each compaction thread takes an idle compactor.
+    // All the compactors share the throttler of the first one, and thus its rate budget
+    final int numCompactionThreads;
+    private final BlockingQueue<AbstractLogCompactor> idleCompactors;
+    private final ExecutorService compactionExecutor;
+
+    // Schedules compaction from its cost and benefit, when enabled
+    final CompactionScheduler compactionScheduler;
+
+    // Progress of the ongoing or last compaction
+    private final AtomicInteger pendingCompactionEntryLogs = new AtomicInteger(0);
+    private final AtomicInteger runningCompactionEntryLogs = new AtomicInteger(0);
+    private final AtomicInteger completedCompactionEntryLogs = new AtomicInteger(0);
+    private final AtomicLong compactionReclaimedBytes = new AtomicLong(0);
+
     // Stats loggers for garbage collection operations
     private final GarbageCollectorStats gcStats;
 
@@ -216,6 +239,40 @@ public class GarbageCollectorThread implements Runnable {
             this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
         }
 
+        int numCompactionThreads = Math.max(conf.getNumCompactionThreads(), 1);
+        if (numCompactionThreads > 1 && conf.getUseTransactionalCompaction()) {
+            LOG.warn("Transactional compaction uses a single compaction log, ignoring numCompactionThreads={}",
+                    numCompactionThreads);
+            numCompactionThreads = 1;
+        }
+        this.numCompactionThreads = numCompactionThreads;
+        if (numCompactionThreads > 1) {
+            this.idleCompactors = new ArrayBlockingQueue<>(numCompactionThreads);
+            idleCompactors.add(compactor);
+            Object locationsUpdateLock = ((EntryLogCompactor) compactor).locationsUpdateLock;
+            for (int i = 1; i < numCompactionThreads; i++) {
+                idleCompactors.add(new EntryLogCompactor(conf, entryLogger, ledgerStorage, compactor.throttler,
+                        locationsUpdateLock, remover));
+            }
+            this.compactionExecutor = Executors.newFixedThreadPool(numCompactionThreads,
+                    new DefaultThreadFactory("GarbageCollectorThread-compaction"));
+        } else {
+            this.idleCompactors = null;
+            this.compactionExecutor = null;
+        }
+
+        if (conf.isCostBasedCompactionEnabled()) {
+            if (majorCompactionThreshold > 0 && majorCompactionThreshold <= 1.0f) {
+                this.compactionScheduler = new CompactionScheduler(conf, ledgerDirsManager);
+                compactor.throttler.setRateFactor(compactionScheduler::getRateFactor);
+            } else {
+                LOG.warn("Cost based compaction requires a major compaction threshold, disabling it");
+                this.compactionScheduler = null;
+            }
+        } else {
+            this.compactionScheduler = null;
+        }
+
         this.throttler = new AbstractLogCompactor.Throttler(conf);
         if (minorCompactionInterval > 0 && minorCompactionThreshold > 0) {
             if (minorCompactionThreshold > 1.0f) {
@@ -429,7 +486,9 @@ public class GarbageCollectorThread implements Runnable {
             }
 
             long curTime = System.currentTimeMillis();
-            if (((isForceMajorCompactionAllow && force) || (enableMajorCompaction
+            if (compactionScheduler != null && !force) {
+                doScheduledCompaction(suspendMajor, suspendMinor);
+            } else if (((isForceMajorCompactionAllow && force) || (enableMajorCompaction
                     && (force || curTime - lastMajorCompactionTime > majorCompactionInterval)))
                     && (!suspendMajor)) {
                 // enter major compaction
@@ -474,6 +533,35 @@ public class GarbageCollectorThread implements Runnable {
 
     }
 
+    /**
+     * Compact the entry logs if the compaction scheduler finds it worthwhile.
+     */
+    private void doScheduledCompaction(boolean suspendMajor, boolean suspendMinor)
+            throws EntryLogMetadataMapException {
+        double threshold = compactionScheduler.decide(suspendMajor, suspendMinor);
+        LOG.info("Cost based compaction: {}", compactionScheduler.getLastDecision());
+        if (threshold <= 0) {
+            return;
+        }
+
+        boolean major = threshold > minorCompactionThreshold;
+        AtomicBoolean compactingFlag = major ? majorCompacting : minorCompacting;
+        compactingFlag.set(true);
+        try {
+            doCompactEntryLogs(threshold, major ? majorCompactionMaxTimeMillis : minorCompactionMaxTimeMillis,
+                    true);
+        } finally {
+            lastMinorCompactionTime = System.currentTimeMillis();
+            if (major) {
+                lastMajorCompactionTime = lastMinorCompactionTime;
+                gcStats.getMajorCompactionCounter().inc();
+            } else {
+                gcStats.getMinorCompactionCounter().inc();
+            }
+            compactingFlag.set(false);
+        }
+    }
+
     /**
      * Do garbage collection ledger index files.
      */
@@ -487,6 +575,7 @@ public class GarbageCollectorThread implements Runnable {
     private void doGcEntryLogs() throws EntryLogMetadataMapException {
         // Get a cumulative count, don't update until complete
         AtomicLong totalEntryLogSizeAcc = new AtomicLong(0L);
+        CompactionScheduler.LiveBytesHistogram histogram = new CompactionScheduler.LiveBytesHistogram();
 
         // Loop through all of the entry logs and remove the non-active ledgers.
         entryLogMetaMap.forEach((entryLogId, meta) -> {
@@ -499,9 +588,12 @@ public class GarbageCollectorThread implements Runnable {
                     LOG.info("Deleting entryLogId {} as it has no active ledgers!", entryLogId);
                     removeEntryLog(entryLogId);
                     gcStats.getReclaimedSpaceViaDeletes().addCount(meta.getTotalSize());
-                } else if (modified) {
-                    // update entryLogMetaMap only when the meta modified.
-                    entryLogMetaMap.put(meta.getEntryLogId(), meta);
+                } else {
+                    if (modified) {
+                        // update entryLogMetaMap only when the meta modified.
+                        entryLogMetaMap.put(meta.getEntryLogId(), meta);
+                    }
+                    histogram.add(getUsage(meta), meta);
                 }
             } catch (EntryLogMetadataMapException e) {
                 // Ignore and continue because ledger will not be cleaned up
@@ -514,6 +606,9 @@ public class GarbageCollectorThread implements Runnable {
 
         this.totalEntryLogSize = totalEntryLogSizeAcc.get();
         this.numActiveEntryLogs = entryLogMetaMap.size();
+        if (compactionScheduler != null) {
+            compactionScheduler.setHistogram(histogram);
+        }
     }
 
     private boolean removeIfLedgerNotExists(EntryLogMetadata meta) throws EntryLogMetadataMapException {
@@ -539,33 +634,39 @@ public class GarbageCollectorThread implements Runnable {
      * Compact entry logs if necessary.
      *
      * <p>
-     * Compaction will be executed from low unused space to high unused space.
-     * Those entry log files whose remaining size percentage is higher than threshold
-     * would not be compacted.
+     * Compaction will be executed from the entry logs reclaiming the most space for each byte copied,
+     * which are the ones with the lowest usage. Those entry log files whose remaining size percentage
+     * is higher than threshold would not be compacted. Several entry logs are compacted concurrently
+     * when more than one compaction thread is configured.
      * </p>
      */
     @VisibleForTesting
     void doCompactEntryLogs(double threshold, long maxTimeMillis) throws EntryLogMetadataMapException {
+        doCompactEntryLogs(threshold, maxTimeMillis, false);
+    }
+
+    /**
+     * Compact entry logs if necessary.
+     *
+     * @param costBased whether to compact first the entry logs with the best benefit per cost, including the
+     *                  update of the index, instead of the best reclaimed bytes per copied byte
+     */
+    private void doCompactEntryLogs(double threshold, long maxTimeMillis, boolean costBased)
+            throws EntryLogMetadataMapException {
         LOG.info("Do compaction to compact those files lower than {}", threshold);
 
         final int numBuckets = 10;
         int[] entryLogUsageBuckets = new int[numBuckets];
-        int[] compactedBuckets = new int[numBuckets];
+        AtomicIntegerArray compactedBuckets = new AtomicIntegerArray(numBuckets);
 
-        ArrayList<LinkedList<Long>> compactableBuckets = new ArrayList<>(numBuckets);
-        for (int i = 0; i < numBuckets; i++) {
-            compactableBuckets.add(new LinkedList<>());
-        }
+        List<CompactionCandidate> candidates = new ArrayList<>();
 
         long start = System.currentTimeMillis();
         MutableLong end = new MutableLong(start);
         MutableLong timeDiff = new MutableLong(0);
 
         entryLogMetaMap.forEach((entryLogId, meta) -> {
-            double usage = meta.getUsage();
-            if (conf.isUseTargetEntryLogSizeForGc() && usage < 1.0d) {
-                usage = (double) meta.getRemainingSize() / Math.max(meta.getTotalSize(), conf.getEntryLogSizeLimit());
-            }
+            double usage = getUsage(meta);
             int bucketIndex = calculateUsageIndex(numBuckets, usage);
             entryLogUsageBuckets[bucketIndex]++;
 
@@ -581,58 +682,41 @@ public class GarbageCollectorThread implements Runnable {
                 return;
             }
 
-            compactableBuckets.get(bucketIndex).add(meta.getEntryLogId());
+            // Compacting an entry log copies its remaining bytes to reclaim the others
+            double priority = costBased ? CompactionScheduler.benefitPerCost(meta)
+                    : usage > 0 ? (1 - usage) / usage : Double.MAX_VALUE;
+            candidates.add(new CompactionCandidate(meta.getEntryLogId(), bucketIndex, priority));
         });
 
         LOG.info(
                 "Compaction: entry log usage buckets before compaction [10% 20% 30% 40% 50% 60% 70% 80% 90% 100%] = {}",
                 entryLogUsageBuckets);
 
-        final int maxBucket = calculateUsageIndex(numBuckets, threshold);
-        stopCompaction:
-        for (int currBucket = 0; currBucket <= maxBucket; currBucket++) {
-            LinkedList<Long> entryLogIds = compactableBuckets.get(currBucket);
-            while (!entryLogIds.isEmpty()) {
-                if (timeDiff.getValue() < maxTimeMillis) {
-                    end.setValue(System.currentTimeMillis());
-                    timeDiff.setValue(end.getValue() - start);
-                }
+        candidates.sort(Comparator.comparingDouble((CompactionCandidate c) -> c.priority).reversed());
+        pendingCompactionEntryLogs.set(candidates.size());
+        completedCompactionEntryLogs.set(0);
+        compactionReclaimedBytes.set(0);
 
-                if ((maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis) || !running) {
-                    // We allow the usage limit calculation to continue so that we get an accurate
-                    // report of where the usage was prior to running compaction.
-                    break stopCompaction;
+        if (numCompactionThreads > 1) {
+            doCompactEntryLogsConcurrently(candidates, threshold, compactedBuckets, start, maxTimeMillis);
+        } else {
+            for (CompactionCandidate candidate : candidates) {
+                if (isCompactionStopped(start, maxTimeMillis)) {
+                    break;
                 }
-
-                final int bucketIndex = currBucket;
-                final long logId = entryLogIds.remove();
-
-                entryLogMetaMap.forKey(logId, (entryLogId, meta) -> {
-                    if (meta == null) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Metadata for entry log {} already deleted", logId);
-                        }
-                        return;
-                    }
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Compacting entry log {} with usage {} below threshold {}",
-                                meta.getEntryLogId(), meta.getUsage(), threshold);
-                    }
-
-                    long priorRemainingSize = meta.getRemainingSize();
-                    compactEntryLog(meta);
-                    gcStats.getReclaimedSpaceViaCompaction().addCount(meta.getTotalSize() - priorRemainingSize);
-                    compactedBuckets[bucketIndex]++;
-                });
+                pendingCompactionEntryLogs.decrementAndGet();
+                compactCandidate(candidate, threshold, compactedBuckets, this::compactEntryLog);
             }
         }
+        pendingCompactionEntryLogs.set(0);
 
         if (LOG.isDebugEnabled()) {
             if (!running) {
                 LOG.debug("Compaction exited due to gc not running");
             }
-            if (maxTimeMillis > 0 && timeDiff.getValue() > maxTimeMillis) {
-                LOG.debug("Compaction ran for {}ms but was limited by {}ms", timeDiff, maxTimeMillis);
+            long elapsed = System.currentTimeMillis() - start;
+            if (maxTimeMillis > 0 && elapsed > maxTimeMillis) {
+                LOG.debug("Compaction ran for {}ms but was limited by {}ms", elapsed, maxTimeMillis);
             }
         }
         LOG.info(
@@ -640,6 +724,99 @@ public class GarbageCollectorThread implements Runnable {
                 entryLogUsageBuckets, compactedBuckets);
     }
 
+    /**
+     * Compact the candidates with the compaction threads, each using its own compactor.
+     */
+    private void doCompactEntryLogsConcurrently(List<CompactionCandidate> candidates, double threshold,
+                                                AtomicIntegerArray compactedBuckets,
+                                                long start, long maxTimeMillis) {
+        // Hold the compacting flag for the whole run, so that shutdown waits for all the compaction threads
+        if (!compacting.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            for (CompactionCandidate candidate : candidates) {
+                AbstractLogCompactor logCompactor = Uninterruptibles.takeUninterruptibly(idleCompactors);
+                if (isCompactionStopped(start, maxTimeMillis)) {
+                    idleCompactors.add(logCompactor);
+                    break;
+                }
+                pendingCompactionEntryLogs.decrementAndGet();
+                compactionExecutor.execute(() -> {
+                    try {
+                        compactCandidate(candidate, threshold, compactedBuckets,
+                                meta -> compactEntryLog(logCompactor, meta));
+                    } catch (EntryLogMetadataMapException e) {
+                        LOG.warn("Failed to get entry-log metadata {}", candidate.entryLogId, e);
+                    } finally {
+                        idleCompactors.add(logCompactor);
+                    }
+                });
+            }
+
+            // Wait for the compactions in progress
+            List<AbstractLogCompactor> compactors = new ArrayList<>(numCompactionThreads);
+            for (int i = 0; i < numCompactionThreads; i++) {
+                compactors.add(Uninterruptibles.takeUninterruptibly(idleCompactors));
+            }
+            idleCompactors.addAll(compactors);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    private boolean isCompactionStopped(long start, long maxTimeMillis) {
+        return (maxTimeMillis > 0 && System.currentTimeMillis() - start >= maxTimeMillis) || !running;
+    }
+
+    private void compactCandidate(CompactionCandidate candidate, double threshold,
+                                  AtomicIntegerArray compactedBuckets,
+                                  Predicate<EntryLogMetadata> compaction) throws EntryLogMetadataMapException {
+        entryLogMetaMap.forKey(candidate.entryLogId, (entryLogId, meta) -> {
+            if (meta == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Metadata for entry log {} already deleted", candidate.entryLogId);
+                }
+                return;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Compacting entry log {} with usage {} below threshold {}",
+                        meta.getEntryLogId(), meta.getUsage(), threshold);
+            }
+
+            long priorRemainingSize = meta.getRemainingSize();
+            runningCompactionEntryLogs.incrementAndGet();
+            try {
+                if (compaction.test(meta)) {
+                    compactionReclaimedBytes.addAndGet(meta.getTotalSize() - priorRemainingSize);
+                }
+            } finally {
+                runningCompactionEntryLogs.decrementAndGet();
+                completedCompactionEntryLogs.incrementAndGet();
+            }
+            gcStats.getReclaimedSpaceViaCompaction().addCount(meta.getTotalSize() - priorRemainingSize);
+            compactedBuckets.incrementAndGet(candidate.bucketIndex);
+        });
+    }
+
+    private double getUsage(EntryLogMetadata meta) {
+        double usage = meta.getUsage();
+        if (conf.isUseTargetEntryLogSizeForGc() && usage < 1.0d) {
+            usage = (double) meta.getRemainingSize() / Math.max(meta.getTotalSize(), conf.getEntryLogSizeLimit());
+        }
+        return usage;
+    }
+
+    /**
+     * Record the latency of an add or a read of the ledger storage, used to throttle compaction.
+     */
+    public void recordForegroundLatency(long latencyNanos) {
+        if (compactionScheduler != null) {
+            compactionScheduler.recordForegroundLatency(latencyNanos);
+        }
+    }
+
     /**
      * Calculate the index for the batch based on the usage between 0 and 1.
      *
@@ -675,6 +852,9 @@ public class GarbageCollectorThread implements Runnable {
         this.running = false;
         // Interrupt GC executor thread
         gcExecutor.shutdownNow();
+        if (compactionExecutor != null) {
+            compactionExecutor.shutdown();
+        }
         try {
             entryLogMetaMap.close();
         } catch (Exception e) {
@@ -701,8 +881,9 @@ public class GarbageCollectorThread implements Runnable {
      * Compact an entry log.
      *
      * @param entryLogMeta
+     * @return true if the entry log was compacted
      */
-    protected void compactEntryLog(EntryLogMetadata entryLogMeta) {
+    protected boolean compactEntryLog(EntryLogMetadata entryLogMeta) {
         // Similar with Sync Thread
         // try to mark compacting flag to make sure it would not be interrupted
         // by shutdown during compaction. otherwise it will receive
@@ -711,20 +892,27 @@ public class GarbageCollectorThread implements Runnable {
         if (!compacting.compareAndSet(false, true)) {
             // set compacting flag failed, means compacting is true now
             // indicates that compaction is in progress for this EntryLogId.
-            return;
+            return false;
         }
 
         try {
-            // Do the actual compaction
-            compactor.compact(entryLogMeta);
-        } catch (Exception e) {
-            LOG.error("Failed to compact entry log {} due to unexpected error", entryLogMeta.getEntryLogId(), e);
+            return compactEntryLog(compactor, entryLogMeta);
         } finally {
             // Mark compaction done
             compacting.set(false);
         }
     }
 
+    private boolean compactEntryLog(AbstractLogCompactor logCompactor, EntryLogMetadata entryLogMeta) {
+        try {
+            // Do the actual compaction
+            return logCompactor.compact(entryLogMeta);
+        } catch (Exception e) {
+            LOG.error("Failed to compact entry log {} due to unexpected error", entryLogMeta.getEntryLogId(), e);
+            return false;
+        }
+    }
+
     /**
      * Method to read in all of the entry logs (those that we haven't done so yet),
      * and find the set of ledger ID's that make up each entry log file.
@@ -775,7 +963,7 @@ public class GarbageCollectorThread implements Runnable {
     }
 
     public GarbageCollectionStatus getGarbageCollectionStatus() {
-        return GarbageCollectionStatus.builder()
+        GarbageCollectionStatus.GarbageCollectionStatusBuilder builder = GarbageCollectionStatus.builder()
             .forceCompacting(forceGarbageCollection.get())
             .majorCompacting(majorCompacting.get())
             .minorCompacting(minorCompacting.get())
@@ -783,6 +971,36 @@ public class GarbageCollectorThread implements Runnable {
             .lastMinorCompactionTime(lastMinorCompactionTime)
             .majorCompactionCounter(gcStats.getMajorCompactionCounter().get())
             .minorCompactionCounter(gcStats.getMinorCompactionCounter().get())
-            .build();
+            .compactionPendingEntryLogs(pendingCompactionEntryLogs.get())
+            .compactionRunningEntryLogs(runningCompactionEntryLogs.get())
+            .compactionCompletedEntryLogs(completedCompactionEntryLogs.get())
+            .compactionReclaimedBytes(compactionReclaimedBytes.get());
+        if (compactionScheduler != null) {
+            builder.costBasedCompaction(true)
+                .compactionDecision(compactionScheduler.getLastDecision())
+                .compactionUsageThreshold(compactionScheduler.getUsageThreshold())
+                .diskUsage(compactionScheduler.getDiskUsage())
+                .foregroundLatencyMillis(compactionScheduler.getForegroundLatencyMillis())
+                .compactionRateFactor(compactionScheduler.getCurrentRateFactor())
+                .liveBytesByUsage(compactionScheduler.getHistogram().getLiveBytes())
+                .totalBytesByUsage(compactionScheduler.getHistogram().getTotalBytes());
+        }
+        return builder.build();
+    }
+
+    /**
+     * An entry log picked for compaction.
+     */
+    private static class CompactionCandidate {
+        final long entryLogId;
+        final int bucketIndex;
+        // Entry logs with a higher priority are compacted first
+        final double priority;
+
+        CompactionCandidate(long entryLogId, int bucketIndex, double priority) {
+            this.entryLogId = entryLogId;
+            this.bucketIndex = bucketIndex;
+            this.priority = priority;
+        }
     }
 }
@@ -294,6 +294,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
      * Journal Entry to Record.
      */
     static class QueueEntry implements Runnable {
+        // Ring buffer owning this entry, null for entries taken from the recycler
+        private final JournalRingBuffer ringBuffer;
+        long sequence;
         ByteBuf entry;
         long ledgerId;
         long entryId;
@@ -309,18 +312,28 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 WriteCallback cb, Object ctx, long enqueueTime, OpStatsLogger journalAddEntryStats,
                 Counter callbackTime) {
             QueueEntry qe = RECYCLER.get();
-            qe.entry = entry;
-            qe.ackBeforeSync = ackBeforeSync;
-            qe.cb = cb;
-            qe.ctx = ctx;
-            qe.ledgerId = ledgerId;
-            qe.entryId = entryId;
-            qe.enqueueTime = enqueueTime;
-            qe.journalAddEntryStats = journalAddEntryStats;
-            qe.callbackTime = callbackTime;
+            qe.set(entry, ackBeforeSync, ledgerId, entryId, cb, ctx, enqueueTime, journalAddEntryStats, callbackTime);
             return qe;
         }
 
+        static QueueEntry newRingBufferSlot(JournalRingBuffer ringBuffer) {
+            return new QueueEntry(null, ringBuffer);
+        }
+
+        void set(ByteBuf entry, boolean ackBeforeSync, long ledgerId, long entryId,
+                 WriteCallback cb, Object ctx, long enqueueTime, OpStatsLogger journalAddEntryStats,
+                 Counter callbackTime) {
+            this.entry = entry;
+            this.ackBeforeSync = ackBeforeSync;
+            this.cb = cb;
+            this.ctx = ctx;
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+            this.enqueueTime = enqueueTime;
+            this.journalAddEntryStats = journalAddEntryStats;
+            this.callbackTime = callbackTime;
+        }
+
         @Override
         public void run() {
             long startTime = System.nanoTime();
@@ -335,14 +348,15 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         private final Handle<QueueEntry> recyclerHandle;
 
-        private QueueEntry(Handle<QueueEntry> recyclerHandle) {
+        private QueueEntry(Handle<QueueEntry> recyclerHandle, JournalRingBuffer ringBuffer) {
             this.recyclerHandle = recyclerHandle;
+            this.ringBuffer = ringBuffer;
         }
 
         private static final Recycler<QueueEntry> RECYCLER = new Recycler<QueueEntry>() {
             @Override
             protected QueueEntry newObject(Recycler.Handle<QueueEntry> handle) {
-                return new QueueEntry(handle);
+                return new QueueEntry(handle, null);
             }
         };
 
@@ -352,7 +366,11 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             this.ctx = null;
             this.journalAddEntryStats = null;
             this.callbackTime = null;
-            recyclerHandle.recycle(this);
+            if (ringBuffer != null) {
+                ringBuffer.release(sequence);
+            } else {
+                recyclerHandle.recycle(this);
+            }
         }
     }
 
@@ -497,7 +515,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
                     // Sync and mark the journal up to the position of the last entry in the batch
                     ForceWriteRequest lastRequest = localRequests.get(requestsCount - 1);
-                    syncJournal(lastRequest);
+                    long syncNanos = syncJournal(lastRequest);
 
                     // All the requests in the batch are now fully-synced. We can trigger sending the
                     // responses
@@ -509,6 +527,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
                     journalStats.getForceWriteGroupingCountStats()
                             .registerSuccessfulValue(numReqInLastForceWrite);
+                    flushController.onForceWrite(syncNanos, numReqInLastForceWrite);
 
                     if (requestProcessor != null) {
                         requestProcessor.flushPendingResponses();
@@ -537,13 +556,14 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             threadToNotifyOnEx.interrupt();
         }
 
-        private void syncJournal(ForceWriteRequest lastRequest) throws IOException {
+        private long syncJournal(ForceWriteRequest lastRequest) throws IOException {
             long fsyncStartTime = MathUtils.nowInNano();
             try {
                 lastRequest.flushFileToDisk();
-                journalStats.getJournalSyncStats().registerSuccessfulEvent(MathUtils.elapsedNanos(fsyncStartTime),
-                        TimeUnit.NANOSECONDS);
+                long fsyncNanos = MathUtils.elapsedNanos(fsyncStartTime);
+                journalStats.getJournalSyncStats().registerSuccessfulEvent(fsyncNanos, TimeUnit.NANOSECONDS);
                 lastLogMark.setCurLogMark(lastRequest.logId, lastRequest.lastFlushedPosition);
+                return fsyncNanos;
             } catch (IOException ioe) {
                 journalStats.getJournalSyncStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(fsyncStartTime), TimeUnit.NANOSECONDS);
@@ -621,6 +641,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     private final long bufferedWritesThreshold;
     // should we flush if the queue is empty
     private final boolean flushWhenQueueEmpty;
+    // picks the group wait time, when adaptive
+    private final JournalFlushController flushController;
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
     private final int journalFormatVersionToWrite;
@@ -643,8 +665,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     private final Counter journalTime;
     private static final String journalThreadName = "BookieJournal";
 
-    // journal entry queue to commit
-    final BlockingQueue<QueueEntry> queue;
+    // journal entry queue to commit, as seen by the journal thread
+    final JournalQueue queue;
+    // where the entries are added: a blocking queue of recycled entries, or the ring buffer
+    // when the journal entries are pre-allocated
+    private final BlockingQueue<QueueEntry> entryQueue;
+    private final JournalRingBuffer ringBuffer;
     final BlockingQueue<ForceWriteRequest> forceWriteRequests;
 
     volatile boolean running = true;
@@ -670,12 +696,23 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(journalIndex));
 
+        if (conf.getJournalRingBufferEnabled()) {
+            ringBuffer = new JournalRingBuffer(conf.getJournalQueueSize(), conf.isBusyWaitEnabled());
+            entryQueue = null;
+            queue = ringBuffer;
+        } else {
+            ringBuffer = null;
+            if (conf.isBusyWaitEnabled()) {
+                // To achieve lower latency, use busy-wait blocking queue implementation
+                entryQueue = new BlockingMpscQueue<>(conf.getJournalQueueSize());
+            } else {
+                entryQueue = new ArrayBlockingQueue<>(conf.getJournalQueueSize());
+            }
+            queue = JournalQueue.of(entryQueue);
+        }
         if (conf.isBusyWaitEnabled()) {
-            // To achieve lower latency, use busy-wait blocking queue implementation
-            queue = new BlockingMpscQueue<>(conf.getJournalQueueSize());
             forceWriteRequests = new BlockingMpscQueue<>(conf.getJournalQueueSize());
         } else {
-            queue = new ArrayBlockingQueue<>(conf.getJournalQueueSize());
             forceWriteRequests = new ArrayBlockingQueue<>(conf.getJournalQueueSize());
         }
 
@@ -703,9 +740,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         this.journalTime = journalStatsLogger.getThreadScopedCounter("journal-thread-time");
 
+        this.flushController = new JournalFlushController(conf.getJournalAdaptiveFlush(), syncData,
+                maxGroupWaitInNanos, TimeUnit.MILLISECONDS.toNanos(conf.getJournalAdaptiveFlushLatencyTargetMSec()));
+
         // Unless there is a cap on the max wait (which requires group force writes)
         // we cannot skip flushing for queue empty
-        this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
+        this.flushWhenQueueEmpty = flushController.getGroupWaitNanos() <= 0 || conf.getJournalFlushWhenQueueEmpty();
 
         this.removePagesFromCache = conf.getJournalRemovePagesFromCache();
         // read last log mark
@@ -728,7 +768,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         // Expose Stats
         this.journalStats = new JournalStats(journalStatsLogger, journalMaxMemory,
-                () -> memoryLimitController.currentUsage());
+                () -> memoryLimitController.currentUsage(), flushController::getGroupWaitMicros,
+                flushController::getEntriesPerForceWrite);
     }
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
@@ -738,6 +779,13 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         this.journalAliveListener = journalAliveListener;
     }
 
+    /**
+     * @return an estimate of the time needed to make durable the entries already queued to the journal
+     */
+    long getPendingWorkNanos() {
+        return flushController.estimatePendingWorkNanos(queue.size(), forceWriteRequests.size());
+    }
+
     JournalStats getJournalStats() {
         return this.journalStats;
     }
@@ -904,14 +952,33 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         memoryLimitController.reserveMemory(entry.readableBytes());
 
-        queue.put(QueueEntry.create(
+        if (ringBuffer != null) {
+            try {
+                ringBuffer.publish(entry, ackBeforeSync, ledgerId, entryId, cb, ctx, MathUtils.nowInNano(),
+                        journalStats.getJournalAddEntryStats(), callbackTime);
+            } catch (IllegalStateException e) {
+                journalStats.getJournalQueueSize().dec();
+                memoryLimitController.releaseMemory(entry.readableBytes());
+                entry.release();
+                throw e;
+            }
+            return;
+        }
+        entryQueue.put(QueueEntry.create(
                 entry, ackBeforeSync,  ledgerId, entryId, cb, ctx, MathUtils.nowInNano(),
                 journalStats.getJournalAddEntryStats(),
                 callbackTime));
     }
 
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx) {
-        queue.add(QueueEntry.create(
+        if (ringBuffer != null) {
+            ringBuffer.publish(null, false /* ackBeforeSync */, ledgerId,
+                    BookieImpl.METAENTRY_ID_FORCE_LEDGER, cb, ctx, MathUtils.nowInNano(),
+                    journalStats.getJournalForceLedgerStats(), callbackTime);
+            journalStats.getJournalQueueSize().inc();
+            return;
+        }
+        entryQueue.add(QueueEntry.create(
                 null, false /* ackBeforeSync */, ledgerId,
                 BookieImpl.METAENTRY_ID_FORCE_LEDGER, cb, ctx, MathUtils.nowInNano(),
                 journalStats.getJournalForceLedgerStats(),
@@ -1033,6 +1100,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                                 .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime),
                                         TimeUnit.NANOSECONDS);
                     } else {
+                        long groupWaitNanos = flushController.getGroupWaitNanos();
+                        boolean flushOnEmptyQueue = flushWhenQueueEmpty || groupWaitNanos <= 0;
+
                         if (localQueueEntries.isEmpty()) {
                             queue.drainTo(localQueueEntries);
                         }
@@ -1043,9 +1113,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             dequeueStartTime = MathUtils.nowInNano();
                             busyStartTime = dequeueStartTime;
                         } else {
-                            long pollWaitTimeNanos = maxGroupWaitInNanos
+                            long pollWaitTimeNanos = groupWaitNanos
                                     - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
-                            if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
+                            if (flushOnEmptyQueue || pollWaitTimeNanos < 0) {
                                 pollWaitTimeNanos = 0;
                             }
                             qe = queue.poll(pollWaitTimeNanos, TimeUnit.NANOSECONDS);
@@ -1061,12 +1131,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         boolean shouldFlush = false;
                         // We should issue a forceWrite if any of the three conditions below holds good
                         // 1. If the oldest pending entry has been pending for longer than the max wait time
-                        if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                                .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                        if (groupWaitNanos > 0 && !groupWhenTimeout && (MathUtils
+                                .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitNanos)) {
                             groupWhenTimeout = true;
-                        } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
+                        } else if (groupWaitNanos > 0 && groupWhenTimeout
                             && (qe == null // no entry to group
-                                || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                                || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitNanos)) {
                             // when group timeout, it would be better to look forward, as there might be lots of
                             // entries already timeout
                             // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1083,7 +1153,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             groupWhenTimeout = false;
                             shouldFlush = true;
                             journalStats.getFlushMaxOutstandingBytesCounter().inc();
-                        } else if (qe == null && flushWhenQueueEmpty) {
+                        } else if (qe == null && flushOnEmptyQueue) {
                             // We should get here only if we flushWhenQueueEmpty is true else we would wait
                             // for timeout that would put is past the maxWait threshold
                             // 3. If the queue is empty i.e. no benefit of grouping. This happens when we have one
@@ -1151,6 +1221,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                                         toFlush, shouldRolloverJournal));
                                 lastFlushTimeMs = System.currentTimeMillis();
                             }
+                            flushController.onFlush(toFlush.size(), forceWriteRequests.size());
                             toFlush = entryListRecycler.newInstance();
                             numEntriesToFlush = 0;
 
@@ -29,6 +29,11 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.DirectBufferedChannel;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.util.PageCacheUtil;
 import org.apache.bookkeeper.util.ZeroBuffer;
@@ -55,6 +60,8 @@ class JournalChannel implements Closeable {
     static final int SECTOR_SIZE = 512;
     private static final int START_OF_FILE = -12345;
     private static final long cacheDropLagBytes = 8 * MB;
+    // Journal directories whose filesystem does not support direct I/O
+    private static final Set<File> directIOUnavailableDirs = ConcurrentHashMap.newKeySet();
 
     // No header
     static final int V1 = 1;
@@ -185,11 +192,11 @@ class JournalChannel implements Closeable {
             }
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(bcBuilder, writeBufferSize, fn);
         } else if (reuseFile) { // Open an existing journal to write, it needs fileChannelProvider support reuse file.
             fc = channel.getFileChannel();
             formatVersion = formatVersionToWrite;
-            writeHeader(bcBuilder, writeBufferSize);
+            writeHeader(bcBuilder, writeBufferSize, fn);
         } else {  // open an existing file to read.
             fc = channel.getFileChannel();
             bc = null; // readonly
@@ -248,7 +255,7 @@ class JournalChannel implements Closeable {
     }
 
     private void writeHeader(Journal.BufferedChannelBuilder bcBuilder,
-                             int writeBufferSize) throws IOException {
+                             int writeBufferSize, File fn) throws IOException {
         int headerSize = (V4 == formatVersion) ? VERSION_HEADER_SIZE : HEADER_SIZE;
         ByteBuffer bb = ByteBuffer.allocate(headerSize);
         ZeroBuffer.put(bb);
@@ -258,9 +265,36 @@ class JournalChannel implements Closeable {
         bb.clear();
         fc.write(bb);
 
-        bc = bcBuilder.create(fc, writeBufferSize);
+        bc = createBufferedChannel(bcBuilder, writeBufferSize, fn);
         forceWrite(true);
         nextPrealloc = this.preAllocSize;
+        preAllocate();
+    }
+
+    private BufferedChannel createBufferedChannel(Journal.BufferedChannelBuilder bcBuilder,
+                                                  int writeBufferSize, File fn) throws IOException {
+        File journalDir = fn.getAbsoluteFile().getParentFile();
+        if (configuration.getJournalDirectIO() && !directIOUnavailableDirs.contains(journalDir)) {
+            try {
+                NativeIO nativeIO = new NativeIOImpl();
+                return new DirectBufferedChannel(nativeIO, fc, fn.getPath(), writeBufferSize);
+            } catch (IOException | RuntimeException | LinkageError e) {
+                // Native I/O is not available on this platform, or the filesystem of the directory does
+                // not support O_DIRECT. The other journal directories may be on filesystems which do
+                directIOUnavailableDirs.add(journalDir);
+                LOG.warn("Failed to open journal {} with direct I/O, falling back to buffered writes for the"
+                        + " journals of {}", fn, journalDir, e);
+            }
+        }
+        return bcBuilder.create(fc, writeBufferSize);
+    }
+
+    private void preAllocate() throws IOException {
+        if (bc instanceof DirectBufferedChannel
+                && ((DirectBufferedChannel) bc).preallocate(nextPrealloc - preAllocSize, preAllocSize)) {
+            return;
+        }
+        zeros.clear();
         fc.write(zeros, nextPrealloc - journalAlignSize);
     }
 
@@ -285,8 +319,7 @@ class JournalChannel implements Closeable {
     void preAllocIfNeeded(long size) throws IOException {
         if (bc.position() + size > nextPrealloc) {
             nextPrealloc += preAllocSize;
-            zeros.clear();
-            fc.write(zeros, nextPrealloc - journalAlignSize);
+            preAllocate();
         }
     }
 
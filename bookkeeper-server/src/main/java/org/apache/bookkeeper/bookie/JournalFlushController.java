@@ -0,0 +1,168 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long the journal waits for more entries before flushing a group, so that the
+ * p99 latency of adds stays under a target while issuing as few fsyncs as possible.
+ *
+ * <p>An entry added to the journal waits for the group window, then for the force writes already
+ * queued ahead of its own, then for its own force write. The controller estimates the p99 fsync
+ * latency from a moving average and deviation of the latencies observed by the force write
+ * thread, like TCP does for round trip times, and gives the rest of the latency target to the
+ * group window, capped by the max group wait. If less than one more entry is expected to arrive
+ * during the window at the current arrival rate, there is nothing to group and the journal flushes
+ * right away.
+ *
+ * <p>When not adaptive, the window is always the configured max group wait, but the controller
+ * still tracks the number of entries made durable by each fsync.
+ */
+class JournalFlushController {
+
+    // Weights of a new sample in the moving averages
+    private static final double AVERAGE_WEIGHT = 0.125;
+    private static final double DEVIATION_WEIGHT = 0.25;
+    // Number of deviations above the average fsync latency used as its p99
+    private static final int DEVIATIONS_FOR_P99 = 4;
+
+    private final boolean adaptive;
+    private final boolean syncData;
+    private final long maxGroupWaitNanos;
+    private final long latencyTargetNanos;
+    private final Ticker ticker;
+
+    // Updated by the force write thread only
+    private volatile double avgForceWriteNanos = -1;
+    private volatile double forceWriteDeviationNanos = 0;
+    private volatile double entriesPerForceWrite = 0;
+
+    // Updated by the journal thread only
+    private double arrivalRatePerNano = 0;
+    private long lastFlushNanos = -1;
+    private volatile long groupWaitNanos;
+
+    JournalFlushController(boolean adaptive, boolean syncData, long maxGroupWaitNanos, long latencyTargetNanos) {
+        this(adaptive, syncData, maxGroupWaitNanos, latencyTargetNanos, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    JournalFlushController(boolean adaptive, boolean syncData, long maxGroupWaitNanos, long latencyTargetNanos,
+                           Ticker ticker) {
+        this.ticker = ticker;
+        this.adaptive = adaptive;
+        this.syncData = syncData;
+        // Without a configured max wait, the window can use the whole latency target
+        this.maxGroupWaitNanos = adaptive && maxGroupWaitNanos <= 0 ? latencyTargetNanos : maxGroupWaitNanos;
+        this.latencyTargetNanos = latencyTargetNanos;
+        this.groupWaitNanos = this.maxGroupWaitNanos;
+    }
+
+    /**
+     * @return how long the journal can wait for more entries after the first one of a group
+     */
+    long getGroupWaitNanos() {
+        return groupWaitNanos;
+    }
+
+    long getGroupWaitMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(groupWaitNanos);
+    }
+
+    /**
+     * @return the average number of entries made durable by a single fsync
+     */
+    long getEntriesPerForceWrite() {
+        return Math.round(entriesPerForceWrite);
+    }
+
+    /**
+     * Record a flush of the journal, and pick the window of the next group.
+     *
+     * @param entries number of entries in the group that was flushed
+     * @param pendingForceWrites number of force write requests waiting to be processed
+     */
+    void onFlush(int entries, int pendingForceWrites) {
+        long now = ticker.read();
+        if (lastFlushNanos >= 0 && now > lastFlushNanos) {
+            double rate = (double) entries / (now - lastFlushNanos);
+            arrivalRatePerNano += AVERAGE_WEIGHT * (rate - arrivalRatePerNano);
+        }
+        lastFlushNanos = now;
+
+        if (adaptive) {
+            groupWaitNanos = computeGroupWait(pendingForceWrites);
+        }
+    }
+
+    /**
+     * Record a force write of the journal.
+     *
+     * @param latencyNanos time spent syncing the journal
+     * @param entries number of entries made durable
+     */
+    void onForceWrite(long latencyNanos, int entries) {
+        if (avgForceWriteNanos < 0) {
+            avgForceWriteNanos = latencyNanos;
+            forceWriteDeviationNanos = latencyNanos / 2.0;
+            entriesPerForceWrite = entries;
+            return;
+        }
+        double error = latencyNanos - avgForceWriteNanos;
+        forceWriteDeviationNanos += DEVIATION_WEIGHT * (Math.abs(error) - forceWriteDeviationNanos);
+        avgForceWriteNanos += AVERAGE_WEIGHT * error;
+        entriesPerForceWrite += AVERAGE_WEIGHT * (entries - entriesPerForceWrite);
+    }
+
+    /**
+     * Estimate how long it would take the journal to make durable the work already queued to it.
+     *
+     * @param queuedEntries number of entries waiting to be written
+     * @param pendingForceWrites number of force write requests waiting to be processed
+     */
+    long estimatePendingWorkNanos(int queuedEntries, int pendingForceWrites) {
+        // Before the first fsync, the queue depth alone tells the journals apart
+        double forceWriteNanos = Math.max(avgForceWriteNanos, 1);
+        double forceWrites = pendingForceWrites + queuedEntries / Math.max(entriesPerForceWrite, 1);
+        return (long) (forceWriteNanos * (1 + forceWrites));
+    }
+
+    private long computeGroupWait(int pendingForceWrites) {
+        double budgetNanos = latencyTargetNanos;
+        if (syncData) {
+            if (avgForceWriteNanos < 0) {
+                // No fsync observed yet, stick to the max wait
+                return maxGroupWaitNanos;
+            }
+            double p99ForceWriteNanos = avgForceWriteNanos + DEVIATIONS_FOR_P99 * forceWriteDeviationNanos;
+            budgetNanos -= p99ForceWriteNanos * (1 + pendingForceWrites);
+        }
+
+        if (budgetNanos <= 0 || arrivalRatePerNano * budgetNanos < 1) {
+            // Either the target cannot be met anyway, or waiting would not group more entries
+            return 0;
+        }
+        return Math.min((long) budgetNanos, maxGroupWaitNanos);
+    }
+}
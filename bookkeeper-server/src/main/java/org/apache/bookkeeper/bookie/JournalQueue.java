@@ -0,0 +1,80 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The entries waiting for the journal thread, seen from the journal thread, which is their only
+ * consumer. Entries are added by {@link Journal}, through the queue or the ring buffer it created.
+ */
+interface JournalQueue {
+
+    /**
+     * Wait for the next entry.
+     */
+    Journal.QueueEntry take() throws InterruptedException;
+
+    /**
+     * Wait for the next entry, up to the given timeout.
+     *
+     * @return the next entry, or null if none was added before the timeout
+     */
+    Journal.QueueEntry poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Move all the entries available to the given collection.
+     *
+     * @return the number of entries moved
+     */
+    int drainTo(Collection<? super Journal.QueueEntry> c);
+
+    /**
+     * @return the number of entries waiting for the journal thread
+     */
+    int size();
+
+    static JournalQueue of(BlockingQueue<Journal.QueueEntry> queue) {
+        return new JournalQueue() {
+            @Override
+            public Journal.QueueEntry take() throws InterruptedException {
+                return queue.take();
+            }
+
+            @Override
+            public Journal.QueueEntry poll(long timeout, TimeUnit unit) throws InterruptedException {
+                return queue.poll(timeout, unit);
+            }
+
+            @Override
+            public int drainTo(Collection<? super Journal.QueueEntry> c) {
+                return queue.drainTo(c);
+            }
+
+            @Override
+            public int size() {
+                return queue.size();
+            }
+        };
+    }
+}
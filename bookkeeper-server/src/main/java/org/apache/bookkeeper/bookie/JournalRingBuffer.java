@@ -0,0 +1,253 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.bookkeeper.common.collections.BusyWait;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+
+/**
+ * Ring of pre-allocated journal entries, used as the journal queue instead of recycled
+ * {@link Journal.QueueEntry} objects passed through a blocking queue.
+ *
+ * <p>Like in a disruptor, the slots are allocated once and every stage of the journal pipeline
+ * tracks its progress with its own sequence:
+ * <ul>
+ * <li>producers claim the next sequence, fill its slot and publish it;</li>
+ * <li>the journal thread consumes the published sequences in order, and writes and flushes them;</li>
+ * <li>the slots are released once their callback ran, by the force write thread, or by the journal
+ * thread for ack-before-sync entries. Slots can be released in any order: a producer only waits for
+ * the previous use of its own slot to be released, and only claims a sequence once its slot is free.</li>
+ * </ul>
+ * Since a slot is only reused once released, the capacity of the ring bounds the entries in flight
+ * through the whole pipeline, not only the ones waiting for the journal thread.
+ *
+ * <p>A slot which is never released would block the producers forever, so they give up with an
+ * {@link IllegalStateException} once they waited longer than the release timeout for a slot.
+ */
+class JournalRingBuffer implements JournalQueue {
+
+    // Number of busy-spin iterations before parking, when busy wait is disabled
+    private static final int SPIN_TRIES = 100;
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    static final long DEFAULT_RELEASE_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Journal.QueueEntry[] slots;
+    private final int mask;
+    private final boolean busyWait;
+    private final long releaseTimeoutNanos;
+
+    // Sequence last published in each slot
+    private final AtomicLongArray published;
+    // Sequence last released in each slot
+    private final AtomicLongArray released;
+
+    private final AtomicLong claimSequence = new AtomicLong(-1);
+    // Only updated by the journal thread
+    private volatile long consumeSequence = -1;
+
+    private volatile Thread consumer;
+    private volatile boolean consumerWaiting = false;
+
+    JournalRingBuffer(int capacity, boolean busyWait) {
+        this(capacity, busyWait, DEFAULT_RELEASE_TIMEOUT_NANOS);
+    }
+
+    JournalRingBuffer(int capacity, boolean busyWait, long releaseTimeoutNanos) {
+        int size = alignToPowerOfTwo(Math.max(capacity, 2));
+        this.slots = new Journal.QueueEntry[size];
+        this.mask = size - 1;
+        this.busyWait = busyWait;
+        this.releaseTimeoutNanos = releaseTimeoutNanos;
+        this.published = new AtomicLongArray(size);
+        this.released = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = Journal.QueueEntry.newRingBufferSlot(this);
+            published.set(i, -1);
+            // As if the slots had been used and released once, by the sequences before the first one
+            released.set(i, i - size);
+        }
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Add an entry to the journal, waiting for a slot to be released if the ring is full.
+     *
+     * @throws IllegalStateException if no slot was released within the release timeout
+     */
+    void publish(ByteBuf entry, boolean ackBeforeSync, long ledgerId, long entryId,
+                 WriteCallback cb, Object ctx, long enqueueTime, OpStatsLogger journalAddEntryStats,
+                 Counter callbackTime) {
+        // Once claimed, the sequence must be published, otherwise the journal thread would be stuck on it.
+        // So only claim it after its slot was released
+        long sequence = claim();
+
+        Journal.QueueEntry slot = slots[index(sequence)];
+        slot.set(entry, ackBeforeSync, ledgerId, entryId, cb, ctx, enqueueTime, journalAddEntryStats, callbackTime);
+        slot.sequence = sequence;
+        published.set(index(sequence), sequence);
+
+        if (consumerWaiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Release the slot of an entry whose callback ran, so that it can be reused.
+     */
+    void release(long sequence) {
+        released.set(index(sequence), sequence);
+    }
+
+    private long claim() {
+        int idleCounter = 0;
+        long deadline = 0;
+        boolean waiting = false;
+        while (true) {
+            long current = claimSequence.get();
+            long sequence = current + 1;
+            long previousUse = sequence - slots.length;
+            if (released.get(index(sequence)) == previousUse) {
+                if (claimSequence.compareAndSet(current, sequence)) {
+                    return sequence;
+                }
+                continue;
+            }
+
+            long now = System.nanoTime();
+            if (!waiting) {
+                waiting = true;
+                deadline = now + releaseTimeoutNanos;
+            } else if (now - deadline > 0) {
+                throw new IllegalStateException("Journal ring buffer slot " + index(sequence)
+                        + " was not released after " + TimeUnit.NANOSECONDS.toMillis(releaseTimeoutNanos)
+                        + " ms: the journal entry " + previousUse + " it holds was never completed");
+            }
+            if (busyWait || idleCounter < SPIN_TRIES) {
+                BusyWait.onSpinWait();
+                idleCounter++;
+            } else {
+                LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Wait until the given sequence is published, or the deadline expires.
+     *
+     * @return true if the sequence was published
+     */
+    private boolean waitForPublish(long sequence, boolean timed, long deadlineNanos) throws InterruptedException {
+        int idx = index(sequence);
+        for (int i = 0; busyWait || i < SPIN_TRIES; i++) {
+            if (published.get(idx) == sequence) {
+                return true;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (timed && System.nanoTime() - deadlineNanos > 0) {
+                return false;
+            }
+            BusyWait.onSpinWait();
+        }
+
+        consumer = Thread.currentThread();
+        consumerWaiting = true;
+        try {
+            // Check again after announcing the wait, the producers only unpark a waiting consumer
+            while (published.get(idx) != sequence) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (!timed) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, remainingNanos);
+            }
+            return true;
+        } finally {
+            consumerWaiting = false;
+        }
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence & mask);
+    }
+
+    private static int alignToPowerOfTwo(int n) {
+        return (int) Math.pow(2, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    Journal.QueueEntry poll() {
+        long next = consumeSequence + 1;
+        if (published.get(index(next)) != next) {
+            return null;
+        }
+        consumeSequence = next;
+        return slots[index(next)];
+    }
+
+    @Override
+    public Journal.QueueEntry take() throws InterruptedException {
+        waitForPublish(consumeSequence + 1, false, 0L);
+        return poll();
+    }
+
+    @Override
+    public Journal.QueueEntry poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (waitForPublish(consumeSequence + 1, true, System.nanoTime() + unit.toNanos(timeout))) {
+            return poll();
+        }
+        return null;
+    }
+
+    @Override
+    public int drainTo(Collection<? super Journal.QueueEntry> c) {
+        int count = 0;
+        Journal.QueueEntry qe;
+        while ((qe = poll()) != null) {
+            c.add(qe);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, claimSequence.get() - consumeSequence);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Picks the journal each ledger is written to.
+ *
+ * <p>By default a ledger is always written to the journal picked by hashing its id. When load aware,
+ * a ledger starts from the same journal, and sticks to it unless its journal gets much more loaded
+ * than the least loaded one, in which case it moves to the least loaded journal. The pending work of
+ * a journal is estimated from its queue depth and from the latency and batching of its fsyncs.
+ *
+ * <p>Moving a ledger to another journal does not affect checkpointing, since a checkpoint always
+ * covers the log marks of all the journals. Still, a ledger only moves when its ordering constraints
+ * allow it:
+ * <ul>
+ * <li>ledgers written with ack-before-sync never move, since a force ledger request only syncs the
+ * journal it is written to. Their placement is kept until the ledger is deleted, unless they are on
+ * their hashed journal, where they would be placed again anyway;</li>
+ * <li>the master key of a ledger is written again to each journal it moves to, before its entries,
+ * so that every journal can be replayed on its own.</li>
+ * </ul>
+ */
+class JournalSelector {
+
+    // A ledger moves when its journal has this many times more pending work than the least loaded one
+    static final int REBALANCE_LOAD_FACTOR = 2;
+
+    private static final long REFRESH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long STALE_LEDGER_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final long CLEANUP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final List<Journal> journals;
+    private final boolean loadAware;
+    private final Ticker ticker;
+
+    private final ConcurrentLongHashMap<LedgerPlacement> placements;
+
+    // Estimated pending work of each journal, in nanoseconds
+    private volatile long[] loads;
+    private volatile int leastLoaded = 0;
+    private final AtomicLong lastRefreshNanos;
+    private volatile long lastCleanupNanos;
+
+    JournalSelector(List<Journal> journals, boolean loadAware) {
+        this(journals, loadAware, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    JournalSelector(List<Journal> journals, boolean loadAware, Ticker ticker) {
+        this.journals = journals;
+        this.ticker = ticker;
+        this.lastRefreshNanos = new AtomicLong(ticker.read());
+        this.lastCleanupNanos = ticker.read();
+        this.loadAware = loadAware && journals.size() > 1;
+        this.loads = new long[journals.size()];
+        this.placements = this.loadAware
+                ? ConcurrentLongHashMap.<LedgerPlacement>newBuilder()
+                        .expectedItems(16 * 1024)
+                        .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+                        .build()
+                : null;
+    }
+
+    /**
+     * Get the journal of a ledger, for requests that must go to the journal its entries are written to,
+     * like fencing or forcing the ledger.
+     */
+    Journal getJournal(long ledgerId) {
+        if (loadAware) {
+            LedgerPlacement placement = placements.get(ledgerId);
+            if (placement != null) {
+                return journals.get(placement.journalIndex);
+            }
+        }
+        return journals.get(hashJournal(ledgerId));
+    }
+
+    /**
+     * Pick the journal to write an entry to, possibly moving the ledger to a less loaded journal.
+     * Calls for the same ledger must be serialized by the caller.
+     *
+     * @return the index of the journal
+     */
+    int selectForAdd(long ledgerId, boolean ackBeforeSync) {
+        if (!loadAware) {
+            return hashJournal(ledgerId);
+        }
+
+        refreshLoadsIfNeeded();
+        // New ledgers start from the hashed journal, so that they are spread evenly while the load is balanced
+        LedgerPlacement placement = placements.computeIfAbsent(ledgerId, id -> new LedgerPlacement(hashJournal(id)));
+        placement.lastAccessNanos = ticker.read();
+
+        if (!placement.pinned) {
+            long[] currentLoads = loads;
+            int target = leastLoaded;
+            if (target != placement.journalIndex
+                    && currentLoads[placement.journalIndex] > REBALANCE_LOAD_FACTOR * currentLoads[target]) {
+                placement.journalIndex = target;
+            }
+        }
+        if (ackBeforeSync) {
+            placement.pinned = true;
+        }
+        return placement.journalIndex;
+    }
+
+    /**
+     * Record that the master key of a ledger is about to be written to a journal.
+     *
+     * @return true if the master key was not written to that journal yet, for a ledger that was moved
+     */
+    boolean markMasterKeyLogged(long ledgerId, int journalIndex) {
+        if (!loadAware) {
+            return false;
+        }
+        LedgerPlacement placement = placements.get(ledgerId);
+        if (placement == null || placement.masterKeyJournals.get(journalIndex)) {
+            return false;
+        }
+        placement.masterKeyJournals.set(journalIndex);
+        return true;
+    }
+
+    void ledgerDeleted(long ledgerId) {
+        if (loadAware) {
+            placements.remove(ledgerId);
+        }
+    }
+
+    private int hashJournal(long ledgerId) {
+        return MathUtils.signSafeMod(ledgerId, journals.size());
+    }
+
+    private void refreshLoadsIfNeeded() {
+        long now = ticker.read();
+        long lastRefresh = lastRefreshNanos.get();
+        if (now - lastRefresh < REFRESH_INTERVAL_NANOS || !lastRefreshNanos.compareAndSet(lastRefresh, now)) {
+            return;
+        }
+
+        long[] newLoads = new long[journals.size()];
+        int newLeastLoaded = 0;
+        for (int i = 0; i < newLoads.length; i++) {
+            newLoads[i] = journals.get(i).getPendingWorkNanos();
+            if (newLoads[i] < newLoads[newLeastLoaded]) {
+                newLeastLoaded = i;
+            }
+        }
+        loads = newLoads;
+        leastLoaded = newLeastLoaded;
+
+        if (now - lastCleanupNanos > CLEANUP_INTERVAL_NANOS) {
+            lastCleanupNanos = now;
+            // A pinned ledger may have unsynced writes on its journal, which a later force ledger must cover
+            placements.removeIf((ledgerId, placement) -> now - placement.lastAccessNanos > STALE_LEDGER_NANOS
+                    && (!placement.pinned || placement.journalIndex == hashJournal(ledgerId)));
+        }
+    }
+
+    private static class LedgerPlacement {
+        volatile int journalIndex;
+        // Journals the master key of the ledger was written to
+        final BitSet masterKeyJournals = new BitSet();
+        // Whether the ledger must stay on its journal
+        volatile boolean pinned = false;
+        volatile long lastAccessNanos;
+
+        LedgerPlacement(int journalIndex) {
+            this.journalIndex = journalIndex;
+        }
+    }
+}
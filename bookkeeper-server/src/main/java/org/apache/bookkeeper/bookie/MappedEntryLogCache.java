@@ -0,0 +1,183 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+// CHECKSTYLE.OFF: IllegalImport
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.internal.PlatformDependent;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+// CHECKSTYLE.ON: IllegalImport
+
+/**
+ * Memory mappings of sealed entry logs, shared by all the read threads.
+ *
+ * <p>Entries are read straight from the mapped region of their entry log, so the buffers handed out for
+ * them wrap the page cache instead of a copy of it. Only entry logs that will not change anymore can be
+ * mapped, the entry logger only maps the logs that were rotated and flushed.
+ *
+ * <p>The mapped entry logs are kept under a budget of address space, evicting the least recently read
+ * ones. Each mapping is reference counted: the cache holds a reference until the entry log is evicted or
+ * removed, and every buffer handed out over the mapping holds another one. The mapping is unmapped as soon
+ * as the last of them is released, instead of waiting for the JVM to collect it.
+ */
+class MappedEntryLogCache {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedEntryLogCache.class);
+
+    private final long maxMappedBytes;
+    private final Map<Long, MappedLog> mappedLogs = new ConcurrentHashMap<>();
+    private final AtomicLong mappedBytes = new AtomicLong(0);
+
+    MappedEntryLogCache(long maxMappedBytes) {
+        this.maxMappedBytes = maxMappedBytes;
+    }
+
+    /**
+     * Get the mapping of an entry log, if it is mapped.
+     *
+     * @return a retained buffer over the whole entry log, to be released by the caller, or null
+     */
+    ByteBuf get(long logId) {
+        MappedLog log = mappedLogs.get(logId);
+        if (log == null) {
+            return null;
+        }
+        log.lastAccess = MathUtils.nowInNano();
+        return retain(log);
+    }
+
+    /**
+     * Map a sealed entry log, evicting the least recently read entry logs to fit it in the budget.
+     *
+     * @return a retained buffer over the whole entry log, to be released by the caller, or null if it
+     *         cannot be mapped
+     */
+    ByteBuf map(long logId, File file) throws IOException {
+        long size = file.length();
+        if (size <= 0 || size > Integer.MAX_VALUE || size > maxMappedBytes) {
+            return null;
+        }
+
+        synchronized (this) {
+            MappedLog log = mappedLogs.get(logId);
+            if (log != null) {
+                return retain(log);
+            }
+            // The mapping stays valid once the channel is closed
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                log = new MappedLog(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            while (mappedBytes.get() + size > maxMappedBytes && !mappedLogs.isEmpty()) {
+                evictLeastRecentlyRead();
+            }
+            mappedLogs.put(logId, log);
+            mappedBytes.addAndGet(size);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Mapped entry log {} of {} bytes, {} bytes mapped", logId, size, mappedBytes.get());
+            }
+            log.lastAccess = MathUtils.nowInNano();
+            return retain(log);
+        }
+    }
+
+    private static ByteBuf retain(MappedLog log) {
+        try {
+            return log.retain();
+        } catch (IllegalReferenceCountException e) {
+            // Evicted and unmapped since it was looked up
+            return null;
+        }
+    }
+
+    private void evictLeastRecentlyRead() {
+        Map.Entry<Long, MappedLog> oldest = null;
+        for (Map.Entry<Long, MappedLog> e : mappedLogs.entrySet()) {
+            if (oldest == null || e.getValue().lastAccess - oldest.getValue().lastAccess < 0) {
+                oldest = e;
+            }
+        }
+        if (oldest != null) {
+            remove(oldest.getKey());
+        }
+    }
+
+    /**
+     * Drop the mapping of an entry log, when it is removed. It is unmapped once the buffers over it are
+     * released.
+     */
+    synchronized void remove(long logId) {
+        MappedLog log = mappedLogs.remove(logId);
+        if (log != null) {
+            mappedBytes.addAndGet(-log.capacity());
+            log.release();
+        }
+    }
+
+    synchronized void clear() {
+        for (MappedLog log : mappedLogs.values()) {
+            log.release();
+        }
+        mappedLogs.clear();
+        mappedBytes.set(0);
+    }
+
+    long getMappedBytes() {
+        return mappedBytes.get();
+    }
+
+    /**
+     * A read-only buffer over the mapping of an entry log, which unmaps it when it is deallocated.
+     */
+    private static class MappedLog extends CompositeByteBuf {
+        private final MappedByteBuffer mapping;
+        volatile long lastAccess;
+
+        MappedLog(MappedByteBuffer mapping) {
+            super(UnpooledByteBufAllocator.DEFAULT, true, 1, Unpooled.wrappedBuffer(mapping));
+            this.mapping = mapping;
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+
+        @Override
+        protected void deallocate() {
+            super.deallocate();
+            PlatformDependent.freeDirectBuffer(mapping);
+        }
+    }
+}
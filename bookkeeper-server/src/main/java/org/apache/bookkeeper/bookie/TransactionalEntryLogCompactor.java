@@ -25,7 +25,9 @@ import io.netty.buffer.ByteBuf;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLocationScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -52,6 +54,11 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
     // flushed compaction log file suffix
     public static final String COMPACTED_SUFFIX = ".compacted";
 
+    // Max length of the runs of live entries copied at once, when copying entries without reading them
+    static final int MAX_COPY_RUN_BYTES = 4 * 1024 * 1024;
+
+    private final boolean zeroCopyCompaction;
+
     public TransactionalEntryLogCompactor(
             ServerConfiguration conf,
             EntryLogger entryLogger,
@@ -60,6 +67,7 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
         super(conf, logRemover);
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
+        this.zeroCopyCompaction = conf.isZeroCopyCompactionEnabled();
     }
 
     /**
@@ -142,6 +150,8 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
     /**
      * Assume we're compacting entry log 1 to entry log 3.
      * The first phase is to scan entries in 1.log and copy them to compaction log file "3.log.compacting".
+     * When the compaction log supports it, only the headers of the entries are read, and the runs of
+     * contiguous live entries are copied without reading them.
      * We'll try to allocate a new compaction log before scanning to make sure we have a log file to write.
      * If after scanning, there's no data written, it means there's no valid entries to be compacted,
      * so we can remove 1.log directly, clear the offsets and end the compaction.
@@ -161,6 +171,14 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
 
         @Override
         void start() throws IOException {
+            Optional<CompactionEntryLog.EntryRangeCopier> rangeCopier = zeroCopyCompaction
+                    ? compactionLog.entryRangeCopier() : Optional.empty();
+            if (rangeCopier.isPresent()) {
+                EntryRunCopier copier = new EntryRunCopier(metadata, rangeCopier.get());
+                rangeCopier.get().scanSrcLocations(copier);
+                copier.copyRun();
+                return;
+            }
             // scan entry log into compaction log and offset list
             entryLogger.scanEntryLog(metadata.getEntryLogId(), new EntryLogScanner() {
                 @Override
@@ -212,6 +230,73 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
         }
     }
 
+    /**
+     * Gathers the contiguous live entries of the entry log being compacted, and copies them to the
+     * compaction log without reading them, one run at a time.
+     */
+    class EntryRunCopier implements EntryLocationScanner {
+        private final EntryLogMetadata metadata;
+        private final CompactionEntryLog.EntryRangeCopier rangeCopier;
+
+        private final List<EntryLocation> runEntries = new ArrayList<>();
+        private EntryLogMetadata runLedgers;
+        private long runStart = -1;
+        private long runEnd = -1;
+
+        EntryRunCopier(EntryLogMetadata metadata, CompactionEntryLog.EntryRangeCopier rangeCopier) {
+            this.metadata = metadata;
+            this.rangeCopier = rangeCopier;
+            this.runLedgers = new EntryLogMetadata(metadata.getEntryLogId());
+        }
+
+        @Override
+        public boolean accept(long ledgerId) {
+            return metadata.containsLedger(ledgerId);
+        }
+
+        @Override
+        public void process(long ledgerId, long entryId, long offset, int entrySize) throws IOException {
+            throttler.acquire(entrySize);
+            if (entryId < -1) {
+                LOG.warn("Scanning ledgerId {}, but found invalid entryId {} at offset {}",
+                        ledgerId, entryId, offset);
+                throw new IOException("Invalid entry found @ offset " + offset);
+            }
+
+            long length = entrySize + 4;
+            if (runStart >= 0 && (offset != runEnd || runEnd - runStart + length > MAX_COPY_RUN_BYTES)) {
+                copyRun();
+            }
+            if (runStart < 0) {
+                runStart = offset;
+            }
+            runEnd = offset + length;
+            runLedgers.addLedgerSize(ledgerId, length);
+            // Keep the offset of the entry in the run until it is copied
+            runEntries.add(new EntryLocation(ledgerId, entryId, offset - runStart));
+        }
+
+        void copyRun() throws IOException {
+            if (runEntries.isEmpty()) {
+                return;
+            }
+            long location = rangeCopier.copyEntries(runStart, runEnd - runStart, runLedgers);
+            synchronized (TransactionalEntryLogCompactor.this) {
+                for (EntryLocation entry : runEntries) {
+                    offsets.add(new EntryLocation(entry.ledger, entry.entry, location + entry.location));
+                }
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Compact copy entries : {} entries, {} bytes at offset {} to location {}",
+                        runEntries.size(), runEnd - runStart, runStart, location);
+            }
+            runEntries.clear();
+            runLedgers = new EntryLogMetadata(metadata.getEntryLogId());
+            runStart = -1;
+            runEnd = -1;
+        }
+    }
+
     /**
      * Assume we're compacting log 1 to log 3.
      * This phase is to flush the compaction log.
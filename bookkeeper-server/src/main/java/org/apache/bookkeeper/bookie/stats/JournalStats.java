@@ -24,8 +24,10 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CREATION_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FLUSH_GROUP_WAIT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FLUSH_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_LEDGER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_BATCHING_RATIO;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_BATCH_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_BATCH_ENTRIES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_ENQUEUE;
@@ -171,9 +173,25 @@ public class JournalStats {
             help = "The actual amount of memory in bytes currently used by the bookie journal"
     )
     private final Gauge<Long> journalMemoryUsedStats;
+    @StatsDoc(
+            name = JOURNAL_FLUSH_GROUP_WAIT,
+            help = "The time in microseconds the journal waits to group entries before flushing them"
+    )
+    private final Gauge<Long> journalFlushGroupWaitStats;
+    @StatsDoc(
+            name = JOURNAL_FORCE_WRITE_BATCHING_RATIO,
+            help = "The average number of entries made durable by a single journal fsync"
+    )
+    private final Gauge<Long> forceWriteBatchingRatioStats;
 
     public JournalStats(StatsLogger statsLogger, final long maxJournalMemoryBytes,
                         Supplier<Long> currentJournalMemoryBytes) {
+        this(statsLogger, maxJournalMemoryBytes, currentJournalMemoryBytes, () -> -1L, () -> -1L);
+    }
+
+    public JournalStats(StatsLogger statsLogger, final long maxJournalMemoryBytes,
+                        Supplier<Long> currentJournalMemoryBytes, Supplier<Long> flushGroupWaitMicros,
+                        Supplier<Long> forceWriteBatchingRatio) {
         journalAddEntryStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_ENTRY);
         journalForceLedgerStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FORCE_LEDGER);
         journalSyncStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_SYNC);
@@ -220,6 +238,32 @@ public class JournalStats {
             }
         };
         statsLogger.registerGauge(JOURNAL_MEMORY_USED, journalMemoryUsedStats);
+
+        journalFlushGroupWaitStats = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return -1L;
+            }
+
+            @Override
+            public Long getSample() {
+                return flushGroupWaitMicros.get();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_FLUSH_GROUP_WAIT, journalFlushGroupWaitStats);
+
+        forceWriteBatchingRatioStats = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return -1L;
+            }
+
+            @Override
+            public Long getSample() {
+                return forceWriteBatchingRatio.get();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_FORCE_WRITE_BATCHING_RATIO, forceWriteBatchingRatioStats);
     }
 
 }
@@ -22,6 +22,8 @@ package org.apache.bookkeeper.bookie.storage;
 
 import io.netty.buffer.ByteBuf;
 import java.io.IOException;
+import java.util.Optional;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
 
 /**
  * An entrylog to received compacted entries.
@@ -48,6 +50,16 @@ public interface CompactionEntryLog {
      */
     void scan(EntryLogScanner scanner) throws IOException;
 
+    /**
+     * Get the copier of the entries of the entrylog being compacted to this log, which copies them without
+     * reading them.
+     *
+     * @return the copier, or empty if the entries can only be added one by one with {@link #addEntry}
+     */
+    default Optional<EntryRangeCopier> entryRangeCopier() {
+        return Optional.empty();
+    }
+
     /**
      * Flush any unwritten entries to physical storage.
      */
@@ -87,4 +99,26 @@ public interface CompactionEntryLog {
      * Get the log ID of the entrylog which is being compacted.
      */
     long getSrcLogId();
+
+    /**
+     * Copies contiguous entries of the entrylog being compacted to a compaction log.
+     */
+    interface EntryRangeCopier {
+        /**
+         * Scan the locations of the entries of the entrylog being compacted, without reading their payload.
+         */
+        void scanSrcLocations(EntryLocationScanner scanner) throws IOException;
+
+        /**
+         * Copy contiguous entries of the entrylog being compacted to the compaction log, without reading them.
+         *
+         * @param srcOffset the offset of the first entry in the entrylog being compacted, as given by
+         *                  {@link #scanSrcLocations}
+         * @param length the length of the entries, including the sizes written before each of them
+         * @param entries the ledgers of the entries, with their sizes
+         * @return the location of the first entry, like {@link CompactionEntryLog#addEntry}, the other entries
+         *         keeping their offsets relative to it
+         */
+        long copyEntries(long srcOffset, long length, EntryLogMetadata entries) throws IOException;
+    }
 }
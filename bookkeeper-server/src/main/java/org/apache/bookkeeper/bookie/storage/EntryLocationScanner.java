@@ -0,0 +1,54 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage;
+
+import java.io.IOException;
+
+/**
+ * Scanner of the locations of the entries of an entry log, which only reads the headers of the entries
+ * and not their payload.
+ */
+public interface EntryLocationScanner {
+    /**
+     * Tests whether or not the entries belongs to the specified ledger
+     * should be processed.
+     *
+     * @param ledgerId
+     *          Ledger ID.
+     * @return true if and only the entries of the ledger should be scanned.
+     */
+    boolean accept(long ledgerId);
+
+    /**
+     * Process the location of an entry.
+     *
+     * @param ledgerId
+     *          Ledger ID.
+     * @param entryId
+     *          Entry ID.
+     * @param offset
+     *          File offset of this entry, where its size is written.
+     * @param entrySize
+     *          Size of the entry, not counting the size written before it.
+     * @throws IOException
+     */
+    void process(long ledgerId, long entryId, long offset, int entrySize) throws IOException;
+}
@@ -0,0 +1,176 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checkpoint of the ledgers map of an entry log that is still being written.
+ *
+ * <p>The ledgers map of an entry log is only appended to it when the log is rolled, so the map of
+ * the entry log that was being written when the bookie stopped would otherwise have to be rebuilt
+ * by scanning the whole log. The entry loggers checkpoint the map of their current logs next to
+ * them, in a {@code <logId>.lmap} file, every time they flush them. The checkpoint records the
+ * position in the log up to which it covers the entries, so the metadata of the log can be
+ * recovered from the checkpoint and a scan of the entries written after it.
+ *
+ * <p>The checkpoint may count more entries than the ones written up to its position, since the
+ * map is copied while entries are being added, but never less. Overestimating the live bytes of a
+ * log only delays its compaction, while missing a ledger would let it be garbage collected.
+ */
+public class EntryLogMetadataCheckpoint {
+    private static final Logger LOG = LoggerFactory.getLogger(EntryLogMetadataCheckpoint.class);
+
+    public static final String CHECKPOINT_FILE_SUFFIX = ".lmap";
+
+    // "LMAP"
+    private static final int MAGIC = 0x4c4d4150;
+    private static final int VERSION = 1;
+    // magic, version, logId, position, ledgers count
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int LEDGER_SIZE = 8 + 8;
+
+    private final EntryLogMetadata metadata;
+    private final long position;
+
+    private EntryLogMetadataCheckpoint(EntryLogMetadata metadata, long position) {
+        this.metadata = metadata;
+        this.position = position;
+    }
+
+    /**
+     * Take a checkpoint of the ledgers map of an entry log.
+     *
+     * @param metadata the metadata the entry log updates as entries are added
+     * @param position the position in the entry log after the last entry added to the metadata,
+     *                 read before this call
+     */
+    public static EntryLogMetadataCheckpoint of(EntryLogMetadata metadata, long position) {
+        EntryLogMetadata copy = new EntryLogMetadata(metadata.getEntryLogId());
+        metadata.getLedgersMap().forEach(copy::addLedgerSize);
+        return new EntryLogMetadataCheckpoint(copy, position);
+    }
+
+    public EntryLogMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * @return the position in the entry log up to which the checkpoint covers its entries
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public static File checkpointFile(File dir, long logId) {
+        return new File(dir, Long.toHexString(logId) + CHECKPOINT_FILE_SUFFIX);
+    }
+
+    /**
+     * Write the checkpoint, replacing the previous one atomically.
+     *
+     * <p>The checkpoint is not synced, a checkpoint lost in a crash only makes the recovery scan more
+     * of the entry log.
+     */
+    public void write(File file) throws IOException {
+        int numLedgers = (int) metadata.getLedgersMap().size();
+        ByteBuf buf = Unpooled.buffer(HEADER_SIZE + LEDGER_SIZE * numLedgers + 8);
+        buf.writeInt(MAGIC);
+        buf.writeInt(VERSION);
+        buf.writeLong(metadata.getEntryLogId());
+        buf.writeLong(position);
+        buf.writeInt(numLedgers);
+        metadata.getLedgersMap().forEach((ledgerId, size) -> {
+            buf.writeLong(ledgerId);
+            buf.writeLong(size);
+        });
+        buf.writeLong(checksum(buf, buf.writerIndex()));
+
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(tmpFile.toPath(), ByteBufUtil.getBytes(buf));
+        Files.move(tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the checkpoint of an entry log.
+     *
+     * @throws IOException if there is no checkpoint, or it is not valid
+     */
+    public static EntryLogMetadataCheckpoint read(File file, long logId) throws IOException {
+        if (!file.exists()) {
+            throw new IOException("No ledgers map checkpoint found for entryLogId " + logId);
+        }
+        ByteBuf buf = Unpooled.wrappedBuffer(Files.readAllBytes(file.toPath()));
+        try {
+            if (buf.readableBytes() < HEADER_SIZE + 8
+                    || buf.getLong(buf.writerIndex() - 8) != checksum(buf, buf.writerIndex() - 8)) {
+                throw new IOException("Corrupted ledgers map checkpoint for entryLogId " + logId);
+            }
+            int magic = buf.readInt();
+            int version = buf.readInt();
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("Unknown ledgers map checkpoint format " + version + " for entryLogId " + logId);
+            }
+            long checkpointLogId = buf.readLong();
+            if (checkpointLogId != logId) {
+                throw new IOException("Ledgers map checkpoint of entryLogId " + checkpointLogId
+                        + " found for entryLogId " + logId);
+            }
+            long position = buf.readLong();
+            int numLedgers = buf.readInt();
+            EntryLogMetadata metadata = new EntryLogMetadata(logId);
+            for (int i = 0; i < numLedgers; i++) {
+                metadata.addLedgerSize(buf.readLong(), buf.readLong());
+            }
+            if (buf.readableBytes() != 8) {
+                throw new IOException("Invalid size of ledgers map checkpoint for entryLogId " + logId);
+            }
+            return new EntryLogMetadataCheckpoint(metadata, position);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static void delete(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LOG.warn("Failed to delete ledgers map checkpoint {}", file, e);
+        }
+    }
+
+    private static long checksum(ByteBuf buf, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), buf.arrayOffset(), length);
+        return crc.getValue();
+    }
+}
@@ -165,9 +165,10 @@ class Buffer {
     /**
      * Read a bytebuf of size from the buffer at the given offset.
      * If there are not enough bytes in the buffer to satify the read, some of the bytes are read
-     * into the byte buffer and the number of bytes read is returned.
+     * into the byte buffer and the number of bytes read is returned. The position of the buffer is not moved.
      */
     int readByteBuf(ByteBuf buffer, int offset, int size) throws IOException {
+        int originalPosition = byteBuffer.position();
         int originalLimit = byteBuffer.limit();
         byteBuffer.position(offset);
         int bytesToRead = Math.min(size, byteBuffer.capacity() - offset);
@@ -181,6 +182,7 @@ class Buffer {
                                   .kv("bufferSize", bufferSize).toString(), e);
         } finally {
             byteBuffer.limit(originalLimit);
+            byteBuffer.position(originalPosition);
         }
         return bytesToRead;
     }
@@ -231,6 +233,28 @@ class Buffer {
         return nextAlignment;
     }
 
+    /**
+     * Fill the buffer with zeros up to the next alignment position, without moving the position.
+     * @return the position of the next alignment.
+     */
+    int zeroToAlignment() {
+        int bufferPos = byteBuffer.position();
+        int nextAlignment = nextAlignment(bufferPos);
+        for (int i = bufferPos; i < nextAlignment; i++) {
+            byteBuffer.put(i, (byte) 0);
+        }
+        return nextAlignment;
+    }
+
+    /**
+     * Move the bytes written after <i>offset</i> to the start of the buffer, discarding the ones before it.
+     */
+    void discardBefore(int offset) {
+        byteBuffer.limit(byteBuffer.position());
+        byteBuffer.position(offset);
+        byteBuffer.compact();
+    }
+
     /**
      * Clear the bytes written. This doesn't actually destroy the data, but moves the position back to the start of
      * the buffer.
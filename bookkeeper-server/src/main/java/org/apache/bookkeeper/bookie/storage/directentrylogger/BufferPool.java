@@ -29,8 +29,12 @@ import org.apache.bookkeeper.common.util.nativeio.NativeIO;
  */
 public class BufferPool implements AutoCloseable {
     private final ArrayBlockingQueue<Buffer> pool;
+    private final NativeIO nativeIO;
+    private final int bufferSize;
 
     BufferPool(NativeIO nativeIO, int bufferSize, int maxPoolSize) throws IOException {
+        this.nativeIO = nativeIO;
+        this.bufferSize = bufferSize;
         pool = new ArrayBlockingQueue<>(maxPoolSize);
         for (int i = 0; i < maxPoolSize; i++) {
             pool.add(new Buffer(nativeIO, bufferSize));
@@ -53,6 +57,14 @@ public class BufferPool implements AutoCloseable {
         }
     }
 
+    /**
+     * Replace a buffer whose memory may still be in use by the kernel, after a failed asynchronous
+     * write. The memory of the buffer is not freed, so that it cannot be reused.
+     */
+    void discard(Buffer buffer) throws IOException {
+        release(new Buffer(nativeIO, bufferSize));
+    }
+
     @Override
     public void close() {
         while (true) {
@@ -0,0 +1,226 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkState;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import org.apache.bookkeeper.bookie.BufferedChannel;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * A {@link BufferedChannel} which writes to the file with direct I/O, bypassing the page cache.
+ * <p/>
+ * Direct I/O requires writes aligned to {@link Buffer#ALIGNMENT}, while the journal can be flushed at
+ * any position. The channel thus always writes whole blocks, padded with zeros, and keeps the last
+ * partially written block in memory, so that it can be written again together with the data that
+ * follows it on the next flush. The zero padding reads as the end of the journal, like the zeros
+ * of the preallocated space.
+ * <p/>
+ * The file channel passed to the constructor is used for the reads, of the partially written block the
+ * channel starts from and of the data already written, and is closed together with the channel.
+ */
+public class DirectBufferedChannel extends BufferedChannel {
+    private final NativeIO nativeIO;
+    private final String filename;
+    private final int fd;
+    private Buffer buffer;
+    // File offset of the first byte in the buffer, always aligned
+    private long bufferStartPosition;
+
+    public DirectBufferedChannel(NativeIO nativeIO, FileChannel fc, String filename, int capacity)
+            throws IOException {
+        super(UnpooledByteBufAllocator.DEFAULT, fc, 0, 0, 0L);
+        this.nativeIO = nativeIO;
+        this.filename = filename;
+
+        try {
+            fd = nativeIO.open(filename, NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+            checkState(fd >= 0, "Open should have thrown exception, fd is invalid : %d", fd);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage()).kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString(), ne);
+        }
+
+        // Leave room for the partially written block kept at the start of the buffer
+        buffer = new Buffer(nativeIO, Buffer.nextAlignment(capacity) + Buffer.ALIGNMENT);
+
+        bufferStartPosition = position - (position % Buffer.ALIGNMENT);
+        int tailLength = (int) (position - bufferStartPosition);
+        if (tailLength > 0) {
+            ByteBuffer tail = ByteBuffer.allocate(tailLength);
+            while (tail.hasRemaining()) {
+                if (fc.read(tail, bufferStartPosition + tail.position()) < 0) {
+                    throw new IOException(exMsg("Short read of the last block")
+                                          .kv("file", filename)
+                                          .kv("position", position).toString());
+                }
+            }
+            tail.flip();
+            buffer.writeByteBuf(Unpooled.wrappedBuffer(tail));
+        }
+    }
+
+    @Override
+    public void write(ByteBuf src) throws IOException {
+        synchronized (this) {
+            int len = src.readableBytes();
+            int copied = 0;
+            while (copied < len) {
+                int bytesToCopy = Math.min(len - copied, buffer.size() - buffer.position());
+                buffer.writeByteBuf(src.slice(src.readerIndex() + copied, bytesToCopy));
+                copied += bytesToCopy;
+
+                if (buffer.position() == buffer.size()) {
+                    flush();
+                }
+            }
+            position += copied;
+        }
+    }
+
+    /**
+     * Write the buffered data to the file, padded with zeros to the next alignment, and advance the
+     * write position.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        int length = buffer.position();
+        if (bufferStartPosition + length == writeBufferStartPosition.get()) {
+            return;
+        }
+
+        int bytesToWrite = buffer.zeroToAlignment();
+        try {
+            int ret = nativeIO.pwrite(fd, buffer.pointer(), bytesToWrite, bufferStartPosition);
+            if (ret != bytesToWrite) {
+                throw new IOException(exMsg("Incomplete write")
+                                      .kv("filename", filename)
+                                      .kv("offset", bufferStartPosition)
+                                      .kv("writeSize", bytesToWrite)
+                                      .kv("bytesWritten", ret).toString());
+            }
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg("Write error")
+                                  .kv("filename", filename)
+                                  .kv("offset", bufferStartPosition)
+                                  .kv("writeSize", bytesToWrite)
+                                  .kv("errno", ne.getErrno()).toString());
+        }
+        writeBufferStartPosition.set(bufferStartPosition + length);
+
+        // Only keep the last block, if it is not complete
+        int lastBlockStart = length - (length % Buffer.ALIGNMENT);
+        buffer.discardBefore(lastBlockStart);
+        bufferStartPosition += lastBlockStart;
+    }
+
+    @Override
+    public long forceWrite(boolean forceMetadata) throws IOException {
+        long positionForceWrite = writeBufferStartPosition.get();
+        try {
+            int ret = nativeIO.fsync(fd);
+            checkState(ret == 0, "Fsync should throw exception on non-zero return (%d)", ret);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage())
+                                  .kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString());
+        }
+        return positionForceWrite;
+    }
+
+    /**
+     * Preallocate space in the file, without writing to it.
+     *
+     * @return false if fallocate is not supported, in which case the caller should fall back to writing zeros
+     */
+    public boolean preallocate(long offset, long length) {
+        try {
+            return nativeIO.fallocate(fd, 0, offset, length) == 0;
+        } catch (NativeIOException ne) {
+            return false;
+        }
+    }
+
+    /**
+     * Read the data written to the channel, from the file up to the last flushed block, and from the
+     * buffer after it.
+     */
+    @Override
+    public synchronized int read(ByteBuf dest, long pos, int length) throws IOException {
+        if (buffer == null) {
+            throw new ClosedChannelException();
+        }
+        long prevPos = pos;
+        while (length > 0 && dest.isWritable()) {
+            int bytesToCopy;
+            if (pos >= bufferStartPosition) {
+                int positionInBuffer = (int) (pos - bufferStartPosition);
+                bytesToCopy = Math.min(Math.min(buffer.position() - positionInBuffer, length),
+                                       dest.writableBytes());
+                if (bytesToCopy <= 0) {
+                    throw new IOException("Read past EOF");
+                }
+                buffer.readByteBuf(dest, positionInBuffer, bytesToCopy);
+            } else {
+                int bytesToRead = (int) Math.min(Math.min(bufferStartPosition - pos, length), dest.writableBytes());
+                bytesToCopy = fileChannel.read(dest.nioBuffer(dest.writerIndex(), bytesToRead), pos);
+                if (bytesToCopy <= 0) {
+                    throw new IOException("Reading from filechannel returned a non-positive value. Short read.");
+                }
+                dest.writerIndex(dest.writerIndex() + bytesToCopy);
+            }
+            pos += bytesToCopy;
+            length -= bytesToCopy;
+        }
+        return (int) (pos - prevPos);
+    }
+
+    @Override
+    public synchronized int getNumOfBytesInWriteBuffer() {
+        return (int) (position - writeBufferStartPosition.get());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        super.close();
+        buffer.free();
+        buffer = null;
+        try {
+            nativeIO.close(fd);
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg(ne.getMessage())
+                                  .kv("file", filename)
+                                  .kv("errno", ne.getErrno()).toString());
+        }
+    }
+}
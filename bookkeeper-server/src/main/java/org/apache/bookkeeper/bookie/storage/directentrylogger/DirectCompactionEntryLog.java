@@ -56,11 +56,12 @@ public abstract class DirectCompactionEntryLog implements CompactionEntryLog {
                                      ExecutorService writeExecutor,
                                      BufferPool writeBuffers,
                                      NativeIO nativeIO,
+                                     boolean ioUringEnabled,
                                      ByteBufAllocator allocator,
                                      Slogger slog) throws IOException {
         return new WritingDirectCompactionEntryLog(
                 srcLogId, dstLogId, ledgerDir, maxFileSize,
-                writeExecutor, writeBuffers, nativeIO, allocator, slog);
+                writeExecutor, writeBuffers, nativeIO, ioUringEnabled, allocator, slog);
     }
 
     static CompactionEntryLog recoverLog(int srcLogId,
@@ -222,13 +223,14 @@ public abstract class DirectCompactionEntryLog implements CompactionEntryLog {
                                         ExecutorService writeExecutor,
                                         BufferPool writeBuffers,
                                         NativeIO nativeIO,
+                                        boolean ioUringEnabled,
                                         ByteBufAllocator allocator,
                                         Slogger slog) throws IOException {
             super(srcLogId, dstLogId, ledgerDir, slog);
 
             this.writer = new WriterWithMetadata(
                     new DirectWriter(dstLogId, compactingFile.toString(), maxFileSize,
-                                     writeExecutor, writeBuffers, nativeIO, slog),
+                                     writeExecutor, writeBuffers, nativeIO, ioUringEnabled, slog),
                     new EntryLogMetadata(dstLogId),
                     allocator);
 
@@ -54,6 +54,7 @@ import org.apache.bookkeeper.bookie.EntryLogMetadata;
 import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
 import org.apache.bookkeeper.bookie.storage.EntryLogIds;
 import org.apache.bookkeeper.bookie.storage.EntryLogIdsImpl;
+import org.apache.bookkeeper.bookie.storage.EntryLogMetadataCheckpoint;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.common.util.nativeio.NativeIO;
@@ -81,6 +82,7 @@ public class DirectEntryLogger implements EntryLogger {
 
     private List<Future<?>> pendingFlushes;
     private final NativeIO nativeIO;
+    private final boolean ioUringEnabled;
     private final List<Cache<?, ?>> allCaches = new CopyOnWriteArrayList<>();
     private final ThreadLocal<Cache<Integer, LogReader>> caches;
 
@@ -101,11 +103,37 @@ public class DirectEntryLogger implements EntryLogger {
                              int maxFdCacheTimeSeconds,
                              Slogger slogParent,
                              StatsLogger stats) throws IOException {
+        this(ledgerDir, ids, nativeIO, allocator, writeExecutor, flushExecutor, maxFileSize, maxSaneEntrySize,
+             totalWriteBufferSize, totalReadBufferSize, readBufferSize, numReadThreads, maxFdCacheTimeSeconds,
+             false, slogParent, stats);
+    }
+
+    /**
+     * @param ioUringEnabled submit the writes and the syncs of the entry logs through io_uring, when the
+     *                       kernel supports it
+     */
+    public DirectEntryLogger(File ledgerDir,
+                             EntryLogIds ids,
+                             NativeIO nativeIO,
+                             ByteBufAllocator allocator,
+                             ExecutorService writeExecutor,
+                             ExecutorService flushExecutor,
+                             long maxFileSize,
+                             int maxSaneEntrySize,
+                             long totalWriteBufferSize,
+                             long totalReadBufferSize,
+                             int readBufferSize,
+                             int numReadThreads,
+                             int maxFdCacheTimeSeconds,
+                             boolean ioUringEnabled,
+                             Slogger slogParent,
+                             StatsLogger stats) throws IOException {
         this.ledgerDir = ledgerDir;
         this.flushExecutor = flushExecutor;
         this.writeExecutor = writeExecutor;
         this.pendingFlushes = new ArrayList<>();
         this.nativeIO = nativeIO;
+        this.ioUringEnabled = ioUringEnabled;
         this.unflushedLogs = ConcurrentHashMap.newKeySet();
 
         this.maxFileSize = maxFileSize;
@@ -150,6 +178,7 @@ public class DirectEntryLogger implements EntryLogger {
             .kv("perThreadBufferSize", perThreadBufferSize)
             .kv("maxCachedReadersPerThread", maxCachedReadersPerThread)
             .kv("maxCachedReaders", maxCachedReaders)
+            .kv("ioUringEnabled", ioUringEnabled)
             .info(Events.ENTRYLOGGER_CREATED);
 
         this.caches = ThreadLocal.withInitial(() -> {
@@ -189,7 +218,8 @@ public class DirectEntryLogger implements EntryLogger {
                 int newId = ids.nextId();
                 curWriter = new WriterWithMetadata(newDirectWriter(newId),
                                                    new EntryLogMetadata(newId),
-                                                   allocator);
+                                                   allocator,
+                                                   EntryLogMetadataCheckpoint.checkpointFile(ledgerDir, newId));
                 slog.kv("newLogId", newId).info(Events.LOG_ROLL);
             }
 
@@ -377,6 +407,7 @@ public class DirectEntryLogger implements EntryLogger {
         checkArgument(entryLogId < Integer.MAX_VALUE, "Entry log id must be an int [%d]", entryLogId);
         File file = logFile(ledgerDir, (int) entryLogId);
         boolean result = file.delete();
+        EntryLogMetadataCheckpoint.delete(EntryLogMetadataCheckpoint.checkpointFile(ledgerDir, entryLogId));
         slog.kv("file", file).kv("logId", entryLogId).kv("result", result).info(Events.LOG_DELETED);
         return result;
     }
@@ -403,10 +434,41 @@ public class DirectEntryLogger implements EntryLogger {
         } catch (IOException e) {
             slog.kv("entryLogId", entryLogId).kv("reason", e.getMessage())
                 .info(Events.READ_METADATA_FALLBACK);
+        }
+        try {
+            return readEntryLogCheckpoint(entryLogId, throttler);
+        } catch (IOException e) {
+            slog.kv("entryLogId", entryLogId).kv("reason", e.getMessage())
+                .info(Events.READ_METADATA_CHECKPOINT_FALLBACK);
             return scanEntryLogMetadata(entryLogId, throttler);
         }
     }
 
+    /**
+     * Recover the metadata of a log that was not finalized from the checkpoint of its ledgers map,
+     * scanning only the entries written after the checkpoint.
+     */
+    @VisibleForTesting
+    EntryLogMetadata readEntryLogCheckpoint(long logId, AbstractLogCompactor.Throttler throttler)
+            throws IOException {
+        checkArgument(logId < Integer.MAX_VALUE, "Entry log id must be an int [%d]", logId);
+
+        EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.read(
+                EntryLogMetadataCheckpoint.checkpointFile(ledgerDir, logId), logId);
+        try (LogReader reader = newDirectReader((int) logId)) {
+            if (checkpoint.getPosition() < Header.LOGFILE_LEGACY_HEADER_SIZE
+                    || checkpoint.getPosition() > reader.maxOffset()) {
+                throw new IOException(exMsg("Ledgers map checkpoint out of log")
+                                      .kv("logId", logId)
+                                      .kv("position", checkpoint.getPosition())
+                                      .kv("maxOffset", reader.maxOffset()).toString());
+            }
+            EntryLogMetadata meta = checkpoint.getMetadata();
+            LogReaderScan.scan(reader, (int) checkpoint.getPosition(), newMetadataScanner(meta, throttler));
+            return meta;
+        }
+    }
+
     @VisibleForTesting
     EntryLogMetadata readEntryLogIndex(long logId) throws IOException {
         checkArgument(logId < Integer.MAX_VALUE, "Entry log id must be an int [%d]", logId);
@@ -421,7 +483,13 @@ public class DirectEntryLogger implements EntryLogger {
         final EntryLogMetadata meta = new EntryLogMetadata(logId);
 
         // Read through the entry log file and extract the entry log meta
-        scanEntryLog(logId, new EntryLogScanner() {
+        scanEntryLog(logId, newMetadataScanner(meta, throttler));
+        return meta;
+    }
+
+    private static EntryLogScanner newMetadataScanner(EntryLogMetadata meta,
+                                                      AbstractLogCompactor.Throttler throttler) {
+        return new EntryLogScanner() {
             @Override
             public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
                 // add new entry size of a ledger to entry log meta
@@ -435,8 +503,7 @@ public class DirectEntryLogger implements EntryLogger {
             public boolean accept(long ledgerId) {
                 return ledgerId >= 0;
             }
-        });
-        return meta;
+        };
     }
 
     @VisibleForTesting
@@ -449,7 +516,7 @@ public class DirectEntryLogger implements EntryLogger {
     private LogWriter newDirectWriter(int newId) throws IOException {
         unflushedLogs.add(newId);
         LogWriter writer = new DirectWriter(newId, logFilename(ledgerDir, newId), maxFileSize,
-                                            writeExecutor, writeBuffers, nativeIO, slog);
+                                            writeExecutor, writeBuffers, nativeIO, ioUringEnabled, slog);
         ByteBuf buf = allocator.buffer(Buffer.ALIGNMENT);
         try {
             Header.writeEmptyHeader(buf);
@@ -474,7 +541,7 @@ public class DirectEntryLogger implements EntryLogger {
         int dstLogId = ids.nextId();
         return DirectCompactionEntryLog.newLog((int) srcLogId, dstLogId, ledgerDir,
                                                maxFileSize, writeExecutor, writeBuffers,
-                                               nativeIO, allocator, slog);
+                                               nativeIO, ioUringEnabled, allocator, slog);
     }
 
     @Override
@@ -48,6 +48,18 @@ class DirectWriter implements LogWriter {
     Buffer nativeBuffer;
     long offset;
     private static volatile boolean useFallocate = true;
+    private static volatile boolean useIoUring = true;
+
+    static final int IO_URING_ENTRIES = 32;
+    // whether the writes are queued and submitted in batches, through ioUring when it is set up.
+    // The write executor must run the submissions in order, so that a sync comes after the writes
+    final boolean batchWrites;
+    final Object ioUringLock = new Object();
+    // io_uring instance used to submit the writes, 0 when writing with pwrite
+    long ioUring;
+    final Slogger slog;
+    // Buffers waiting to be written through io_uring
+    final List<PendingWrite> pendingWrites = new ArrayList<>();
 
     DirectWriter(int id,
                  String filename,
@@ -55,6 +67,17 @@ class DirectWriter implements LogWriter {
                  ExecutorService writeExecutor,
                  BufferPool bufferPool,
                  NativeIO nativeIO, Slogger slog) throws IOException {
+        this(id, filename, maxFileSize, writeExecutor, bufferPool, nativeIO, false, slog);
+    }
+
+    DirectWriter(int id,
+                 String filename,
+                 long maxFileSize,
+                 ExecutorService writeExecutor,
+                 BufferPool bufferPool,
+                 NativeIO nativeIO,
+                 boolean ioUringEnabled,
+                 Slogger slog) throws IOException {
         checkArgument(maxFileSize > 0, "Max file size (%d) must be positive");
         this.id = id;
         this.filename = filename;
@@ -93,6 +116,10 @@ class DirectWriter implements LogWriter {
             }
         }
 
+        this.slog = slog;
+        this.ioUring = ioUringEnabled ? setupIoUring(slog) : 0;
+        this.batchWrites = ioUring != 0;
+
         this.bufferPool = bufferPool;
         this.nativeBuffer = bufferPool.acquire();
     }
@@ -101,6 +128,33 @@ class DirectWriter implements LogWriter {
         DirectWriter.useFallocate = false;
     }
 
+    private long setupIoUring(Slogger slog) {
+        if (!useIoUring) {
+            return 0;
+        }
+        if (!SystemUtils.IS_OS_LINUX) {
+            disableUseIoUring();
+            slog.warn(Events.IO_URING_NOT_AVAILABLE);
+            return 0;
+        }
+        try {
+            return nativeIO.io_uring_setup(IO_URING_ENTRIES);
+        } catch (NativeIOException ex) {
+            // io_uring is not supported by older kernels and can be disabled. Since this is an
+            // optimization, fall back to pwrite for this and the subsequent writers.
+            disableUseIoUring();
+            slog.kv("message", ex.getMessage())
+                .kv("file", filename)
+                .kv("errno", ex.getErrno())
+                .warn(Events.IO_URING_NOT_AVAILABLE);
+            return 0;
+        }
+    }
+
+    private static void disableUseIoUring() {
+        DirectWriter.useIoUring = false;
+    }
+
     @Override
     public int logId() {
         return id;
@@ -122,13 +176,148 @@ class DirectWriter implements LogWriter {
         Buffer tmpBuffer = bufferPool.acquire();
         tmpBuffer.reset();
         tmpBuffer.writeByteBuf(buf);
-        Future<?> f = writeExecutor.submit(() -> {
-            writeByteBuf(tmpBuffer, bytesToWrite, offset);
-            return null;
+        submitWrite(tmpBuffer, bytesToWrite, offset);
+    }
+
+    private void submitWrite(Buffer buffer, int bytesToWrite, long offsetToWrite) throws IOException {
+        Future<?> f;
+        if (batchWrites) {
+            addPendingWrite(buffer, bytesToWrite, offsetToWrite);
+            // Writes queued while the executor is busy get submitted together by the first task to run
+            f = writeExecutor.submit(() -> {
+                writePendingBuffers(0);
+                return null;
             });
+        } else {
+            f = writeExecutor.submit(() -> {
+                writeByteBuf(buffer, bytesToWrite, offsetToWrite);
+                return null;
+            });
+        }
         addOutstandingWrite(f);
     }
 
+    private void addPendingWrite(Buffer buffer, int bytesToWrite, long offsetToWrite) {
+        synchronized (pendingWrites) {
+            pendingWrites.add(new PendingWrite(buffer, bytesToWrite, offsetToWrite));
+        }
+    }
+
+    /**
+     * Write all the pending buffers in a single io_uring submission, followed by a sync of the file
+     * if <i>syncFlags</i> is not 0.
+     */
+    private void writePendingBuffers(int syncFlags) throws IOException {
+        List<PendingWrite> toWrite;
+        synchronized (pendingWrites) {
+            toWrite = new ArrayList<>(pendingWrites);
+            pendingWrites.clear();
+        }
+        if (toWrite.isEmpty() && syncFlags == 0) {
+            return;
+        }
+
+        int count = toWrite.size();
+        long[] pointers = new long[count];
+        int[] sizes = new int[count];
+        long[] offsets = new long[count];
+        long bytesToWrite = 0;
+        for (int i = 0; i < count; i++) {
+            PendingWrite write = toWrite.get(i);
+            pointers[i] = write.buffer.pointer();
+            sizes[i] = write.size;
+            offsets[i] = write.offset;
+            bytesToWrite += write.size;
+        }
+
+        boolean releaseBuffers = true;
+        try {
+            long ret;
+            synchronized (ioUringLock) {
+                if (ioUring == 0) {
+                    // no ring could be set up again after a failure
+                    ret = writeBuffers(pointers, sizes, offsets, count, syncFlags);
+                } else {
+                    try {
+                        ret = nativeIO.io_uring_write(ioUring, fd, pointers, sizes, offsets, count, syncFlags);
+                    } catch (NativeIOException ne) {
+                        // the kernel may still be writing from the buffers whose completion was not reaped
+                        releaseBuffers = nativeIO.io_uring_inflight(ioUring) == 0;
+                        resetIoUring(ne);
+                        throw ne;
+                    }
+                }
+            }
+            if (ret != bytesToWrite) {
+                throw new IOException(exMsg("Incomplete write")
+                    .kv("filename", filename)
+                    .kv("writes", count)
+                    .kv("writeSize", bytesToWrite)
+                    .kv("bytesWritten", ret)
+                    .toString());
+            }
+        } catch (NativeIOException ne) {
+            throw new IOException(exMsg("Write error")
+                .kv("filename", filename)
+                .kv("writes", count)
+                .kv("writeSize", bytesToWrite)
+                .kv("errno", ne.getErrno())
+                .toString());
+        } finally {
+            for (PendingWrite write : toWrite) {
+                if (releaseBuffers) {
+                    bufferPool.release(write.buffer);
+                } else {
+                    bufferPool.discard(write.buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the ring after a failed submission, which cannot be reused since it may hold stale
+     * submissions or completions, and set up a new one for the next writes.
+     * Must be called while holding the ioUringLock.
+     */
+    private void resetIoUring(NativeIOException cause) {
+        int inflight = nativeIO.io_uring_inflight(ioUring);
+        try {
+            nativeIO.io_uring_close(ioUring);
+        } catch (NativeIOException ne) {
+            cause.addSuppressed(ne);
+        }
+        ioUring = 0;
+        slog.kv("message", cause.getMessage())
+            .kv("file", filename)
+            .kv("errno", cause.getErrno())
+            .kv("inflight", inflight)
+            .warn(Events.IO_URING_RESET);
+        ioUring = setupIoUring(slog);
+    }
+
+    /**
+     * Write the buffers one by one with pwrite, followed by a fsync if <i>syncFlags</i> is not 0.
+     * Like io_uring_write, stop without syncing on a short write.
+     *
+     * @return the total number of bytes written
+     */
+    private long writeBuffers(long[] pointers, int[] sizes, long[] offsets, int count, int syncFlags)
+            throws NativeIOException {
+        long written = 0;
+        for (int i = 0; i < count; i++) {
+            int ret = nativeIO.pwrite(fd, pointers[i], sizes[i], offsets[i]);
+            written += ret;
+            if (ret != sizes[i]) {
+                return written;
+            }
+        }
+        if (syncFlags != 0) {
+            int ret = nativeIO.fsync(fd);
+            checkState(ret == 0, "Fsync should throw exception on non-zero return (%d)", ret);
+        }
+        return written;
+    }
+
     private void writeByteBuf(Buffer buffer, int bytesToWrite, long offsetToWrite) throws IOException{
         try {
             if (bytesToWrite <= 0) {
@@ -204,6 +393,19 @@ class DirectWriter implements LogWriter {
 
     @Override
     public void flush() throws IOException {
+        if (batchWrites) {
+            // Write the last buffer together with the fdatasync. Like the other writes, they are
+            // submitted by the write executor, after the writes queued before them
+            queueBufferToFlush();
+            Future<?> sync = writeExecutor.submit(() -> {
+                writePendingBuffers(NativeIO.IO_URING_FDATASYNC);
+                return null;
+            });
+            waitForOutstandingWrites();
+            waitForFuture(sync);
+            return;
+        }
+
         flushBuffer();
 
         waitForOutstandingWrites();
@@ -226,6 +428,24 @@ class DirectWriter implements LogWriter {
             }
         }
 
+        if (batchWrites) {
+            // The ring can only be released once nobody is writing through it
+            waitForOutstandingWrites();
+            synchronized (ioUringLock) {
+                if (ioUring != 0) {
+                    try {
+                        nativeIO.io_uring_close(ioUring);
+                    } catch (NativeIOException ne) {
+                        throw new IOException(exMsg(ne.getMessage())
+                                              .kv("file", filename)
+                                              .kv("errno", ne.getErrno()).toString());
+                    } finally {
+                        ioUring = 0;
+                    }
+                }
+            }
+        }
+
         try {
             int ret = nativeIO.close(fd);
             checkState(ret == 0, "Close should throw exception on non-zero return (%d)", ret);
@@ -297,11 +517,7 @@ class DirectWriter implements LogWriter {
                 long offsetToWrite = offset;
                 offset += bytesToWrite;
 
-                Future<?> f = writeExecutor.submit(() -> {
-                    writeByteBuf(bufferToFlush, bytesToWrite, offsetToWrite);
-                    return null;
-                });
-                addOutstandingWrite(f);
+                submitWrite(bufferToFlush, bytesToWrite, offsetToWrite);
 
                 // must acquire after triggering the write
                 // otherwise it could try to acquire a buffer without kicking off
@@ -311,8 +527,41 @@ class DirectWriter implements LogWriter {
         }
     }
 
+    /**
+     * Like {@link #flushBuffer()}, but only add the buffer to the pending io_uring writes,
+     * leaving it to the caller to submit them.
+     */
+    private void queueBufferToFlush() throws IOException {
+        synchronized (bufferLock) {
+            if (this.nativeBuffer != null) {
+                int bytesToWrite = this.nativeBuffer.padToAlignment();
+                if (bytesToWrite == 0) {
+                    return;
+                }
+
+                addPendingWrite(this.nativeBuffer, bytesToWrite, offset);
+                this.nativeBuffer = null;
+                offset += bytesToWrite;
+
+                this.nativeBuffer = bufferPool.acquire();
+            }
+        }
+    }
+
     @Override
     public int serializedSize(ByteBuf buf) {
         return buf.readableBytes() + Integer.BYTES;
     }
+
+    private static class PendingWrite {
+        final Buffer buffer;
+        final int size;
+        final long offset;
+
+        PendingWrite(Buffer buffer, int size, long offset) {
+            this.buffer = buffer;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
 }
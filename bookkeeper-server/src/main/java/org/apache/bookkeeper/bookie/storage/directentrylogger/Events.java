@@ -31,6 +31,20 @@ public enum Events {
      */
     FALLOCATE_NOT_AVAILABLE,
 
+    /**
+     * io_uring is not available on this host, either because the process is not running on Linux, or
+     * because the kernel is too old or has io_uring disabled. Writes to entry logs fall back to one
+     * pwrite system call per buffer, plus a separate fsync.
+     */
+    IO_URING_NOT_AVAILABLE,
+
+    /**
+     * A write submitted through io_uring failed before all its completions were reaped. The ring is
+     * closed and a new one is set up for the next writes. If some of the writes may still be in flight,
+     * their buffers are discarded instead of being returned to the pool.
+     */
+    IO_URING_RESET,
+
     /**
      * EntryLog ID candidates selected. These are the set entry log ID that subsequent entry log files
      * will use. To find the candidates, the bookie lists all the log ids which have already been used,
@@ -79,6 +93,12 @@ public enum Events {
      */
     READ_METADATA_FALLBACK,
 
+    /**
+     * An attempt to read the checkpoint of the ledgers map of an entrylog without metadata failed.
+     * Falling back to scanning the whole log to get the metadata.
+     */
+    READ_METADATA_CHECKPOINT_FALLBACK,
+
     /**
      * A new entrylog has been created. The filename has the format [dstLogId].compacting, where dstLogId is
      * a new unique log ID. Entrylog compaction will copy live entries from an existing src log to this new
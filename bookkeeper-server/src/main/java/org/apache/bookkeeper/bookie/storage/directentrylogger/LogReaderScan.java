@@ -28,7 +28,14 @@ import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 
 class LogReaderScan {
     static void scan(LogReader reader, EntryLogScanner scanner) throws IOException {
-        int offset = Header.LOGFILE_LEGACY_HEADER_SIZE;
+        scan(reader, Header.LOGFILE_LEGACY_HEADER_SIZE, scanner);
+    }
+
+    /**
+     * Scan the entries of a log from a given offset, which must be the start of an entry or of padding.
+     */
+    static void scan(LogReader reader, int startOffset, EntryLogScanner scanner) throws IOException {
+        int offset = startOffset;
 
         ByteBuf entry = PooledByteBufAllocator.DEFAULT.directBuffer(16 * 1024 * 1024);
 
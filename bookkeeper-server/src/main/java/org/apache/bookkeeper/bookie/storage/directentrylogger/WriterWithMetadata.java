@@ -24,22 +24,38 @@ import static com.google.common.base.Preconditions.checkState;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import java.io.File;
 import java.io.IOException;
 import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.storage.EntryLogMetadataCheckpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * WriterWithMetadata.
  */
 class WriterWithMetadata {
+    private static final Logger LOG = LoggerFactory.getLogger(WriterWithMetadata.class);
+
     private final LogWriter writer;
     private final EntryLogMetadata metadata;
     private final ByteBufAllocator allocator;
+    // Where the ledgers map is checkpointed on flush, null if it is not
+    private final File checkpointFile;
+    // Position after the last entry added to the ledgers map
+    private volatile long ledgersMapPosition;
 
     WriterWithMetadata(LogWriter writer, EntryLogMetadata metadata,
                        ByteBufAllocator allocator) throws IOException {
+        this(writer, metadata, allocator, null);
+    }
+
+    WriterWithMetadata(LogWriter writer, EntryLogMetadata metadata,
+                       ByteBufAllocator allocator, File checkpointFile) throws IOException {
         this.writer = writer;
         this.metadata = metadata;
         this.allocator = allocator;
+        this.checkpointFile = checkpointFile;
 
         ByteBuf buf = allocator.buffer(Buffer.ALIGNMENT);
         try {
@@ -49,6 +65,7 @@ class WriterWithMetadata {
         } finally {
             buf.release();
         }
+        this.ledgersMapPosition = writer.position();
     }
 
     int logId() {
@@ -64,16 +81,36 @@ class WriterWithMetadata {
         metadata.addLedgerSize(ledgerId, size + Integer.BYTES);
         long offset = writer.writeDelimited(entry);
         checkState(offset < Integer.MAX_VALUE, "Offsets can't be higher than max int (%d)", offset);
+        ledgersMapPosition = offset + size;
         return ((long) writer.logId()) << 32 | offset;
     }
 
+    /**
+     * Flush the log, then checkpoint its ledgers map, so that the map can be recovered without scanning
+     * the whole log if the bookie stops before the log is finalized.
+     */
     void flush() throws IOException {
+        if (checkpointFile == null) {
+            writer.flush();
+            return;
+        }
+        // Read the position before copying the map, so that the map covers all the entries before it
+        long position = ledgersMapPosition;
+        EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.of(metadata, position);
         writer.flush();
+        try {
+            checkpoint.write(checkpointFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to checkpoint the ledgers map of entry log {}", logId(), e);
+        }
     }
 
     void finalizeAndClose() throws IOException {
         writer.flush();
         LogMetadata.write(writer, metadata, allocator);
         writer.close();
+        if (checkpointFile != null) {
+            EntryLogMetadataCheckpoint.delete(checkpointFile);
+        }
     }
 }
@@ -91,8 +91,18 @@ public class DbLedgerStorage implements LedgerStorage {
         "dbStorage_directIOEntryLoggerReadBufferSizeMB";
     public static final String DIRECT_IO_ENTRYLOGGER_MAX_FD_CACHE_TIME_SECONDS =
         "dbStorage_directIOEntryLoggerMaxFdCacheTimeSeconds";
+    public static final String DIRECT_IO_ENTRYLOGGER_IO_URING = "dbStorage_directIOEntryLoggerIoUring";
 
     static final String MAX_THROTTLE_TIME_MILLIS = "dbStorage_maxThrottleTimeMs";
+    static final String READ_CACHE_ZERO_COPY = "dbStorage_readCacheZeroCopy";
+    static final String WRITE_CACHE_SORTED_RUNS = "dbStorage_writeCacheSortedRuns";
+    static final String LOCATION_CACHE_MAX_ENTRIES = "dbStorage_locationCacheMaxEntries";
+    static final String LOCATIONS_INDEX_COMPACT_FORMAT = "dbStorage_locationsIndexCompactFormat";
+    static final String LOCATIONS_INDEX_STORAGE = "dbStorage_locationsIndexStorage";
+    static final String LOCATIONS_INDEX_STORAGE_ROCKSDB = "rocksdb";
+    static final String LOCATIONS_INDEX_STORAGE_SORTED_RUNS = "sortedRuns";
+    static final String ENTRY_COMPRESSION_CODEC = "dbStorage_entryCompressionCodec";
+    static final String ENTRY_COMPRESSION_MIN_SIZE = "dbStorage_entryCompressionMinSize";
 
     private static final int MB = 1024 * 1024;
 
@@ -103,6 +113,11 @@ public class DbLedgerStorage implements LedgerStorage {
 
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
+    static final String READ_AHEAD_CACHE_BATCH_BYTES_SIZE = "dbStorage_readAheadCacheBatchBytesSize";
+    static final String READ_AHEAD_CACHE_ADAPTIVE = "dbStorage_readAheadCacheAdaptive";
+    static final String READ_AHEAD_CACHE_MAX_BATCH_SIZE = "dbStorage_readAheadCacheMaxBatchSize";
+    static final String READ_AHEAD_CACHE_ASYNC = "dbStorage_readAheadCacheAsync";
+    static final String READ_AHEAD_CACHE_QUEUE_SIZE = "dbStorage_readAheadCacheQueueSize";
 
     private static final long DEFAULT_DIRECT_IO_TOTAL_WRITEBUFFER_SIZE_MB =
         (long) (0.125 * PlatformDependent.estimateMaxDirectMemory())
@@ -114,6 +129,9 @@ public class DbLedgerStorage implements LedgerStorage {
 
     private static final int DEFAULT_DIRECT_IO_MAX_FD_CACHE_TIME_SECONDS = 300;
 
+    // Number of entry locations looked up at once when reading the index of a ledger
+    private static final int READ_LEDGER_INDEX_BATCH_SIZE = 1000;
+
     // use the storage assigned to ledger 0 for flags.
     // if the storage configuration changes, the flags may be lost
     // but in that case data integrity should kick off anyhow.
@@ -229,6 +247,7 @@ public class DbLedgerStorage implements LedgerStorage {
                     readBufferSize,
                     numReadThreads,
                     maxFdCacheTimeSeconds,
+                    getBooleanVariableOrDefault(conf, DIRECT_IO_ENTRYLOGGER_IO_URING, false),
                     slog, statsLogger);
             } else {
                 entrylogger = new DefaultEntryLogger(conf, ldm, null, statsLogger, allocator);
@@ -421,6 +440,10 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).getEntryLocationIndex().getLocation(ledgerId, entryId);
     }
 
+    public long[] getLocations(long ledgerId, long firstEntryId, long lastEntryId) throws IOException {
+        return getLedgerStorage(ledgerId).getEntryLocationIndex().getLocations(ledgerId, firstEntryId, lastEntryId);
+    }
+
     private SingleDirectoryDbLedgerStorage getLedgerStorage(long ledgerId) {
         return ledgerStorageList.get(MathUtils.signSafeMod(ledgerId, numberOfDirs));
     }
@@ -479,21 +502,27 @@ public class DbLedgerStorage implements LedgerStorage {
         int dirIndex = MathUtils.signSafeMod(ledgerId, ledgerDirs.size());
         String indexBasePath = indexDirs.get(dirIndex).toString();
 
+        KeyValueStorageFactory storageFactory = getLocationsIndexStorageFactory(serverConf, true);
         EntryLocationIndex entryLocationIndex = new EntryLocationIndex(serverConf,
                 (basePath, subPath, dbConfigType, conf1) ->
-                        new KeyValueStorageRocksDB(basePath, subPath, DbConfigType.Default, conf1, true),
-                indexBasePath, NullStatsLogger.INSTANCE);
+                        storageFactory.newKeyValueStorage(basePath, subPath, DbConfigType.Default, conf1),
+                // The compact format can also read an index written with one record per entry
+                indexBasePath, NullStatsLogger.INSTANCE, true);
         try {
             long lastEntryId = entryLocationIndex.getLastEntryInLedger(ledgerId);
-            for (long currentEntry = 0; currentEntry <= lastEntryId; currentEntry++) {
-                long offset = entryLocationIndex.getLocation(ledgerId, currentEntry);
-                if (offset <= 0) {
-                    // entry not found in this bookie
-                    continue;
+            for (long firstEntry = 0; firstEntry <= lastEntryId; firstEntry += READ_LEDGER_INDEX_BATCH_SIZE) {
+                long lastEntry = Math.min(firstEntry + READ_LEDGER_INDEX_BATCH_SIZE - 1, lastEntryId);
+                long[] offsets = entryLocationIndex.getLocations(ledgerId, firstEntry, lastEntry);
+                for (int i = 0; i < offsets.length; i++) {
+                    long offset = offsets[i];
+                    if (offset <= 0) {
+                        // entry not found in this bookie
+                        continue;
+                    }
+                    long entryLogId = offset >> 32L;
+                    long position = offset & 0xffffffffL;
+                    processor.process(firstEntry + i, entryLogId, position);
                 }
-                long entryLogId = offset >> 32L;
-                long position = offset & 0xffffffffL;
-                processor.process(currentEntry, entryLogId, position);
             }
         } finally {
             entryLocationIndex.close();
@@ -592,6 +621,27 @@ public class DbLedgerStorage implements LedgerStorage {
             .map(single -> single.getGarbageCollectionStatus().get(0)).collect(Collectors.toList());
     }
 
+    /**
+     * Get the factory of the key-value storage of the locations index, picked by {@link #LOCATIONS_INDEX_STORAGE}.
+     */
+    static KeyValueStorageFactory getLocationsIndexStorageFactory(ServerConfiguration conf, boolean readOnly) {
+        String storage = conf.getString(LOCATIONS_INDEX_STORAGE, LOCATIONS_INDEX_STORAGE_ROCKSDB);
+        if (LOCATIONS_INDEX_STORAGE_SORTED_RUNS.equalsIgnoreCase(storage)) {
+            return (basePath, subPath, dbConfigType, conf1) ->
+                    new KeyValueStorageSortedRuns(basePath, subPath, conf1, readOnly);
+        } else if (LOCATIONS_INDEX_STORAGE_ROCKSDB.equalsIgnoreCase(storage)) {
+            return (basePath, subPath, dbConfigType, conf1) -> {
+                // RocksDB would silently create an empty database next to the sorted runs
+                if (KeyValueStorageSortedRuns.exists(basePath, subPath)) {
+                    throw new IOException("The locations index in " + basePath + " is stored in sorted runs, set "
+                            + LOCATIONS_INDEX_STORAGE + "=" + LOCATIONS_INDEX_STORAGE_SORTED_RUNS + " to open it");
+                }
+                return new KeyValueStorageRocksDB(basePath, subPath, dbConfigType, conf1, readOnly);
+            };
+        }
+        throw new IllegalArgumentException("Unknown locations index storage: " + storage);
+    }
+
     static long getLongVariableOrDefault(ServerConfiguration conf, String keyName, long defaultValue) {
         Object obj = conf.getProperty(keyName);
         if (obj instanceof Number) {
@@ -52,14 +52,23 @@ class DbLedgerStorageStats {
     private static final String WRITE_CACHE_MISSES = "write-cache-misses";
     private static final String READ_CACHE_HITS = "read-cache-hits";
     private static final String READ_CACHE_MISSES = "read-cache-misses";
+    private static final String LOCATION_CACHE_HITS = "location-cache-hits";
+    private static final String LOCATION_CACHE_MISSES = "location-cache-misses";
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_HITS = "readahead-hits";
+    private static final String READAHEAD_WASTED = "readahead-wasted";
+    private static final String READAHEAD_DEDUPLICATED = "readahead-deduplicated";
+    private static final String READAHEAD_REJECTED = "readahead-rejected";
+    private static final String READAHEAD_ERRORS = "readahead-errors";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
     private static final String FLUSH_LEDGER_INDEX = "flush-ledger-index";
     private static final String FLUSH_SIZE = "flush-size";
+    private static final String FLUSH_COMPRESSED_ORIGINAL_BYTES = "flush-compressed-original-bytes";
+    private static final String FLUSH_COMPRESSED_STORED_BYTES = "flush-compressed-stored-bytes";
 
     @Deprecated
     private static final String THROTTLED_WRITE_REQUESTS = "throttled-write-requests";
@@ -70,6 +79,7 @@ class DbLedgerStorageStats {
     private static final String WRITE_CACHE_COUNT = "write-cache-count";
     private static final String READ_CACHE_SIZE = "read-cache-size";
     private static final String READ_CACHE_COUNT = "read-cache-count";
+    private static final String LOCATION_CACHE_COUNT = "location-cache-count";
 
     @StatsDoc(
         name = ADD_ENTRY,
@@ -119,6 +129,18 @@ class DbLedgerStorageStats {
         parent = READ_ENTRY
     )
     private final Counter readCacheMissCounter;
+    @StatsDoc(
+        name = LOCATION_CACHE_HITS,
+        help = "number of entry locations found in the location cache",
+        parent = READ_ENTRY
+    )
+    private final Counter locationCacheHitCounter;
+    @StatsDoc(
+        name = LOCATION_CACHE_MISSES,
+        help = "number of entry locations looked up in the location index after a location cache miss",
+        parent = READ_ENTRY
+    )
+    private final Counter locationCacheMissCounter;
     @StatsDoc(
         name = READAHEAD_BATCH_COUNT,
         help = "the distribution of num of entries to read in one readahead batch"
@@ -134,6 +156,31 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+        name = READAHEAD_HITS,
+        help = "the number of reads served by entries prefetched by readahead"
+    )
+    private final Counter readAheadHitCounter;
+    @StatsDoc(
+        name = READAHEAD_WASTED,
+        help = "the number of entries prefetched by readahead that were never read"
+    )
+    private final Counter readAheadWastedCounter;
+    @StatsDoc(
+        name = READAHEAD_DEDUPLICATED,
+        help = "the number of async readahead requests skipped because the same range was already being prefetched"
+    )
+    private final Counter readAheadDeduplicatedCounter;
+    @StatsDoc(
+        name = READAHEAD_REJECTED,
+        help = "the number of async readahead requests dropped because the prefetch queue was full"
+    )
+    private final Counter readAheadRejectedCounter;
+    @StatsDoc(
+        name = READAHEAD_ERRORS,
+        help = "the number of readahead batches stopped by an error reading the entry logs or the location index"
+    )
+    private final Counter readAheadErrorCounter;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -159,6 +206,16 @@ class DbLedgerStorageStats {
         help = "the distribution of number of bytes flushed from write cache to entry log files"
     )
     private final OpStatsLogger flushSizeStats;
+    @StatsDoc(
+        name = FLUSH_COMPRESSED_ORIGINAL_BYTES,
+        help = "The number of bytes of the entries compressed when flushing the write cache, before compression"
+    )
+    private final Counter flushCompressedOriginalBytes;
+    @StatsDoc(
+        name = FLUSH_COMPRESSED_STORED_BYTES,
+        help = "The number of bytes of the entries compressed when flushing the write cache, as stored"
+    )
+    private final Counter flushCompressedStoredBytes;
     @StatsDoc(
         name = THROTTLED_WRITE_REQUESTS,
         help = "The number of requests throttled due to write cache is full"
@@ -195,28 +252,43 @@ class DbLedgerStorageStats {
         help = "Current number of entries in read cache"
     )
     private final Gauge<Long> readCacheCountGauge;
+    @StatsDoc(
+        name = LOCATION_CACHE_COUNT,
+        help = "Current number of entry locations in the location cache"
+    )
+    private final Gauge<Long> locationCacheCountGauge;
 
     DbLedgerStorageStats(StatsLogger stats,
                          Supplier<Long> writeCacheSizeSupplier,
                          Supplier<Long> writeCacheCountSupplier,
                          Supplier<Long> readCacheSizeSupplier,
-                         Supplier<Long> readCacheCountSupplier) {
+                         Supplier<Long> readCacheCountSupplier,
+                         Supplier<Long> locationCacheCountSupplier) {
         addEntryStats = stats.getThreadScopedOpStatsLogger(ADD_ENTRY);
         readEntryStats = stats.getThreadScopedOpStatsLogger(READ_ENTRY);
         readFromLocationIndexTime = stats.getThreadScopedCounter(READ_ENTRY_LOCATIONS_INDEX_TIME);
         readFromEntryLogTime = stats.getThreadScopedCounter(READ_ENTRYLOG_TIME);
         readCacheHitCounter = stats.getCounter(READ_CACHE_HITS);
         readCacheMissCounter = stats.getCounter(READ_CACHE_MISSES);
+        locationCacheHitCounter = stats.getCounter(LOCATION_CACHE_HITS);
+        locationCacheMissCounter = stats.getCounter(LOCATION_CACHE_MISSES);
         writeCacheHitCounter = stats.getCounter(WRITE_CACHE_HITS);
         writeCacheMissCounter = stats.getCounter(WRITE_CACHE_MISSES);
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadHitCounter = stats.getCounter(READAHEAD_HITS);
+        readAheadWastedCounter = stats.getCounter(READAHEAD_WASTED);
+        readAheadDeduplicatedCounter = stats.getCounter(READAHEAD_DEDUPLICATED);
+        readAheadRejectedCounter = stats.getCounter(READAHEAD_REJECTED);
+        readAheadErrorCounter = stats.getCounter(READAHEAD_ERRORS);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
         flushLedgerIndexStats = stats.getOpStatsLogger(FLUSH_LEDGER_INDEX);
         flushSizeStats = stats.getOpStatsLogger(FLUSH_SIZE);
+        flushCompressedOriginalBytes = stats.getCounter(FLUSH_COMPRESSED_ORIGINAL_BYTES);
+        flushCompressedStoredBytes = stats.getCounter(FLUSH_COMPRESSED_STORED_BYTES);
 
         throttledWriteRequests = stats.getThreadScopedCounter(THROTTLED_WRITE_REQUESTS);
         throttledWriteStats = stats.getOpStatsLogger(THROTTLED_WRITE);
@@ -271,6 +343,19 @@ class DbLedgerStorageStats {
             }
         };
         stats.registerGauge(READ_CACHE_COUNT, readCacheCountGauge);
+        locationCacheCountGauge = new Gauge<Long>() {
+
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return locationCacheCountSupplier.get();
+            }
+        };
+        stats.registerGauge(LOCATION_CACHE_COUNT, locationCacheCountGauge);
     }
 
 }
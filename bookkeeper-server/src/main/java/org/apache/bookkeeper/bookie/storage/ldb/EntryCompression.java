@@ -0,0 +1,234 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.compression.Snappy;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of the entries stored in the entry logs of the db ledger storage.
+ *
+ * <p>Entries are compressed when the write cache is flushed to the entry logger, and decompressed when read
+ * back from it, so the write and read caches, and the clients, only ever see the original bytes. A compressed
+ * entry keeps the ledger id and entry id of the original entry in front, since the entry logs are scanned
+ * for them, followed by a header and the compressed rest of the entry:
+ * <pre>
+ * | ledgerId (8) | entryId (8) | magic (4) | codec (1) | original size (4) | compressed payload |
+ * </pre>
+ * The original entry has the last add confirmed of the ledger in place of the magic, which can never start
+ * with the negative magic, so compressed and original entries can be stored side by side. Entries that do not
+ * shrink are stored as is.
+ *
+ * <p>Deflate works on heap arrays, the only ones its Java 8 API takes, so entries are copied from and to the
+ * heap when they are not already there.
+ */
+class EntryCompression {
+
+    /**
+     * Codecs the entries can be compressed with.
+     */
+    enum Codec {
+        NONE(0),
+        SNAPPY(1),
+        DEFLATE(2);
+
+        private final byte id;
+
+        Codec(int id) {
+            this.id = (byte) id;
+        }
+
+        static Codec fromId(byte id) throws IOException {
+            for (Codec codec : values()) {
+                if (codec.id == id) {
+                    return codec;
+                }
+            }
+            throw new IOException("Unknown entry compression codec " + id);
+        }
+
+        static Codec fromName(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    // Negative, while the last add confirmed stored at the same offset in an original entry is at least -1
+    static final int MAGIC = 0xBCC0DEC5;
+
+    // ledgerId, entryId
+    private static final int ENTRY_ID_SIZE = 8 + 8;
+    // ledgerId, entryId, magic, codec, original size
+    static final int HEADER_SIZE = ENTRY_ID_SIZE + 4 + 1 + 4;
+
+    private static final FastThreadLocal<Deflater> DEFLATER = new FastThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED, true);
+        }
+    };
+
+    private static final FastThreadLocal<Inflater> INFLATER = new FastThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    private final Codec codec;
+    private final int minEntrySize;
+    private final ByteBufAllocator allocator;
+
+    EntryCompression(Codec codec, int minEntrySize, ByteBufAllocator allocator) {
+        this.codec = codec;
+        this.minEntrySize = Math.max(minEntrySize, HEADER_SIZE);
+        this.allocator = allocator;
+    }
+
+    /**
+     * Compress an entry before it is added to the entry logger.
+     *
+     * @return a new buffer with the compressed entry, or null if the entry should be stored as is
+     */
+    ByteBuf compress(ByteBuf entry) {
+        int size = entry.readableBytes();
+        if (codec == Codec.NONE || size < minEntrySize) {
+            return null;
+        }
+
+        int payloadIndex = entry.readerIndex() + ENTRY_ID_SIZE;
+        int payloadSize = size - ENTRY_ID_SIZE;
+        // Only keep the compressed entry if it is smaller than the original one
+        int maxCompressedSize = size - HEADER_SIZE - 1;
+
+        ByteBuf compressed = codec == Codec.SNAPPY ? allocator.directBuffer(size, size)
+                : allocator.heapBuffer(size, size);
+        boolean shrunk = false;
+        try {
+            compressed.writeBytes(entry, entry.readerIndex(), ENTRY_ID_SIZE);
+            compressed.writeInt(MAGIC);
+            compressed.writeByte(codec.id);
+            compressed.writeInt(size);
+
+            if (codec == Codec.SNAPPY) {
+                ByteBuf out = allocator.directBuffer(payloadSize + payloadSize / 6 + 32);
+                try {
+                    new Snappy().encode(entry.slice(payloadIndex, payloadSize), out, payloadSize);
+                    if (out.readableBytes() <= maxCompressedSize) {
+                        compressed.writeBytes(out);
+                        shrunk = true;
+                    }
+                } finally {
+                    out.release();
+                }
+            } else {
+                Deflater deflater = DEFLATER.get();
+                deflater.reset();
+                if (entry.hasArray()) {
+                    deflater.setInput(entry.array(), entry.arrayOffset() + payloadIndex, payloadSize);
+                } else {
+                    deflater.setInput(ByteBufUtil.getBytes(entry, payloadIndex, payloadSize));
+                }
+                deflater.finish();
+                int compressedSize = deflater.deflate(compressed.array(), compressed.arrayOffset() + HEADER_SIZE,
+                        maxCompressedSize);
+                if (deflater.finished()) {
+                    compressed.writerIndex(HEADER_SIZE + compressedSize);
+                    shrunk = true;
+                }
+            }
+            return shrunk ? compressed : null;
+        } finally {
+            if (!shrunk) {
+                compressed.release();
+            }
+        }
+    }
+
+    /**
+     * Decompress an entry read from the entry logger, whatever the configured codec, since it may have been
+     * written with another one.
+     *
+     * @param stored the entry as read from the entry logger, released if a new buffer is returned
+     * @return the original entry
+     */
+    ByteBuf decompress(ByteBuf stored) throws IOException {
+        int index = stored.readerIndex();
+        if (stored.readableBytes() < HEADER_SIZE || stored.getInt(index + ENTRY_ID_SIZE) != MAGIC) {
+            return stored;
+        }
+
+        ByteBuf entry = null;
+        try {
+            Codec entryCodec = Codec.fromId(stored.getByte(index + ENTRY_ID_SIZE + 4));
+            int size = stored.getInt(index + ENTRY_ID_SIZE + 5);
+            int compressedIndex = index + HEADER_SIZE;
+            int compressedSize = stored.readableBytes() - HEADER_SIZE;
+            if (size < ENTRY_ID_SIZE) {
+                throw new IOException("Invalid original size " + size + " of compressed entry "
+                        + stored.getLong(index) + "@" + stored.getLong(index + 8));
+            }
+
+            entry = entryCodec == Codec.DEFLATE ? allocator.heapBuffer(size, size) : allocator.buffer(size, size);
+            entry.writeBytes(stored, index, ENTRY_ID_SIZE);
+            if (entryCodec == Codec.SNAPPY) {
+                new Snappy().decode(stored.slice(compressedIndex, compressedSize), entry);
+            } else if (entryCodec == Codec.DEFLATE) {
+                Inflater inflater = INFLATER.get();
+                inflater.reset();
+                if (stored.hasArray()) {
+                    inflater.setInput(stored.array(), stored.arrayOffset() + compressedIndex, compressedSize);
+                } else {
+                    inflater.setInput(ByteBufUtil.getBytes(stored, compressedIndex, compressedSize));
+                }
+                int payloadSize = inflater.inflate(entry.array(), entry.arrayOffset() + ENTRY_ID_SIZE,
+                        size - ENTRY_ID_SIZE);
+                if (!inflater.finished()) {
+                    throw new DataFormatException("Truncated compressed payload");
+                }
+                entry.writerIndex(ENTRY_ID_SIZE + payloadSize);
+            }
+            if (entry.readableBytes() != size) {
+                throw new IOException("Compressed entry " + stored.getLong(index) + "@" + stored.getLong(index + 8)
+                        + " decompressed to " + entry.readableBytes() + " bytes instead of " + size);
+            }
+
+            ByteBuf result = entry;
+            entry = null;
+            return result;
+        } catch (DataFormatException | DecompressionException | IndexOutOfBoundsException e) {
+            throw new IOException("Failed to decompress entry " + stored.getLong(index) + "@"
+                    + stored.getLong(index + 8), e);
+        } finally {
+            ReferenceCountUtil.release(entry);
+            stored.release();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+
+/**
+ * Cache of the locations of the entries of recently flushed ledgers, in front of the
+ * {@link EntryLocationIndex}, so that readers tailing a ledger do not need to look up the
+ * locations in the index for every read cache miss.
+ *
+ * <p>The locations of each ledger are stored in segments, arrays of {@link #SEGMENT_SIZE}
+ * locations covering consecutive entry ids, with 0 for the entries that are not cached.
+ * The cache is bounded by the number of locations in all the segments: when it is full,
+ * the ledgers that were least recently read or flushed are evicted first. A single ledger
+ * never keeps more segments than the cache can hold, and drops its oldest segments first.
+ *
+ * <p>A flush in progress can still put the locations of a ledger deleted in the meantime, so
+ * the deleted ledgers are remembered until the flushes which started before their deletion
+ * are done, see {@link #deletedLedgers()} and {@link #forgetDeletedLedgers(Set)}.
+ */
+class EntryLocationCache {
+
+    static final int SEGMENT_SIZE = 1024;
+    private static final int SEGMENT_SHIFT = 10;
+
+    // Evict down to this fraction of the max size, so that evictions happen in batches
+    private static final double EVICTION_TARGET = 0.9;
+
+    private final long maxSegments;
+    private final ConcurrentLongHashMap<LedgerLocations> ledgers = ConcurrentLongHashMap.<LedgerLocations>newBuilder()
+            .expectedItems(1024)
+            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+            .build();
+    private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
+
+    private final AtomicLong segmentsCount = new AtomicLong(0);
+    private final AtomicLong entriesCount = new AtomicLong(0);
+
+    EntryLocationCache(long maxEntries) {
+        this.maxSegments = Math.max(1, maxEntries / SEGMENT_SIZE);
+    }
+
+    /**
+     * @return the location of the entry, or 0 if it is not cached
+     */
+    long get(long ledgerId, long entryId) {
+        LedgerLocations locations = ledgers.get(ledgerId);
+        if (locations == null) {
+            return 0;
+        }
+        locations.lastAccessNanos = MathUtils.nowInNano();
+        return locations.get(entryId);
+    }
+
+    /**
+     * Cache the location of a flushed entry, unless its ledger was deleted.
+     */
+    void put(long ledgerId, long entryId, long location) {
+        if (entryId < 0 || deletedLedgers.contains(ledgerId)) {
+            return;
+        }
+        LedgerLocations locations = ledgers.computeIfAbsent(ledgerId, id -> new LedgerLocations());
+        locations.lastAccessNanos = MathUtils.nowInNano();
+        locations.put(entryId, location);
+
+        // The ledger was deleted after the check above, and its removal may have happened before the
+        // locations were added back to the map
+        if (deletedLedgers.contains(ledgerId)) {
+            removeLedger(ledgerId);
+        }
+    }
+
+    /**
+     * Update the location of an entry that was moved, only if the entry is already cached.
+     */
+    void update(long ledgerId, long entryId, long location) {
+        LedgerLocations locations = ledgers.get(ledgerId);
+        if (locations != null) {
+            locations.update(entryId, location);
+        }
+    }
+
+    /**
+     * Drop the locations of a deleted ledger, and do not cache any more of them.
+     */
+    void deleteLedger(long ledgerId) {
+        deletedLedgers.add(ledgerId);
+        removeLedger(ledgerId);
+    }
+
+    /**
+     * @return the ledgers deleted so far, to be forgotten once the flush starting now is done
+     */
+    Set<Long> deletedLedgers() {
+        return deletedLedgers.items();
+    }
+
+    /**
+     * Forget the given deleted ledgers, once no flush that started before their deletion is in progress.
+     */
+    void forgetDeletedLedgers(Set<Long> ledgerIds) {
+        for (long ledgerId : ledgerIds) {
+            deletedLedgers.remove(ledgerId);
+        }
+    }
+
+    private void removeLedger(long ledgerId) {
+        LedgerLocations locations = ledgers.remove(ledgerId);
+        if (locations != null) {
+            locations.clear();
+        }
+    }
+
+    /**
+     * Evict the least recently used ledgers, if the cache is full.
+     */
+    void evictIfNeeded() {
+        if (segmentsCount.get() <= maxSegments) {
+            return;
+        }
+
+        // Pairs of (lastAccessNanos, ledgerId), sorted from the least recently used ledger
+        List<long[]> accesses = new ArrayList<>((int) ledgers.size());
+        ledgers.forEach((ledgerId, locations) -> accesses.add(new long[] {locations.lastAccessNanos, ledgerId}));
+        accesses.sort((a, b) -> Long.compare(a[0], b[0]));
+
+        long target = (long) (maxSegments * EVICTION_TARGET);
+        for (int i = 0; i < accesses.size() && segmentsCount.get() > target; i++) {
+            removeLedger(accesses.get(i)[1]);
+        }
+    }
+
+    /**
+     * @return the number of cached entry locations
+     */
+    long count() {
+        return entriesCount.get();
+    }
+
+    long segmentsCount() {
+        return segmentsCount.get();
+    }
+
+    private class LedgerLocations {
+        volatile long lastAccessNanos;
+
+        // Index of the first segment in the array
+        private long firstSegment = -1;
+        private long[][] segments = null;
+        private int ledgerSegments = 0;
+        private int ledgerEntries = 0;
+        // Set once the ledger was removed from the cache
+        private boolean removed = false;
+
+        synchronized long get(long entryId) {
+            if (segments == null || entryId < 0) {
+                return 0;
+            }
+            long segmentIdx = (entryId >>> SEGMENT_SHIFT) - firstSegment;
+            if (segmentIdx < 0 || segmentIdx >= segments.length || segments[(int) segmentIdx] == null) {
+                return 0;
+            }
+            return segments[(int) segmentIdx][(int) (entryId & (SEGMENT_SIZE - 1))];
+        }
+
+        synchronized void put(long entryId, long location) {
+            if (removed) {
+                // Raced with the removal of the ledger, the location is just not cached
+                return;
+            }
+
+            long segment = entryId >>> SEGMENT_SHIFT;
+            if (segments == null) {
+                firstSegment = segment;
+                segments = new long[1][];
+            } else if (segment < firstSegment) {
+                if (firstSegment - segment + segments.length > maxSegments) {
+                    // Older than all the cached entries, and there is no room for it
+                    return;
+                }
+                long[][] newSegments = new long[(int) (firstSegment - segment) + segments.length][];
+                System.arraycopy(segments, 0, newSegments, (int) (firstSegment - segment), segments.length);
+                segments = newSegments;
+                firstSegment = segment;
+            } else if (segment - firstSegment >= segments.length) {
+                segments = Arrays.copyOf(segments,
+                        (int) Math.max(segment - firstSegment + 1, Math.min(segments.length * 2, maxSegments)));
+            }
+
+            int idx = (int) (segment - firstSegment);
+            if (segments[idx] == null) {
+                segments[idx] = new long[SEGMENT_SIZE];
+                ledgerSegments++;
+                segmentsCount.incrementAndGet();
+            }
+            int offset = (int) (entryId & (SEGMENT_SIZE - 1));
+            if (segments[idx][offset] == 0 && location != 0) {
+                ledgerEntries++;
+                entriesCount.incrementAndGet();
+            }
+            segments[idx][offset] = location;
+
+            // Drop the oldest segments if the ledger alone does not fit the cache
+            while (ledgerSegments > maxSegments || segment - firstSegment >= maxSegments) {
+                dropFirstSegment();
+            }
+        }
+
+        synchronized void update(long entryId, long location) {
+            if (location != 0 && get(entryId) != 0) {
+                long segmentIdx = (entryId >>> SEGMENT_SHIFT) - firstSegment;
+                segments[(int) segmentIdx][(int) (entryId & (SEGMENT_SIZE - 1))] = location;
+            }
+        }
+
+        private void dropFirstSegment() {
+            long[] first = segments[0];
+            if (first != null) {
+                int entries = countEntries(first);
+                ledgerSegments--;
+                ledgerEntries -= entries;
+                segmentsCount.decrementAndGet();
+                entriesCount.addAndGet(-entries);
+            }
+            segments = Arrays.copyOfRange(segments, 1, segments.length);
+            firstSegment++;
+        }
+
+        synchronized void clear() {
+            segmentsCount.addAndGet(-ledgerSegments);
+            entriesCount.addAndGet(-ledgerEntries);
+            segments = null;
+            ledgerSegments = 0;
+            ledgerEntries = 0;
+            removed = true;
+        }
+    }
+
+    private static int countEntries(long[] segment) {
+        int entries = 0;
+        for (long location : segment) {
+            if (location != 0) {
+                entries++;
+            }
+        }
+        return entries;
+    }
+}
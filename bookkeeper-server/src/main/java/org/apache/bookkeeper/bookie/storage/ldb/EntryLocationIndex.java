@@ -23,8 +23,12 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 import com.google.common.collect.Iterables;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.EntryLocation;
@@ -34,6 +38,7 @@ import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,16 +47,34 @@ import org.slf4j.LoggerFactory;
  *
  * <p>For each ledger multiple entries are stored in the same "record", represented
  * by the {@link LedgerIndexPage} class.
+ *
+ * <p>With the compact format, the locations of consecutive entries written to the same entry log are
+ * stored together in a single {@link EntryLocationRecord}, falling back to one record per entry on gaps.
+ * Looking up an entry then takes a floor seek instead of a point lookup, in exchange for a much smaller
+ * index when ledgers are written sequentially. The compact format can read indexes written with one
+ * record per entry, but not the other way around.
  */
 public class EntryLocationIndex implements Closeable {
 
+    // Max number of entries stored in a single record, with the compact format
+    static final int MAX_RUN_LENGTH = 1024;
+
     private final KeyValueStorage locationsDb;
+    private final boolean compactFormat;
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
     private final EntryLocationIndexStats stats;
     private boolean isCompacting;
+    // Held by the compact format batch being written, see RecordBatch
+    private final Semaphore recordsWriteLock = new Semaphore(1);
 
     public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
+        this(conf, storageFactory, basePath, stats, false);
+    }
+
+    public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
+            StatsLogger stats, boolean compactFormat) throws IOException {
+        this.compactFormat = compactFormat;
         locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.EntryLocation, conf);
 
         this.stats = new EntryLocationIndexStats(
@@ -77,7 +100,17 @@ public class EntryLocationIndex implements Closeable {
         long startTimeNanos = MathUtils.nowInNano();
         boolean operationSuccess = false;
         try {
-            if (locationsDb.get(key.array, value.array) < 0) {
+            if (compactFormat) {
+                EntryLocationRecord record = getRecordBefore(ledgerId, entryId + 1);
+                if (record == null || !record.contains(entryId)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Entry not found {}@{} in db index", ledgerId, entryId);
+                    }
+                    return 0;
+                }
+                operationSuccess = true;
+                return record.getLocation(entryId);
+            } else if (locationsDb.get(key.array, value.array) < 0) {
                 if (log.isDebugEnabled()) {
                     log.debug("Entry not found {}@{} in db index", ledgerId, entryId);
                 }
@@ -98,6 +131,93 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    /**
+     * Get the locations of a range of entries of a ledger, with a single lookup in the storage.
+     *
+     * @return the locations of the entries from firstEntryId to lastEntryId (included), with 0 for
+     *         the entries that were not found
+     */
+    public long[] getLocations(long ledgerId, long firstEntryId, long lastEntryId) throws IOException {
+        int count = (int) (lastEntryId - firstEntryId + 1);
+
+        long startTimeNanos = MathUtils.nowInNano();
+        boolean operationSuccess = false;
+        try {
+            long[] locations = new long[count];
+            long nextEntryId = firstEntryId;
+            if (compactFormat) {
+                // The first entries can be stored in a record starting before the range
+                EntryLocationRecord record = getRecordBefore(ledgerId, firstEntryId + 1);
+                if (record != null && record.contains(firstEntryId)) {
+                    nextEntryId = fillLocations(locations, firstEntryId, lastEntryId, record);
+                }
+            }
+
+            List<byte[]> keys = new ArrayList<>((int) (lastEntryId - nextEntryId + 1));
+            for (long entryId = nextEntryId; entryId <= lastEntryId; entryId++) {
+                byte[] key = new byte[16];
+                ArrayUtil.setLong(key, 0, ledgerId);
+                ArrayUtil.setLong(key, 8, entryId);
+                keys.add(key);
+            }
+
+            List<byte[]> values = keys.isEmpty() ? Collections.emptyList() : locationsDb.multiGet(keys);
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] value = values.get(i);
+                if (value == null) {
+                    continue;
+                }
+                long entryId = nextEntryId + i;
+                if (compactFormat) {
+                    fillLocations(locations, firstEntryId, lastEntryId,
+                            EntryLocationRecord.parse(ledgerId, entryId, value));
+                } else {
+                    locations[(int) (entryId - firstEntryId)] = ArrayUtil.getLong(value, 0);
+                }
+            }
+            operationSuccess = true;
+            return locations;
+        } finally {
+            if (operationSuccess) {
+                stats.getLookupEntryLocationsStats()
+                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            } else {
+                stats.getLookupEntryLocationsStats()
+                        .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Copy the locations of a record within the range from firstEntryId to lastEntryId.
+     *
+     * @return the entry following the last one copied
+     */
+    private static long fillLocations(long[] locations, long firstEntryId, long lastEntryId,
+                                      EntryLocationRecord record) {
+        long last = Math.min(record.lastEntryId(), lastEntryId);
+        for (long entryId = Math.max(record.firstEntryId, firstEntryId); entryId <= last; entryId++) {
+            locations[(int) (entryId - firstEntryId)] = record.getLocation(entryId);
+        }
+        return last + 1;
+    }
+
+    /**
+     * Get the record of a ledger with the highest first entry lower than the given entry.
+     */
+    private EntryLocationRecord getRecordBefore(long ledgerId, long entryId) throws IOException {
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
+        try {
+            Entry<byte[], byte[]> entry = locationsDb.getFloor(key.array);
+            if (entry == null || ArrayUtil.getLong(entry.getKey(), 0) != ledgerId) {
+                return null;
+            }
+            return EntryLocationRecord.parse(entry);
+        } finally {
+            key.recycle();
+        }
+    }
+
     public long getLastEntryInLedger(long ledgerId) throws IOException {
         if (deletedLedgers.contains(ledgerId)) {
             // Ledger already deleted
@@ -128,6 +248,9 @@ public class EntryLocationIndex implements Closeable {
             long lastEntryId = ArrayUtil.getLong(entry.getKey(), 8);
 
             if (foundLedgerId == ledgerId) {
+                if (compactFormat) {
+                    lastEntryId = EntryLocationRecord.parse(entry).lastEntryId();
+                }
                 if (log.isDebugEnabled()) {
                     log.debug("Found last page in storage db for ledger {} - last entry: {}", ledgerId, lastEntryId);
                 }
@@ -139,17 +262,22 @@ public class EntryLocationIndex implements Closeable {
     }
 
     public void addLocation(long ledgerId, long entryId, long location) throws IOException {
-        Batch batch = locationsDb.newBatch();
-        addLocation(batch, ledgerId, entryId, location);
-        batch.flush();
-        batch.close();
+        try (Batch batch = newBatch()) {
+            addLocation(batch, ledgerId, entryId, location);
+            batch.flush();
+        }
     }
 
     public Batch newBatch() {
-        return locationsDb.newBatch();
+        return compactFormat ? new RecordBatch() : locationsDb.newBatch();
     }
 
     public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
+        if (compactFormat) {
+            ((RecordBatch) batch).add(ledgerId, entryId, location);
+            return;
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get(location);
 
@@ -170,18 +298,18 @@ public class EntryLocationIndex implements Closeable {
             log.debug("Update locations -- {}", Iterables.size(newLocations));
         }
 
-        Batch batch = newBatch();
-        // Update all the ledger index pages with the new locations
-        for (EntryLocation e : newLocations) {
-            if (log.isDebugEnabled()) {
-                log.debug("Update location - ledger: {} -- entry: {}", e.ledger, e.entry);
+        try (Batch batch = newBatch()) {
+            // Update all the ledger index pages with the new locations
+            for (EntryLocation e : newLocations) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Update location - ledger: {} -- entry: {}", e.ledger, e.entry);
+                }
+
+                addLocation(batch, e.ledger, e.entry, e.location);
             }
 
-            addLocation(batch, e.ledger, e.entry, e.location);
+            batch.flush();
         }
-
-        batch.flush();
-        batch.close();
     }
 
     public void delete(long ledgerId) throws IOException {
@@ -245,5 +373,196 @@ public class EntryLocationIndex implements Closeable {
                 TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) / 1000.0);
     }
 
+    /**
+     * Batch grouping the locations of consecutive entries into records, with the compact format.
+     *
+     * <p>Records of a ledger must not overlap, so a record overlapping the ones already in the index,
+     * which only happens when entries are written again or relocated by compaction, replaces the
+     * overlapped part of those. Since this requires reading the index, the batch is flushed first,
+     * and the replacement is written right away.
+     *
+     * <p>The overlap checks only see the records of the index and the ones of this batch, so a batch
+     * holds the {@link #recordsWriteLock} from its first write until it is flushed, cleared or closed:
+     * the checkpoint flush and the location updates of compaction are applied one after the other.
+     */
+    private class RecordBatch implements Batch {
+        private final Batch batch = locationsDb.newBatch();
+        private boolean locked = false;
+        // Highest entry of each ledger written to the batch, but not flushed yet
+        private final ConcurrentLongLongHashMap pendingLastEntries = ConcurrentLongLongHashMap.newBuilder()
+                .concurrencyLevel(1)
+                .build();
+
+        private final long[] runLocations = new long[MAX_RUN_LENGTH];
+        private long runLedgerId;
+        private long runFirstEntryId;
+        private int runLength = 0;
+
+        void add(long ledgerId, long entryId, long location) throws IOException {
+            if (log.isDebugEnabled()) {
+                log.debug("Add location - ledger: {} -- entry: {} -- location: {}", ledgerId, entryId, location);
+            }
+
+            if (runLength > 0 && runLength < MAX_RUN_LENGTH && ledgerId == runLedgerId
+                    && entryId == runFirstEntryId + runLength
+                    && EntryLocationRecord.canExtend(runLocations[runLength - 1], location)) {
+                runLocations[runLength++] = location;
+                return;
+            }
+
+            writeRun();
+            runLedgerId = ledgerId;
+            runFirstEntryId = entryId;
+            runLocations[0] = location;
+            runLength = 1;
+        }
+
+        private void writeRun() throws IOException {
+            if (runLength == 0) {
+                return;
+            }
+            lock();
+            long runLastEntryId = runFirstEntryId + runLength - 1;
+
+            // An overlap with the records of the batch can only be checked once they are flushed
+            if (pendingLastEntries.get(runLedgerId) < runFirstEntryId
+                    && findOverlappingRecords(runLedgerId, runFirstEntryId, runLastEntryId).isEmpty()) {
+                putRecord(runLedgerId, runFirstEntryId, runLocations, 0, runLength);
+                pendingLastEntries.put(runLedgerId, runLastEntryId);
+            } else {
+                flushPending();
+                replaceRecords(runLastEntryId);
+                flushPending();
+            }
+            runLength = 0;
+        }
+
+        private void lock() {
+            if (!locked) {
+                recordsWriteLock.acquireUninterruptibly();
+                locked = true;
+            }
+        }
+
+        private void unlock() {
+            if (locked) {
+                locked = false;
+                recordsWriteLock.release();
+            }
+        }
+
+        private void replaceRecords(long runLastEntryId) throws IOException {
+            List<EntryLocationRecord> overlapping = findOverlappingRecords(runLedgerId, runFirstEntryId,
+                    runLastEntryId);
+            for (EntryLocationRecord record : overlapping) {
+                LongPairWrapper key = LongPairWrapper.get(record.ledgerId, record.firstEntryId);
+                try {
+                    batch.remove(key.array);
+                } finally {
+                    key.recycle();
+                }
+            }
+
+            // Keep the entries of the overlapped records which are outside of the run
+            for (EntryLocationRecord record : overlapping) {
+                if (record.firstEntryId < runFirstEntryId) {
+                    putRecord(record.ledgerId, record.firstEntryId, record.locations, 0,
+                            (int) (runFirstEntryId - record.firstEntryId));
+                }
+                if (record.lastEntryId() > runLastEntryId) {
+                    int offset = (int) (runLastEntryId + 1 - record.firstEntryId);
+                    putRecord(record.ledgerId, runLastEntryId + 1, record.locations, offset,
+                            record.locations.length - offset);
+                }
+            }
+            putRecord(runLedgerId, runFirstEntryId, runLocations, 0, runLength);
+        }
+
+        private void putRecord(long ledgerId, long firstEntryId, long[] locations, int offset, int length)
+                throws IOException {
+            LongPairWrapper key = LongPairWrapper.get(ledgerId, firstEntryId);
+            try {
+                batch.put(key.array, EntryLocationRecord.encode(locations, offset, length));
+            } finally {
+                key.recycle();
+            }
+        }
+
+        private void flushPending() throws IOException {
+            batch.flush();
+            batch.clear();
+            pendingLastEntries.clear();
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            add(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), ArrayUtil.getLong(value, 0));
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            writeRun();
+            lock();
+            batch.remove(key);
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            writeRun();
+            lock();
+            batch.deleteRange(beginKey, endKey);
+        }
+
+        @Override
+        public void clear() {
+            runLength = 0;
+            batch.clear();
+            pendingLastEntries.clear();
+            unlock();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                writeRun();
+                flushPending();
+            } finally {
+                unlock();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                batch.close();
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * Find the records of a ledger overlapping a range of entries, from the last one.
+     */
+    private List<EntryLocationRecord> findOverlappingRecords(long ledgerId, long firstEntryId, long lastEntryId)
+            throws IOException {
+        List<EntryLocationRecord> records = Collections.emptyList();
+        long upperEntryId = lastEntryId + 1;
+        while (true) {
+            EntryLocationRecord record = getRecordBefore(ledgerId, upperEntryId);
+            if (record == null || record.lastEntryId() < firstEntryId) {
+                return records;
+            }
+            if (records.isEmpty()) {
+                records = new ArrayList<>();
+            }
+            records.add(record);
+            if (record.firstEntryId <= firstEntryId) {
+                return records;
+            }
+            upperEntryId = record.firstEntryId;
+        }
+    }
+
     private static final Logger log = LoggerFactory.getLogger(EntryLocationIndex.class);
 }
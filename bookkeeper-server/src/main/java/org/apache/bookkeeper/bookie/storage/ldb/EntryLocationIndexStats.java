@@ -42,6 +42,7 @@ class EntryLocationIndexStats {
 
     private static final String ENTRIES_COUNT = "entries-count";
     private static final String LOOKUP_ENTRY_LOCATION = "lookup-entry-location";
+    private static final String LOOKUP_ENTRY_LOCATIONS = "lookup-entry-locations";
 
     @StatsDoc(
         name = ENTRIES_COUNT,
@@ -55,6 +56,12 @@ class EntryLocationIndexStats {
     )
     private final OpStatsLogger lookupEntryLocationStats;
 
+    @StatsDoc(
+            name = LOOKUP_ENTRY_LOCATIONS,
+            help = "operation stats of looking up the locations of a range of entries at once"
+    )
+    private final OpStatsLogger lookupEntryLocationsStats;
+
     EntryLocationIndexStats(StatsLogger statsLogger,
                             Supplier<Long> entriesCountSupplier) {
         entriesCountGauge = new Gauge<Long>() {
@@ -70,6 +77,7 @@ class EntryLocationIndexStats {
         };
         statsLogger.registerGauge(ENTRIES_COUNT, entriesCountGauge);
         lookupEntryLocationStats = statsLogger.getOpStatsLogger(LOOKUP_ENTRY_LOCATION);
+        lookupEntryLocationsStats = statsLogger.getOpStatsLogger(LOOKUP_ENTRY_LOCATIONS);
     }
 
 }
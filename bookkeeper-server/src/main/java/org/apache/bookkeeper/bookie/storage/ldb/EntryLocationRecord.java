@@ -0,0 +1,114 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.IOException;
+import java.util.Map.Entry;
+import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.EntryLocationRun;
+
+/**
+ * A record of the locations index, with the compact format.
+ *
+ * <p>A record is either the location of a single entry, stored as a long like with the default format,
+ * or an {@link EntryLocationRun}, the locations of consecutive entries written to the same entry log,
+ * stored under the key of the first entry. The records of a ledger never overlap, so the record holding
+ * the location of an entry, if any, is always the one with the highest key not greater than the entry.
+ */
+class EntryLocationRecord {
+
+    private static final int LOCATION_SIZE = Long.BYTES;
+
+    final long ledgerId;
+    final long firstEntryId;
+    final long[] locations;
+
+    EntryLocationRecord(long ledgerId, long firstEntryId, long[] locations) {
+        this.ledgerId = ledgerId;
+        this.firstEntryId = firstEntryId;
+        this.locations = locations;
+    }
+
+    long lastEntryId() {
+        return firstEntryId + locations.length - 1;
+    }
+
+    boolean contains(long entryId) {
+        return entryId >= firstEntryId && entryId <= lastEntryId();
+    }
+
+    long getLocation(long entryId) {
+        return locations[(int) (entryId - firstEntryId)];
+    }
+
+    static EntryLocationRecord parse(Entry<byte[], byte[]> record) throws IOException {
+        return parse(ArrayUtil.getLong(record.getKey(), 0), ArrayUtil.getLong(record.getKey(), 8), record.getValue());
+    }
+
+    static EntryLocationRecord parse(long ledgerId, long firstEntryId, byte[] value) throws IOException {
+        if (value.length == LOCATION_SIZE) {
+            return new EntryLocationRecord(ledgerId, firstEntryId, new long[] {ArrayUtil.getLong(value, 0)});
+        }
+
+        EntryLocationRun run;
+        try {
+            run = EntryLocationRun.parseFrom(value);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IOException("Invalid entry location record for " + ledgerId + "@" + firstEntryId, e);
+        }
+        long[] locations = new long[run.getOffsetDeltasCount() + 1];
+        long offset = run.getFirstEntryOffset();
+        long entryLogHighBits = run.getEntryLogId() << 32;
+        locations[0] = entryLogHighBits | offset;
+        for (int i = 1; i < locations.length; i++) {
+            offset += run.getOffsetDeltas(i - 1);
+            locations[i] = entryLogHighBits | offset;
+        }
+        return new EntryLocationRecord(ledgerId, firstEntryId, locations);
+    }
+
+    /**
+     * Encode the locations of consecutive entries, which must all be in the same entry log at increasing
+     * offsets.
+     */
+    static byte[] encode(long[] locations, int offset, int length) {
+        if (length == 1) {
+            byte[] value = new byte[LOCATION_SIZE];
+            ArrayUtil.setLong(value, 0, locations[offset]);
+            return value;
+        }
+
+        EntryLocationRun.Builder run = EntryLocationRun.newBuilder()
+                .setEntryLogId(locations[offset] >>> 32)
+                .setFirstEntryOffset(locations[offset] & 0xffffffffL);
+        for (int i = offset + 1; i < offset + length; i++) {
+            run.addOffsetDeltas(locations[i] - locations[i - 1]);
+        }
+        return run.build().toByteArray();
+    }
+
+    /**
+     * Check whether an entry at the given location can extend a run ending at the previous location.
+     */
+    static boolean canExtend(long previousLocation, long location) {
+        return (previousLocation >>> 32) == (location >>> 32) && location > previousLocation;
+    }
+}
@@ -22,6 +22,8 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 
 /**
@@ -55,6 +57,24 @@ public interface KeyValueStorage extends Closeable {
      */
     int get(byte[] key, byte[] value) throws IOException;
 
+    /**
+     * Get the values associated with a list of keys.
+     *
+     * <p>Storages that can look up multiple keys at once should override this method, the default
+     * implementation looks up each key in turn.
+     *
+     * @param keys
+     *            the keys to lookup
+     * @return the values, in the same order as the keys, with null for the keys that were not found
+     */
+    default List<byte[]> multiGet(List<byte[]> keys) throws IOException {
+        List<byte[]> values = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            values.add(get(key));
+        }
+        return values;
+    }
+
     /**
      * Get the entry whose key is the biggest and it's lesser than the supplied key.
      *
@@ -0,0 +1,1614 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.primitives.UnsignedBytes;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Key-value storage made of memory-mapped sorted runs, for keys which are mostly written in increasing
+ * order, like the (ledgerId, entryId) keys of the locations index.
+ *
+ * <p>Writes are appended to a write-ahead log and applied to a memory table. Once full, the memory table
+ * is written by a background thread as a new immutable run: files holding the sorted records, indexed by
+ * a sparse index kept in memory, together with the ranges of keys deleted from the older runs. Reads go
+ * through the memory tables and the runs from the newest to the oldest, and stop at the first one which
+ * holds the key or deletes it.
+ *
+ * <p>Runs are not organized in levels like in RocksDB. When there are too many of them, the newest runs
+ * are merged together, as long as the merged run stays comparable in size with the next older one, so
+ * that each record is only rewritten a logarithmic number of times. Since the keys are mostly appended,
+ * the runs rarely overlap and merging them is mostly a sequential copy. Deleting a range of keys only
+ * records the range, which is dropped together with the keys it deletes once merged into the oldest run.
+ */
+public class KeyValueStorageSortedRuns implements KeyValueStorage {
+
+    private static final String SORTED_RUNS_MEMTABLE_SIZE_MB = "dbStorage_sortedRuns_memTableSizeMB";
+    private static final String SORTED_RUNS_MAX_RUNS = "dbStorage_sortedRuns_maxRuns";
+    private static final long DEFAULT_MEMTABLE_SIZE_MB = 64;
+    private static final int DEFAULT_MAX_RUNS = 8;
+
+    static final String MANIFEST = "SORTED_RUNS_MANIFEST";
+    private static final String ROCKSDB_CURRENT = "CURRENT";
+    private static final String WAL_PREFIX = "wal-";
+    private static final String WAL_SUFFIX = ".log";
+    private static final String RUN_PREFIX = "run-";
+    private static final String RUN_SUFFIX = ".sst";
+
+    // Max size of the records of a run file, so that the file can be mapped in a single buffer
+    private static final int SEGMENT_SIZE = 256 * 1024 * 1024;
+    // Number of records between two keys of the sparse index
+    private static final int INDEX_INTERVAL = 64;
+    // Max number of full memory tables waiting to be written, before the writes are blocked
+    private static final int MAX_IMMUTABLE_MEMTABLES = 2;
+    // Estimated memory used by a record of a memory table, besides its key and value
+    private static final int MEMTABLE_RECORD_OVERHEAD = 64;
+
+    private static final int SEGMENT_MAGIC = 0x534f5254;
+    private static final int FOOTER_SIZE = 24;
+    private static final int DELETED_LENGTH = -1;
+
+    private static final byte OP_PUT = 0;
+    private static final byte OP_DELETE = 1;
+    private static final byte OP_DELETE_RANGE = 2;
+
+    private static final Comparator<byte[]> KEY_COMPARATOR = UnsignedBytes.lexicographicalComparator();
+    // Value of the deleted keys in the memory tables, compared by identity
+    private static final byte[] DELETED = new byte[0];
+
+    private final File dir;
+    private final boolean readOnly;
+    private final long memTableMaxSize;
+    private final int maxRuns;
+
+    // Serializes the writes, so that they are applied in the order of the write-ahead log
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Held exclusively while a batch is applied to the active memory table, so that the reads see either
+    // all of its operations or none of them
+    private final StampedLock applyLock = new StampedLock();
+    // Writes the memory tables and merges the runs. The runs are only changed by this thread
+    private final ExecutorService executor;
+
+    // Changed while synchronized on the storage
+    private volatile Version version;
+    private volatile IOException backgroundError = null;
+
+    // Guarded by the write lock
+    private FileChannel wal;
+    private long nextSeq;
+    // Only used by the background thread, once opened
+    private long nextRunId;
+
+    public KeyValueStorageSortedRuns(String basePath, String subPath, ServerConfiguration conf, boolean readOnly)
+            throws IOException {
+        this.dir = FileSystems.getDefault().getPath(basePath, subPath).toFile();
+        this.readOnly = readOnly;
+        this.memTableMaxSize = conf.getLong(SORTED_RUNS_MEMTABLE_SIZE_MB, DEFAULT_MEMTABLE_SIZE_MB) * 1024 * 1024;
+        this.maxRuns = Math.max(conf.getInt(SORTED_RUNS_MAX_RUNS, DEFAULT_MAX_RUNS), 1);
+
+        if (new File(dir, ROCKSDB_CURRENT).exists()) {
+            throw new IOException("Cannot open " + dir + " with sorted runs, it holds a RocksDB database");
+        }
+        if (!new File(dir, MANIFEST).exists()) {
+            if (readOnly) {
+                throw new IOException("No sorted runs storage found in " + dir);
+            }
+            if (!dir.mkdirs() && !dir.isDirectory()) {
+                throw new IOException("Failed to create directory " + dir);
+            }
+            writeManifest(Collections.emptyList());
+        }
+
+        List<Run> runs = readManifest();
+        for (Run run : runs) {
+            nextRunId = Math.max(nextRunId, run.id + 1);
+        }
+        long lastWrittenSeq = runs.isEmpty() ? 0 : runs.get(0).lastSeq;
+
+        // Remove the leftovers of the flushes and merges which did not complete, and find the logs of the
+        // memory tables which were not written yet
+        Set<String> runFiles = new HashSet<>();
+        for (Run run : runs) {
+            for (Segment segment : run.segments) {
+                runFiles.add(segment.file.getName());
+            }
+        }
+        TreeMap<Long, File> wals = new TreeMap<>();
+        File[] files = dir.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            String name = file.getName();
+            if (name.startsWith(WAL_PREFIX) && name.endsWith(WAL_SUFFIX)) {
+                long seq = Long.parseLong(name.substring(WAL_PREFIX.length(), name.length() - WAL_SUFFIX.length()));
+                if (seq > lastWrittenSeq) {
+                    wals.put(seq, file);
+                } else if (!readOnly) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            } else if (name.startsWith(RUN_PREFIX) && !runFiles.contains(name) && !readOnly) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        this.nextSeq = Math.max(lastWrittenSeq, wals.isEmpty() ? 0 : wals.lastKey()) + 1;
+
+        MemTable active = new MemTable(nextSeq++);
+        if (!wals.isEmpty()) {
+            MemTable recovered = readOnly ? active : new MemTable(wals.lastKey());
+            for (File file : wals.values()) {
+                replayWal(file, recovered);
+            }
+            if (!readOnly) {
+                if (!recovered.isEmpty()) {
+                    runs = prepend(writeRun(wals.firstKey(), wals.lastKey(), recovered, runs.isEmpty()), runs);
+                    writeManifest(runs);
+                }
+                for (File file : wals.values()) {
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+        }
+        this.version = new Version(active, Collections.emptyList(), runs);
+
+        if (readOnly) {
+            this.executor = null;
+        } else {
+            this.wal = openWal(active.seq);
+            this.executor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("db-storage-sorted-runs"));
+        }
+        log.info("Opened sorted runs storage {} with {} runs", dir, runs.size());
+    }
+
+    /**
+     * Check whether a directory holds a sorted runs storage.
+     */
+    static boolean exists(String basePath, String subPath) {
+        return FileSystems.getDefault().getPath(basePath, subPath, MANIFEST).toFile().exists();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.warn("Timed out waiting for the memory tables of {} to be written", dir);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while closing " + dir);
+            }
+        }
+        writeLock.lock();
+        try {
+            if (wal != null) {
+                wal.close();
+                wal = null;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) throws IOException {
+        write(Collections.singletonList(new Op(OP_PUT, key.clone(), value.clone())), false);
+    }
+
+    @Override
+    public void delete(byte[] key) throws IOException {
+        write(Collections.singletonList(new Op(OP_DELETE, key.clone(), null)), false);
+    }
+
+    @Override
+    public byte[] get(byte[] key) throws IOException {
+        return read(() -> {
+            for (Source source : version.sources) {
+                Record record = source.get(key);
+                if (record != null) {
+                    return record.value;
+                }
+                if (source.deletedRange(key) != null) {
+                    return null;
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public int get(byte[] key, byte[] value) throws IOException {
+        byte[] found = get(key);
+        if (found == null) {
+            return -1;
+        }
+        System.arraycopy(found, 0, value, 0, Math.min(found.length, value.length));
+        return found.length;
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getFloor(byte[] key) throws IOException {
+        Record record = read(() -> lowerVisible(version.sources, key));
+        return record != null ? new SimpleEntry<>(record.key, record.value) : null;
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getCeil(byte[] key) throws IOException {
+        Record record = read(() -> ceilingVisible(version.sources, key));
+        return record != null ? new SimpleEntry<>(record.key, record.value) : null;
+    }
+
+    @Override
+    public String getDBPath() {
+        return dir.getPath();
+    }
+
+    @Override
+    public void compact() throws IOException {
+        if (readOnly) {
+            return;
+        }
+        // Write the memory table first, so that the whole data set is merged
+        writeLock.lock();
+        try {
+            checkWritable();
+            if (!version.active.isEmpty()) {
+                rotateMemTable();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        Future<?> merge = executor.submit(() -> {
+            List<Run> runs = version.runs;
+            if (runs.isEmpty()) {
+                return null;
+            }
+            long startTime = System.currentTimeMillis();
+            long originalSize = totalSize(runs);
+            mergeRuns(runs.size());
+            log.info("Sorted runs {} compact finished in {} ms, {} runs of {} bytes merged into {} bytes", dir,
+                    System.currentTimeMillis() - startTime, runs.size(), originalSize, totalSize(version.runs));
+            return null;
+        });
+        try {
+            merge.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compacting " + dir);
+        } catch (ExecutionException e) {
+            throw new IOException("Error in sorted runs compact", e.getCause());
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        writeLock.lock();
+        try {
+            checkWritable();
+            wal.force(false);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys() {
+        return keys(new byte[0], null);
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys(byte[] firstKey, byte[] lastKey) {
+        RecordIterator iterator = new RecordIterator(firstKey, lastKey);
+        return new CloseableIterator<byte[]>() {
+            @Override
+            public boolean hasNext() throws IOException {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public byte[] next() throws IOException {
+                return iterator.next().key;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public CloseableIterator<Entry<byte[], byte[]>> iterator() {
+        RecordIterator iterator = new RecordIterator(new byte[0], null);
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() throws IOException {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() throws IOException {
+                Record record = iterator.next();
+                return new SimpleEntry<>(record.key, record.value);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Estimate the number of keys, counting the deleted and overwritten ones which were not merged yet.
+     */
+    @Override
+    public long count() throws IOException {
+        Version current = version;
+        long count = current.active.records.size();
+        for (MemTable memTable : current.immutables) {
+            count += memTable.records.size();
+        }
+        for (Run run : current.runs) {
+            count += run.recordCount;
+        }
+        return count;
+    }
+
+    @Override
+    public Batch newBatch() {
+        return new SortedRunsBatch();
+    }
+
+    private class SortedRunsBatch implements Batch {
+        private final List<Op> ops = new ArrayList<>();
+
+        @Override
+        public void put(byte[] key, byte[] value) {
+            ops.add(new Op(OP_PUT, key.clone(), value.clone()));
+        }
+
+        @Override
+        public void remove(byte[] key) {
+            ops.add(new Op(OP_DELETE, key.clone(), null));
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) {
+            ops.add(new Op(OP_DELETE_RANGE, beginKey.clone(), endKey.clone()));
+        }
+
+        @Override
+        public void clear() {
+            ops.clear();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            write(ops, true);
+        }
+
+        @Override
+        public void close() {
+            ops.clear();
+        }
+    }
+
+    private void checkWritable() throws IOException {
+        if (readOnly) {
+            throw new IOException("Sorted runs storage " + dir + " is read-only");
+        }
+        if (wal == null) {
+            throw new IOException("Sorted runs storage " + dir + " is closed");
+        }
+        if (backgroundError != null) {
+            throw new IOException("Failed to write the memory tables of " + dir, backgroundError);
+        }
+    }
+
+    private void write(List<Op> ops, boolean sync) throws IOException {
+        ByteBuffer record = encodeWalRecord(ops);
+        writeLock.lock();
+        try {
+            checkWritable();
+            while (record.hasRemaining()) {
+                wal.write(record);
+            }
+            if (sync) {
+                wal.force(false);
+            }
+
+            MemTable memTable = version.active;
+            long stamp = applyLock.writeLock();
+            try {
+                for (Op op : ops) {
+                    memTable.apply(op);
+                }
+            } finally {
+                applyLock.unlockWrite(stamp);
+            }
+            if (memTable.size >= memTableMaxSize) {
+                rotateMemTable();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Run a lookup against the memory tables and runs, without seeing a batch half applied: optimistically
+     * first, and again under the read lock if a batch was applied in the meantime.
+     */
+    private <T> T read(Supplier<T> lookup) {
+        long stamp = applyLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = lookup.get();
+                if (applyLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // The memory table was changing under the lookup, unless no batch was applied meanwhile
+                if (applyLock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = applyLock.readLock();
+        try {
+            return lookup.get();
+        } finally {
+            applyLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Replace the active memory table with an empty one, and schedule its write as a run.
+     * Must be called with the write lock held.
+     */
+    private void rotateMemTable() throws IOException {
+        MemTable full;
+        synchronized (this) {
+            while (version.immutables.size() >= MAX_IMMUTABLE_MEMTABLES && backgroundError == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the memory tables of " + dir);
+                }
+            }
+            checkWritable();
+
+            // The writes of the full memory table must be durable before the ones of the next one
+            wal.force(false);
+            wal.close();
+            full = version.active;
+            MemTable next = new MemTable(nextSeq++);
+            wal = openWal(next.seq);
+            version = new Version(next, prepend(full, version.immutables), version.runs);
+        }
+        executor.execute(() -> writeMemTable(full));
+    }
+
+    private void writeMemTable(MemTable memTable) {
+        try {
+            List<Run> runs = version.runs;
+            Run run = memTable.isEmpty() ? null : writeRun(memTable.seq, memTable.seq, memTable, runs.isEmpty());
+            synchronized (this) {
+                List<Run> newRuns = run != null ? prepend(run, runs) : runs;
+                if (run != null) {
+                    writeManifest(newRuns);
+                }
+                List<MemTable> immutables = new ArrayList<>(version.immutables);
+                immutables.remove(memTable);
+                version = new Version(version.active, immutables, newRuns);
+                notifyAll();
+            }
+            Files.deleteIfExists(walFile(memTable.seq).toPath());
+
+            while (version.runs.size() > maxRuns) {
+                mergeRuns(pickRunsToMerge(version.runs));
+            }
+        } catch (IOException e) {
+            log.error("Failed to write the memory table {} of {}", memTable.seq, dir, e);
+            synchronized (this) {
+                backgroundError = e;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Pick the number of newest runs to merge: the merged run must not grow much bigger than the next older
+     * run, so that the sizes of the runs keep growing geometrically with their age.
+     */
+    private static int pickRunsToMerge(List<Run> runs) {
+        long mergedSize = runs.get(0).size + runs.get(1).size;
+        int count = 2;
+        while (count < runs.size() && runs.get(count).size <= 2 * mergedSize) {
+            mergedSize += runs.get(count).size;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Merge the given number of newest runs into a single run. Must be called by the background thread.
+     */
+    private void mergeRuns(int count) throws IOException {
+        List<Run> runs = version.runs;
+        List<Run> merged = runs.subList(0, count);
+        boolean oldest = count == runs.size();
+
+        NavigableMap<byte[], byte[]> deletedRanges = new TreeMap<>(KEY_COMPARATOR);
+        if (!oldest) {
+            // The merged run deletes from the older runs whatever any of its runs deleted
+            for (Run run : merged) {
+                for (int i = 0; i < run.rangeBegins.length; i++) {
+                    addRange(deletedRanges, run.rangeBegins[i], run.rangeEnds[i]);
+                }
+            }
+        }
+        Run run = writeRun(merged.get(count - 1).firstSeq, merged.get(0).lastSeq,
+                new MergeIterator(merged, oldest), deletedRanges);
+
+        synchronized (this) {
+            List<Run> newRuns = new ArrayList<>(runs.size() - count + 1);
+            newRuns.add(run);
+            newRuns.addAll(runs.subList(count, runs.size()));
+            writeManifest(newRuns);
+            version = new Version(version.active, version.immutables, newRuns);
+        }
+        // The readers still using the merged runs keep their files mapped
+        for (Run old : merged) {
+            for (Segment segment : old.segments) {
+                Files.deleteIfExists(segment.file.toPath());
+            }
+        }
+    }
+
+    private static long totalSize(List<Run> runs) {
+        long size = 0;
+        for (Run run : runs) {
+            size += run.size;
+        }
+        return size;
+    }
+
+    /**
+     * Find the visible record with the highest key lower than the given key.
+     *
+     * <p>Each source is searched below its own bound: a range deleted by a source only lets the older sources
+     * skip it, while the newer ones can hold keys written again after the deletion.
+     */
+    private static Record lowerVisible(List<Source> sources, byte[] key) {
+        int count = sources.size();
+        byte[][] upperKeys = new byte[count][];
+        Record[] candidates = new Record[count];
+        for (int i = 0; i < count; i++) {
+            upperKeys[i] = key;
+            candidates[i] = sources.get(i).lower(key);
+        }
+
+        while (true) {
+            int best = -1;
+            for (int i = 0; i < count; i++) {
+                // On equal keys, the newest source wins
+                if (candidates[i] != null
+                        && (best < 0 || KEY_COMPARATOR.compare(candidates[i].key, candidates[best].key) > 0)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            Record candidate = candidates[best];
+
+            int rangeSource = deletedByNewer(sources, best, candidate.key);
+            if (rangeSource < 0 && candidate.value != null) {
+                return candidate;
+            }
+            byte[] rangeBegin = rangeSource >= 0 ? sources.get(rangeSource).deletedRange(candidate.key)[0] : null;
+            for (int i = 0; i < count; i++) {
+                byte[] upperKey = rangeSource >= 0 && i > rangeSource ? rangeBegin : candidate.key;
+                if (KEY_COMPARATOR.compare(upperKey, upperKeys[i]) < 0) {
+                    upperKeys[i] = upperKey;
+                    if (candidates[i] != null && KEY_COMPARATOR.compare(candidates[i].key, upperKey) >= 0) {
+                        candidates[i] = sources.get(i).lower(upperKey);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the visible record with the lowest key greater or equal to the given key.
+     */
+    private static Record ceilingVisible(List<Source> sources, byte[] key) {
+        int count = sources.size();
+        byte[][] lowerKeys = new byte[count][];
+        Record[] candidates = new Record[count];
+        for (int i = 0; i < count; i++) {
+            lowerKeys[i] = key;
+            candidates[i] = sources.get(i).ceiling(key);
+        }
+
+        while (true) {
+            int best = -1;
+            for (int i = 0; i < count; i++) {
+                if (candidates[i] != null
+                        && (best < 0 || KEY_COMPARATOR.compare(candidates[i].key, candidates[best].key) < 0)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return null;
+            }
+            Record candidate = candidates[best];
+
+            int rangeSource = deletedByNewer(sources, best, candidate.key);
+            if (rangeSource < 0 && candidate.value != null) {
+                return candidate;
+            }
+            byte[] next = successor(candidate.key);
+            byte[] rangeEnd = rangeSource >= 0 ? sources.get(rangeSource).deletedRange(candidate.key)[1] : null;
+            for (int i = 0; i < count; i++) {
+                byte[] lowerKey = rangeSource >= 0 && i > rangeSource ? rangeEnd : next;
+                if (KEY_COMPARATOR.compare(lowerKey, lowerKeys[i]) > 0) {
+                    lowerKeys[i] = lowerKey;
+                    if (candidates[i] != null && KEY_COMPARATOR.compare(candidates[i].key, lowerKey) < 0) {
+                        candidates[i] = sources.get(i).ceiling(lowerKey);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the newest source, newer than the given one, which deleted the key with a range, or -1
+     */
+    private static int deletedByNewer(List<Source> sources, int source, byte[] key) {
+        for (int i = 0; i < source; i++) {
+            if (sources.get(i).deletedRange(key) != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the lowest key greater than the given key
+     */
+    private static byte[] successor(byte[] key) {
+        return Arrays.copyOf(key, key.length + 1);
+    }
+
+    /**
+     * Add a range to a set of disjoint ranges, indexed by their first key, merging it with the ones it overlaps.
+     */
+    private static void addRange(NavigableMap<byte[], byte[]> ranges, byte[] begin, byte[] end) {
+        if (KEY_COMPARATOR.compare(begin, end) >= 0) {
+            return;
+        }
+        Map.Entry<byte[], byte[]> floor = ranges.floorEntry(begin);
+        if (floor != null && KEY_COMPARATOR.compare(floor.getValue(), begin) >= 0) {
+            begin = floor.getKey();
+            end = max(end, floor.getValue());
+        }
+        List<byte[]> covered = new ArrayList<>(ranges.subMap(begin, false, end, true).keySet());
+        for (byte[] coveredBegin : covered) {
+            end = max(end, ranges.get(coveredBegin));
+        }
+        // Add the merged range before removing the ones it covers, so that concurrent readers never miss them
+        ranges.put(begin, end);
+        for (byte[] coveredBegin : covered) {
+            ranges.remove(coveredBegin);
+        }
+    }
+
+    private static byte[][] findRange(NavigableMap<byte[], byte[]> ranges, byte[] key) {
+        Map.Entry<byte[], byte[]> floor = ranges.floorEntry(key);
+        if (floor != null && KEY_COMPARATOR.compare(key, floor.getValue()) < 0) {
+            return new byte[][] {floor.getKey(), floor.getValue()};
+        }
+        return null;
+    }
+
+    private static byte[] max(byte[] a, byte[] b) {
+        return KEY_COMPARATOR.compare(a, b) >= 0 ? a : b;
+    }
+
+    private static <T> List<T> prepend(T item, List<T> list) {
+        List<T> result = new ArrayList<>(list.size() + 1);
+        result.add(item);
+        result.addAll(list);
+        return result;
+    }
+
+    // Write-ahead log
+
+    private File walFile(long seq) {
+        return new File(dir, WAL_PREFIX + seq + WAL_SUFFIX);
+    }
+
+    private FileChannel openWal(long seq) throws IOException {
+        FileChannel channel = FileChannel.open(walFile(seq).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        syncDir();
+        return channel;
+    }
+
+    /**
+     * Encode a group of operations as a record of the write-ahead log: length, checksum and operations.
+     */
+    private static ByteBuffer encodeWalRecord(List<Op> ops) {
+        int length = Integer.BYTES;
+        for (Op op : ops) {
+            length += 1 + Integer.BYTES + op.key.length + Integer.BYTES + (op.value != null ? op.value.length : 0);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + length);
+        buffer.putInt(length);
+        buffer.putLong(0);
+        buffer.putInt(ops.size());
+        for (Op op : ops) {
+            buffer.put(op.type);
+            buffer.putInt(op.key.length);
+            buffer.put(op.key);
+            if (op.value != null) {
+                buffer.putInt(op.value.length);
+                buffer.put(op.value);
+            } else {
+                buffer.putInt(DELETED_LENGTH);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), Integer.BYTES + Long.BYTES, length);
+        buffer.putLong(Integer.BYTES, crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private void replayWal(File file, MemTable memTable) throws IOException {
+        int records = 0;
+        long remaining = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] payload;
+                long checksum;
+                try {
+                    int length = in.readInt();
+                    checksum = in.readLong();
+                    remaining -= 12;
+                    if (length < 0 || length > remaining) {
+                        log.warn("Ignoring the truncated end of {}, after {} records", file, records);
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    remaining -= length;
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload, 0, payload.length);
+                if (crc.getValue() != checksum) {
+                    // Torn write at the end of the log
+                    log.warn("Ignoring the corrupted end of {}, after {} records", file, records);
+                    break;
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(payload);
+                int count = buffer.getInt();
+                for (int i = 0; i < count; i++) {
+                    byte type = buffer.get();
+                    byte[] key = new byte[buffer.getInt()];
+                    buffer.get(key);
+                    int valueLength = buffer.getInt();
+                    byte[] value = null;
+                    if (valueLength != DELETED_LENGTH) {
+                        value = new byte[valueLength];
+                        buffer.get(value);
+                    }
+                    memTable.apply(new Op(type, key, value));
+                }
+                records++;
+            }
+        }
+        log.info("Replayed {} records from {}", records, file);
+    }
+
+    // Runs and manifest
+
+    private File runFile(long runId, int part) {
+        return new File(dir, RUN_PREFIX + runId + "-" + part + RUN_SUFFIX);
+    }
+
+    private Run writeRun(long firstSeq, long lastSeq, MemTable memTable, boolean oldest) throws IOException {
+        Iterator<Map.Entry<byte[], byte[]>> entries = memTable.records.entrySet().iterator();
+        Iterator<Record> records = new Iterator<Record>() {
+            private Record next = advance();
+
+            private Record advance() {
+                while (entries.hasNext()) {
+                    Map.Entry<byte[], byte[]> entry = entries.next();
+                    // Nothing is left to delete in the oldest run
+                    if (entry.getValue() != DELETED || !oldest) {
+                        return new Record(entry.getKey(), entry.getValue() != DELETED ? entry.getValue() : null);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Record next() {
+                Record record = next;
+                next = advance();
+                return record;
+            }
+        };
+        NavigableMap<byte[], byte[]> deletedRanges = oldest ? Collections.emptyNavigableMap() : memTable.deletedRanges;
+        return writeRun(firstSeq, lastSeq, records, deletedRanges);
+    }
+
+    private Run writeRun(long firstSeq, long lastSeq, Iterator<Record> records,
+                         NavigableMap<byte[], byte[]> deletedRanges) throws IOException {
+        // Runs are written to new files, since the files of the runs being merged are still mapped
+        long runId = nextRunId++;
+        List<Segment> segments = new ArrayList<>();
+        SegmentWriter writer = new SegmentWriter(runFile(runId, 0));
+        try {
+            while (records.hasNext()) {
+                if (writer.offset >= SEGMENT_SIZE) {
+                    // The deleted ranges are stored with the first segment
+                    segments.add(writer.finish(
+                            segments.isEmpty() ? deletedRanges : Collections.emptyNavigableMap()));
+                    writer = new SegmentWriter(runFile(runId, segments.size()));
+                }
+                writer.add(records.next());
+            }
+            segments.add(writer.finish(segments.isEmpty() ? deletedRanges : Collections.emptyNavigableMap()));
+        } finally {
+            writer.close();
+        }
+        syncDir();
+        return new Run(runId, firstSeq, lastSeq, segments);
+    }
+
+    /**
+     * Atomically replace the manifest, which lists the runs from the newest to the oldest.
+     */
+    private void writeManifest(List<Run> runs) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Run run : runs) {
+            sb.append(run.id).append(' ').append(run.firstSeq).append(' ').append(run.lastSeq)
+                    .append(' ').append(run.segments.size()).append('\n');
+        }
+        File tmp = new File(dir, MANIFEST + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), new File(dir, MANIFEST).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        syncDir();
+    }
+
+    private List<Run> readManifest() throws IOException {
+        List<Run> runs = new ArrayList<>();
+        for (String line : Files.readAllLines(new File(dir, MANIFEST).toPath(), StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split(" ");
+            long runId = Long.parseLong(parts[0]);
+            long firstSeq = Long.parseLong(parts[1]);
+            long lastSeq = Long.parseLong(parts[2]);
+            int segmentCount = Integer.parseInt(parts[3]);
+            List<Segment> segments = new ArrayList<>(segmentCount);
+            for (int i = 0; i < segmentCount; i++) {
+                segments.add(Segment.open(runFile(runId, i)));
+            }
+            runs.add(new Run(runId, firstSeq, lastSeq, segments));
+        }
+        return runs;
+    }
+
+    private void syncDir() throws IOException {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    // Data structures
+
+    private static final class Op {
+        final byte type;
+        final byte[] key;
+        // Value of a put, or end of a deleted range
+        final byte[] value;
+
+        Op(byte type, byte[] key, byte[] value) {
+            this.type = type;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Record {
+        final byte[] key;
+        // Null for a deleted key
+        final byte[] value;
+
+        Record(byte[] key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A memory table or a run.
+     */
+    private interface Source {
+        /**
+         * @return the record of the key, which can be a deleted key
+         */
+        Record get(byte[] key);
+
+        /**
+         * @return the record with the lowest key greater or equal to the given key
+         */
+        Record ceiling(byte[] key);
+
+        /**
+         * @return the record with the highest key lower than the given key
+         */
+        Record lower(byte[] key);
+
+        /**
+         * @return the first and last (excluded) keys of the range holding the key, which was deleted from the
+         *         older sources
+         */
+        byte[][] deletedRange(byte[] key);
+    }
+
+    private static final class MemTable implements Source {
+        final long seq;
+        final ConcurrentSkipListMap<byte[], byte[]> records = new ConcurrentSkipListMap<>(KEY_COMPARATOR);
+        final ConcurrentSkipListMap<byte[], byte[]> deletedRanges = new ConcurrentSkipListMap<>(KEY_COMPARATOR);
+        // Estimated memory used, only updated with the write lock held
+        long size = 0;
+
+        MemTable(long seq) {
+            this.seq = seq;
+        }
+
+        void apply(Op op) {
+            switch (op.type) {
+            case OP_PUT:
+                records.put(op.key, op.value);
+                size += op.key.length + op.value.length + MEMTABLE_RECORD_OVERHEAD;
+                break;
+            case OP_DELETE:
+                records.put(op.key, DELETED);
+                size += op.key.length + MEMTABLE_RECORD_OVERHEAD;
+                break;
+            case OP_DELETE_RANGE:
+                // The range only applies to the older sources, the keys of this table are simply removed
+                if (KEY_COMPARATOR.compare(op.key, op.value) < 0) {
+                    addRange(deletedRanges, op.key, op.value);
+                    records.subMap(op.key, op.value).clear();
+                }
+                size += op.key.length + op.value.length + MEMTABLE_RECORD_OVERHEAD;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation " + op.type);
+            }
+        }
+
+        boolean isEmpty() {
+            return records.isEmpty() && deletedRanges.isEmpty();
+        }
+
+        private static Record toRecord(Map.Entry<byte[], byte[]> entry) {
+            if (entry == null) {
+                return null;
+            }
+            return new Record(entry.getKey(), entry.getValue() != DELETED ? entry.getValue() : null);
+        }
+
+        @Override
+        public Record get(byte[] key) {
+            byte[] value = records.get(key);
+            return value != null ? new Record(key, value != DELETED ? value : null) : null;
+        }
+
+        @Override
+        public Record ceiling(byte[] key) {
+            return toRecord(records.ceilingEntry(key));
+        }
+
+        @Override
+        public Record lower(byte[] key) {
+            return toRecord(records.lowerEntry(key));
+        }
+
+        @Override
+        public byte[][] deletedRange(byte[] key) {
+            return deletedRanges.isEmpty() ? null : findRange(deletedRanges, key);
+        }
+    }
+
+    /**
+     * A run file, mapped in memory. Each record is stored as key length, value length (or -1 for a deleted key),
+     * key and value. The records are followed by the sparse index, the deleted ranges and a fixed size footer.
+     */
+    private static final class Segment {
+        final File file;
+        final ByteBuffer buffer;
+        final int recordsEnd;
+        final long recordCount;
+        final byte[][] indexKeys;
+        final int[] indexOffsets;
+        final byte[][] rangeBegins;
+        final byte[][] rangeEnds;
+
+        private Segment(File file, ByteBuffer buffer, int recordsEnd, long recordCount, byte[][] indexKeys,
+                        int[] indexOffsets, byte[][] rangeBegins, byte[][] rangeEnds) {
+            this.file = file;
+            this.buffer = buffer;
+            this.recordsEnd = recordsEnd;
+            this.recordCount = recordCount;
+            this.indexKeys = indexKeys;
+            this.indexOffsets = indexOffsets;
+            this.rangeBegins = rangeBegins;
+            this.rangeEnds = rangeEnds;
+        }
+
+        static Segment open(File file) throws IOException {
+            ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long length = channel.size();
+                if (length < FOOTER_SIZE || length > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid size of run file " + file + ": " + length);
+                }
+                buffer = channel.map(MapMode.READ_ONLY, 0, length);
+            }
+
+            int footer = buffer.limit() - FOOTER_SIZE;
+            if (buffer.getInt(footer + 20) != SEGMENT_MAGIC) {
+                throw new IOException("Invalid run file " + file);
+            }
+            int recordsEnd = buffer.getInt(footer);
+            int indexOffset = buffer.getInt(footer + 4);
+            int rangesOffset = buffer.getInt(footer + 8);
+            long recordCount = buffer.getLong(footer + 12);
+
+            ByteBuffer in = buffer.duplicate();
+            in.position(indexOffset);
+            int indexCount = in.getInt();
+            byte[][] indexKeys = new byte[indexCount][];
+            int[] indexOffsets = new int[indexCount];
+            for (int i = 0; i < indexCount; i++) {
+                indexKeys[i] = readBytes(in);
+                indexOffsets[i] = in.getInt();
+            }
+
+            in.position(rangesOffset);
+            int rangeCount = in.getInt();
+            byte[][] rangeBegins = new byte[rangeCount][];
+            byte[][] rangeEnds = new byte[rangeCount][];
+            for (int i = 0; i < rangeCount; i++) {
+                rangeBegins[i] = readBytes(in);
+                rangeEnds[i] = readBytes(in);
+            }
+            return new Segment(file, buffer, recordsEnd, recordCount, indexKeys, indexOffsets, rangeBegins,
+                    rangeEnds);
+        }
+
+        private static byte[] readBytes(ByteBuffer in) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            return bytes;
+        }
+
+        byte[] firstKey() {
+            return indexKeys.length > 0 ? indexKeys[0] : null;
+        }
+
+        private int nextRecord(int offset) {
+            return offset + 2 * Integer.BYTES + buffer.getInt(offset) + Math.max(buffer.getInt(offset + 4), 0);
+        }
+
+        private int compareKeyAt(int offset, byte[] key) {
+            int keyLength = buffer.getInt(offset);
+            int start = offset + 2 * Integer.BYTES;
+            int length = Math.min(keyLength, key.length);
+            for (int i = 0; i < length; i++) {
+                int cmp = Integer.compare(buffer.get(start + i) & 0xff, key[i] & 0xff);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return Integer.compare(keyLength, key.length);
+        }
+
+        Record readRecord(int offset) {
+            int keyLength = buffer.getInt(offset);
+            int valueLength = buffer.getInt(offset + 4);
+            ByteBuffer in = buffer.duplicate();
+            in.position(offset + 2 * Integer.BYTES);
+            byte[] key = new byte[keyLength];
+            in.get(key);
+            byte[] value = null;
+            if (valueLength != DELETED_LENGTH) {
+                value = new byte[valueLength];
+                in.get(value);
+            }
+            return new Record(key, value);
+        }
+
+        /**
+         * @return the index of the last key of the sparse index lower than (or equal to, if inclusive) the key
+         */
+        private int indexFloor(byte[] key, boolean inclusive) {
+            int low = 0;
+            int high = indexKeys.length - 1;
+            int result = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = KEY_COMPARATOR.compare(indexKeys[mid], key);
+                if (cmp < 0 || (inclusive && cmp == 0)) {
+                    result = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return result;
+        }
+
+        Record get(byte[] key) {
+            int i = indexFloor(key, true);
+            if (i < 0) {
+                return null;
+            }
+            for (int offset = indexOffsets[i]; offset < recordsEnd; offset = nextRecord(offset)) {
+                int cmp = compareKeyAt(offset, key);
+                if (cmp == 0) {
+                    return readRecord(offset);
+                } else if (cmp > 0) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        Record ceiling(byte[] key) {
+            int i = indexFloor(key, true);
+            for (int offset = i < 0 ? 0 : indexOffsets[i]; offset < recordsEnd; offset = nextRecord(offset)) {
+                if (compareKeyAt(offset, key) >= 0) {
+                    return readRecord(offset);
+                }
+            }
+            return null;
+        }
+
+        Record lower(byte[] key) {
+            int i = indexFloor(key, false);
+            if (i < 0) {
+                return null;
+            }
+            int found = indexOffsets[i];
+            for (int offset = nextRecord(found); offset < recordsEnd && compareKeyAt(offset, key) < 0;
+                 offset = nextRecord(offset)) {
+                found = offset;
+            }
+            return readRecord(found);
+        }
+    }
+
+    private static final class SegmentWriter {
+        private final File file;
+        private final FileOutputStream fileStream;
+        private final DataOutputStream out;
+        private final List<byte[]> indexKeys = new ArrayList<>();
+        private final List<Integer> indexOffsets = new ArrayList<>();
+        private long recordCount = 0;
+        private int offset = 0;
+        private boolean closed = false;
+
+        SegmentWriter(File file) throws IOException {
+            this.file = file;
+            this.fileStream = new FileOutputStream(file);
+            this.out = new DataOutputStream(new BufferedOutputStream(fileStream, 1024 * 1024));
+        }
+
+        void add(Record record) throws IOException {
+            if (recordCount % INDEX_INTERVAL == 0) {
+                indexKeys.add(record.key);
+                indexOffsets.add(offset);
+            }
+            out.writeInt(record.key.length);
+            out.writeInt(record.value != null ? record.value.length : DELETED_LENGTH);
+            out.write(record.key);
+            if (record.value != null) {
+                out.write(record.value);
+            }
+            offset += 2 * Integer.BYTES + record.key.length + (record.value != null ? record.value.length : 0);
+            recordCount++;
+        }
+
+        Segment finish(NavigableMap<byte[], byte[]> deletedRanges) throws IOException {
+            int recordsEnd = offset;
+            int indexOffset = out.size();
+            out.writeInt(indexKeys.size());
+            for (int i = 0; i < indexKeys.size(); i++) {
+                out.writeInt(indexKeys.get(i).length);
+                out.write(indexKeys.get(i));
+                out.writeInt(indexOffsets.get(i));
+            }
+            int rangesOffset = out.size();
+            out.writeInt(deletedRanges.size());
+            for (Map.Entry<byte[], byte[]> range : deletedRanges.entrySet()) {
+                out.writeInt(range.getKey().length);
+                out.write(range.getKey());
+                out.writeInt(range.getValue().length);
+                out.write(range.getValue());
+            }
+            out.writeInt(recordsEnd);
+            out.writeInt(indexOffset);
+            out.writeInt(rangesOffset);
+            out.writeLong(recordCount);
+            out.writeInt(SEGMENT_MAGIC);
+            out.flush();
+            fileStream.getFD().sync();
+            close();
+            return Segment.open(file);
+        }
+
+        void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                out.close();
+            }
+        }
+    }
+
+    private static final class Run implements Source {
+        final long id;
+        // Sequences of the first and last memory tables written to the run
+        final long firstSeq;
+        final long lastSeq;
+        final List<Segment> segments;
+        // Segments holding records, ordered by key
+        final List<Segment> nonEmptySegments = new ArrayList<>();
+        final byte[][] rangeBegins;
+        final byte[][] rangeEnds;
+        final long recordCount;
+        final long size;
+
+        Run(long id, long firstSeq, long lastSeq, List<Segment> segments) {
+            this.id = id;
+            this.firstSeq = firstSeq;
+            this.lastSeq = lastSeq;
+            this.segments = segments;
+            long count = 0;
+            long bytes = 0;
+            for (Segment segment : segments) {
+                if (segment.recordCount > 0) {
+                    nonEmptySegments.add(segment);
+                }
+                count += segment.recordCount;
+                bytes += segment.buffer.limit();
+            }
+            this.recordCount = count;
+            this.size = bytes;
+            this.rangeBegins = segments.get(0).rangeBegins;
+            this.rangeEnds = segments.get(0).rangeEnds;
+        }
+
+        /**
+         * @return the index of the last segment whose first key is lower than (or equal to, if inclusive) the key
+         */
+        private int segmentFloor(byte[] key, boolean inclusive) {
+            int low = 0;
+            int high = nonEmptySegments.size() - 1;
+            int result = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = KEY_COMPARATOR.compare(nonEmptySegments.get(mid).firstKey(), key);
+                if (cmp < 0 || (inclusive && cmp == 0)) {
+                    result = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public Record get(byte[] key) {
+            int i = segmentFloor(key, true);
+            return i >= 0 ? nonEmptySegments.get(i).get(key) : null;
+        }
+
+        @Override
+        public Record ceiling(byte[] key) {
+            for (int i = Math.max(segmentFloor(key, true), 0); i < nonEmptySegments.size(); i++) {
+                Record record = nonEmptySegments.get(i).ceiling(key);
+                if (record != null) {
+                    return record;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Record lower(byte[] key) {
+            int i = segmentFloor(key, false);
+            return i >= 0 ? nonEmptySegments.get(i).lower(key) : null;
+        }
+
+        @Override
+        public byte[][] deletedRange(byte[] key) {
+            int low = 0;
+            int high = rangeBegins.length - 1;
+            int floor = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (KEY_COMPARATOR.compare(rangeBegins[mid], key) <= 0) {
+                    floor = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (floor >= 0 && KEY_COMPARATOR.compare(key, rangeEnds[floor]) < 0) {
+                return new byte[][] {rangeBegins[floor], rangeEnds[floor]};
+            }
+            return null;
+        }
+
+        Iterator<Record> records() {
+            return new Iterator<Record>() {
+                private int segment = 0;
+                private int offset = 0;
+
+                @Override
+                public boolean hasNext() {
+                    while (segment < nonEmptySegments.size() && offset >= nonEmptySegments.get(segment).recordsEnd) {
+                        segment++;
+                        offset = 0;
+                    }
+                    return segment < nonEmptySegments.size();
+                }
+
+                @Override
+                public Record next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Segment current = nonEmptySegments.get(segment);
+                    Record record = current.readRecord(offset);
+                    offset = current.nextRecord(offset);
+                    return record;
+                }
+            };
+        }
+    }
+
+    /**
+     * Merge the records of consecutive runs, keeping the newest version of each key, and dropping the keys
+     * deleted by a newer run of the merge.
+     */
+    private static final class MergeIterator implements Iterator<Record> {
+        private final List<Run> runs;
+        private final boolean oldest;
+        private final PriorityQueue<Cursor> queue;
+        private Record next;
+
+        private static final class Cursor {
+            final int run;
+            final Iterator<Record> records;
+            Record current;
+
+            Cursor(int run, Iterator<Record> records) {
+                this.run = run;
+                this.records = records;
+            }
+
+            boolean advance() {
+                current = records.hasNext() ? records.next() : null;
+                return current != null;
+            }
+        }
+
+        MergeIterator(List<Run> runs, boolean oldest) {
+            this.runs = runs;
+            this.oldest = oldest;
+            this.queue = new PriorityQueue<>(Math.max(runs.size(), 1), (a, b) -> {
+                int cmp = KEY_COMPARATOR.compare(a.current.key, b.current.key);
+                return cmp != 0 ? cmp : Integer.compare(a.run, b.run);
+            });
+            for (int i = 0; i < runs.size(); i++) {
+                Cursor cursor = new Cursor(i, runs.get(i).records());
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            this.next = advance();
+        }
+
+        private Record advance() {
+            while (!queue.isEmpty()) {
+                Cursor newest = queue.poll();
+                Record record = newest.current;
+                if (newest.advance()) {
+                    queue.add(newest);
+                }
+                // Skip the older versions of the key
+                while (!queue.isEmpty() && KEY_COMPARATOR.compare(queue.peek().current.key, record.key) == 0) {
+                    Cursor older = queue.poll();
+                    if (older.advance()) {
+                        queue.add(older);
+                    }
+                }
+
+                if (isDeletedByNewer(newest.run, record.key) || (record.value == null && oldest)) {
+                    continue;
+                }
+                return record;
+            }
+            return null;
+        }
+
+        private boolean isDeletedByNewer(int run, byte[] key) {
+            for (int i = 0; i < run; i++) {
+                if (runs.get(i).deletedRange(key) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Record next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Record record = next;
+            next = advance();
+            return record;
+        }
+    }
+
+    /**
+     * Iterates over the visible records of a snapshot of the storage, from the first key (included) to the last
+     * key (excluded, no limit if null).
+     */
+    private final class RecordIterator {
+        private final List<Source> sources = version.sources;
+        private final byte[] lastKey;
+        private Record next;
+
+        RecordIterator(byte[] firstKey, byte[] lastKey) {
+            this.lastKey = lastKey;
+            this.next = find(firstKey);
+        }
+
+        private Record find(byte[] key) {
+            Record record = read(() -> ceilingVisible(sources, key));
+            if (record == null || (lastKey != null && KEY_COMPARATOR.compare(record.key, lastKey) >= 0)) {
+                return null;
+            }
+            return record;
+        }
+
+        boolean hasNext() {
+            return next != null;
+        }
+
+        Record next() {
+            checkState(next != null);
+            Record record = next;
+            next = find(successor(record.key));
+            return record;
+        }
+    }
+
+    /**
+     * Snapshot of the memory tables and runs, from the newest to the oldest.
+     */
+    private static final class Version {
+        final MemTable active;
+        final List<MemTable> immutables;
+        final List<Run> runs;
+        final List<Source> sources;
+
+        Version(MemTable active, List<MemTable> immutables, List<Run> runs) {
+            this.active = active;
+            this.immutables = immutables;
+            this.runs = runs;
+            List<Source> all = new ArrayList<>(1 + immutables.size() + runs.size());
+            all.add(active);
+            all.addAll(immutables);
+            all.addAll(runs);
+            this.sources = all;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(KeyValueStorageSortedRuns.class);
+}
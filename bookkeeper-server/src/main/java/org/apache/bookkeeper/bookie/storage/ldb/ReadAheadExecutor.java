@@ -0,0 +1,126 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.stats.ThreadRegistry;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Runs the read-ahead of a ledger directory in the background, so that a read that misses the
+ * read cache can return as soon as its own entry has been read from the entry log.
+ *
+ * <p>Prefetches are executed by a single thread, fed by a bounded queue. Since read-ahead is only an
+ * optimization, requests are dropped when the queue is full. A request is also skipped when its first
+ * entry is already covered by a prefetch in flight for the same ledger, which happens when a reader
+ * catches up with the prefetcher and keeps missing the cache.
+ */
+@Slf4j
+class ReadAheadExecutor {
+
+    private static final String READ_AHEAD_THREAD_NAME = "db-storage-read-ahead";
+    private static final long SHUTDOWN_WAIT_SECONDS = 1;
+
+    private static final class InFlightRange {
+        final long firstEntryId;
+        final long lastEntryId;
+
+        InFlightRange(long firstEntryId, long lastEntryId) {
+            this.firstEntryId = firstEntryId;
+            this.lastEntryId = lastEntryId;
+        }
+
+        boolean contains(long entryId) {
+            return entryId >= firstEntryId && entryId <= lastEntryId;
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final DbLedgerStorageStats stats;
+
+    // Most recent prefetch queued or running for each ledger
+    private final ConcurrentLongHashMap<InFlightRange> inFlightRanges =
+            ConcurrentLongHashMap.<InFlightRange>newBuilder()
+                    .expectedItems(1024)
+                    .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+                    .build();
+
+    ReadAheadExecutor(int queueSize, DbLedgerStorageStats stats) {
+        this.stats = stats;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new DefaultThreadFactory(READ_AHEAD_THREAD_NAME));
+        executor.execute(() -> ThreadRegistry.register(READ_AHEAD_THREAD_NAME, 0));
+    }
+
+    /**
+     * Schedule the prefetch of up to <i>batchSize</i> entries of a ledger, starting at <i>firstEntryId</i>.
+     *
+     * @return false if the prefetch was skipped, either because the same range is already being
+     *         prefetched or because the queue is full
+     */
+    boolean submit(long ledgerId, long firstEntryId, int batchSize, Runnable prefetch) {
+        InFlightRange range = new InFlightRange(firstEntryId, firstEntryId + batchSize - 1);
+        InFlightRange inFlight = inFlightRanges.putIfAbsent(ledgerId, range);
+        if (inFlight != null) {
+            if (inFlight.contains(firstEntryId)) {
+                stats.getReadAheadDeduplicatedCounter().inc();
+                return false;
+            }
+            // A different part of the ledger is being read, keep track of the latest prefetch only
+            inFlightRanges.put(ledgerId, range);
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    prefetch.run();
+                } finally {
+                    inFlightRanges.remove(ledgerId, range);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlightRanges.remove(ledgerId, range);
+            stats.getReadAheadRejectedCounter().inc();
+            return false;
+        }
+    }
+
+    /**
+     * Drop the pending prefetches and wait for the one being executed, so that the entry logger can be
+     * closed once this returns.
+     */
+    void shutdown() throws InterruptedException {
+        // The prefetch thread must not be interrupted, since that would close the entry log channel it
+        // is reading from. A prefetch reads a bounded batch of entries, so it completes shortly
+        executor.getQueue().clear();
+        executor.shutdown();
+        while (!executor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+            log.warn("Waiting for the read-ahead in progress to complete before closing the entry logger");
+        }
+        inFlightRanges.clear();
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Decides how many entries to read ahead after a read cache miss, based on the way each ledger is read.
+ *
+ * <p>For every ledger it keeps track of the last prefetched window and of the sequential streak of
+ * the reads. When a read misses the cache:
+ * <ul>
+ * <li>if most of the previous window was never read, the batch size of the ledger is halved, until
+ * read-ahead gets disabled;</li>
+ * <li>if the reader went past the end of the previous window, the batch size is doubled, up to
+ * the max batch size;</li>
+ * <li>if read-ahead was disabled, it is enabled again once the ledger is read sequentially for
+ * a few entries.</li>
+ * </ul>
+ *
+ * <p>When not adaptive, the policy always returns the initial batch size, but it still tracks
+ * the prefetch hits and the wasted prefetched entries.
+ */
+class ReadAheadPolicy {
+
+    // Number of consecutive sequential reads after which read-ahead is re-enabled for a ledger
+    static final int SEQUENTIAL_STREAK_THRESHOLD = 3;
+
+    private static final long STALE_STATE_NANOS = TimeUnit.MINUTES.toNanos(
+            TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES);
+
+    private final boolean adaptive;
+    private final int initialBatchSize;
+    private final int maxBatchSize;
+    private final DbLedgerStorageStats stats;
+
+    private final ConcurrentLongHashMap<LedgerReadState> ledgers = ConcurrentLongHashMap.<LedgerReadState>newBuilder()
+            .expectedItems(16 * 1024)
+            .concurrencyLevel(Runtime.getRuntime().availableProcessors() * 2)
+            .build();
+
+    ReadAheadPolicy(boolean adaptive, int initialBatchSize, int maxBatchSize, DbLedgerStorageStats stats) {
+        this.adaptive = adaptive;
+        this.initialBatchSize = initialBatchSize;
+        this.maxBatchSize = Math.max(initialBatchSize, maxBatchSize);
+        this.stats = stats;
+    }
+
+    /**
+     * Record a read that was served by the read cache.
+     */
+    void onCacheHit(long ledgerId, long entryId) {
+        LedgerReadState state = ledgers.get(ledgerId);
+        if (state != null) {
+            state.onCacheHit(entryId);
+        }
+    }
+
+    /**
+     * Record a read that missed the read cache.
+     *
+     * @return the number of entries to read ahead after <i>entryId</i>, 0 to skip read-ahead
+     */
+    int onCacheMiss(long ledgerId, long entryId) {
+        return ledgers.computeIfAbsent(ledgerId, id -> new LedgerReadState(initialBatchSize))
+                .onCacheMiss(entryId);
+    }
+
+    /**
+     * Record the entries that were actually prefetched after a miss.
+     */
+    void onReadAhead(long ledgerId, long firstEntryId, int count) {
+        LedgerReadState state = ledgers.get(ledgerId);
+        if (state != null && count > 0) {
+            state.onReadAhead(firstEntryId, count);
+        }
+    }
+
+    void ledgerDeleted(long ledgerId) {
+        ledgers.remove(ledgerId);
+    }
+
+    /**
+     * Forget about the ledgers that were not read recently.
+     */
+    void cleanupStaleLedgers() {
+        long now = MathUtils.nowInNano();
+        ledgers.removeIf((ledgerId, state) -> now - state.lastAccessNanos > STALE_STATE_NANOS);
+    }
+
+    private class LedgerReadState {
+        int batchSize;
+        long lastEntryRead = -1;
+        int sequentialStreak = 0;
+        // Window of entries prefetched after the last miss, empty when windowStart > windowEnd
+        long windowStart = 0;
+        long windowEnd = -1;
+        // Highest entry of the window that was read
+        long windowConsumed = -1;
+        volatile long lastAccessNanos = MathUtils.nowInNano();
+
+        LedgerReadState(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        synchronized void onCacheHit(long entryId) {
+            recordRead(entryId);
+            if (entryId >= windowStart && entryId <= windowEnd) {
+                stats.getReadAheadHitCounter().inc();
+                windowConsumed = Math.max(windowConsumed, entryId);
+            }
+        }
+
+        synchronized int onCacheMiss(long entryId) {
+            recordRead(entryId);
+
+            if (windowEnd >= windowStart) {
+                long consumed = Math.max(windowConsumed, windowStart - 1);
+                long wasted = windowEnd - consumed;
+                if (wasted > 0) {
+                    stats.getReadAheadWastedCounter().addCount(wasted);
+                }
+                if (adaptive) {
+                    if (wasted > (windowEnd - windowStart + 1) / 2) {
+                        batchSize /= 2;
+                    } else if (entryId == windowEnd + 1) {
+                        batchSize = Math.min(maxBatchSize, Math.max(1, batchSize * 2));
+                    }
+                }
+                windowStart = 0;
+                windowEnd = -1;
+                windowConsumed = -1;
+            }
+
+            if (adaptive && batchSize == 0 && sequentialStreak >= SEQUENTIAL_STREAK_THRESHOLD) {
+                batchSize = 1;
+            }
+            return batchSize;
+        }
+
+        synchronized void onReadAhead(long firstEntryId, int count) {
+            windowStart = firstEntryId;
+            windowEnd = firstEntryId + count - 1;
+            windowConsumed = -1;
+        }
+
+        private void recordRead(long entryId) {
+            if (entryId == lastEntryRead + 1) {
+                sequentialStreak++;
+            } else {
+                sequentialStreak = 0;
+            }
+            lastEntryRead = entryId;
+            lastAccessNanos = MathUtils.nowInNano();
+        }
+    }
+}
@@ -28,6 +28,7 @@ import io.netty.buffer.Unpooled;
 import io.netty.util.ReferenceCountUtil;
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -49,7 +50,7 @@ import org.slf4j.LoggerFactory;
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
 
-    private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
+    static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
     private final List<ByteBuf> cacheSegments;
     private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
@@ -57,9 +58,9 @@ public class ReadCache implements Closeable {
     private int currentSegmentIdx;
     private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
 
-    private final int segmentSize;
+    protected final int segmentSize;
 
-    private ByteBufAllocator allocator;
+    protected final ByteBufAllocator allocator;
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
@@ -68,7 +69,7 @@ public class ReadCache implements Closeable {
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
         this.allocator = allocator;
-        int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
+        int segmentsCount = segmentsCount(maxCacheSize, maxSegmentSize);
         segmentSize = (int) (maxCacheSize / segmentsCount);
 
         cacheSegments = new ArrayList<>();
@@ -84,6 +85,20 @@ public class ReadCache implements Closeable {
         }
     }
 
+    /**
+     * Constructor for subclasses that manage the cache segments on their own.
+     */
+    protected ReadCache(ByteBufAllocator allocator, int segmentSize) {
+        this.allocator = allocator;
+        this.segmentSize = segmentSize;
+        this.cacheSegments = Collections.emptyList();
+        this.cacheIndexes = Collections.emptyList();
+    }
+
+    static int segmentsCount(long maxCacheSize, int maxSegmentSize) {
+        return Math.max(2, (int) (maxCacheSize / maxSegmentSize));
+    }
+
     @Override
     public void close() {
         cacheSegments.forEach(ReferenceCountUtil::safeRelease);
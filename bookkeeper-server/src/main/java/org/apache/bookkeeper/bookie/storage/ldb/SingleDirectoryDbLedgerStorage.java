@@ -40,6 +40,7 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -140,9 +141,19 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
     private final long maxReadAheadBytesSize;
+    private final ReadAheadPolicy readAheadPolicy;
+    // Runs the read-ahead in the background, null when read-ahead is done inline by the reading thread
+    private final ReadAheadExecutor readAheadExecutor;
+    // Locations of the entries of recently flushed ledgers, null when disabled
+    private final EntryLocationCache locationCache;
+
+    private final EntryCompression entryCompression;
 
     private final Counter flushExecutorTime;
 
+    private static final int DEFAULT_READ_AHEAD_CACHE_QUEUE_SIZE = 64;
+    private static final int DEFAULT_ENTRY_COMPRESSION_MIN_SIZE = 256;
+
     public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
                                           LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
                                           EntryLogger entryLogger, StatsLogger statsLogger, ByteBufAllocator allocator,
@@ -168,25 +179,41 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 .scopeLabel("indexDir", indexBaseDir);
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        boolean writeCacheSortedRuns = conf.getBoolean(DbLedgerStorage.WRITE_CACHE_SORTED_RUNS, false);
+        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2, writeCacheSortedRuns);
+        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2, writeCacheSortedRuns);
 
         readCacheMaxSize = readCacheSize;
         this.readAheadCacheBatchSize = readAheadCacheBatchSize;
 
         // Do not attempt to perform read-ahead more than half the total size of the cache
-        maxReadAheadBytesSize = readCacheMaxSize / 2;
+        long readAheadBatchBytesSize = conf.getLong(DbLedgerStorage.READ_AHEAD_CACHE_BATCH_BYTES_SIZE, -1);
+        maxReadAheadBytesSize = readAheadBatchBytesSize > 0
+                ? Math.min(readAheadBatchBytesSize, readCacheMaxSize / 2) : readCacheMaxSize / 2;
 
         long maxThrottleTimeMillis = conf.getLong(DbLedgerStorage.MAX_THROTTLE_TIME_MILLIS,
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        if (conf.getBoolean(DbLedgerStorage.READ_CACHE_ZERO_COPY, false)) {
+            readCache = new ZeroCopyReadCache(allocator, readCacheMaxSize);
+        } else {
+            readCache = new ReadCache(allocator, readCacheMaxSize);
+        }
+
+        entryCompression = new EntryCompression(
+                EntryCompression.Codec.fromName(conf.getString(DbLedgerStorage.ENTRY_COMPRESSION_CODEC, "none")),
+                conf.getInt(DbLedgerStorage.ENTRY_COMPRESSION_MIN_SIZE, DEFAULT_ENTRY_COMPRESSION_MIN_SIZE),
+                allocator);
+
+        long locationCacheMaxEntries = conf.getLong(DbLedgerStorage.LOCATION_CACHE_MAX_ENTRIES, 0);
+        locationCache = locationCacheMaxEntries > 0 ? new EntryLocationCache(locationCacheMaxEntries) : null;
 
         ledgerIndex = new LedgerMetadataIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
         entryLocationIndex = new EntryLocationIndex(conf,
-                KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
+                DbLedgerStorage.getLocationsIndexStorageFactory(conf, false), indexBaseDir,
+                ledgerIndexDirStatsLogger, isLocationsIndexCompactFormat(conf, indexBaseDir));
 
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
@@ -205,11 +232,28 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             () -> writeCache.size() + writeCacheBeingFlushed.size(),
             () -> writeCache.count() + writeCacheBeingFlushed.count(),
             () -> readCache.size(),
-            () -> readCache.count()
+            () -> readCache.count(),
+            () -> locationCache != null ? locationCache.count() : 0L
         );
 
         flushExecutorTime = ledgerIndexDirStatsLogger.getThreadScopedCounter("db-storage-thread-time");
 
+        readAheadPolicy = new ReadAheadPolicy(
+                conf.getBoolean(DbLedgerStorage.READ_AHEAD_CACHE_ADAPTIVE, false),
+                readAheadCacheBatchSize,
+                conf.getInt(DbLedgerStorage.READ_AHEAD_CACHE_MAX_BATCH_SIZE, 8 * readAheadCacheBatchSize),
+                dbLedgerStorageStats);
+        cleanupExecutor.scheduleAtFixedRate(readAheadPolicy::cleanupStaleLedgers,
+                TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES,
+                TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
+        if (conf.getBoolean(DbLedgerStorage.READ_AHEAD_CACHE_ASYNC, false)) {
+            readAheadExecutor = new ReadAheadExecutor(
+                    conf.getInt(DbLedgerStorage.READ_AHEAD_CACHE_QUEUE_SIZE, DEFAULT_READ_AHEAD_CACHE_QUEUE_SIZE),
+                    dbLedgerStorageStats);
+        } else {
+            readAheadExecutor = null;
+        }
+
         executor.submit(() -> {
             ThreadRegistry.register(dbStoragerExecutorName, 0);
             // ensure the metric gets registered on start-up as this thread only executes
@@ -331,6 +375,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         try {
             flush();
 
+            if (readAheadExecutor != null) {
+                readAheadExecutor.shutdown();
+            }
             gcThread.shutdown();
             entryLogger.close();
 
@@ -396,7 +443,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
 
         // Read from main storage
-        long entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+        long entryLocation = getEntryLocation(ledgerId, entryId);
         if (entryLocation != 0) {
             return true;
         }
@@ -493,7 +540,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // after successfully insert the entry, update LAC and notify the watchers
         updateCachedLacIfNeeded(ledgerId, lac);
 
-        recordSuccessfulEvent(dbLedgerStorageStats.getAddEntryStats(), startTime);
+        long latencyNanos = MathUtils.elapsedNanos(startTime);
+        dbLedgerStorageStats.getAddEntryStats().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+        gcThread.recordForegroundLatency(latencyNanos);
         return entryId;
     }
 
@@ -553,7 +602,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         long startTime = MathUtils.nowInNano();
         try {
             ByteBuf entry = doGetEntry(ledgerId, entryId);
-            recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            long latencyNanos = MathUtils.elapsedNanos(startTime);
+            dbLedgerStorageStats.getReadEntryStats().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            gcThread.recordForegroundLatency(latencyNanos);
             return entry;
         } catch (IOException e) {
             recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
@@ -607,16 +658,18 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         entry = readCache.get(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getReadCacheHitCounter().inc();
+            readAheadPolicy.onCacheHit(ledgerId, entryId);
             return entry;
         }
 
         dbLedgerStorageStats.getReadCacheMissCounter().inc();
+        int readAheadBatchSize = readAheadPolicy.onCacheMiss(ledgerId, entryId);
 
         // Read from main storage
         long entryLocation;
         long locationIndexStartNano = MathUtils.nowInNano();
         try {
-            entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+            entryLocation = getEntryLocation(ledgerId, entryId);
             if (entryLocation == 0) {
                 // Only a negative result while in limbo equates to unknown
                 throwIfLimbo(ledgerId);
@@ -629,8 +682,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
 
         long readEntryStartNano = MathUtils.nowInNano();
+        int storedSize;
         try {
             entry = entryLogger.readEntry(ledgerId, entryId, entryLocation);
+            storedSize = entry.readableBytes();
+            entry = entryCompression.decompress(entry);
         } finally {
             dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
                     MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
@@ -639,13 +695,37 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         readCache.put(ledgerId, entryId, entry);
 
         // Try to read more entries
-        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        if (readAheadBatchSize > 0) {
+            long nextEntryLocation = entryLocation + 4 /* size header */ + storedSize;
+            if (readAheadExecutor != null) {
+                // Return the entry right away and fill the read cache in the background
+                readAheadExecutor.submit(ledgerId, entryId + 1, readAheadBatchSize, () -> {
+                    int count = fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation, readAheadBatchSize);
+                    readAheadPolicy.onReadAhead(ledgerId, entryId + 1, count);
+                });
+            } else {
+                int count = fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation, readAheadBatchSize);
+                readAheadPolicy.onReadAhead(ledgerId, entryId + 1, count);
+            }
+        }
 
         return entry;
     }
 
-    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
+    private long getEntryLocation(long ledgerId, long entryId) throws IOException {
+        if (locationCache != null) {
+            long location = locationCache.get(ledgerId, entryId);
+            if (location != 0) {
+                dbLedgerStorageStats.getLocationCacheHitCounter().inc();
+                return location;
+            }
+            dbLedgerStorageStats.getLocationCacheMissCounter().inc();
+        }
+        return entryLocationIndex.getLocation(ledgerId, entryId);
+    }
+
+    private int fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation,
+                                   int batchSize) {
         long readAheadStartNano = MathUtils.nowInNano();
         int count = 0;
         long size = 0;
@@ -655,20 +735,28 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             long currentEntryLogId = firstEntryLogId;
             long currentEntryLocation = firstEntryLocation;
 
-            while (count < readAheadCacheBatchSize
+            while (count < batchSize
                     && size < maxReadAheadBytesSize
                     && currentEntryLogId == firstEntryLogId) {
-                ByteBuf entry = entryLogger.readEntry(orginalLedgerId,
-                        firstEntryId, currentEntryLocation);
-
+                ByteBuf entry;
                 try {
-                    long currentEntryLedgerId = entry.getLong(0);
-                    long currentEntryId = entry.getLong(8);
+                    entry = entryLogger.readEntry(currentEntryLocation);
+                } catch (NoEntryException e) {
+                    // Reached the end of the entry log
+                    break;
+                }
+                int storedSize = entry.readableBytes();
+                long currentEntryLedgerId = entry.getLong(0);
+                long currentEntryId = entry.getLong(8);
+                if (currentEntryLedgerId != orginalLedgerId || currentEntryId != firstEntryId) {
+                    // Found an entry belonging to a different ledger, or not the next one of the ledger, stopping
+                    // the sequential read-ahead
+                    ReferenceCountUtil.release(entry);
+                    break;
+                }
+                entry = entryCompression.decompress(entry);
 
-                    if (currentEntryLedgerId != orginalLedgerId) {
-                        // Found an entry belonging to a different ledger, stopping read-ahead
-                        break;
-                    }
+                try {
 
                     // Insert entry in read cache
                     readCache.put(orginalLedgerId, currentEntryId, entry);
@@ -677,22 +765,48 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                     firstEntryId++;
                     size += entry.readableBytes();
 
-                    currentEntryLocation += 4 + entry.readableBytes();
+                    currentEntryLocation += 4 + storedSize;
                     currentEntryLogId = currentEntryLocation >> 32;
                 } finally {
                     ReferenceCountUtil.release(entry);
                 }
             }
-        } catch (Exception e) {
-            if (log.isDebugEnabled()) {
-                log.debug("Exception during read ahead for ledger: {}: e", orginalLedgerId, e);
+
+            if (count < batchSize && size < maxReadAheadBytesSize) {
+                // The next entries were not written right after the previous ones, either because they were
+                // flushed at a different time or because the entry log was rolled. Look up the locations of
+                // the rest of the batch at once, and read the entries from there
+                long[] locations = entryLocationIndex.getLocations(orginalLedgerId, firstEntryId,
+                        firstEntryId + (batchSize - count) - 1);
+                for (int i = 0; i < locations.length && size < maxReadAheadBytesSize; i++) {
+                    if (locations[i] == 0) {
+                        // Entry not flushed yet, or not stored in this bookie
+                        break;
+                    }
+
+                    ByteBuf entry = entryCompression.decompress(
+                            entryLogger.readEntry(orginalLedgerId, firstEntryId, locations[i]));
+                    try {
+                        readCache.put(orginalLedgerId, firstEntryId, entry);
+                        count++;
+                        firstEntryId++;
+                        size += entry.readableBytes();
+                    } finally {
+                        ReferenceCountUtil.release(entry);
+                    }
+                }
             }
+        } catch (Exception e) {
+            // The entry was already returned to the reader, so the read-ahead only stops here
+            dbLedgerStorageStats.getReadAheadErrorCounter().inc();
+            log.warn("Failed to read ahead entry {}@{}", orginalLedgerId, firstEntryId, e);
         } finally {
             dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
             dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
             dbLedgerStorageStats.getReadAheadTime().addLatency(
                     MathUtils.elapsedNanos(readAheadStartNano), TimeUnit.NANOSECONDS);
         }
+        return count;
     }
 
     public ByteBuf getLastEntry(long ledgerId) throws IOException, BookieException {
@@ -745,17 +859,34 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             log.debug("Found last entry for ledger {} in db: {}", ledgerId, lastEntryId);
         }
 
-        long entryLocation = entryLocationIndex.getLocation(ledgerId, lastEntryId);
+        long entryLocation = getEntryLocation(ledgerId, lastEntryId);
         dbLedgerStorageStats.getReadFromLocationIndexTime().addLatency(
                 MathUtils.elapsedNanos(locationIndexStartNano), TimeUnit.NANOSECONDS);
 
         long readEntryStartNano = MathUtils.nowInNano();
-        ByteBuf content = entryLogger.readEntry(ledgerId, lastEntryId, entryLocation);
+        ByteBuf content = entryCompression.decompress(entryLogger.readEntry(ledgerId, lastEntryId, entryLocation));
         dbLedgerStorageStats.getReadFromEntryLogTime().addLatency(
                 MathUtils.elapsedNanos(readEntryStartNano), TimeUnit.NANOSECONDS);
         return content;
     }
 
+    /**
+     * Add an entry of the write cache being flushed to the entry logger, compressed if it shrinks.
+     */
+    private long addEntryToLog(long ledgerId, ByteBuf entry) throws IOException {
+        ByteBuf compressed = entryCompression.compress(entry);
+        if (compressed == null) {
+            return entryLogger.addEntry(ledgerId, entry);
+        }
+        try {
+            dbLedgerStorageStats.getFlushCompressedOriginalBytes().addCount(entry.readableBytes());
+            dbLedgerStorageStats.getFlushCompressedStoredBytes().addCount(compressed.readableBytes());
+            return entryLogger.addEntry(ledgerId, compressed);
+        } finally {
+            compressed.release();
+        }
+    }
+
     @VisibleForTesting
     boolean isFlushRequired() {
         long stamp = writeCacheRotationLock.readLock();
@@ -801,19 +932,31 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             // Write all the pending entries into the entry logger and collect the offset
             // position for each entry
 
-            Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                long location = entryLogger.addEntry(ledgerId, entry);
-                entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-            });
+            // The ledgers deleted before the swap are skipped by the write cache being flushed, and the ones
+            // deleted since then are skipped by the location cache until the end of this flush
+            Set<Long> deletedLedgers = locationCache != null ? locationCache.deletedLedgers() : null;
+            long batchFlushStartTime;
+            // With the compact format, the batch holds the lock of the location index until it is closed
+            try (Batch batch = entryLocationIndex.newBatch()) {
+                writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
+                    long location = addEntryToLog(ledgerId, entry);
+                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
+                    if (locationCache != null) {
+                        locationCache.put(ledgerId, entryId, location);
+                    }
+                });
+                if (locationCache != null) {
+                    locationCache.forgetDeletedLedgers(deletedLedgers);
+                    locationCache.evictIfNeeded();
+                }
 
-            long entryLoggerStart = MathUtils.nowInNano();
-            entryLogger.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+                long entryLoggerStart = MathUtils.nowInNano();
+                entryLogger.flush();
+                recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
 
-            long batchFlushStartTime = MathUtils.nowInNano();
-            batch.flush();
-            batch.close();
+                batchFlushStartTime = MathUtils.nowInNano();
+                batch.flush();
+            }
             recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
             if (log.isDebugEnabled()) {
                 log.debug("DB batch flushed time : {} s",
@@ -912,6 +1055,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         entryLocationIndex.delete(ledgerId);
         ledgerIndex.delete(ledgerId);
+        if (locationCache != null) {
+            locationCache.deleteLedger(ledgerId);
+        }
 
         for (int i = 0, size = ledgerDeletionListeners.size(); i < size; i++) {
             LedgerDeletionListener listener = ledgerDeletionListeners.get(i);
@@ -922,6 +1068,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         if (tli != null) {
             tli.close();
         }
+        readAheadPolicy.ledgerDeleted(ledgerId);
     }
 
     @Override
@@ -935,6 +1082,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         flush();
 
         entryLocationIndex.updateLocations(locations);
+        if (locationCache != null) {
+            for (EntryLocation e : locations) {
+                locationCache.update(e.ledger, e.entry, e.location);
+            }
+        }
     }
 
     @VisibleForTesting
@@ -1201,9 +1353,39 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private static final Map<StorageState, Integer> stateBitmaps = ImmutableMap.of(
             StorageState.NEEDS_INTEGRITY_CHECK, 0x00000001);
 
+    // Internal flag, set once the locations index is written with the compact format. Older versions
+    // refuse to start on an unknown flag, instead of misreading the index
+    private static final int LOCATIONS_INDEX_COMPACT_FORMAT_FLAG = 0x00010000;
+
+    /**
+     * Check whether the locations index is written with the compact format. Once enabled, the format is
+     * recorded in the storage flags, since an index with compact records can only be read in that format.
+     */
+    private boolean isLocationsIndexCompactFormat(ServerConfiguration conf, String indexBaseDir) throws IOException {
+        if ((ledgerIndex.getStorageStateFlags() & LOCATIONS_INDEX_COMPACT_FORMAT_FLAG) != 0) {
+            if (!conf.getBoolean(DbLedgerStorage.LOCATIONS_INDEX_COMPACT_FORMAT, false)) {
+                log.info("Keep using the compact format for the locations index of {}, since it was enabled before",
+                        indexBaseDir);
+            }
+            return true;
+        }
+        if (!conf.getBoolean(DbLedgerStorage.LOCATIONS_INDEX_COMPACT_FORMAT, false)) {
+            return false;
+        }
+
+        while (true) {
+            int curFlags = ledgerIndex.getStorageStateFlags();
+            if (ledgerIndex.setStorageStateFlags(curFlags, curFlags | LOCATIONS_INDEX_COMPACT_FORMAT_FLAG)) {
+                log.info("Enabled the compact format for the locations index of {}", indexBaseDir);
+                return true;
+            }
+        }
+    }
+
     @Override
     public EnumSet<StorageState> getStorageStateFlags() throws IOException {
-        int flags = ledgerIndex.getStorageStateFlags();
+        // Internal flags are not storage states
+        int flags = ledgerIndex.getStorageStateFlags() & ~LOCATIONS_INDEX_COMPACT_FORMAT_FLAG;
         EnumSet<StorageState> flagsEnum = EnumSet.noneOf(StorageState.class);
         for (Map.Entry<StorageState, Integer> e : stateBitmaps.entrySet()) {
             int value = e.getValue();
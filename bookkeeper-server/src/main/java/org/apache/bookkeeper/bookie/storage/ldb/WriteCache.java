@@ -27,10 +27,12 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
@@ -49,6 +51,12 @@ import org.slf4j.LoggerFactory;
  *
  * <p>There is the possibility to iterate through the stored entries in an ordered
  * way, by (ledgerId, entry).
+ *
+ * <p>By default, the entries are sorted when iterating. With sorted runs, the cache
+ * also appends the position of each entry to a run per ledger as the entries
+ * arrive. Since the entries of a ledger are mostly added in order, the runs are
+ * already sorted, and iterating only needs to sort the ledger ids, and the rare
+ * runs that received entries out of order.
  */
 public class WriteCache implements Closeable {
 
@@ -85,12 +93,23 @@ public class WriteCache implements Closeable {
 
     private final ByteBufAllocator allocator;
 
+    // Entries of each ledger in arrival order, null when the entries are sorted when iterating
+    private final ConcurrentLongHashMap<LedgerRun> ledgerRuns;
+
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize) {
         // Default maxSegmentSize set to 1Gb
         this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024);
     }
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, false);
+    }
+
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, boolean sortedRuns) {
+        this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024, sortedRuns);
+    }
+
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, boolean sortedRuns) {
         checkArgument(maxSegmentSize > 0);
 
         long alignedMaxSegmentSize = alignToPowerOfTwo(maxSegmentSize);
@@ -113,6 +132,13 @@ public class WriteCache implements Closeable {
 
         int lastSegmentSize = (int) (maxCacheSize % maxSegmentSize);
         cacheSegments[segmentsCount - 1] = Unpooled.directBuffer(lastSegmentSize, lastSegmentSize);
+
+        this.ledgerRuns = sortedRuns
+                ? ConcurrentLongHashMap.<LedgerRun>newBuilder()
+                        .expectedItems(4096)
+                        .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                        .build()
+                : null;
     }
 
     public void clear() {
@@ -122,6 +148,9 @@ public class WriteCache implements Closeable {
         index.clear();
         lastEntryMap.clear();
         deletedLedgers.clear();
+        if (ledgerRuns != null) {
+            ledgerRuns.clear();
+        }
     }
 
     @Override
@@ -178,6 +207,9 @@ public class WriteCache implements Closeable {
         }
 
         index.put(ledgerId, entryId, offset, size);
+        if (ledgerRuns != null) {
+            ledgerRuns.computeIfAbsent(ledgerId, LedgerRun::new).append(entryId, offset, size);
+        }
         cacheCount.increment();
         cacheSize.addAndGet(size);
         return true;
@@ -218,6 +250,11 @@ public class WriteCache implements Closeable {
     }
 
     public void forEach(EntryConsumer consumer) throws IOException {
+        if (ledgerRuns != null) {
+            forEachInRuns(consumer);
+            return;
+        }
+
         sortedEntriesLock.lock();
 
         try {
@@ -281,6 +318,56 @@ public class WriteCache implements Closeable {
         }
     }
 
+    private void forEachInRuns(EntryConsumer consumer) throws IOException {
+        sortedEntriesLock.lock();
+
+        try {
+            long startTime = MathUtils.nowInNano();
+
+            long[] ledgerIds = ledgerRuns.keys().stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(ledgerIds);
+
+            ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
+            for (int i = 0; i < segmentsCount; i++) {
+                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+            }
+
+            int unorderedRuns = 0;
+            for (long ledgerId : ledgerIds) {
+                if (deletedLedgers.contains(ledgerId)) {
+                    // Ignore deleted ledgers
+                    continue;
+                }
+
+                LedgerRun run = ledgerRuns.get(ledgerId);
+                if (!run.ordered) {
+                    run.sort();
+                    unorderedRuns++;
+                }
+
+                long[] entries = run.entries;
+                for (int i = 0; i < run.length; i += 4) {
+                    long entryId = entries[i + 1];
+                    long offset = entries[i + 2];
+                    long length = entries[i + 3];
+
+                    int localOffset = (int) (offset & segmentOffsetMask);
+                    int segmentIdx = (int) (offset >>> segmentOffsetBits);
+                    ByteBuf entry = entrySegments[segmentIdx];
+                    entry.setIndex(localOffset, localOffset + (int) length);
+                    consumer.accept(ledgerId, entryId, entry);
+                }
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("entry log adding {} ms, {} ledgers, {} runs sorted", MathUtils.elapsedNanos(startTime) / 1e6,
+                        ledgerIds.length, unorderedRuns);
+            }
+        } finally {
+            sortedEntriesLock.unlock();
+        }
+    }
+
     public long size() {
         return cacheSize.get();
     }
@@ -303,6 +390,67 @@ public class WriteCache implements Closeable {
         return (long) Math.pow(2, 64 - Long.numberOfLeadingZeros(n - 1));
     }
 
+    /**
+     * Positions of the entries of a ledger in the cache, stored like the sorted entries, in groups of
+     * (ledgerId, entryId, offset, length).
+     */
+    private static class LedgerRun {
+        private static final int INITIAL_ENTRIES = 16;
+
+        private final long ledgerId;
+        private long[] entries = new long[INITIAL_ENTRIES * 4];
+        private int length = 0;
+        private long lastEntryId = -1;
+        // Whether the entries were appended in increasing entry id order
+        private boolean ordered = true;
+
+        LedgerRun(long ledgerId) {
+            this.ledgerId = ledgerId;
+        }
+
+        synchronized void append(long entryId, long offset, long size) {
+            if (length == entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[length] = ledgerId;
+            entries[length + 1] = entryId;
+            entries[length + 2] = offset;
+            entries[length + 3] = size;
+            length += 4;
+
+            if (entryId <= lastEntryId) {
+                ordered = false;
+            } else {
+                lastEntryId = entryId;
+            }
+        }
+
+        /**
+         * Sort the run, and only keep the latest copy of the entries that were added more than once.
+         */
+        synchronized void sort() {
+            ArrayGroupSort.sort(entries, 0, length);
+
+            int newLength = 0;
+            for (int i = 0; i < length; i += 4) {
+                if (newLength > 0 && entries[newLength - 3] == entries[i + 1]) {
+                    // Same entry, the copy at the highest offset was added last
+                    if (entries[i + 2] > entries[newLength - 2]) {
+                        entries[newLength - 2] = entries[i + 2];
+                        entries[newLength - 1] = entries[i + 3];
+                    }
+                    continue;
+                }
+                if (newLength != i) {
+                    System.arraycopy(entries, i, entries, newLength, 4);
+                }
+                newLength += 4;
+            }
+            length = newLength;
+            ordered = true;
+        }
+    }
+
     private final ReentrantLock sortedEntriesLock = new ReentrantLock();
     private long[] sortedEntries;
     private int sortedEntriesIdx;
@@ -0,0 +1,272 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read cache implementation that never takes a lock on the read path and never copies entries out.
+ *
+ * <p>Like {@link ReadCache}, the memory is split in segments used in a ring-buffer fashion, but
+ * every time a segment is (re)filled it gets a new, monotonically increasing, epoch. A single index
+ * maps each entry to its position and to the epoch of the segment it was written to, so that
+ * lookups do not need to probe the segments one by one: an entry whose epoch does not match the
+ * one of the segment currently in its slot has been evicted.
+ *
+ * <p>Cache hits return a slice of the segment buffer, which holds a reference to it. When a segment
+ * is rotated while slices are still referencing it, its buffer is left to the readers and a new one
+ * is allocated, so the memory used by the cache can temporarily exceed its maximum size.
+ * Callers must not modify the returned buffers.
+ */
+public class ZeroCopyReadCache extends ReadCache {
+    private static final Logger log = LoggerFactory.getLogger(ZeroCopyReadCache.class);
+
+    private static final class Segment {
+        final long epoch;
+        final ByteBuf buffer;
+        final AtomicInteger offset = new AtomicInteger(0);
+
+        Segment(long epoch, ByteBuf buffer) {
+            this.epoch = epoch;
+            this.buffer = buffer;
+        }
+    }
+
+    private final AtomicReferenceArray<Segment> segments;
+    @VisibleForTesting
+    final ConcurrentLongLongPairHashMap index;
+    private volatile Segment currentSegment;
+
+    public ZeroCopyReadCache(ByteBufAllocator allocator, long maxCacheSize) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
+    }
+
+    public ZeroCopyReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        super(allocator, (int) (maxCacheSize / segmentsCount(maxCacheSize, maxSegmentSize)));
+        int segmentsCount = segmentsCount(maxCacheSize, maxSegmentSize);
+        segments = new AtomicReferenceArray<>(segmentsCount);
+        index = ConcurrentLongLongPairHashMap.newBuilder()
+                .expectedItems(4096 * segmentsCount)
+                .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                .build();
+
+        // The other segments are only allocated when the cache rolls over to them
+        currentSegment = new Segment(0, Unpooled.directBuffer(segmentSize, segmentSize));
+        segments.set(0, currentSegment);
+    }
+
+    @Override
+    public synchronized void close() {
+        currentSegment = null;
+        for (int i = 0; i < segments.length(); i++) {
+            Segment segment = segments.getAndSet(i, null);
+            if (segment != null) {
+                ReferenceCountUtil.safeRelease(segment.buffer);
+            }
+        }
+        index.clear();
+    }
+
+    @Override
+    public void put(long ledgerId, long entryId, ByteBuf entry) {
+        int entrySize = entry.readableBytes();
+        if (entrySize > segmentSize) {
+            log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+            return;
+        }
+        int alignedSize = align64(entrySize);
+
+        while (true) {
+            Segment segment = currentSegment;
+            if (segment == null) {
+                // The cache was closed
+                return;
+            }
+            if (!tryRetain(segment.buffer)) {
+                continue;
+            }
+
+            try {
+                // Make sure the segment was not rotated before we got hold of its buffer
+                if (segment != currentSegment) {
+                    continue;
+                }
+                int offset = segment.offset.getAndAdd(alignedSize);
+                if (offset + entrySize <= segmentSize) {
+                    // Copy entry into read cache segment, then make it visible to readers
+                    segment.buffer.setBytes(offset, entry, entry.readerIndex(), entrySize);
+                    long position = pack(offset, entrySize);
+                    index.put(ledgerId, entryId, position, segment.epoch);
+                    if (segments.get(slot(segment.epoch)) != segment) {
+                        // The segment got rotated while we were writing to it, and its entries may
+                        // already have been dropped from the index
+                        index.remove(ledgerId, entryId, position, segment.epoch);
+                    }
+                    return;
+                }
+            } finally {
+                segment.buffer.release();
+            }
+
+            rollOver(segment);
+        }
+    }
+
+    /**
+     * Make the segment following <i>fullSegment</i> the current one, evicting its entries.
+     */
+    private synchronized void rollOver(Segment fullSegment) {
+        if (fullSegment != currentSegment) {
+            // Someone else already rolled over
+            return;
+        }
+
+        long epoch = fullSegment.epoch + 1;
+        int slot = slot(epoch);
+
+        // Unpublish the oldest segment first, so that readers and writers which did not get hold of
+        // its buffer yet will fail to validate it
+        Segment oldSegment = segments.getAndSet(slot, null);
+        ByteBuf buffer;
+        if (oldSegment == null) {
+            buffer = Unpooled.directBuffer(segmentSize, segmentSize);
+        } else {
+            if (oldSegment.buffer.refCnt() == 1) {
+                // Nobody is referencing the buffer anymore, it can be reused
+                buffer = oldSegment.buffer;
+            } else {
+                oldSegment.buffer.release();
+                buffer = Unpooled.directBuffer(segmentSize, segmentSize);
+            }
+            long oldEpoch = oldSegment.epoch;
+            index.removeIf((ledgerId, entryId, position, entryEpoch) -> entryEpoch == oldEpoch);
+        }
+
+        Segment newSegment = new Segment(epoch, buffer);
+        segments.set(slot, newSegment);
+        currentSegment = newSegment;
+    }
+
+    @Override
+    public ByteBuf get(long ledgerId, long entryId) {
+        LongPair res = index.get(ledgerId, entryId);
+        if (res == null) {
+            return null;
+        }
+
+        long epoch = res.second;
+        Segment segment = segments.get(slot(epoch));
+        if (segment == null || segment.epoch != epoch) {
+            // The entry was evicted, drop it in case it was indexed after its segment got rotated
+            index.remove(ledgerId, entryId, res.first, res.second);
+            return null;
+        }
+
+        if (!tryRetain(segment.buffer)) {
+            return null;
+        }
+        if (segments.get(slot(epoch)) != segment) {
+            // The segment got rotated before we got hold of its buffer
+            segment.buffer.release();
+            return null;
+        }
+
+        // The slice shares the reference we just acquired on the segment buffer
+        return segment.buffer.slice(offset(res.first), length(res.first));
+    }
+
+    @Override
+    public boolean hasEntry(long ledgerId, long entryId) {
+        LongPair res = index.get(ledgerId, entryId);
+        if (res == null) {
+            return false;
+        }
+        Segment segment = segments.get(slot(res.second));
+        return segment != null && segment.epoch == res.second;
+    }
+
+    /**
+     * @return the total size of cached entries
+     */
+    @Override
+    public long size() {
+        long size = 0;
+        Segment current = currentSegment;
+        for (int i = 0; i < segments.length(); i++) {
+            Segment segment = segments.get(i);
+            if (segment == null) {
+                // the segment is empty
+            } else if (segment == current) {
+                size += Math.min(segment.offset.get(), segmentSize);
+            } else {
+                size += segmentSize;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the total number of cached entries
+     */
+    @Override
+    public long count() {
+        return index.size();
+    }
+
+    private int slot(long epoch) {
+        return (int) (epoch % segments.length());
+    }
+
+    private static long pack(int offset, int length) {
+        return ((long) length << 32) | offset;
+    }
+
+    private static int offset(long position) {
+        return (int) position;
+    }
+
+    private static int length(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static boolean tryRetain(ByteBuf buffer) {
+        try {
+            buffer.retain();
+            return true;
+        } catch (IllegalReferenceCountException e) {
+            // The buffer was already released by a rotation, the reference count is left untouched
+            return false;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} which issues the first speculative request once the request
+ * has been outstanding for a percentile of the latencies of the completed requests.
+ *
+ * <p>The latencies are recorded in a histogram of exponential buckets, and the timeout is recomputed from it
+ * every window of requests, so it follows the latency of the bookies. Until the first window is complete,
+ * {@code firstSpeculativeRequestTimeout} is used. The following speculative requests back off from the first
+ * one as in {@link DefaultSpeculativeRequestExecutionPolicy}, and no timeout exceeds
+ * {@code maxSpeculativeRequestTimeout}.
+ *
+ * <p>The speculative requests are limited to a budget, as a percentage of the requests, so that a slowdown
+ * of the bookies cannot multiply the load sent to them. The budget accumulates with the requests, up to a
+ * burst, and the speculative requests that do not fit in it are not issued.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveSpeculativeRequestExecutionPolicy.class);
+
+    // the buckets cover latencies from 100us to more than a minute, each 20% wider than the previous one
+    private static final long MIN_BUCKET_LATENCY_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final double BUCKET_GROWTH = 1.2;
+    private static final int NUM_BUCKETS = 80;
+    // the timeout is recomputed after this number of requests, or after a second with enough requests
+    private static final int WINDOW_REQUESTS = 1000;
+    private static final int MIN_WINDOW_REQUESTS = 100;
+    private static final long MAX_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // number of requests whose budget can be saved up for a burst of speculative requests
+    private static final int BUDGET_BURST_REQUESTS = 1000;
+
+    final int firstSpeculativeRequestTimeout;
+    final int maxSpeculativeRequestTimeout;
+    final float backoffMultiplier;
+    final double percentile;
+    final double budgetPerRequest;
+    final double maxBudget;
+
+    private final AtomicLongArray window = new AtomicLongArray(NUM_BUCKETS);
+    private long windowRequests = 0;
+    private long windowStartNanos = MathUtils.nowInNano();
+    private volatile int speculativeRequestTimeout;
+    private double budget;
+
+    public AdaptiveSpeculativeRequestExecutionPolicy(int firstSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, float backoffMultiplier, double percentile, double budgetPercent) {
+        this.firstSpeculativeRequestTimeout = firstSpeculativeRequestTimeout;
+        this.maxSpeculativeRequestTimeout = maxSpeculativeRequestTimeout;
+        this.backoffMultiplier = backoffMultiplier;
+        this.percentile = percentile;
+        this.budgetPerRequest = budgetPercent / 100;
+        this.maxBudget = Math.max(1, budgetPerRequest * BUDGET_BURST_REQUESTS);
+        this.speculativeRequestTimeout = firstSpeculativeRequestTimeout;
+        this.budget = maxBudget;
+
+        if (backoffMultiplier <= 0) {
+            throw new IllegalArgumentException("Invalid value provided for backoffMultiplier");
+        }
+        if (percentile <= 0 || percentile >= 100) {
+            throw new IllegalArgumentException("Invalid value provided for percentile");
+        }
+        if (budgetPercent < 0) {
+            throw new IllegalArgumentException("Invalid value provided for budgetPercent");
+        }
+
+        // Prevent potential over flow
+        if (Math.round((double) maxSpeculativeRequestTimeout * (double) backoffMultiplier) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid values for maxSpeculativeRequestTimeout and backoffMultiplier");
+        }
+    }
+
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+            final SpeculativeRequestExecutor requestExecutor) {
+        addBudget();
+        return scheduleSpeculativeRead(scheduler, requestExecutor,
+                Math.min(maxSpeculativeRequestTimeout, speculativeRequestTimeout));
+    }
+
+    @Override
+    public void onRequestComplete(long latencyNanos) {
+        window.incrementAndGet(bucketOf(latencyNanos));
+        synchronized (this) {
+            windowRequests++;
+            if (windowRequests >= WINDOW_REQUESTS
+                    || (windowRequests >= MIN_WINDOW_REQUESTS
+                        && MathUtils.elapsedNanos(windowStartNanos) >= MAX_WINDOW_NANOS)) {
+                rollWindow();
+            }
+        }
+    }
+
+    /**
+     * @return the timeout of the first speculative request, in milliseconds
+     */
+    int getSpeculativeRequestTimeout() {
+        return speculativeRequestTimeout;
+    }
+
+    private static int bucketOf(long latencyNanos) {
+        if (latencyNanos <= MIN_BUCKET_LATENCY_NANOS) {
+            return 0;
+        }
+        int bucket = (int) Math.ceil(Math.log((double) latencyNanos / MIN_BUCKET_LATENCY_NANOS)
+                / Math.log(BUCKET_GROWTH));
+        return Math.min(bucket, NUM_BUCKETS - 1);
+    }
+
+    private static long bucketUpperBoundNanos(int bucket) {
+        return (long) (MIN_BUCKET_LATENCY_NANOS * Math.pow(BUCKET_GROWTH, bucket));
+    }
+
+    // should be called while holding the lock of the policy
+    private void rollWindow() {
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            counts[i] = window.getAndSet(i, 0);
+            total += counts[i];
+        }
+        windowRequests = 0;
+        windowStartNanos = MathUtils.nowInNano();
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long timeoutMs = TimeUnit.NANOSECONDS.toMillis(bucketUpperBoundNanos(i)) + 1;
+                speculativeRequestTimeout = (int) Math.min(timeoutMs, maxSpeculativeRequestTimeout);
+                break;
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Speculative request timeout set to {} ms, p{} of {} requests",
+                    speculativeRequestTimeout, percentile, total);
+        }
+    }
+
+    private synchronized void addBudget() {
+        budget = Math.min(maxBudget, budget + budgetPerRequest);
+    }
+
+    private synchronized boolean acquireBudget() {
+        if (budget < 1) {
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRead(final ScheduledExecutorService scheduler,
+                                         final SpeculativeRequestExecutor requestExecutor,
+                                         final int speculativeRequestTimeout) {
+        try {
+            return scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!acquireBudget()) {
+                        if (LOG.isTraceEnabled()) {
+                            LOG.trace("Stopped issuing speculative requests for {}, out of budget", requestExecutor);
+                        }
+                        return;
+                    }
+                    ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                    Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                        @Override
+                        public void onSuccess(Boolean issueNextRequest) {
+                            if (issueNextRequest) {
+                                scheduleSpeculativeRead(scheduler, requestExecutor,
+                                        Math.min(maxSpeculativeRequestTimeout,
+                                        Math.round((float) speculativeRequestTimeout * backoffMultiplier)));
+                            } else {
+                                if (LOG.isTraceEnabled()) {
+                                    LOG.trace("Stopped issuing speculative requests for {}, "
+                                        + "speculativeReadTimeout = {}", requestExecutor, speculativeRequestTimeout);
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Throwable thrown) {
+                            LOG.warn("Failed to issue speculative request for {}, speculativeReadTimeout = {} : ",
+                                    requestExecutor, speculativeRequestTimeout, thrown);
+                        }
+                    }, directExecutor());
+                }
+            }, speculativeRequestTimeout, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, speculativeReadTimeout = {} : ",
+                        requestExecutor, speculativeRequestTimeout, re);
+            }
+        }
+        return null;
+    }
+}
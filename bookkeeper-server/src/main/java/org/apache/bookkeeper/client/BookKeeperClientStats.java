@@ -64,6 +64,7 @@ public interface BookKeeperClientStats {
     String GET_BOOKIE_INFO_OP = "GET_BOOKIE_INFO";
     String SPECULATIVE_READ_COUNT = "SPECULATIVE_READ_COUNT";
     String READ_REQUESTS_REORDERED = "READ_REQUESTS_REORDERED";
+    String READ_REQUESTS_SELECTED = "READ_REQUESTS_SELECTED";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_OP = "GET_LIST_OF_ENTRIES_OF_LEDGER";
 
     // per channel stats
@@ -71,6 +72,8 @@ public interface BookKeeperClientStats {
 
     String CHANNEL_READ_OP = "READ_ENTRY";
     String CHANNEL_TIMEOUT_READ = "TIMEOUT_READ_ENTRY";
+    String CHANNEL_RANGE_READ_OP = "RANGE_READ_ENTRY";
+    String CHANNEL_TIMEOUT_RANGE_READ = "TIMEOUT_RANGE_READ_ENTRY";
     String CHANNEL_ADD_OP = "ADD_ENTRY";
     String CHANNEL_TIMEOUT_ADD = "TIMEOUT_ADD_ENTRY";
     String CHANNEL_WRITE_LAC_OP = "WRITE_LAC";
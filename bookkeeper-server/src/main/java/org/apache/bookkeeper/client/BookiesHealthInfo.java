@@ -44,4 +44,14 @@ public interface BookiesHealthInfo {
      */
     long getBookiePendingRequests(BookieId bookieSocketAddress);
 
+    /**
+     * Returns the estimated latency of the reads sent to a bookie.
+     *
+     * @param bookieSocketAddress
+     * @return estimated read latency in nanoseconds, -1 if it is unknown
+     */
+    default long getBookieReadLatency(BookieId bookieSocketAddress) {
+        return -1L;
+    }
+
 }
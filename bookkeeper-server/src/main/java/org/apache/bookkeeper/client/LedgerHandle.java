@@ -237,6 +237,11 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadLatency(BookieId bookieSocketAddress) {
+                return clientCtx.getBookieClient().getReadLatencyEstimate(bookieSocketAddress);
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
@@ -757,6 +762,77 @@ public class LedgerHandle implements WriteHandle {
         return readEntriesInternalAsync(firstEntry, lastEntry, false);
     }
 
+    /**
+     * Read up to <i>maxCount</i> consecutive entries asynchronously, stopping before their
+     * total size exceeds <i>maxSize</i>.
+     *
+     * <p>The range is served by a single bookie only when every bookie of the ensemble stores
+     * every entry (writeQuorum == ensembleSize), in which case it is also cut at the next
+     * ensemble change. Otherwise the entries are read one by one as {@link #readAsync(long, long)}
+     * does, and <i>maxSize</i> is not enforced.
+     *
+     * @param startEntry
+     *          id of first entry of sequence
+     * @param maxCount
+     *          maximum number of entries to read
+     * @param maxSize
+     *          maximum size in bytes of the entries to read
+     */
+    @Override
+    public CompletableFuture<LedgerEntries> batchReadAsync(long startEntry, int maxCount, long maxSize) {
+        // Little sanity check
+        if (startEntry < 0 || maxCount <= 0 || maxSize <= 0) {
+            LOG.error("IncorrectParameterException on ledgerId:{} startEntry:{} maxCount:{} maxSize:{}",
+                    ledgerId, startEntry, maxCount, maxSize);
+            return FutureUtils.exception(new BKIncorrectParameterException());
+        }
+
+        if (startEntry > lastAddConfirmed) {
+            LOG.error("BatchReadAsync exception on ledgerId:{} startEntry:{} lastAddConfirmed:{}",
+                    ledgerId, startEntry, lastAddConfirmed);
+            return FutureUtils.exception(new BKReadException());
+        }
+
+        long lastEntry = Math.min(lastAddConfirmed, startEntry + maxCount - 1);
+        LedgerMetadata metadata = getLedgerMetadata();
+        if (metadata.getWriteQuorumSize() < metadata.getEnsembleSize()) {
+            // entries are striped, no single bookie stores the whole range
+            return readEntriesInternalAsync(startEntry, lastEntry, false);
+        }
+        long nextEnsembleChange = LedgerMetadataUtils.getNextEnsembleChange(metadata, startEntry);
+        if (nextEnsembleChange > 0) {
+            lastEntry = Math.min(lastEntry, nextEnsembleChange - 1);
+        }
+        return rangeReadInternalAsync(startEntry, lastEntry, maxSize);
+    }
+
+    CompletableFuture<LedgerEntries> rangeReadInternalAsync(long firstEntry, long lastEntry, long maxSize) {
+        RangeReadOp op = new RangeReadOp(this, clientCtx, firstEntry, lastEntry, maxSize);
+        if (!clientCtx.isClientClosed()) {
+            if (clientCtx.getConf().waitForWriteSetMs >= 0) {
+                DistributionSchedule.WriteSet ws = distributionSchedule.getWriteSet(firstEntry);
+                try {
+                    if (!waitForWritable(ws, ws.size() - 1, clientCtx.getConf().waitForWriteSetMs)) {
+                        op.allowFailFastOnUnwritableChannel();
+                    }
+                } finally {
+                    ws.recycle();
+                }
+            }
+
+            if (isHandleWritable()) {
+                // Ledger handle in read/write mode: submit to OSE for ordered execution.
+                executeOrdered(op);
+            } else {
+                // Read-only ledger handle: bypass OSE and execute read directly in client thread.
+                op.run();
+            }
+        } else {
+            op.future().completeExceptionally(BKException.create(ClientClosedException));
+        }
+        return op.future();
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
@@ -90,6 +90,7 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
         final DistributionSchedule.WriteSet writeSet;
         final LedgerEntryImpl entryImpl;
         final long eId;
+        boolean readSent = false;
 
         LedgerEntryRequest(List<BookieId> ensemble, long lId, long eId) {
             this.entryImpl = LedgerEntryImpl.create(lId, eId);
@@ -547,12 +548,18 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
         final int bookieIndex;
         final BookieId to;
         final LedgerEntryRequest entry;
+        // whether this is the first read sent for the entry, neither a speculative read nor a retry
+        final boolean firstRead;
+        final long sendTimeNanos;
         long lac = LedgerHandle.INVALID_ENTRY_ID;
 
         ReadContext(int bookieIndex, BookieId to, LedgerEntryRequest entry) {
             this.bookieIndex = bookieIndex;
             this.to = to;
             this.entry = entry;
+            this.firstRead = !entry.readSent;
+            this.sendTimeNanos = MathUtils.nowInNano();
+            entry.readSent = true;
         }
 
         @Override
@@ -598,6 +605,13 @@ class PendingReadOp implements ReadEntryCallback, Runnable {
         heardFromHosts.add(rctx.to);
         heardFromHostsBitSet.set(rctx.bookieIndex, true);
 
+        // the latency of the first read, even when a speculative read completed the entry already, so that
+        // the speculative reads do not cut the tail of the latencies the policy learns from
+        if (rctx.firstRead && !parallelRead && clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
+            clientCtx.getConf().readSpeculativeRequestPolicy.get()
+                .onRequestComplete(MathUtils.elapsedNanos(rctx.sendTimeNanos));
+        }
+
         buffer.retain();
         // if entry has completed don't handle twice
         if (entry.complete(rctx.bookieIndex, rctx.to, buffer)) {
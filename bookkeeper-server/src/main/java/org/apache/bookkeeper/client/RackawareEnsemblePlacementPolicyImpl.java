@@ -21,9 +21,11 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIES_JOINED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIES_LEFT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FAILED_TO_RESOLVE_NETWORK_LOCATION_COUNT;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.BOOKIE_LABEL;
 import static org.apache.bookkeeper.client.BookKeeperClientStats.CLIENT_SCOPE;
 import static org.apache.bookkeeper.client.BookKeeperClientStats.NUM_WRITABLE_BOOKIES_IN_DEFAULT_RACK;
 import static org.apache.bookkeeper.client.BookKeeperClientStats.READ_REQUESTS_REORDERED;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.READ_REQUESTS_SELECTED;
 import static org.apache.bookkeeper.client.RegionAwareEnsemblePlacementPolicy.UNKNOWN_REGION;
 
 import com.beust.jcommander.internal.Lists;
@@ -42,6 +44,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
@@ -113,6 +116,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     protected boolean enforceDurability = false;
     protected int stabilizePeriodSeconds = 0;
     protected int reorderThresholdPendingRequests = 0;
+    protected boolean reorderReadsByLatency = false;
     // looks like these only assigned in the same thread as constructor, immediately after constructor;
     // no need to make volatile
     protected StatsLogger statsLogger = null;
@@ -122,6 +126,12 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             help = "The distribution of number of bookies reordered on each read request"
     )
     protected OpStatsLogger readReorderedCounter = null;
+    @StatsDoc(
+            name = READ_REQUESTS_SELECTED,
+            help = "Counter for number of read requests sent first to a bookie by their expected latency,"
+                + " per bookie"
+    )
+    protected final Map<BookieId, Counter> readSelectedCounters = new ConcurrentHashMap<>();
     @StatsDoc(
             name = FAILED_TO_RESOLVE_NETWORK_LOCATION_COUNT,
             help = "Counter for number of times DNSResolverDecorator failed to resolve Network Location"
@@ -292,6 +302,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                     return -1L;
                 }
             });
+        this.reorderReadsByLatency = conf.getReorderReadsByLatencyEnabled();
         return initialize(
                 dnsResolver,
                 timer,
@@ -880,7 +891,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
 
         boolean reordered = false;
-        if (reorderThresholdPendingRequests > 0) {
+        if (reorderReadsByLatency) {
+            reordered = reorderReadSequenceByLatency(ensemble, writeSet, bookiesHealthInfo);
+        } else if (reorderThresholdPendingRequests > 0) {
             // if there are no slow or unavailable bookies, capture each bookie's number of
             // pending request to reorder requests based on a threshold of pending requests
 
@@ -918,6 +931,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             if (reordered) {
                 readReorderedCounter.registerSuccessfulValue(1);
             }
+            if (reorderReadsByLatency) {
+                countReadSelected(ensemble, writeSet);
+            }
             return writeSet;
         }
 
@@ -1029,9 +1045,59 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
             writeSet.set(i, writeSet.get(i) & ~MASK_BITS);
         }
         readReorderedCounter.registerSuccessfulValue(1);
+        if (reorderReadsByLatency) {
+            countReadSelected(ensemble, writeSet);
+        }
         return writeSet;
     }
 
+    /**
+     * Move the bookie of the write set with the lowest expected completion time to the first place,
+     * as C3 does: the latency estimate of each bookie is weighted by the cube of its pending requests
+     * plus one, so that a fast bookie is not sent all the reads until it becomes slow. Bookies without
+     * a latency estimate are tried first, to get one.
+     *
+     * @return whether the write set was reordered
+     */
+    private boolean reorderReadSequenceByLatency(List<BookieId> ensemble,
+                                                DistributionSchedule.WriteSet writeSet,
+                                                BookiesHealthInfo bookiesHealthInfo) {
+        int bestBookieIdx = -1;
+        double bestScore = 0;
+        for (int i = 0; i < writeSet.size(); i++) {
+            BookieId address = ensemble.get(writeSet.get(i));
+            double latency = Math.max(bookiesHealthInfo.getBookieReadLatency(address), 1L);
+            double pending = bookiesHealthInfo.getBookiePendingRequests(address) + 1;
+            double score = latency * pending * pending * pending;
+            if (bestBookieIdx < 0 || score < bestScore) {
+                bestBookieIdx = i;
+                bestScore = score;
+            }
+        }
+        if (bestBookieIdx <= 0) {
+            return false;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("read set reordered from {} to {} by expected latency",
+                    ensemble.get(writeSet.get(0)), ensemble.get(writeSet.get(bestBookieIdx)));
+        }
+        writeSet.moveAndShift(bestBookieIdx, 0);
+        return true;
+    }
+
+    /**
+     * Count the read for the bookie it is sent to first, once unavailable, slow and failed bookies were
+     * moved behind the others.
+     */
+    private void countReadSelected(List<BookieId> ensemble, DistributionSchedule.WriteSet writeSet) {
+        if (writeSet.size() == 0) {
+            return;
+        }
+        readSelectedCounters.computeIfAbsent(ensemble.get(writeSet.get(0)),
+                address -> statsLogger.scopeLabel(BOOKIE_LABEL, address.toString()).getCounter(READ_REQUESTS_SELECTED))
+            .inc();
+    }
+
     // this method should be called in readlock scope of 'rwlock'
     @Override
     public PlacementPolicyAdherence isEnsembleAdheringToPlacementPolicy(List<BookieId> ensembleList,
@@ -0,0 +1,224 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException.BKDigestMatchException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.RangeReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read operation that asks a single bookie for a range of consecutive entries,
+ * which are streamed back in a single response.
+ *
+ * <p>The range must be stored entirely by every bookie of the write set of its first
+ * entry, that is the ledger must not be striped and the range must not cross an
+ * ensemble change. The bookies of the write set are tried one after the other until
+ * one of them returns at least the first entry of the range.
+ */
+class RangeReadOp implements RangeReadEntryCallback, Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(RangeReadOp.class);
+
+    private final LedgerHandle lh;
+    private final ClientContext clientCtx;
+    private final CompletableFuture<LedgerEntries> future;
+    private final long firstEntryId;
+    private final long lastEntryId;
+    private final long maxSize;
+    private final List<BookieId> ensemble;
+
+    private DistributionSchedule.WriteSet writeSet;
+    private int nextReplicaIndex = 0;
+    private int firstError = BKException.Code.OK;
+    private long requestTimeNanos;
+    boolean allowFailFast = false;
+
+    RangeReadOp(LedgerHandle lh,
+                ClientContext clientCtx,
+                long firstEntryId,
+                long lastEntryId,
+                long maxSize) {
+        this.lh = lh;
+        this.clientCtx = clientCtx;
+        this.future = new CompletableFuture<>();
+        this.firstEntryId = firstEntryId;
+        this.lastEntryId = lastEntryId;
+        this.maxSize = maxSize;
+        this.ensemble = lh.getLedgerMetadata().getEnsembleAt(firstEntryId);
+    }
+
+    CompletableFuture<LedgerEntries> future() {
+        return future;
+    }
+
+    void allowFailFastOnUnwritableChannel() {
+        allowFailFast = true;
+    }
+
+    @Override
+    public void run() {
+        requestTimeNanos = MathUtils.nowInNano();
+        if (clientCtx.getConf().enableReorderReadSequence) {
+            writeSet = clientCtx.getPlacementPolicy()
+                .reorderReadSequence(
+                        ensemble,
+                        lh.getBookiesHealthInfo(),
+                        lh.getWriteSetForReadOperation(firstEntryId));
+        } else {
+            writeSet = lh.getWriteSetForReadOperation(firstEntryId);
+        }
+        sendNextRead();
+    }
+
+    private void sendNextRead() {
+        if (nextReplicaIndex >= writeSet.size()) {
+            complete(firstError == BKException.Code.OK ? BKException.Code.ReadException : firstError, null);
+            return;
+        }
+        int bookieIndex = writeSet.get(nextReplicaIndex++);
+        BookieId to = ensemble.get(bookieIndex);
+        if (lh.throttler != null) {
+            lh.throttler.acquire();
+        }
+        int maxCount = (int) (lastEntryId - firstEntryId + 1);
+        clientCtx.getBookieClient().readEntries(to, lh.ledgerId, firstEntryId, maxCount, maxSize,
+                this, new ReadContext(bookieIndex, to), BookieProtocol.FLAG_NONE, allowFailFast);
+    }
+
+    @Override
+    public void readEntriesComplete(int rc, long ledgerId, long firstEntryId, List<ByteBuf> entries, Object ctx) {
+        final ReadContext rctx = (ReadContext) ctx;
+        if (rc != BKException.Code.OK) {
+            logErrorAndReattemptRead(rctx, "Error: " + BKException.getMessage(rc), rc);
+            return;
+        }
+
+        List<LedgerEntry> result = new ArrayList<>(entries.size());
+        int numEntries = (int) Math.min(entries.size(), lastEntryId - this.firstEntryId + 1);
+        for (int i = 0; i < numEntries; i++) {
+            ByteBuf buffer = entries.get(i);
+            long entryId = this.firstEntryId + i;
+            ByteBuf content;
+            try {
+                content = lh.macManager.verifyDigestAndReturnData(entryId, buffer);
+            } catch (BKDigestMatchException e) {
+                clientCtx.getClientStats().getReadOpDmCounter().inc();
+                if (result.isEmpty()) {
+                    logErrorAndReattemptRead(rctx, "Mac mismatch", BKException.Code.DigestMatchException);
+                    return;
+                }
+                // return the entries verified so far, the caller will read the others again
+                LOG.warn("Mac mismatch reading entry {}@{} from {}, truncating range read",
+                        entryId, lh.ledgerId, rctx.to);
+                break;
+            }
+            LedgerEntryImpl entry = LedgerEntryImpl.create(lh.ledgerId, entryId);
+            /*
+             * The length is a long and it is the last field of the metadata of an entry.
+             * Consequently, we have to subtract 8 from METADATA_LENGTH to get the length.
+             */
+            entry.setLength(buffer.getLong(DigestManager.METADATA_LENGTH - 8));
+            // the response buffers are released once the callback returns
+            entry.setEntryBuf(content.retain());
+            result.add(entry);
+        }
+        if (result.isEmpty()) {
+            logErrorAndReattemptRead(rctx, "Empty response", BKException.Code.NoSuchEntryException);
+            return;
+        }
+
+        lh.updateLastConfirmed(rctx.getLastAddConfirmed(), 0L);
+        // mark the bookies which failed before the successful one as slow
+        for (int i = 0; i < nextReplicaIndex - 1; i++) {
+            clientCtx.getPlacementPolicy().registerSlowBookie(ensemble.get(writeSet.get(i)), this.firstEntryId);
+        }
+        complete(BKException.Code.OK, result);
+    }
+
+    private void logErrorAndReattemptRead(ReadContext rctx, String errMsg, int rc) {
+        if (BKException.Code.OK == firstError
+            || BKException.Code.NoSuchEntryException == firstError
+            || BKException.Code.NoSuchLedgerExistsException == firstError) {
+            firstError = rc;
+        }
+        if (BKException.Code.NoSuchEntryException == rc
+            || BKException.Code.NoSuchLedgerExistsException == rc) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("{} while range reading L{} E{}-E{} from bookie: {}",
+                        errMsg, lh.ledgerId, firstEntryId, lastEntryId, rctx.to);
+            }
+        } else {
+            lh.recordReadErrorOnBookie(rctx.bookieIndex);
+            LOG.info("{} while range reading L{} E{}-E{} from bookie: {} (rc={})",
+                    errMsg, lh.ledgerId, firstEntryId, lastEntryId, rctx.to, rc);
+        }
+        sendNextRead();
+    }
+
+    private void complete(int rc, List<LedgerEntry> entries) {
+        writeSet.recycle();
+        long latencyNanos = MathUtils.elapsedNanos(requestTimeNanos);
+        if (rc != BKException.Code.OK) {
+            LOG.error("Range read of ledger entries failed: L{} E{}-E{}, Error = '{}'",
+                    lh.ledgerId, firstEntryId, lastEntryId, BKException.getMessage(rc));
+            clientCtx.getClientStats().getReadOpLogger().registerFailedEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            future.completeExceptionally(BKException.create(rc));
+        } else {
+            clientCtx.getClientStats().getReadOpLogger().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            future.complete(LedgerEntriesImpl.create(entries));
+        }
+    }
+
+    private static class ReadContext implements ReadEntryCallbackCtx {
+        final int bookieIndex;
+        final BookieId to;
+        long lac = LedgerHandle.INVALID_ENTRY_ID;
+
+        ReadContext(int bookieIndex, BookieId to) {
+            this.bookieIndex = bookieIndex;
+            this.to = to;
+        }
+
+        @Override
+        public void setLastAddConfirmed(long lac) {
+            this.lac = lac;
+        }
+
+        @Override
+        public long getLastAddConfirmed() {
+            return lac;
+        }
+    }
+}
@@ -42,4 +42,14 @@ public interface SpeculativeRequestExecutionPolicy {
      */
     ScheduledFuture<?> initiateSpeculativeRequest(ScheduledExecutorService scheduler,
             SpeculativeRequestExecutor requestExecutor);
+
+    /**
+     * Notify the policy that the first attempt of a request it was initiated for completed successfully,
+     * so that it can adapt to the observed latency of the requests. The speculative requests are not
+     * reported, and the first attempt is reported even when a speculative request completed first.
+     *
+     * @param latencyNanos The latency of the first attempt of the request, in nanoseconds
+     */
+    default void onRequestComplete(long latencyNanos) {
+    }
 }
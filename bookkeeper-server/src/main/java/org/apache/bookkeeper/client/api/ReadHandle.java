@@ -59,6 +59,46 @@ public interface ReadHandle extends Handle {
                                                               BKException.HANDLER);
     }
 
+    /**
+     * Read up to <i>maxCount</i> consecutive entries asynchronously, starting at <i>startEntry</i>
+     * and stopping before their total size exceeds <i>maxSize</i>.
+     * <br>When possible the entries are read from a single bookie in a single request,
+     * which is cheaper than {@link #readAsync(long, long)} for sequential scans.
+     * The first entry is always returned, regardless of its size, while the result may
+     * contain less than <i>maxCount</i> entries even if more were available: callers
+     * should continue reading from the entry following the last returned one.
+     *
+     * @param startEntry
+     *          id of first entry of sequence
+     * @param maxCount
+     *          maximum number of entries to read
+     * @param maxSize
+     *          maximum size in bytes of the entries to read
+     * @return an handle to the result of the operation
+     */
+    default CompletableFuture<LedgerEntries> batchReadAsync(long startEntry, int maxCount, long maxSize) {
+        return readAsync(startEntry, startEntry + maxCount - 1);
+    }
+
+    /**
+     * Read up to <i>maxCount</i> consecutive entries synchronously.
+     *
+     * @param startEntry
+     *          id of first entry of sequence
+     * @param maxCount
+     *          maximum number of entries to read
+     * @param maxSize
+     *          maximum size in bytes of the entries to read
+     * @return the result of the operation
+     *
+     * @see #batchReadAsync(long, int, long)
+     */
+    default LedgerEntries batchRead(long startEntry, int maxCount, long maxSize)
+            throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntries, BKException>result(batchReadAsync(startEntry, maxCount, maxSize),
+                                                              BKException.HANDLER);
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
@@ -107,6 +107,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
+    protected static final String SPECULATIVE_READ_TIMEOUT_PERCENTILE = "speculativeReadTimeoutPercentile";
+    protected static final String SPECULATIVE_READ_BUDGET_PERCENT = "speculativeReadBudgetPercent";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
@@ -119,6 +121,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
     protected static final String MAX_ALLOWED_ENSEMBLE_CHANGES = "maxNumEnsembleChanges";
+    protected static final String ADD_BATCH_MAX_ENTRIES = "addBatchMaxEntries";
+    protected static final String ADD_BATCH_MAX_BYTES = "addBatchMaxBytes";
     // Timeout Setting
     protected static final String ADD_ENTRY_TIMEOUT_SEC = "addEntryTimeoutSec";
     protected static final String ADD_ENTRY_QUORUM_TIMEOUT_SEC = "addEntryQuorumTimeoutSec";
@@ -158,6 +162,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     public static final String ENSEMBLE_PLACEMENT_POLICY = "ensemblePlacementPolicy";
     protected static final String NETWORK_TOPOLOGY_STABILIZE_PERIOD_SECONDS = "networkTopologyStabilizePeriodSeconds";
     protected static final String READ_REORDER_THRESHOLD_PENDING_REQUESTS = "readReorderThresholdPendingRequests";
+    protected static final String READ_REORDER_BY_LATENCY_ENABLED = "readReorderByLatencyEnabled";
     protected static final String ENSEMBLE_PLACEMENT_POLICY_ORDER_SLOW_BOOKIES =
         "ensemblePlacementPolicyOrderSlowBookies";
     protected static final String BOOKIE_ADDRESS_RESOLVER_ENABLED = "bookieAddressResolverEnabled";
@@ -649,6 +654,60 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the maximum number of consecutive entries of a ledger sent to a bookie in a single range add request.
+     *
+     * <p>When greater than 1, the adds issued to a bookie connection while a previous write is being handed
+     * to its event loop are coalesced into a single range add request, which the bookie journals as a group
+     * and acknowledges with a single response. Each entry keeps its own digest and is acknowledged on its own
+     * to the ledger handle. Only works with the v3 wire protocol, and requires bookies supporting range adds.
+     *
+     * <p>The default is 0, which sends every add in its own request.
+     *
+     * @return the maximum number of entries in a range add request.
+     */
+    public int getAddBatchMaxEntries() {
+        return getInt(ADD_BATCH_MAX_ENTRIES, 0);
+    }
+
+    /**
+     * Set the maximum number of consecutive entries of a ledger sent to a bookie in a single range add request.
+     * @see #getAddBatchMaxEntries()
+     *
+     * @param maxEntries
+     *          The maximum number of entries in a range add request, 0 or 1 to disable range adds.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddBatchMaxEntries(int maxEntries) {
+        setProperty(ADD_BATCH_MAX_ENTRIES, maxEntries);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of bytes of the entries sent in a single range add request.
+     * A range add request always holds at least one entry, and is also bounded by the netty frame size.
+     *
+     * <p>The default is 1MB.
+     *
+     * @return the maximum number of bytes in a range add request.
+     */
+    public int getAddBatchMaxBytes() {
+        return getInt(ADD_BATCH_MAX_BYTES, 1024 * 1024);
+    }
+
+    /**
+     * Set the maximum number of bytes of the entries sent in a single range add request.
+     * @see #getAddBatchMaxBytes()
+     *
+     * @param maxBytes
+     *          The maximum number of bytes in a range add request.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddBatchMaxBytes(int maxBytes) {
+        setProperty(ADD_BATCH_MAX_BYTES, maxBytes);
+        return this;
+    }
+
     /**
      * Get the timeout for top-level add request. That is, the amount of time we should spend
      * waiting for ack quorum.
@@ -718,6 +777,10 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
      * {@link #getAddEntryQuorumTimeout}, {@link #getAddEntryTimeout} and {@link #getReadEntryTimeout},
      * so that these timeouts run in a timely fashion.
      *
+     * <p>The bookie client of a {@link org.apache.bookkeeper.client.BookKeeper} client schedules the timeout of
+     * each request on its timeout timer instead (see {@link #getTimeoutTimerTickDurationMs()}), so the monitor
+     * only runs for the bookie clients created without a timer.
+     *
      * @param timeoutInterval The timeout monitor interval, in seconds
      * @return client configuration
      */
@@ -994,6 +1057,54 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the percentile of the latency of the reads after which a speculative read is sent. If it is
+     * greater than zero, the first speculative read timeout follows this percentile of the latencies the
+     * client observes, starting from {@link #getFirstSpeculativeReadTimeout()} and capped to
+     * {@link #getMaxSpeculativeReadTimeout()}. If &lt;= zero, this feature is turned off.
+     *
+     * @return the percentile of the read latency used as speculative read timeout.
+     */
+    public double getSpeculativeReadTimeoutPercentile() {
+        return getDouble(SPECULATIVE_READ_TIMEOUT_PERCENTILE, 0);
+    }
+
+    /**
+     * Set the percentile of the latency of the reads after which a speculative read is sent, e.g. 95
+     * to send speculative reads for the 5% slowest reads. If zero, this feature is turned off.
+     *
+     * @param percentile
+     *          percentile of the read latency used as speculative read timeout.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadTimeoutPercentile(double percentile) {
+        setProperty(SPECULATIVE_READ_TIMEOUT_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the budget of speculative reads, as a percentage of the reads, when the speculative read
+     * timeout follows the read latency. The speculative reads beyond the budget are not sent.
+     *
+     * @return the budget of speculative reads, as a percentage of the reads.
+     */
+    public double getSpeculativeReadBudgetPercent() {
+        return getDouble(SPECULATIVE_READ_BUDGET_PERCENT, 10);
+    }
+
+    /**
+     * Set the budget of speculative reads, as a percentage of the reads, when the speculative read
+     * timeout follows the read latency.
+     *
+     * @param budgetPercent
+     *          budget of speculative reads, as a percentage of the reads.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadBudgetPercent(double budgetPercent) {
+        setProperty(SPECULATIVE_READ_BUDGET_PERCENT, budgetPercent);
+        return this;
+    }
+
     /**
      * Multipler to use when determining time between successive speculative read LAC requests.
      *
@@ -1245,6 +1356,29 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether reads are sent first to the bookie of the write set with the lowest expected
+     * completion time, estimated from the latency of its recent reads and its pending requests.
+     * When enabled, it takes precedence over {@link #getReorderThresholdPendingRequests()}.
+     *
+     * @return true if reads are reordered by the expected latency of the bookies.
+     */
+    public boolean getReorderReadsByLatencyEnabled() {
+        return getBoolean(READ_REORDER_BY_LATENCY_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable reordering the reads by the expected latency of the bookies.
+     *
+     * @param enabled
+     *            whether to send reads first to the bookie with the lowest expected
+     *            completion time.
+     */
+    public ClientConfiguration setReorderReadsByLatencyEnabled(boolean enabled) {
+        setProperty(READ_REORDER_BY_LATENCY_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get the network topology stabilize period in seconds. if it is zero, this feature is turned off.
      *
@@ -105,6 +105,10 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String COMPACTION_RATE = "compactionRate";
     protected static final String COMPACTION_RATE_BY_ENTRIES = "compactionRateByEntries";
     protected static final String COMPACTION_RATE_BY_BYTES = "compactionRateByBytes";
+    protected static final String NUM_COMPACTION_THREADS = "numCompactionThreads";
+    protected static final String COST_BASED_COMPACTION_ENABLED = "costBasedCompactionEnabled";
+    protected static final String COMPACTION_FOREGROUND_LATENCY_TARGET_MS = "compactionForegroundLatencyTargetMs";
+    protected static final String ZERO_COPY_COMPACTION_ENABLED = "zeroCopyCompactionEnabled";
 
     // Gc Parameters
     protected static final String GC_WAIT_TIME = "gcWaitTime";
@@ -142,6 +146,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
+    protected static final String JOURNAL_ADAPTIVE_FLUSH = "journalAdaptiveFlush";
+    protected static final String JOURNAL_ADAPTIVE_FLUSH_LATENCY_TARGET_MSEC = "journalAdaptiveFlushLatencyTargetMSec";
     protected static final String JOURNAL_REMOVE_FROM_PAGE_CACHE = "journalRemoveFromPageCache";
     protected static final String JOURNAL_PRE_ALLOC_SIZE = "journalPreAllocSizeMB";
     protected static final String JOURNAL_WRITE_BUFFER_SIZE = "journalWriteBufferSizeKB";
@@ -149,10 +155,13 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_JOURNAL_CALLBACK_THREADS = "numJournalCallbackThreads";
     protected static final String JOURNAL_FORMAT_VERSION_TO_WRITE = "journalFormatVersionToWrite";
     protected static final String JOURNAL_QUEUE_SIZE = "journalQueueSize";
+    protected static final String JOURNAL_RING_BUFFER_ENABLED = "journalRingBufferEnabled";
     protected static final String JOURNAL_MAX_MEMORY_SIZE_MB = "journalMaxMemorySizeMb";
     protected static final String JOURNAL_PAGECACHE_FLUSH_INTERVAL_MSEC = "journalPageCacheFlushIntervalMSec";
     protected static final String JOURNAL_CHANNEL_PROVIDER = "journalChannelProvider";
     protected static final String JOURNAL_REUSE_FILES = "journalReuseFiles";
+    protected static final String JOURNAL_DIRECT_IO = "journalDirectIO";
+    protected static final String JOURNAL_LOAD_AWARE_PLACEMENT = "journalLoadAwarePlacement";
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
@@ -236,6 +245,8 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
 
     protected static final String READ_BUFFER_SIZE = "readBufferSizeBytes";
     protected static final String WRITE_BUFFER_SIZE = "writeBufferSizeBytes";
+    protected static final String ENTRY_LOG_MMAP_READ_ENABLED = "entryLogMmapReadEnabled";
+    protected static final String ENTRY_LOG_MMAP_MAX_BYTES = "entryLogMmapMaxBytes";
     // Whether the bookie should use its hostname or ipaddress for the
     // registration.
     protected static final String USE_HOST_NAME_AS_BOOKIE_ID = "useHostNameAsBookieID";
@@ -896,6 +907,56 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether to write the journal with direct I/O, bypassing the page cache.
+     *
+     * @return true if the journal is written with direct I/O.
+     */
+    public boolean getJournalDirectIO() {
+        return this.getBoolean(JOURNAL_DIRECT_IO, false);
+    }
+
+    /**
+     * Set whether to write the journal with direct I/O, bypassing the page cache.
+     *
+     * <p>Direct I/O writes are aligned to 4KB, so the journal alignment size should be set to a
+     * multiple of 4KB, otherwise the last block of every flush is written again by the next one.
+     *
+     * @param enabled
+     *          whether to write the journal with direct I/O.
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalDirectIO(boolean enabled) {
+        this.setProperty(JOURNAL_DIRECT_IO, enabled);
+        return this;
+    }
+
+    /**
+     * Whether ledgers are moved away from overloaded journals, when multiple journal directories are configured.
+     *
+     * @return true if ledgers are placed on journals based on their load.
+     */
+    public boolean getJournalLoadAwarePlacement() {
+        return this.getBoolean(JOURNAL_LOAD_AWARE_PLACEMENT, false);
+    }
+
+    /**
+     * Set whether ledgers are moved away from overloaded journals, when multiple journal directories are
+     * configured.
+     *
+     * <p>Each ledger starts on the journal picked by hashing its id, and moves to the least loaded journal when
+     * its own journal has much more pending work, estimated from the queue depth and fsync latency of the
+     * journals. Ledgers written with deferred sync never move.
+     *
+     * @param enabled
+     *          whether to place ledgers on journals based on their load.
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalLoadAwarePlacement(boolean enabled) {
+        this.setProperty(JOURNAL_LOAD_AWARE_PLACEMENT, enabled);
+        return this;
+    }
+
     /**
      * Get journal format version to write.
      *
@@ -938,6 +999,30 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this.getInt(JOURNAL_QUEUE_SIZE, 10_000);
     }
 
+    /**
+     * Set whether the journal queue is a ring of pre-allocated entries.
+     *
+     * @param enabled
+     *            whether to use a ring buffer as journal queue
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalRingBufferEnabled(boolean enabled) {
+        this.setProperty(JOURNAL_RING_BUFFER_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the journal queue is a ring of pre-allocated entries, whose slots are only reused once
+     * the callback of their entry ran. The capacity of the ring is the journal queue size, rounded up
+     * to a power of two, and bounds all the entries in flight in the journal, including the ones
+     * waiting for a force write.
+     *
+     * @return true if the journal uses a ring buffer as queue
+     */
+    public boolean getJournalRingBufferEnabled() {
+        return this.getBoolean(JOURNAL_RING_BUFFER_ENABLED, false);
+    }
+
     /**
      * Set the max amount of memory that can be used by the journal.
      *
@@ -1934,6 +2019,52 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the entries of the sealed entry logs are read from memory mappings of the entry logs,
+     * shared by all the read threads, instead of through the buffered read channels of each thread.
+     * Only used by the default entry logger. Default is false.
+     *
+     * @return true if the sealed entry logs are read through memory mappings
+     */
+    public boolean isEntryLogMmapReadEnabled() {
+        return getBoolean(ENTRY_LOG_MMAP_READ_ENABLED, false);
+    }
+
+    /**
+     * Set whether the entries of the sealed entry logs are read from memory mappings of the entry logs.
+     *
+     * @param enabled
+     *          whether to read the sealed entry logs through memory mappings
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogMmapReadEnabled(boolean enabled) {
+        setProperty(ENTRY_LOG_MMAP_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the max number of bytes of entry logs mapped at once, when reading the sealed entry logs through
+     * memory mappings. The least recently read entry logs are unmapped to stay under this size.
+     * Default is 8GB.
+     *
+     * @return the max number of bytes of entry logs mapped at once
+     */
+    public long getEntryLogMmapMaxBytes() {
+        return getLong(ENTRY_LOG_MMAP_MAX_BYTES, 8L * 1024 * 1024 * 1024);
+    }
+
+    /**
+     * Set the max number of bytes of entry logs mapped at once.
+     *
+     * @param maxBytes
+     *          max number of bytes of entry logs mapped at once
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogMmapMaxBytes(long maxBytes) {
+        setProperty(ENTRY_LOG_MMAP_MAX_BYTES, maxBytes);
+        return this;
+    }
+
     /**
      * Set the number of threads that would handle write requests.
      *
@@ -2416,6 +2547,50 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(JOURNAL_FLUSH_WHEN_QUEUE_EMPTY, false);
     }
 
+    /**
+     * Should the journal adapt the time it waits to group entries to the observed fsync latency
+     * and arrival rate, instead of always waiting for {@link #getJournalMaxGroupWaitMSec()}.
+     *
+     * @return whether the journal group wait is adaptive
+     */
+    public boolean getJournalAdaptiveFlush() {
+        return getBoolean(JOURNAL_ADAPTIVE_FLUSH, false);
+    }
+
+    /**
+     * Enable/disable the adaptive journal group wait. When enabled, the journal picks the group
+     * wait that keeps the p99 latency of adds under {@link #getJournalAdaptiveFlushLatencyTargetMSec()},
+     * up to {@link #getJournalMaxGroupWaitMSec()}.
+     *
+     * @param enabled flag to enable/disable the adaptive journal group wait
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalAdaptiveFlush(boolean enabled) {
+        setProperty(JOURNAL_ADAPTIVE_FLUSH, enabled);
+        return this;
+    }
+
+    /**
+     * Target p99 latency of journal writes, used by the adaptive journal group wait. Default is 5ms.
+     *
+     * @return target p99 latency of journal writes in milliseconds
+     */
+    public long getJournalAdaptiveFlushLatencyTargetMSec() {
+        return getLong(JOURNAL_ADAPTIVE_FLUSH_LATENCY_TARGET_MSEC, 5);
+    }
+
+    /**
+     * Set the target p99 latency of journal writes, used by the adaptive journal group wait.
+     *
+     * @param latencyTargetMSec
+     *          target latency in milliseconds.
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalAdaptiveFlushLatencyTargetMSec(long latencyTargetMSec) {
+        setProperty(JOURNAL_ADAPTIVE_FLUSH_LATENCY_TARGET_MSEC, latencyTargetMSec);
+        return this;
+    }
+
     /**
      * Set whether the bookie is able to go into read-only mode.
      * If this is set to false, the bookie will shutdown on encountering
@@ -2899,6 +3074,105 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the number of entry logs compacted concurrently by the garbage collector of each ledger directory.
+     * Default is 1.
+     *
+     * @return the number of compaction threads
+     */
+    public int getNumCompactionThreads() {
+        return getInt(NUM_COMPACTION_THREADS, 1);
+    }
+
+    /**
+     * Set the number of entry logs compacted concurrently by the garbage collector of each ledger directory.
+     *
+     * <p>The compacted logs are picked by the ratio of space they reclaim to the bytes they copy, and all
+     * the threads share the compaction rate limit. Transactional compaction writes to a single compaction
+     * log, so it always compacts one entry log at a time.
+     *
+     * @param numCompactionThreads number of compaction threads
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setNumCompactionThreads(int numCompactionThreads) {
+        setProperty(NUM_COMPACTION_THREADS, numCompactionThreads);
+        return this;
+    }
+
+    /**
+     * Get whether compaction is scheduled from its cost and benefit, instead of the minor and major
+     * compaction intervals. Default is false.
+     *
+     * @return true if cost based compaction is enabled
+     */
+    public boolean isCostBasedCompactionEnabled() {
+        return getBoolean(COST_BASED_COMPACTION_ENABLED, false);
+    }
+
+    /**
+     * Set whether compaction is scheduled from its cost and benefit, instead of the minor and major
+     * compaction intervals.
+     *
+     * <p>At each garbage collection, the usage threshold of the compacted entry logs moves from the minor
+     * to the major compaction threshold as the disk fills up, and the compaction runs when the entry logs
+     * below the threshold hold enough garbage and the ledger storage is not overloaded. Forced garbage
+     * collections keep using the minor and major compaction settings.
+     *
+     * @param enabled whether to enable cost based compaction
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCostBasedCompactionEnabled(boolean enabled) {
+        setProperty(COST_BASED_COMPACTION_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the target latency of the adds and reads of the ledger storage, above which cost based
+     * compaction is deferred and slowed down. Default is 10 ms.
+     *
+     * @return the foreground latency target in milliseconds
+     */
+    public long getCompactionForegroundLatencyTargetMs() {
+        return getLong(COMPACTION_FOREGROUND_LATENCY_TARGET_MS, 10);
+    }
+
+    /**
+     * Set the target latency of the adds and reads of the ledger storage, above which cost based
+     * compaction is deferred and slowed down. A value of 0 disables this throttling.
+     *
+     * @param latencyTargetMs the foreground latency target in milliseconds
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionForegroundLatencyTargetMs(long latencyTargetMs) {
+        setProperty(COMPACTION_FOREGROUND_LATENCY_TARGET_MS, latencyTargetMs);
+        return this;
+    }
+
+    /**
+     * Get whether transactional compaction copies the live entries without reading them. Default is false.
+     *
+     * @return true if zero copy compaction is enabled
+     */
+    public boolean isZeroCopyCompactionEnabled() {
+        return getBoolean(ZERO_COPY_COMPACTION_ENABLED, false);
+    }
+
+    /**
+     * Set whether transactional compaction copies the live entries without reading them.
+     *
+     * <p>The runs of contiguous live entries of the compacted entry log are copied to the compaction log
+     * within the kernel, with copy_file_range or sendfile, and only the locations of the entries are
+     * updated in the index. This only applies to the default entry logger, the other entry loggers keep
+     * reading and adding back each entry.
+     *
+     * @param enabled whether to enable zero copy compaction
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setZeroCopyCompactionEnabled(boolean enabled) {
+        setProperty(ZERO_COPY_COMPACTION_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get the rate of compaction adds. Default is 1,000.
      *
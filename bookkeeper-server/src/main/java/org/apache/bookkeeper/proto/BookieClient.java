@@ -20,13 +20,16 @@
  */
 package org.apache.bookkeeper.proto;
 
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.BKException;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.RangeReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
@@ -83,6 +86,17 @@ public interface BookieClient {
      */
     long getNumPendingRequests(BookieId address, long ledgerId);
 
+    /**
+     * Get the estimated latency of the reads sent to a bookie, which decays
+     * while no reads complete on the bookie.
+     *
+     * @param address the address of the bookie
+     * @return the estimated read latency in nanoseconds, or -1 if it is unknown
+     */
+    default long getReadLatencyEstimate(BookieId address) {
+        return -1L;
+    }
+
     /**
      * Send a force request to the server. When complete all entries which have
      * been written for {@code ledgerId} to this bookie will be persisted on disk.
@@ -179,6 +193,33 @@ public interface BookieClient {
                    ReadEntryCallback cb, Object ctx, int flags, byte[] masterKey,
                    boolean allowFastFail);
 
+    /**
+     * Read a range of consecutive entries from bookie at address {@code address}
+     * in a single request.
+     *
+     * <p>The bookie returns the entries {@code firstEntryId, firstEntryId + 1, ...}
+     * that it stores, up to {@code maxCount} entries and {@code maxSize} bytes. The
+     * first entry is always returned if it exists, regardless of its size. The bookie
+     * may return fewer entries, as it bounds the number of entries of a response.
+     *
+     * @param address address of the bookie to read from
+     * @param ledgerId id of the ledger the entries belong to
+     * @param firstEntryId id of the first entry we wish to read
+     * @param maxCount the maximum number of entries to read
+     * @param maxSize the maximum number of bytes to read
+     * @param cb the callback notified when the request completes
+     * @param ctx a context object passed to the callback on completion
+     * @param flags a bit mask of flags from BookieProtocol.FLAG_*
+     *              {@link org.apache.bookkeeper.proto.BookieProtocol}
+     * @param allowFastFail fail the read immediately if the channel is non-writable
+     *                      {@link #isWritable(BookieId,long)}
+     */
+    default void readEntries(BookieId address, long ledgerId, long firstEntryId, int maxCount, long maxSize,
+                             RangeReadEntryCallback cb, Object ctx, int flags, boolean allowFastFail) {
+        cb.readEntriesComplete(BKException.Code.IllegalOpException, ledgerId, firstEntryId,
+                Collections.emptyList(), ctx);
+    }
+
     /**
      * Send a long poll request to bookie, waiting for the last add confirmed
      * to be updated. The client can also request that the full entry is returned
@@ -29,11 +29,13 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.HashedWheelTimer;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -57,6 +59,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallba
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.FutureGetListOfEntriesOfLedger;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.RangeReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
@@ -80,6 +83,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
     private final OrderedExecutor executor;
     private final ScheduledExecutorService scheduler;
     private final ScheduledFuture<?> timeoutFuture;
+    private final HashedWheelTimer requestTimer;
 
     private final EventLoopGroup eventLoopGroup;
     private final ByteBufAllocator allocator;
@@ -104,6 +108,19 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                             ByteBufAllocator allocator,
                             OrderedExecutor executor, ScheduledExecutorService scheduler,
                             StatsLogger statsLogger, BookieAddressResolver bookieAddressResolver) throws IOException {
+        this(conf, eventLoopGroup, allocator, executor, scheduler, statsLogger, bookieAddressResolver, null);
+    }
+
+    /**
+     * Create a bookie client which times out the requests with a request timer, if not null. Each request
+     * schedules its timeout when it is sent and cancels it when it completes, instead of the requests
+     * of all the channels being scanned every {@link ClientConfiguration#getTimeoutMonitorIntervalSec()}.
+     */
+    public BookieClientImpl(ClientConfiguration conf, EventLoopGroup eventLoopGroup,
+                            ByteBufAllocator allocator,
+                            OrderedExecutor executor, ScheduledExecutorService scheduler,
+                            StatsLogger statsLogger, BookieAddressResolver bookieAddressResolver,
+                            HashedWheelTimer requestTimer) throws IOException {
         this.conf = conf;
         this.v3Conf = new ClientConfiguration(conf);
         this.v3Conf.setUseV2WireProtocol(false);
@@ -122,7 +139,8 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         this.bookieErrorThresholdPerInterval = conf.getBookieErrorThresholdPerInterval();
 
         this.scheduler = scheduler;
-        if (conf.getAddEntryTimeout() > 0 || conf.getReadEntryTimeout() > 0) {
+        this.requestTimer = requestTimer;
+        if (requestTimer == null && (conf.getAddEntryTimeout() > 0 || conf.getReadEntryTimeout() > 0)) {
             this.timeoutFuture = this.scheduler.scheduleAtFixedRate(
                     () -> monitorPendingOperations(),
                     conf.getTimeoutMonitorIntervalSec(),
@@ -178,6 +196,15 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    @Override
+    public long getReadLatencyEstimate(BookieId address) {
+        PerChannelBookieClientPool pcbcPool = lookupClient(address);
+        if (pcbcPool == null) {
+            return -1L;
+        }
+        return pcbcPool.getReadLatencyEstimateNanos();
+    }
+
     @Override
     public PerChannelBookieClient create(BookieId address, PerChannelBookieClientPool pcbcPool,
             SecurityHandlerFactory shFactory, boolean forceUseV3) throws SecurityException {
@@ -191,7 +218,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
         return new PerChannelBookieClient(clientConfiguration, executor, eventLoopGroup, allocator, address,
                                    statsLoggerForPCBC, authProviderFactory, registry, pcbcPool,
-                                   shFactory, bookieAddressResolver);
+                                   shFactory, bookieAddressResolver, requestTimer);
     }
 
     public PerChannelBookieClientPool lookupClient(BookieId addr) {
@@ -352,6 +379,20 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    private void completeRangeRead(final int rc,
+                                   final long ledgerId,
+                                   final long firstEntryId,
+                                   final RangeReadEntryCallback cb,
+                                   final Object ctx) {
+        try {
+            executor.executeOrdered(ledgerId,
+                    () -> cb.readEntriesComplete(rc, ledgerId, firstEntryId, Collections.emptyList(), ctx));
+        } catch (RejectedExecutionException ree) {
+            cb.readEntriesComplete(getRc(BKException.Code.InterruptedException),
+                                   ledgerId, firstEntryId, Collections.emptyList(), ctx);
+        }
+    }
+
     private static class ChannelReadyForAddEntryCallback
         implements GenericCallback<PerChannelBookieClient> {
         private final Handle<ChannelReadyForAddEntryCallback> recyclerHandle;
@@ -488,6 +529,25 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }, ledgerId);
     }
 
+    @Override
+    public void readEntries(final BookieId addr, final long ledgerId, final long firstEntryId,
+                            final int maxCount, final long maxSize, final RangeReadEntryCallback cb,
+                            final Object ctx, int flags, final boolean allowFastFail) {
+        final PerChannelBookieClientPool client = lookupClient(addr);
+        if (client == null) {
+            cb.readEntriesComplete(getRc(BKException.Code.BookieHandleNotAvailableException),
+                                   ledgerId, firstEntryId, Collections.emptyList(), ctx);
+            return;
+        }
+
+        client.obtain((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                completeRangeRead(rc, ledgerId, firstEntryId, cb, ctx);
+            } else {
+                pcbc.readEntries(ledgerId, firstEntryId, maxCount, maxSize, cb, ctx, flags, allowFastFail);
+            }
+        }, ledgerId);
+    }
 
     @Override
     public void readEntryWaitForLACUpdate(final BookieId addr,
@@ -36,6 +36,8 @@ import io.netty.channel.ChannelPromise;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.bookkeeper.proto.BookieProtocol.PacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
@@ -126,6 +128,23 @@ public class BookieProtoEncoding {
                 ar.recycle();
                 data.prepend(buf);
                 return data;
+            } else if (r instanceof BookieProtocol.RangeReadRequest) {
+                BookieProtocol.RangeReadRequest rr = (BookieProtocol.RangeReadRequest) r;
+                int totalHeaderSize = 4 // for request type
+                    + 8 // for ledgerId
+                    + 8 // for first entryId
+                    + 4 // for max count
+                    + 8; // for max size
+
+                ByteBuf buf = allocator.buffer(totalHeaderSize + 4 /* frame size */);
+                buf.writeInt(totalHeaderSize);
+                buf.writeInt(PacketHeader.toInt(rr.getProtocolVersion(), rr.getOpCode(), rr.getFlags()));
+                buf.writeLong(rr.getLedgerId());
+                buf.writeLong(rr.getEntryId());
+                buf.writeInt(rr.getMaxCount());
+                buf.writeLong(rr.getMaxSize());
+                rr.recycle();
+                return buf;
             } else if (r instanceof BookieProtocol.ReadRequest) {
                 int totalHeaderSize = 4 // for request type
                     + 8 // for ledgerId
@@ -197,6 +216,13 @@ public class BookieProtoEncoding {
                 } else {
                     return BookieProtocol.ReadRequest.create(version, ledgerId, entryId, flags, null);
                 }
+            case BookieProtocol.RANGE_READ_ENTRY: {
+                ledgerId = packet.readLong();
+                entryId = packet.readLong();
+                int maxCount = packet.readInt();
+                long maxSize = packet.readLong();
+                return BookieProtocol.RangeReadRequest.create(version, ledgerId, entryId, maxCount, maxSize, flags);
+            }
             case BookieProtocol.AUTH:
                 BookkeeperProtocol.AuthMessage.Builder builder = BookkeeperProtocol.AuthMessage.newBuilder();
                 builder.mergeFrom(new ByteBufInputStream(packet), extensionRegistry);
@@ -276,6 +302,43 @@ public class BookieProtoEncoding {
                     } else {
                         return ByteBufList.get(buf, rr.getData());
                     }
+                } else if (msg instanceof BookieProtocol.RangeReadResponse) {
+                    BookieProtocol.RangeReadResponse rr = (BookieProtocol.RangeReadResponse) r;
+                    List<ByteBuf> entries = rr.getEntries();
+                    int payloadSize = rr.getPayloadSize() + 4 /* entry length */ * entries.size();
+                    int responseSize = RESPONSE_HEADERS_SIZE + payloadSize;
+                    boolean isSmallResponse = payloadSize < SMALL_ENTRY_SIZE_THRESHOLD;
+
+                    int bufferSize = 4 /* frame size */ + RESPONSE_HEADERS_SIZE
+                            + (isSmallResponse ? payloadSize : 0);
+                    ByteBuf buf = allocator.buffer(bufferSize);
+                    buf.writeInt(responseSize);
+                    buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), (short) 0));
+                    buf.writeInt(r.getErrorCode());
+                    buf.writeLong(r.getLedgerId());
+                    buf.writeLong(r.getEntryId());
+
+                    if (isSmallResponse) {
+                        for (int i = 0; i < entries.size(); i++) {
+                            ByteBuf entry = entries.get(i);
+                            buf.writeInt(entry.readableBytes());
+                            buf.writeBytes(entry, entry.readerIndex(), entry.readableBytes());
+                        }
+                        rr.release();
+                        return buf;
+                    } else {
+                        ByteBufList data = ByteBufList.get(buf);
+                        for (int i = 0; i < entries.size(); i++) {
+                            ByteBuf entry = entries.get(i);
+                            ByteBuf length = allocator.buffer(4);
+                            length.writeInt(entry.readableBytes());
+                            data.add(length);
+                            // the list takes over the reference held by the response
+                            data.add(entry);
+                        }
+                        entries.clear();
+                        return data;
+                    }
                 } else if (msg instanceof BookieProtocol.AddResponse) {
                     ByteBuf buf = allocator.buffer(RESPONSE_HEADERS_SIZE + 4 /* frame size */);
                     buf.writeInt(RESPONSE_HEADERS_SIZE);
@@ -325,6 +388,19 @@ public class BookieProtoEncoding {
 
                 return new BookieProtocol.ReadResponse(
                         version, rc, ledgerId, entryId, buffer.retainedSlice());
+            case BookieProtocol.RANGE_READ_ENTRY: {
+                rc = buffer.readInt();
+                ledgerId = buffer.readLong();
+                entryId = buffer.readLong();
+
+                List<ByteBuf> entries = new ArrayList<>();
+                while (buffer.readableBytes() >= 4) {
+                    int entryLength = buffer.readInt();
+                    entries.add(buffer.retainedSlice(buffer.readerIndex(), entryLength));
+                    buffer.skipBytes(entryLength);
+                }
+                return new BookieProtocol.RangeReadResponse(version, rc, ledgerId, entryId, entries);
+            }
             case BookieProtocol.AUTH:
                 ByteBufInputStream bufStream = new ByteBufInputStream(buffer);
                 BookkeeperProtocol.AuthMessage.Builder builder = BookkeeperProtocol.AuthMessage.newBuilder();
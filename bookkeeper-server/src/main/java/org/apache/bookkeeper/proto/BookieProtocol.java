@@ -26,6 +26,8 @@ import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AuthMessage;
 import org.apache.bookkeeper.util.ByteBufList;
 
@@ -134,6 +136,16 @@ public interface BookieProtocol {
     byte WRITE_LAC = 5;
     byte GET_BOOKIE_INFO = 6;
 
+    /**
+     * The Range read request payload will be the ledger number, the first entry
+     * number, the maximum number of entries (4-byte integer) and the maximum
+     * number of bytes (8-byte integer) to read. The response payload will be a
+     * 4-byte integer representing an error code, the 8-byte ledger number and
+     * the 8-byte first entry number, followed by the entries read, each one
+     * prefixed by its 4-byte length.
+     */
+    byte RANGE_READ_ENTRY = 7;
+
     /**
      * The error code that indicates success.
      */
@@ -401,6 +413,72 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A Request that reads a range of consecutive entries.
+     */
+    class RangeReadRequest extends ReadRequest {
+        int maxCount;
+        long maxSize;
+
+        static RangeReadRequest create(byte protocolVersion, long ledgerId, long firstEntryId,
+                                       int maxCount, long maxSize, short flags) {
+            RangeReadRequest read = RECYCLER.get();
+            read.protocolVersion = protocolVersion;
+            read.opCode = RANGE_READ_ENTRY;
+            read.ledgerId = ledgerId;
+            read.entryId = firstEntryId;
+            read.maxCount = maxCount;
+            read.maxSize = maxSize;
+            read.flags = flags;
+            read.masterKey = null;
+            return read;
+        }
+
+        int getMaxCount() {
+            return maxCount;
+        }
+
+        long getMaxSize() {
+            return maxSize;
+        }
+
+        @Override
+        boolean isFencing() {
+            // range reads are never used to fence a ledger
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Op(%d)[Ledger:%d,Entry:%d,MaxCount:%d,MaxSize:%d]",
+                    opCode, ledgerId, entryId, maxCount, maxSize);
+        }
+
+        private final Handle<RangeReadRequest> rangeRecyclerHandle;
+
+        private RangeReadRequest(Handle<RangeReadRequest> recyclerHandle) {
+            super(null);
+            this.rangeRecyclerHandle = recyclerHandle;
+        }
+
+        private static final Recycler<RangeReadRequest> RECYCLER = new Recycler<RangeReadRequest>() {
+            @Override
+            protected RangeReadRequest newObject(Handle<RangeReadRequest> handle) {
+                return new RangeReadRequest(handle);
+            }
+        };
+
+        @Override
+        public void recycle() {
+            ledgerId = -1;
+            entryId = -1;
+            maxCount = 0;
+            maxSize = 0;
+            masterKey = null;
+            rangeRecyclerHandle.recycle(this);
+        }
+    }
+
     /**
      * An authentication request.
      */
@@ -532,6 +610,45 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A response carrying a range of consecutive entries.
+     */
+    class RangeReadResponse extends Response {
+        final List<ByteBuf> entries;
+
+        RangeReadResponse(byte protocolVersion, int errorCode, long ledgerId, long firstEntryId) {
+            this(protocolVersion, errorCode, ledgerId, firstEntryId, new ArrayList<>(0));
+        }
+
+        RangeReadResponse(byte protocolVersion, int errorCode, long ledgerId, long firstEntryId,
+                          List<ByteBuf> entries) {
+            init(protocolVersion, RANGE_READ_ENTRY, errorCode, ledgerId, firstEntryId);
+            this.entries = entries;
+        }
+
+        List<ByteBuf> getEntries() {
+            return entries;
+        }
+
+        int getPayloadSize() {
+            int size = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                size += entries.get(i).readableBytes();
+            }
+            return size;
+        }
+
+        @Override
+        boolean release() {
+            boolean released = true;
+            for (int i = 0; i < entries.size(); i++) {
+                released &= entries.get(i).release();
+            }
+            entries.clear();
+            return released;
+        }
+    }
+
     /**
      * A response that adds data.
      */
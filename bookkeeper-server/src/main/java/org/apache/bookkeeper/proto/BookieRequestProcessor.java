@@ -66,6 +66,9 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(BookieRequestProcessor.class);
 
+    // room left in a frame for the headers of a range read response
+    private static final int MAX_RANGE_READ_HEADER_SIZE = 1024;
+
     /**
      * The server configuration. We use this for getting the number of add and read
      * worker threads.
@@ -129,6 +132,12 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    /**
+     * The maximum number of bytes returned by a single range read, bounded so that
+     * the response always fits in a frame.
+     */
+    private final long maxRangeReadSize;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
                                   SecurityHandlerFactory shFactory, ByteBufAllocator allocator,
                                   ChannelGroup allChannels) throws SecurityException {
@@ -139,6 +148,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
+        this.maxRangeReadSize = Math.max(0, serverCfg.getNettyMaxFrameSizeBytes() - MAX_RANGE_READ_HEADER_SIZE);
         this.readThreadPool = createExecutor(
                 this.serverCfg.getNumReadWorkerThreads(),
                 "BookieReadThreadPool",
@@ -320,6 +330,12 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case READ_ENTRY:
                         processReadRequestV3(r, requestHandler);
                         break;
+                    case RANGE_ADD_ENTRY:
+                        processRangeAddRequestV3(r, requestHandler);
+                        break;
+                    case RANGE_READ_ENTRY:
+                        processRangeReadRequestV3(r, requestHandler);
+                        break;
                     case FORCE_LEDGER:
                         processForceLedgerRequestV3(r, requestHandler);
                         break;
@@ -377,6 +393,10 @@ public class BookieRequestProcessor implements RequestProcessor {
                     checkArgument(r instanceof BookieProtocol.ReadRequest);
                     processReadRequest((BookieProtocol.ReadRequest) r, requestHandler);
                     break;
+                case BookieProtocol.RANGE_READ_ENTRY:
+                    checkArgument(r instanceof BookieProtocol.RangeReadRequest);
+                    processRangeReadRequest((BookieProtocol.RangeReadRequest) r, requestHandler);
+                    break;
                 case BookieProtocol.AUTH:
                     LOG.info("Ignoring auth operation from client {}",
                             requestHandler.ctx().channel().remoteAddress());
@@ -555,6 +575,64 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processRangeAddRequestV3(final BookkeeperProtocol.Request r,
+                                          final BookieRequestHandler requestHandler) {
+        final RangeAddEntryProcessorV3 write = new RangeAddEntryProcessorV3(r, requestHandler, this);
+        final OrderedExecutor threadPool = RequestUtils.isHighPriority(r) ? highPriorityThreadPool : writeThreadPool;
+
+        if (null == threadPool) {
+            write.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getRangeAddRequest().getLedgerId(), write);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to range add entries at {}:{}. Too many pending requests",
+                              r.getRangeAddRequest().getLedgerId(), r.getRangeAddRequest().getFirstEntryId());
+                }
+                getRequestStats().getAddEntryRejectedCounter().inc();
+                BookkeeperProtocol.RangeAddResponse.Builder addResponse =
+                    BookkeeperProtocol.RangeAddResponse.newBuilder()
+                        .setLedgerId(r.getRangeAddRequest().getLedgerId())
+                        .setFirstEntryId(r.getRangeAddRequest().getFirstEntryId())
+                        .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+                write.sendResponse(addResponse.build());
+            }
+        }
+    }
+
+    private void processRangeReadRequestV3(final BookkeeperProtocol.Request r,
+                                           final BookieRequestHandler requestHandler) {
+        final RangeReadEntryProcessorV3 read = new RangeReadEntryProcessorV3(r, requestHandler, this);
+        final OrderedExecutor threadPool = RequestUtils.isHighPriority(r) ? highPriorityThreadPool : readThreadPool;
+
+        if (null == threadPool) {
+            read.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getRangeReadRequest().getLedgerId(), read);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to range read entries at {}:{}. Too many pending requests",
+                              r.getRangeReadRequest().getLedgerId(), r.getRangeReadRequest().getFirstEntryId());
+                }
+                getRequestStats().getReadEntryRejectedCounter().inc();
+                BookkeeperProtocol.RangeReadResponse.Builder readResponse =
+                    BookkeeperProtocol.RangeReadResponse.newBuilder()
+                        .setLedgerId(r.getRangeReadRequest().getLedgerId())
+                        .setFirstEntryId(r.getRangeReadRequest().getFirstEntryId())
+                        .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+                BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder()
+                    .setHeader(read.getHeader())
+                    .setStatus(readResponse.getStatus())
+                    .setRangeReadResponse(readResponse);
+                BookkeeperProtocol.Response resp = response.build();
+                read.sendResponse(readResponse.getStatus(), resp, requestStats.getRangeReadRequestStats());
+                onReadRequestFinish();
+            }
+        }
+    }
+
     private void processStartTLSRequestV3(final BookkeeperProtocol.Request r,
                                           final BookieRequestHandler requestHandler) {
         BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder();
@@ -699,6 +777,33 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processRangeReadRequest(final BookieProtocol.RangeReadRequest r,
+                                         final BookieRequestHandler requestHandler) {
+        RangeReadEntryProcessor read = RangeReadEntryProcessor.create(r, requestHandler,
+                this, throttleReadResponses);
+
+        final OrderedExecutor threadPool = r.isHighPriority() ? highPriorityThreadPool : readThreadPool;
+
+        if (null == threadPool) {
+            read.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getLedgerId(), read);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to range read entries at {}:{}. Too many pending requests",
+                            r.ledgerId, r.entryId);
+                }
+                getRequestStats().getReadEntryRejectedCounter().inc();
+                read.sendResponse(
+                    BookieProtocol.ETOOMANYREQUESTS,
+                    ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
+                    requestStats.getRangeReadRequestStats());
+                onReadRequestFinish();
+            }
+        }
+    }
+
     @Override
     public void flushPendingResponses() {
         for (Channel c : allChannels) {
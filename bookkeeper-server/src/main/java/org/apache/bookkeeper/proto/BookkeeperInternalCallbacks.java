@@ -22,6 +22,7 @@
 package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -221,6 +222,18 @@ public class BookkeeperInternalCallbacks {
         void readEntryComplete(int rc, long ledgerId, long entryId, ByteBuf buffer, Object ctx);
     }
 
+    /**
+     * Declaration of a callback implementation for calls from BookieClient objects.
+     * Such calls are for replies of range read operations (operations to read a
+     * range of consecutive entries of a ledger from a single bookie).
+     *
+     * <p>The buffers are only valid for the duration of the callback, they must be
+     * retained by the callback if it needs to keep them.
+     */
+    public interface RangeReadEntryCallback {
+        void readEntriesComplete(int rc, long ledgerId, long firstEntryId, List<ByteBuf> entries, Object ctx);
+    }
+
     /**
      * Listener on entries responded.
      */
@@ -0,0 +1,316 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Registry of the completions of the requests in flight on a channel, keyed by primitives so that
+ * registering a request and matching its response allocate and hash no key object.
+ *
+ * <p>V3 requests are identified by their txnId. V2 requests are identified by their ledgerId, entryId
+ * and operation type, which are not unique since the same entry can be read several times at once:
+ * the V2 completions are kept in open addressing tables which hold duplicated keys, and a response
+ * completes any of the requests with its key, as the protocol cannot tell them apart.
+ */
+class CompletionRegistry<V> {
+
+    private static final int V2_SECTIONS = 16;
+    private static final int V2_SECTION_CAPACITY = 64;
+
+    private final ConcurrentLongHashMap<V> v3Completions =
+            ConcurrentLongHashMap.<V>newBuilder().build();
+    private final V2Section<V>[] v2Sections;
+
+    @SuppressWarnings("unchecked")
+    CompletionRegistry() {
+        this.v2Sections = (V2Section<V>[]) new V2Section[V2_SECTIONS];
+        for (int i = 0; i < V2_SECTIONS; i++) {
+            v2Sections[i] = new V2Section<>(V2_SECTION_CAPACITY);
+        }
+    }
+
+    void put(long txnId, V value) {
+        v3Completions.put(txnId, value);
+    }
+
+    V get(long txnId) {
+        return v3Completions.get(txnId);
+    }
+
+    V remove(long txnId) {
+        return v3Completions.remove(txnId);
+    }
+
+    /**
+     * Remove a completion, only if it is still registered with the txnId.
+     *
+     * @return true if the completion was removed
+     */
+    boolean remove(long txnId, V value) {
+        return v3Completions.remove(txnId, value);
+    }
+
+    void putV2(long ledgerId, long entryId, OperationType operationType, V value) {
+        long hash = hash(ledgerId, entryId);
+        v2Section(hash).put(ledgerId, entryId, operationType, value, hash);
+    }
+
+    V getV2(long ledgerId, long entryId, OperationType operationType) {
+        long hash = hash(ledgerId, entryId);
+        return v2Section(hash).get(ledgerId, entryId, operationType, hash);
+    }
+
+    V removeV2(long ledgerId, long entryId, OperationType operationType) {
+        long hash = hash(ledgerId, entryId);
+        return v2Section(hash).remove(ledgerId, entryId, operationType, hash);
+    }
+
+    /**
+     * Remove a completion, only if it is still registered with the key, among the completions of the
+     * requests with the same key.
+     *
+     * @return true if the completion was removed
+     */
+    boolean removeV2(long ledgerId, long entryId, OperationType operationType, V value) {
+        long hash = hash(ledgerId, entryId);
+        return v2Section(hash).remove(ledgerId, entryId, operationType, value, hash);
+    }
+
+    /**
+     * Remove the completions matching a predicate.
+     *
+     * @return the number of completions removed
+     */
+    int removeIf(Predicate<V> predicate) {
+        int removed = v3Completions.removeIf((txnId, value) -> predicate.test(value));
+        for (V2Section<V> section : v2Sections) {
+            removed += section.removeIf(predicate);
+        }
+        return removed;
+    }
+
+    /**
+     * Remove all the completions, passing each of them to a consumer.
+     */
+    void removeAll(Consumer<V> consumer) {
+        for (V2Section<V> section : v2Sections) {
+            section.removeAll().forEach(consumer);
+        }
+        for (long txnId : v3Completions.keys()) {
+            V value = v3Completions.remove(txnId);
+            if (value != null) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    long size() {
+        long size = v3Completions.size();
+        for (V2Section<V> section : v2Sections) {
+            size += section.size;
+        }
+        return size;
+    }
+
+    private V2Section<V> v2Section(long hash) {
+        return v2Sections[(int) (hash >>> 32) & (V2_SECTIONS - 1)];
+    }
+
+    private static final long HASH_MIXER = 0xc6a4a7935bd1e995L;
+    private static final int R = 47;
+
+    static long hash(long ledgerId, long entryId) {
+        long hash = (ledgerId * 31 + entryId) * HASH_MIXER;
+        hash ^= hash >>> R;
+        hash *= HASH_MIXER;
+        return hash;
+    }
+
+    /**
+     * Open addressing table with linear probing, where entries are removed by shifting back the entries
+     * that follow them, so lookups stop at the first empty bucket.
+     */
+    private static final class V2Section<V> {
+        private long[] ledgerIds;
+        private long[] entryIds;
+        private OperationType[] operationTypes;
+        private Object[] values;
+        private int capacity;
+        private volatile int size = 0;
+
+        V2Section(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            this.capacity = capacity;
+            this.ledgerIds = new long[capacity];
+            this.entryIds = new long[capacity];
+            this.operationTypes = new OperationType[capacity];
+            this.values = new Object[capacity];
+        }
+
+        private int bucket(long hash) {
+            return (int) hash & (capacity - 1);
+        }
+
+        private int next(int bucket) {
+            return (bucket + 1) & (capacity - 1);
+        }
+
+        synchronized void put(long ledgerId, long entryId, OperationType operationType, V value, long hash) {
+            if ((size + 1) * 3 > capacity * 2) {
+                rehash(capacity * 2);
+            }
+            insert(ledgerId, entryId, operationType, value, hash);
+            size++;
+        }
+
+        private void insert(long ledgerId, long entryId, OperationType operationType, Object value, long hash) {
+            int bucket = bucket(hash);
+            while (values[bucket] != null) {
+                bucket = next(bucket);
+            }
+            ledgerIds[bucket] = ledgerId;
+            entryIds[bucket] = entryId;
+            operationTypes[bucket] = operationType;
+            values[bucket] = value;
+        }
+
+        private int find(long ledgerId, long entryId, OperationType operationType, long hash) {
+            for (int bucket = bucket(hash); values[bucket] != null; bucket = next(bucket)) {
+                if (ledgerIds[bucket] == ledgerId && entryIds[bucket] == entryId
+                        && operationTypes[bucket] == operationType) {
+                    return bucket;
+                }
+            }
+            return -1;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(long ledgerId, long entryId, OperationType operationType, long hash) {
+            int bucket = find(ledgerId, entryId, operationType, hash);
+            return bucket < 0 ? null : (V) values[bucket];
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V remove(long ledgerId, long entryId, OperationType operationType, long hash) {
+            int bucket = find(ledgerId, entryId, operationType, hash);
+            if (bucket < 0) {
+                return null;
+            }
+            V value = (V) values[bucket];
+            removeAt(bucket);
+            return value;
+        }
+
+        synchronized boolean remove(long ledgerId, long entryId, OperationType operationType, V value, long hash) {
+            for (int bucket = bucket(hash); values[bucket] != null; bucket = next(bucket)) {
+                if (values[bucket] == value && ledgerIds[bucket] == ledgerId && entryIds[bucket] == entryId
+                        && operationTypes[bucket] == operationType) {
+                    removeAt(bucket);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void removeAt(int hole) {
+            values[hole] = null;
+            operationTypes[hole] = null;
+            size--;
+            // shift back the following entries which would not be found anymore past the hole
+            for (int bucket = next(hole); values[bucket] != null; bucket = next(bucket)) {
+                int ideal = bucket(hash(ledgerIds[bucket], entryIds[bucket]));
+                if (((bucket - ideal) & (capacity - 1)) >= ((bucket - hole) & (capacity - 1))) {
+                    ledgerIds[hole] = ledgerIds[bucket];
+                    entryIds[hole] = entryIds[bucket];
+                    operationTypes[hole] = operationTypes[bucket];
+                    values[hole] = values[bucket];
+                    values[bucket] = null;
+                    operationTypes[bucket] = null;
+                    hole = bucket;
+                }
+            }
+        }
+
+        /**
+         * Remove the entries matching the predicate in place, testing each entry once. The scan starts after
+         * an empty bucket, so that no run of entries wraps around its start, and the entries shifted back by a
+         * removal are always entries it did not reach yet.
+         */
+        @SuppressWarnings("unchecked")
+        synchronized int removeIf(Predicate<V> predicate) {
+            if (size == 0) {
+                return 0;
+            }
+            int start = 0;
+            while (values[start] != null) {
+                start = next(start);
+            }
+            int removed = 0;
+            int bucket = start;
+            do {
+                bucket = next(bucket);
+                while (values[bucket] != null && predicate.test((V) values[bucket])) {
+                    removeAt(bucket);
+                    removed++;
+                }
+            } while (bucket != start);
+            return removed;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized List<V> removeAll() {
+            List<V> removed = new ArrayList<>(size);
+            for (int bucket = 0; bucket < capacity; bucket++) {
+                if (values[bucket] != null) {
+                    removed.add((V) values[bucket]);
+                    values[bucket] = null;
+                    operationTypes[bucket] = null;
+                }
+            }
+            size = 0;
+            return removed;
+        }
+
+        // Rebuild the table with a larger capacity
+        private void rehash(int newCapacity) {
+            long[] oldLedgerIds = ledgerIds;
+            long[] oldEntryIds = entryIds;
+            OperationType[] oldOperationTypes = operationTypes;
+            Object[] oldValues = values;
+            allocate(newCapacity);
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    insert(oldLedgerIds[i], oldEntryIds[i], oldOperationTypes[i], oldValues[i],
+                            hash(oldLedgerIds[i], oldEntryIds[i]));
+                }
+            }
+        }
+    }
+}
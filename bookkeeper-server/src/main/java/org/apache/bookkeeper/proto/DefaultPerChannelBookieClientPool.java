@@ -54,6 +54,7 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
 
     final AtomicInteger counter = new AtomicInteger(0);
     final AtomicLong errorCounter = new AtomicLong(0);
+    final ReadLatencyEstimator readLatencyEstimator = new ReadLatencyEstimator();
 
     DefaultPerChannelBookieClientPool(ClientConfiguration conf, PerChannelBookieClientFactory factory,
                                       BookieId address,
@@ -140,6 +141,16 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         errorCounter.incrementAndGet();
     }
 
+    @Override
+    public void recordReadLatency(long latencyNanos) {
+        readLatencyEstimator.record(latencyNanos);
+    }
+
+    @Override
+    public long getReadLatencyEstimateNanos() {
+        return readLatencyEstimator.getEstimateNanos();
+    }
+
     @Override
     public void disconnect(boolean wait) {
         for (int i = 0; i < clients.length; i++) {
@@ -59,9 +59,12 @@ import io.netty.handler.ssl.SslHandler;
 import io.netty.incubator.channel.uring.IOUringChannelOption;
 import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
 import io.netty.incubator.channel.uring.IOUringSocketChannel;
+import io.netty.util.HashedWheelTimer;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import java.io.IOException;
@@ -78,15 +81,14 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.function.BiPredicate;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.SSLPeerUnverifiedException;
 import lombok.SneakyThrows;
@@ -105,6 +107,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallba
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetListOfEntriesOfLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.RangeReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
@@ -122,6 +125,10 @@ import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerRe
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
@@ -143,8 +150,6 @@ import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.StringUtils;
-import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
-import org.apache.bookkeeper.util.collections.SynchronizedHashMultiMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -172,6 +177,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         BKException.Code.DuplicateEntryIdException,
                         BKException.Code.WriteOnReadOnlyBookieException));
     private static final int DEFAULT_HIGH_PRIORITY_VALUE = 100; // We may add finer grained priority later.
+    // room left in a frame for the headers of a range read response
+    private static final int RANGE_READ_RESPONSE_HEADER_SIZE = 1024;
+    // room left in a frame for the headers of a range add request
+    private static final int RANGE_ADD_REQUEST_HEADER_SIZE = 1024;
     private static final AtomicLong txnIdGenerator = new AtomicLong(0);
 
     final BookieId bookieId;
@@ -182,16 +191,18 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     final long addEntryTimeoutNanos;
     final long readEntryTimeoutNanos;
     final int maxFrameSize;
+    final int addBatchMaxEntries;
+    final long addBatchMaxBytes;
     final long getBookieInfoTimeoutNanos;
     final int startTLSTimeout;
 
-    private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
-            ConcurrentOpenHashMap.<CompletionKey, CompletionValue>newBuilder().build();
+    // Adds being coalesced into the next range add request, sent by the channel event loop
+    private final Object addBatchLock = new Object();
+    private AddBatch pendingAddBatch = null;
 
-    // Map that hold duplicated read requests. The idea is to only use this map (synchronized) when there is a duplicate
-    // read request for the same ledgerId/entryId
-    private final SynchronizedHashMultiMap<CompletionKey, CompletionValue> completionObjectsV2Conflicts =
-        new SynchronizedHashMultiMap<>();
+    private final CompletionRegistry<CompletionValue> completionObjects = new CompletionRegistry<>();
+    // times out each request on its own, instead of scanning the completions periodically, if present
+    private final HashedWheelTimer requestTimer;
 
     private final StatsLogger statsLogger;
     @StatsDoc(
@@ -204,6 +215,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "timeout stats of read entries requests"
     )
     private final OpStatsLogger readTimeoutOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_RANGE_READ_OP,
+        help = "channel stats of range read entries requests"
+    )
+    private final OpStatsLogger rangeReadEntryOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_READ,
+        help = "timeout stats of range read entries requests"
+    )
+    private final OpStatsLogger rangeReadTimeoutOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_ADD_OP,
         help = "channel stats of add entries requests"
@@ -384,6 +405,20 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                   PerChannelBookieClientPool pcbcPool,
                                   SecurityHandlerFactory shFactory,
                                   BookieAddressResolver bookieAddressResolver) throws SecurityException {
+        this(conf, executor, eventLoopGroup, allocator, bookieId, parentStatsLogger, authProviderFactory, extRegistry,
+                pcbcPool, shFactory, bookieAddressResolver, null);
+    }
+
+    public PerChannelBookieClient(ClientConfiguration conf, OrderedExecutor executor,
+                                  EventLoopGroup eventLoopGroup,
+                                  ByteBufAllocator allocator,
+                                  BookieId bookieId,
+                                  StatsLogger parentStatsLogger, ClientAuthProvider.Factory authProviderFactory,
+                                  ExtensionRegistry extRegistry,
+                                  PerChannelBookieClientPool pcbcPool,
+                                  SecurityHandlerFactory shFactory,
+                                  BookieAddressResolver bookieAddressResolver,
+                                  HashedWheelTimer requestTimer) throws SecurityException {
         this.maxFrameSize = conf.getNettyMaxFrameSizeBytes();
         this.conf = conf;
         this.bookieId = bookieId;
@@ -401,7 +436,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.getBookieInfoTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getBookieInfoTimeout());
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
+        // range adds are only supported by the v3 protocol
+        this.addBatchMaxEntries = useV2WireProtocol ? 0 : conf.getAddBatchMaxEntries();
+        this.addBatchMaxBytes = Math.min(conf.getAddBatchMaxBytes(), maxFrameSize - RANGE_ADD_REQUEST_HEADER_SIZE);
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
+        this.requestTimer = requestTimer;
 
         this.authProviderFactory = authProviderFactory;
         this.extRegistry = extRegistry;
@@ -422,6 +461,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         getListOfEntriesOfLedgerCompletionOpLogger = statsLogger
                 .getOpStatsLogger(BookKeeperClientStats.GET_LIST_OF_ENTRIES_OF_LEDGER_OP);
         readTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_READ);
+        rangeReadEntryOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_RANGE_READ_OP);
+        rangeReadTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_RANGE_READ);
         addTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_ADD);
         writeLacTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_WRITE_LAC);
         forceLedgerTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_FORCE);
@@ -689,9 +730,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new V3CompletionKey(txnId,
                                                                 OperationType.WRITE_LAC);
         // writeLac is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
-                              new WriteLacCompletion(completionKey, cb,
-                                                     ctx, ledgerId));
+        if (!putCompletionKeyValue(completionKey,
+                                   new WriteLacCompletion(completionKey, cb,
+                                                          ctx, ledgerId))) {
+            return;
+        }
 
         // Build the request
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -731,9 +774,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new V3CompletionKey(txnId,
                                                                 OperationType.FORCE_LEDGER);
         // force is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
-                              new ForceLedgerCompletion(completionKey, cb,
-                                                     ctx, ledgerId));
+        if (!putCompletionKeyValue(completionKey,
+                                   new ForceLedgerCompletion(completionKey, cb,
+                                                             ctx, ledgerId))) {
+            return;
+        }
 
         // Build the request
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -773,6 +818,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
     void addEntry(final long ledgerId, byte[] masterKey, final long entryId, ByteBufList toSend, WriteCallback cb,
                   Object ctx, final int options, boolean allowFastFail, final EnumSet<WriteFlag> writeFlags) {
+        if (addBatchMaxEntries > 1) {
+            if (options == BookieProtocol.FLAG_NONE && channel != null) {
+                addEntryToBatch(ledgerId, masterKey, entryId, toSend, cb, ctx, allowFastFail, writeFlags);
+                return;
+            }
+            // the adds that are not batched must not overtake the pending batch of their ledger
+            flushAddBatch(ledgerId);
+        }
         Object request = null;
         CompletionKey completionKey = null;
         if (useV2WireProtocol) {
@@ -798,21 +851,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
             }
 
-            ByteString body = null;
-            if (toSend.hasArray()) {
-                body = UnsafeByteOperations.unsafeWrap(toSend.array(), toSend.arrayOffset(), toSend.readableBytes());
-            } else {
-                for (int i = 0; i < toSend.size(); i++) {
-                    ByteString piece = UnsafeByteOperations.unsafeWrap(toSend.getBuffer(i).nioBuffer());
-                    // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
-                    body = (body == null) ? piece : body.concat(piece);
-                }
-            }
             AddRequest.Builder addBuilder = AddRequest.newBuilder()
                     .setLedgerId(ledgerId)
                     .setEntryId(entryId)
                     .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
-                    .setBody(body);
+                    .setBody(toByteString(toSend));
 
             if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
                 addBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
@@ -829,9 +872,15 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .build();
         }
 
-        putCompletionKeyValue(completionKey,
-                              acquireAddCompletion(completionKey,
-                                                   cb, ctx, ledgerId, entryId));
+        if (!putCompletionKeyValue(completionKey,
+                                   acquireAddCompletion(completionKey,
+                                                        cb, ctx, ledgerId, entryId))) {
+            // the V2 add request retained the data
+            if (request instanceof BookieProtocol.AddRequest) {
+                ((BookieProtocol.AddRequest) request).recycle();
+            }
+            return;
+        }
         final Channel c = channel;
         if (c == null) {
             // usually checked in writeAndFlush, but we have extra check
@@ -845,6 +894,161 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private static ByteString toByteString(ByteBufList toSend) {
+        ByteString body = null;
+        if (toSend.hasArray()) {
+            body = UnsafeByteOperations.unsafeWrap(toSend.array(), toSend.arrayOffset(), toSend.readableBytes());
+        } else {
+            for (int i = 0; i < toSend.size(); i++) {
+                ByteString piece = UnsafeByteOperations.unsafeWrap(toSend.getBuffer(i).nioBuffer());
+                // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
+                body = (body == null) ? piece : body.concat(piece);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Coalesce an add with the consecutive adds of the same ledger issued to this channel, before the event loop
+     * sends them in a single range add request. The batch is sent as soon as it is full, or when an add of
+     * another ledger or a non consecutive entry comes in, so the adds still reach the bookie in order.
+     */
+    private void addEntryToBatch(long ledgerId, byte[] masterKey, long entryId, ByteBufList toSend,
+                                 WriteCallback cb, Object ctx, boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+        final Channel c = channel;
+        AddBatch newBatch = null;
+        synchronized (addBatchLock) {
+            AddBatch batch = pendingAddBatch;
+            if (batch != null && !batch.canAppend(ledgerId, entryId, toSend.readableBytes(), addBatchMaxBytes,
+                    allowFastFail, writeFlags)) {
+                pendingAddBatch = null;
+                sendAddBatch(batch);
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new AddBatch(ledgerId, masterKey, entryId, allowFastFail, writeFlags);
+                pendingAddBatch = batch;
+                newBatch = batch;
+            }
+            // the buffer is released by the bookie client as soon as this call returns
+            batch.add(toSend.retain(), cb, ctx);
+            if (batch.size() >= addBatchMaxEntries || batch.bytes >= addBatchMaxBytes) {
+                pendingAddBatch = null;
+                sendAddBatch(batch);
+                return;
+            }
+        }
+        if (newBatch != null) {
+            final AddBatch batch = newBatch;
+            try {
+                if (c != null) {
+                    c.eventLoop().execute(() -> flushAddBatch(batch));
+                    return;
+                }
+            } catch (RejectedExecutionException e) {
+                // the event loop is shutting down, send it right away
+            }
+            flushAddBatch(batch);
+        }
+    }
+
+    private void flushAddBatch(AddBatch batch) {
+        synchronized (addBatchLock) {
+            if (pendingAddBatch == batch) {
+                pendingAddBatch = null;
+                sendAddBatch(batch);
+            }
+        }
+    }
+
+    private void flushAddBatch(long ledgerId) {
+        synchronized (addBatchLock) {
+            AddBatch batch = pendingAddBatch;
+            if (batch != null && batch.ledgerId == ledgerId) {
+                pendingAddBatch = null;
+                sendAddBatch(batch);
+            }
+        }
+    }
+
+    private void sendAddBatch(AddBatch batch) {
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.RANGE_ADD_ENTRY);
+
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.RANGE_ADD_ENTRY)
+                .setTxnId(txnId);
+        RangeAddRequest.Builder addBuilder = RangeAddRequest.newBuilder()
+                .setLedgerId(batch.ledgerId)
+                .setFirstEntryId(batch.firstEntryId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(batch.masterKey));
+        for (ByteBufList toSend : batch.toSend) {
+            addBuilder.addBody(toByteString(toSend));
+        }
+        if (!batch.writeFlags.isEmpty()) {
+            addBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(batch.writeFlags));
+        }
+        final Request request = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setRangeAddRequest(addBuilder)
+                .build();
+
+        if (!putCompletionKeyValue(completionKey, new RangeAddCompletion(completionKey, batch))) {
+            return;
+        }
+        writeAndFlush(channel, completionKey, request, batch.allowFastFail);
+    }
+
+    /**
+     * Consecutive entries of a ledger sent in a single range add request.
+     */
+    private static final class AddBatch {
+        final long ledgerId;
+        final byte[] masterKey;
+        final long firstEntryId;
+        final boolean allowFastFail;
+        final EnumSet<WriteFlag> writeFlags;
+        final List<ByteBufList> toSend = new ArrayList<>();
+        final List<WriteCallback> callbacks = new ArrayList<>();
+        final List<Object> ctxs = new ArrayList<>();
+        long bytes = 0;
+
+        AddBatch(long ledgerId, byte[] masterKey, long firstEntryId, boolean allowFastFail,
+                 EnumSet<WriteFlag> writeFlags) {
+            this.ledgerId = ledgerId;
+            this.masterKey = masterKey;
+            this.firstEntryId = firstEntryId;
+            this.allowFastFail = allowFastFail;
+            this.writeFlags = writeFlags;
+        }
+
+        boolean canAppend(long ledgerId, long entryId, int entrySize, long maxBytes, boolean allowFastFail,
+                          EnumSet<WriteFlag> writeFlags) {
+            return this.ledgerId == ledgerId
+                    && this.firstEntryId + size() == entryId
+                    && this.bytes + entrySize <= maxBytes
+                    && this.allowFastFail == allowFastFail
+                    && this.writeFlags.equals(writeFlags);
+        }
+
+        void add(ByteBufList entry, WriteCallback cb, Object ctx) {
+            toSend.add(entry);
+            callbacks.add(cb);
+            ctxs.add(ctx);
+            bytes += entry.readableBytes();
+        }
+
+        int size() {
+            return toSend.size();
+        }
+
+        void release() {
+            toSend.forEach(ReferenceCountUtil::release);
+            toSend.clear();
+        }
+    }
+
     public void readLac(final long ledgerId, ReadLacCallback cb, Object ctx) {
         Object request = null;
         CompletionKey completionKey = null;
@@ -868,16 +1072,21 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .setReadLacRequest(readLacBuilder)
                     .build();
         }
-        putCompletionKeyValue(completionKey,
-                              new ReadLacCompletion(completionKey, cb,
-                                                    ctx, ledgerId));
+        if (!putCompletionKeyValue(completionKey,
+                                   new ReadLacCompletion(completionKey, cb,
+                                                         ctx, ledgerId))) {
+            return;
+        }
         writeAndFlush(channel, completionKey, request);
     }
 
     public void getListOfEntriesOfLedger(final long ledgerId, GetListOfEntriesOfLedgerCallback cb) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_LIST_OF_ENTRIES_OF_LEDGER);
-        completionObjects.put(completionKey, new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId));
+        if (!putCompletionKeyValue(completionKey,
+                new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId))) {
+            return;
+        }
 
         // Build the request.
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder().setVersion(ProtocolVersion.VERSION_THREE)
@@ -994,8 +1203,64 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .build();
         }
 
-        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId);
-        putCompletionKeyValue(completionKey, readCompletion);
+        // long poll reads wait on the bookie for the entry to be written, so their latency is not the bookie's
+        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId,
+                null == timeOutInMillis);
+        if (!putCompletionKeyValue(completionKey, readCompletion)) {
+            return;
+        }
+
+        writeAndFlush(channel, completionKey, request, allowFastFail);
+    }
+
+    /**
+     * Range Reads.
+     */
+    public void readEntries(final long ledgerId,
+                            final long firstEntryId,
+                            final int maxCount,
+                            final long maxSize,
+                            RangeReadEntryCallback cb,
+                            Object ctx,
+                            int flags,
+                            boolean allowFastFail) {
+        // the whole response has to fit in a single frame
+        final long cappedMaxSize = Math.min(maxSize, maxFrameSize - RANGE_READ_RESPONSE_HEADER_SIZE);
+        Object request = null;
+        CompletionKey completionKey = null;
+        if (useV2WireProtocol) {
+            request = BookieProtocol.RangeReadRequest.create(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                    ledgerId, firstEntryId, maxCount, cappedMaxSize, (short) flags);
+            completionKey = acquireV2Key(ledgerId, firstEntryId, OperationType.RANGE_READ_ENTRY);
+        } else {
+            final long txnId = getTxnId();
+            completionKey = new V3CompletionKey(txnId, OperationType.RANGE_READ_ENTRY);
+
+            // Build the request and calculate the total size to be included in the packet.
+            BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                    .setVersion(ProtocolVersion.VERSION_THREE)
+                    .setOperation(OperationType.RANGE_READ_ENTRY)
+                    .setTxnId(txnId);
+            if (((short) flags & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+                headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
+            }
+
+            RangeReadRequest.Builder readBuilder = RangeReadRequest.newBuilder()
+                    .setLedgerId(ledgerId)
+                    .setFirstEntryId(firstEntryId)
+                    .setMaxCount(maxCount)
+                    .setMaxSize(cappedMaxSize);
+
+            request = withRequestContext(Request.newBuilder())
+                    .setHeader(headerBuilder)
+                    .setRangeReadRequest(readBuilder)
+                    .build();
+        }
+
+        RangeReadCompletion readCompletion = new RangeReadCompletion(completionKey, cb, ctx, ledgerId, firstEntryId);
+        if (!putCompletionKeyValue(completionKey, readCompletion)) {
+            return;
+        }
 
         writeAndFlush(channel, completionKey, request, allowFastFail);
     }
@@ -1003,9 +1268,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
-        completionObjects.put(completionKey,
-                              new GetBookieInfoCompletion(
-                                      completionKey, cb, ctx));
+        if (!putCompletionKeyValue(completionKey,
+                                   new GetBookieInfoCompletion(
+                                           completionKey, cb, ctx))) {
+            return;
+        }
 
         // Build the request and calculate the total size to be included in the packet.
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
@@ -1024,14 +1291,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, completionKey, getBookieInfoRequest);
     }
 
-    private static final BiPredicate<CompletionKey, CompletionValue> timeoutCheck = (key, value) -> {
-        return value.maybeTimeout();
-    };
-
     public void checkTimeoutOnPendingOperations() {
-        int timedOutOperations = completionObjects.removeIf(timeoutCheck);
-
-        timedOutOperations += completionObjectsV2Conflicts.removeIf(timeoutCheck);
+        int timedOutOperations = completionObjects.removeIf(CompletionValue::maybeTimeout);
 
         if (timedOutOperations > 0) {
             LOG.info("Timed-out {} operations to channel {} for {}",
@@ -1160,7 +1421,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             ChannelPromise promise = channel.newPromise().addListener(future -> {
                 if (future.isSuccess()) {
                     nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                    CompletionValue completion = completionObjects.get(key);
+                    CompletionValue completion = key.lookup();
                     if (completion != null) {
                         completion.setOutstanding();
                     }
@@ -1179,12 +1440,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = key.unregister();
         if (completion != null) {
+            completion.cancelTimeout();
             completion.errorOut();
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut());
         }
     }
 
@@ -1192,12 +1451,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = key.unregister();
         if (completion != null) {
+            completion.cancelTimeout();
             completion.errorOut(rc);
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut(rc));
         }
     }
 
@@ -1226,14 +1483,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
      */
 
     void errorOutOutstandingEntries(int rc) {
-        Optional<CompletionKey> multikey = completionObjectsV2Conflicts.getAnyKey();
-        while (multikey.isPresent()) {
-            multikey.ifPresent(k -> errorOut(k, rc));
-            multikey = completionObjectsV2Conflicts.getAnyKey();
-        }
-        for (CompletionKey key : completionObjects.keys()) {
-            errorOut(key, rc);
-        }
+        completionObjects.removeAll(completion -> {
+            completion.cancelTimeout();
+            completion.errorOut(rc);
+        });
     }
 
     void recordError() {
@@ -1242,6 +1495,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    void recordReadLatency(long latencyNanos) {
+        if (pcbcPool != null) {
+            pcbcPool.recordReadLatency(latencyNanos);
+        }
+    }
+
     /**
      * If our channel has disconnected, we just error out the pending entries.
      */
@@ -1355,9 +1614,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         OperationType operationType = getOperationType(response.getOpCode());
         StatusCode status = getStatusCodeFromErrorCode(response.errorCode);
 
-        CompletionKey key = acquireV2Key(response.ledgerId, response.entryId, operationType);
-        CompletionValue completionValue = getCompletionValue(key);
-        key.release();
+        CompletionValue completionValue = completionObjects.removeV2(response.ledgerId, response.entryId,
+                operationType);
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1367,6 +1625,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
             response.release();
         } else {
+            completionValue.cancelTimeout();
             long orderingKey = completionValue.ledgerId;
             executor.executeOrdered(orderingKey,
                     ReadV2ResponseCallback.create(completionValue, response.ledgerId, response.entryId,
@@ -1429,6 +1688,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 return  OperationType.ADD_ENTRY;
             case BookieProtocol.READENTRY:
                 return OperationType.READ_ENTRY;
+            case BookieProtocol.RANGE_READ_ENTRY:
+                return OperationType.RANGE_READ_ENTRY;
             case BookieProtocol.AUTH:
                 return OperationType.AUTH;
             case BookieProtocol.READ_LAC:
@@ -1472,8 +1733,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     private void readV3Response(final Response response) {
         final BKPacketHeader header = response.getHeader();
 
-        final CompletionKey key = newCompletionKey(header.getTxnId(), header.getOperation());
-        final CompletionValue completionValue = completionObjects.get(key);
+        // txnIds are unique, so the operation of the response does not need to be matched
+        final CompletionValue completionValue = completionObjects.remove(header.getTxnId());
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1482,6 +1743,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                         + header.getOperation() + " and txnId : " + header.getTxnId());
             }
         } else {
+            completionValue.cancelTimeout();
             long orderingKey = completionValue.ledgerId;
             executor.executeOrdered(orderingKey, new Runnable() {
                 @Override
@@ -1498,8 +1760,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 }
             });
         }
-
-        completionObjects.remove(key);
     }
 
     void initTLSHandshake() {
@@ -1603,6 +1863,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         protected long ledgerId;
         protected long entryId;
         protected long startTime;
+        private Timeout timeout;
 
         public CompletionValue(String operationName,
                                Object ctx,
@@ -1636,8 +1897,29 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
+        void logReadLatency(int rc) {
+            // the bookie answered, or failed to answer in time, so the latency tells how fast it serves reads
+            if (rc == BKException.Code.OK
+                || rc == BKException.Code.NoSuchEntryException
+                || rc == BKException.Code.NoSuchLedgerExistsException
+                || rc == BKException.Code.TimeoutException) {
+                recordReadLatency(latency());
+            }
+        }
+
+        /**
+         * @return the time after which the request times out, in nanoseconds, or 0 if it never does
+         */
+        long timeoutNanos() {
+            return readEntryTimeoutNanos;
+        }
+
+        boolean isExpired() {
+            return MathUtils.elapsedNanos(startTime) >= timeoutNanos();
+        }
+
         boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= readEntryTimeoutNanos) {
+            if (isExpired()) {
                 timeout();
                 return true;
             } else {
@@ -1645,6 +1927,28 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
+        /**
+         * Schedule the timeout of the request on the request timer, if any. It must be scheduled before
+         * the completion is registered with the key, so that a response always finds it to cancel.
+         */
+        void scheduleTimeout(CompletionKey key) {
+            long timeoutNanos = timeoutNanos();
+            if (requestTimer != null && timeoutNanos > 0) {
+                timeout = requestTimer.newTimeout(key.newTimeoutTask(this), timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Cancel the timeout of the request, once its completion is removed from the registry.
+         */
+        void cancelTimeout() {
+            Timeout t = timeout;
+            if (t != null) {
+                timeout = null;
+                t.cancel();
+            }
+        }
+
         void timeout() {
             errorOut(BKException.Code.TimeoutException);
             timeoutOpLogger.registerSuccessfulEvent(latency(),
@@ -1872,7 +2176,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         public ReadCompletion(final CompletionKey key,
                               final ReadEntryCallback originalCallback,
                               final Object originalCtx,
-                              long ledgerId, final long entryId) {
+                              long ledgerId, final long entryId,
+                              final boolean recordLatency) {
             super("Read", originalCtx, ledgerId, entryId,
                   readEntryOpLogger, readTimeoutOpLogger);
 
@@ -1882,6 +2187,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                                   long entryId, ByteBuf buffer,
                                                   Object ctx) {
                         logOpResult(rc);
+                        if (recordLatency) {
+                            logReadLatency(rc);
+                        }
                         originalCallback.readEntryComplete(rc,
                                                            ledgerId, entryId,
                                                            buffer, originalCtx);
@@ -1968,6 +2276,104 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    // visible for testing
+    class RangeReadCompletion extends CompletionValue {
+        final RangeReadEntryCallback cb;
+
+        public RangeReadCompletion(final CompletionKey key,
+                                   final RangeReadEntryCallback originalCallback,
+                                   final Object originalCtx,
+                                   long ledgerId, final long firstEntryId) {
+            super("RangeRead", originalCtx, ledgerId, firstEntryId,
+                  rangeReadEntryOpLogger, rangeReadTimeoutOpLogger);
+
+            this.cb = new RangeReadEntryCallback() {
+                    @Override
+                    public void readEntriesComplete(int rc, long ledgerId,
+                                                    long firstEntryId, List<ByteBuf> entries,
+                                                    Object ctx) {
+                        logOpResult(rc);
+                        logReadLatency(rc);
+                        originalCallback.readEntriesComplete(rc,
+                                                             ledgerId, firstEntryId,
+                                                             entries, originalCtx);
+                        key.release();
+                    }
+                };
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.readEntriesComplete(rc, ledgerId,
+                                                 entryId, Collections.emptyList(), ctx));
+        }
+
+        @Override
+        public void setOutstanding() {
+            readEntryOutstanding.inc();
+        }
+
+        @Override
+        public void handleV2Response(long ledgerId, long entryId,
+                                     StatusCode status,
+                                     BookieProtocol.Response response) {
+            readEntryOutstanding.dec();
+            if (!(response instanceof BookieProtocol.RangeReadResponse)) {
+                // a bookie which does not know range reads, the response is released by the caller
+                int rc = status == StatusCode.EOK ? BKException.Code.ProtocolVersionException
+                        : convertStatus(status, BKException.Code.ReadException);
+                cb.readEntriesComplete(rc, ledgerId, entryId, Collections.emptyList(), ctx);
+                return;
+            }
+            BookieProtocol.RangeReadResponse readResponse = (BookieProtocol.RangeReadResponse) response;
+            handleRangeReadResponse(ledgerId, entryId, status, readResponse.getEntries(), INVALID_ENTRY_ID);
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            readEntryOutstanding.dec();
+            RangeReadResponse readResponse = response.getRangeReadResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? readResponse.getStatus() : response.getStatus();
+            List<ByteBuf> entries = new ArrayList<>(readResponse.getBodyCount());
+            for (int i = 0; i < readResponse.getBodyCount(); i++) {
+                entries.add(Unpooled.wrappedBuffer(readResponse.getBody(i).asReadOnlyByteBuffer()));
+            }
+            long maxLAC = INVALID_ENTRY_ID;
+            if (readResponse.hasMaxLAC()) {
+                maxLAC = readResponse.getMaxLAC();
+            }
+            handleRangeReadResponse(readResponse.getLedgerId(),
+                                    readResponse.getFirstEntryId(),
+                                    status, entries, maxLAC);
+            // meaningless using unpooled, but client may expect to hold the last reference
+            entries.forEach(ReferenceCountUtil::release);
+        }
+
+        private void handleRangeReadResponse(long ledgerId,
+                                             long firstEntryId,
+                                             StatusCode status,
+                                             List<ByteBuf> entries,
+                                             long maxLAC) { // max known lac piggy-back from bookies
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "firstEntry", firstEntryId, "numEntries", entries.size());
+            }
+
+            int rc = convertStatus(status, BKException.Code.ReadException);
+
+            if (maxLAC > INVALID_ENTRY_ID && (ctx instanceof ReadEntryCallbackCtx)) {
+                ((ReadEntryCallbackCtx) ctx).setLastAddConfirmed(maxLAC);
+            }
+            cb.readEntriesComplete(rc, ledgerId, firstEntryId, entries, ctx);
+        }
+    }
+
     class StartTLSCompletion extends CompletionValue {
         final StartTLSCallback cb;
 
@@ -2040,13 +2446,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= getBookieInfoTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long timeoutNanos() {
+            return getBookieInfoTimeoutNanos;
         }
 
         @Override
@@ -2186,13 +2587,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        boolean maybeTimeout() {
-            if (MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos) {
-                timeout();
-                return true;
-            } else {
-                return false;
-            }
+        long timeoutNanos() {
+            return addEntryTimeoutNanos;
         }
 
         @Override
@@ -2241,9 +2637,73 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
-    // visable for testing
-    CompletionKey newCompletionKey(long txnId, OperationType operationType) {
-        return new V3CompletionKey(txnId, operationType);
+    class RangeAddCompletion extends CompletionValue {
+        final CompletionKey key;
+        final AddBatch batch;
+
+        public RangeAddCompletion(final CompletionKey key, final AddBatch batch) {
+            super("RangeAdd", null, batch.ledgerId, batch.firstEntryId,
+                  addEntryOpLogger, addTimeoutOpLogger);
+            this.key = key;
+            this.batch = batch;
+        }
+
+        @Override
+        long timeoutNanos() {
+            return addEntryTimeoutNanos;
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(() -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    writeComplete(i, rc);
+                }
+                complete();
+            });
+        }
+
+        @Override
+        public void setOutstanding() {
+            addEntryOutstanding.addCount(batch.size());
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            addEntryOutstanding.addCount(-batch.size());
+            RangeAddResponse addResponse = response.getRangeAddResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? addResponse.getStatus() : response.getStatus();
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", batch.ledgerId, "firstEntry", batch.firstEntryId,
+                        "numEntries", batch.size());
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                // the status of the response is the first failure of the range, when some entries failed
+                StatusCode entryStatus = status;
+                if (i < addResponse.getEntryStatusCount()) {
+                    entryStatus = addResponse.getEntryStatus(i);
+                }
+                writeComplete(i, convertStatus(entryStatus, BKException.Code.WriteException));
+            }
+            complete();
+        }
+
+        private void writeComplete(int index, int rc) {
+            logOpResult(rc);
+            batch.callbacks.get(index).writeComplete(rc, batch.ledgerId, batch.firstEntryId + index,
+                    bookieId, batch.ctxs.get(index));
+        }
+
+        private void complete() {
+            batch.release();
+            key.release();
+        }
     }
 
     class V3CompletionKey extends CompletionKey {
@@ -2253,17 +2713,28 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        public boolean equals(Object obj) {
-            if (!(obj instanceof V3CompletionKey)) {
-                return false;
-            }
-            V3CompletionKey that = (V3CompletionKey) obj;
-            return this.txnId == that.txnId && this.operationType == that.operationType;
+        void register(CompletionValue value) {
+            completionObjects.put(txnId, value);
+        }
+
+        @Override
+        CompletionValue lookup() {
+            return completionObjects.get(txnId);
+        }
+
+        @Override
+        CompletionValue unregister() {
+            return completionObjects.remove(txnId);
         }
 
         @Override
-        public int hashCode() {
-            return ((int) txnId);
+        TimerTask newTimeoutTask(CompletionValue value) {
+            final long txnId = this.txnId;
+            return t -> {
+                if (completionObjects.remove(txnId, value)) {
+                    value.timeout();
+                }
+            };
         }
 
         @Override
@@ -2284,6 +2755,28 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         public void release() {}
+
+        /**
+         * Register the completion of the request with this key.
+         */
+        abstract void register(CompletionValue value);
+
+        /**
+         * @return the completion of a request with this key, or null
+         */
+        abstract CompletionValue lookup();
+
+        /**
+         * Remove the completion of a request with this key.
+         *
+         * @return the completion removed, or null
+         */
+        abstract CompletionValue unregister();
+
+        /**
+         * @return the task timing out the request with this key and completion, if it is still registered
+         */
+        abstract TimerTask newTimeoutTask(CompletionValue value);
     }
 
     /**
@@ -2319,21 +2812,22 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
-    private void putCompletionKeyValue(CompletionKey key, CompletionValue value) {
-        CompletionValue existingValue = completionObjects.putIfAbsent(key, value);
-        if (existingValue != null) { // will only happen for V2 keys, as V3 have unique txnid
-            // There's a pending read request on same ledger/entry. Use the multimap to track all of them
-            completionObjectsV2Conflicts.put(key, value);
-        }
-    }
-
-    private CompletionValue getCompletionValue(CompletionKey key) {
-        CompletionValue completionValue = completionObjects.remove(key);
-        if (completionValue == null) {
-            // If there's no completion object here, try in the multimap
-            completionValue = completionObjectsV2Conflicts.removeAny(key).orElse(null);
+    /**
+     * Register the completion of a request with its key, once its timeout is scheduled. The request timer is
+     * stopped with the client, in which case the request is failed through its callback instead.
+     *
+     * @return whether the request is registered and can be sent
+     */
+    private boolean putCompletionKeyValue(CompletionKey key, CompletionValue value) {
+        try {
+            value.scheduleTimeout(key);
+        } catch (IllegalStateException | RejectedExecutionException e) {
+            LOG.warn("Could not schedule the timeout of request {}, failing it", key, e);
+            value.errorOut(BKException.Code.ClientClosedException);
+            return false;
         }
-        return completionValue;
+        key.register(value);
+        return true;
     }
 
     private long getTxnId() {
@@ -2372,19 +2866,33 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
 
         @Override
-        public boolean equals(Object object) {
-            if (!(object instanceof V2CompletionKey)) {
-                return  false;
-            }
-            V2CompletionKey that = (V2CompletionKey) object;
-            return this.entryId == that.entryId
-                && this.ledgerId == that.ledgerId
-                && this.operationType == that.operationType;
+        void register(CompletionValue value) {
+            // there may already be a request on the same ledger/entry, the registry keeps all of them
+            completionObjects.putV2(ledgerId, entryId, operationType, value);
         }
 
         @Override
-        public int hashCode() {
-            return Long.hashCode(ledgerId) * 31 + Long.hashCode(entryId);
+        CompletionValue lookup() {
+            return completionObjects.getV2(ledgerId, entryId, operationType);
+        }
+
+        @Override
+        CompletionValue unregister() {
+            return completionObjects.removeV2(ledgerId, entryId, operationType);
+        }
+
+        @Override
+        TimerTask newTimeoutTask(CompletionValue value) {
+            // the key is recycled, and the completion may be too and registered again with the same key,
+            // so the task only times out the request it was scheduled for
+            final long ledgerId = this.ledgerId;
+            final long entryId = this.entryId;
+            final OperationType operationType = this.operationType;
+            return t -> {
+                if (value.isExpired() && completionObjects.removeV2(ledgerId, entryId, operationType, value)) {
+                    value.timeout();
+                }
+            };
         }
 
         @Override
@@ -2565,8 +3073,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         assert state == ConnectionState.CONNECTING;
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.START_TLS);
-        completionObjects.put(completionKey,
-                              new StartTLSCompletion(completionKey));
+        if (!putCompletionKeyValue(completionKey,
+                                   new StartTLSCompletion(completionKey))) {
+            return;
+        }
         BookkeeperProtocol.Request.Builder h = withRequestContext(BookkeeperProtocol.Request.newBuilder());
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
                 .setVersion(ProtocolVersion.VERSION_THREE)
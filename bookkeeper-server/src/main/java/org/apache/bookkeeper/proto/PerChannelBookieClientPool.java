@@ -66,6 +66,24 @@ public interface PerChannelBookieClientPool {
      */
     void recordError();
 
+    /**
+     * record the latency of a read completed by the bookie of the pool.
+     *
+     * @param latencyNanos
+     *          latency of the read, in nanoseconds.
+     */
+    default void recordReadLatency(long latencyNanos) {
+    }
+
+    /**
+     * Get the estimated latency of the reads sent to the bookie of the pool.
+     *
+     * @return the estimated read latency in nanoseconds, or -1 if it is unknown.
+     */
+    default long getReadLatencyEstimateNanos() {
+        return -1L;
+    }
+
     /**
      * Check if any ops on any channel needs to be timed out.
      * This is called on all channels, even if the channel is not yet connected.
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processor of V3 range add requests, which add consecutive entries of a ledger as a group
+ * and acknowledge them with a single response once all of them are journaled.
+ */
+class RangeAddEntryProcessorV3 extends PacketProcessorBaseV3 implements WriteCallback {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RangeAddEntryProcessorV3.class);
+
+    private final RangeAddRequest rangeAddRequest;
+    private final long ledgerId;
+    private final long firstEntryId;
+    private final StatusCode[] entryStatus;
+    private final AtomicInteger pendingEntries;
+    private final AtomicBoolean responded = new AtomicBoolean(false);
+    private long startTimeNanos;
+
+    public RangeAddEntryProcessorV3(Request request, BookieRequestHandler requestHandler,
+                                    BookieRequestProcessor requestProcessor) {
+        super(request, requestHandler, requestProcessor);
+        requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+
+        this.rangeAddRequest = request.getRangeAddRequest();
+        this.ledgerId = rangeAddRequest.getLedgerId();
+        this.firstEntryId = rangeAddRequest.getFirstEntryId();
+        this.entryStatus = new StatusCode[rangeAddRequest.getBodyCount()];
+        this.pendingEntries = new AtomicInteger(entryStatus.length);
+    }
+
+    // Returns the status of the whole request if it failed before any entry could be added
+    private StatusCode addEntries() {
+        if (!isVersionCompatible()) {
+            return StatusCode.EBADVERSION;
+        }
+
+        if (requestProcessor.getBookie().isReadOnly()
+            && !(RequestUtils.isHighPriority(request)
+                    && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
+            LOG.warn("BookieServer is running as readonly mode, so rejecting the request from the client!");
+            return StatusCode.EREADONLY;
+        }
+
+        if (entryStatus.length == 0) {
+            return StatusCode.EBADREQ;
+        }
+        List<ByteBuf> entries = new ArrayList<>(entryStatus.length);
+        for (int i = 0; i < entryStatus.length; i++) {
+            ByteBuf entry = Unpooled.wrappedBuffer(rangeAddRequest.getBody(i).asReadOnlyByteBuffer());
+            // the entries must be the consecutive entries of the ledger of the request
+            if (entry.readableBytes() < 16
+                    || entry.getLong(entry.readerIndex()) != ledgerId
+                    || entry.getLong(entry.readerIndex() + 8) != firstEntryId + i) {
+                LOG.error("Entry {} of range add request {} is not entry {}@{}",
+                        i, RequestUtils.toSafeString(request), firstEntryId + i, ledgerId);
+                return StatusCode.EBADREQ;
+            }
+            entries.add(entry);
+        }
+
+        final EnumSet<WriteFlag> writeFlags;
+        if (rangeAddRequest.hasWriteFlags()) {
+            writeFlags = WriteFlag.getWriteFlags(rangeAddRequest.getWriteFlags());
+        } else {
+            writeFlags = WriteFlag.NONE;
+        }
+        final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
+        byte[] masterKey = rangeAddRequest.getMasterKey().toByteArray();
+        try {
+            requestProcessor.getBookie().addEntries(entries, ackBeforeSync, this,
+                    requestHandler.ctx().channel(), masterKey);
+            return StatusCode.EOK;
+        } catch (OperationRejectedException e) {
+            requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
+            // Avoid to log each occurence of this exception as this can happen when the ledger storage is
+            // unable to keep up with the write rate.
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Operation rejected while writing {}", this, e);
+            }
+            return StatusCode.ETOOMANYREQUESTS;
+        } catch (IOException e) {
+            LOG.error("Error writing entries:{}-{} to ledger:{}",
+                    firstEntryId, firstEntryId + entryStatus.length - 1, ledgerId, e);
+            return StatusCode.EIO;
+        } catch (BookieException.LedgerFencedException e) {
+            LOG.error("Ledger fenced while writing entries:{}-{} to ledger:{}",
+                    firstEntryId, firstEntryId + entryStatus.length - 1, ledgerId, e);
+            return StatusCode.EFENCED;
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger:{} while writing entries:{}-{}",
+                    ledgerId, firstEntryId, firstEntryId + entryStatus.length - 1, e);
+            return StatusCode.EUA;
+        } catch (Throwable t) {
+            LOG.error("Unexpected exception while writing entries:{}-{} to ledger:{}",
+                    firstEntryId, firstEntryId + entryStatus.length - 1, ledgerId, t);
+            // some bad request which cause unexpected exception
+            return StatusCode.EBADREQ;
+        }
+    }
+
+    @Override
+    public void run() {
+        requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        startTimeNanos = MathUtils.nowInNano();
+        StatusCode status = addEntries();
+        if (status != StatusCode.EOK) {
+            // no entry was journaled, fail all of them
+            Arrays.fill(entryStatus, status);
+            sendRangeAddResponse(status);
+        }
+    }
+
+    @Override
+    public void writeComplete(int rc, long ledgerId, long entryId, BookieId addr, Object ctx) {
+        StatusCode status;
+        switch (rc) {
+            case BookieProtocol.EOK:
+                status = StatusCode.EOK;
+                break;
+            case BookieProtocol.EIO:
+                status = StatusCode.EIO;
+                break;
+            default:
+                status = StatusCode.EUA;
+                break;
+        }
+        int index = (int) (entryId - firstEntryId);
+        if (index >= 0 && index < entryStatus.length) {
+            entryStatus[index] = status;
+        }
+        if (pendingEntries.decrementAndGet() == 0) {
+            StatusCode rangeStatus = StatusCode.EOK;
+            for (StatusCode s : entryStatus) {
+                if (s != StatusCode.EOK) {
+                    rangeStatus = s;
+                    break;
+                }
+            }
+            sendRangeAddResponse(rangeStatus);
+        }
+    }
+
+    private void sendRangeAddResponse(StatusCode status) {
+        if (!responded.compareAndSet(false, true)) {
+            return;
+        }
+        if (StatusCode.EOK == status) {
+            requestProcessor.getRequestStats().getRangeAddEntryStats()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            requestProcessor.getRequestStats().getRangeAddEntryStats()
+                .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+        RangeAddResponse.Builder addResponse = RangeAddResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId)
+                .setStatus(status);
+        for (StatusCode s : entryStatus) {
+            addResponse.addEntryStatus(s != null ? s : status);
+        }
+        sendResponse(addResponse.build());
+    }
+
+    void sendResponse(RangeAddResponse addResponse) {
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(addResponse.getStatus())
+                .setRangeAddResponse(addResponse);
+        sendResponse(response.getStatus(), response.build(),
+                     requestProcessor.getRequestStats().getRangeAddRequestStats());
+        requestProcessor.onAddRequestFinish();
+    }
+
+    /**
+     * this toString method filters out body and masterKey from the output.
+     * masterKey contains the password of the ledger and body is customer data,
+     * so it is not appropriate to have these in logs or system output.
+     */
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
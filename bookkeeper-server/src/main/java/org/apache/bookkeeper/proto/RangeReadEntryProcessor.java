@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.Recycler;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookieProtocol.RangeReadRequest;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processor of V2 range read requests, which return up to <i>maxCount</i> consecutive
+ * entries of a ledger in a single response.
+ */
+class RangeReadEntryProcessor extends PacketProcessorBase<RangeReadRequest> {
+    private static final Logger LOG = LoggerFactory.getLogger(RangeReadEntryProcessor.class);
+
+    /**
+     * Bytes accounted for each entry in a range read response on top of its payload,
+     * which covers the length prefix (v2) or the field tag and length (v3).
+     */
+    static final int RANGE_READ_ENTRY_OVERHEAD = 8;
+
+    /**
+     * The maximum number of entries returned by a single range read, whatever the client asks for.
+     */
+    static final int MAX_RANGE_READ_ENTRIES = 1024;
+
+    private boolean throttleReadResponses;
+
+    public static RangeReadEntryProcessor create(RangeReadRequest request,
+                                                 BookieRequestHandler requestHandler,
+                                                 BookieRequestProcessor requestProcessor,
+                                                 boolean throttleReadResponses) {
+        RangeReadEntryProcessor rep = RECYCLER.get();
+        rep.init(request, requestHandler, requestProcessor);
+        rep.throttleReadResponses = throttleReadResponses;
+        requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
+        return rep;
+    }
+
+    /**
+     * Read up to <i>maxCount</i> consecutive entries of a ledger, starting at <i>firstEntryId</i>,
+     * stopping before the accumulated size exceeds <i>maxSize</i>. No more than
+     * {@link #MAX_RANGE_READ_ENTRIES} entries are read.
+     *
+     * <p>The first entry is always returned, regardless of its size. Failures reading the first
+     * entry are propagated to the caller, while failures reading any following entry just end
+     * the range, so that the caller gets every entry that could be read.
+     *
+     * @return the entries read, which the caller is responsible for releasing.
+     */
+    static List<ByteBuf> readEntries(Bookie bookie, long ledgerId, long firstEntryId,
+                                     int maxCount, long maxSize)
+            throws IOException, BookieException {
+        // the first entry is always read
+        maxCount = Math.max(1, Math.min(maxCount, MAX_RANGE_READ_ENTRIES));
+        List<ByteBuf> entries = new ArrayList<>(Math.min(maxCount, 64));
+        long size = 0;
+        long entryId = firstEntryId;
+        try {
+            entries.add(bookie.readEntry(ledgerId, entryId));
+            size += entries.get(0).readableBytes() + RANGE_READ_ENTRY_OVERHEAD;
+            while (entries.size() < maxCount) {
+                ByteBuf entry;
+                try {
+                    entry = bookie.readEntry(ledgerId, ++entryId);
+                } catch (IOException | BookieException e) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Range read of ledger {} stopped at entry {}: {}", ledgerId, entryId,
+                                e.getMessage());
+                    }
+                    break;
+                }
+                size += entry.readableBytes() + RANGE_READ_ENTRY_OVERHEAD;
+                if (size > maxSize) {
+                    ReferenceCountUtil.release(entry);
+                    break;
+                }
+                entries.add(entry);
+            }
+            return entries;
+        } catch (Throwable t) {
+            entries.forEach(ReferenceCountUtil::release);
+            throw t;
+        }
+    }
+
+    @Override
+    protected void processPacket() {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received new range read request: {}", request);
+        }
+        if (!requestHandler.ctx().channel().isOpen()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Dropping range read request for closed channel: {}", requestHandler.ctx().channel());
+            }
+            requestProcessor.onReadRequestFinish();
+            recycle();
+            return;
+        }
+        int errorCode = BookieProtocol.EOK;
+        long startTimeNanos = MathUtils.nowInNano();
+        List<ByteBuf> entries = null;
+        try {
+            long maxSize = Math.min(request.getMaxSize(), requestProcessor.getMaxRangeReadSize());
+            entries = readEntries(requestProcessor.getBookie(), request.getLedgerId(), request.getEntryId(),
+                    request.getMaxCount(), maxSize);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("##### Range read entries ##### {} entries from {}", entries.size(), request);
+            }
+        } catch (Bookie.NoLedgerException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.ENOLEDGER;
+        } catch (Bookie.NoEntryException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.ENOENTRY;
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.EIO;
+        } catch (BookieException.DataUnknownException e) {
+            LOG.error("Ledger {} is in an unknown state", request.getLedgerId(), e);
+            errorCode = BookieProtocol.EUNKNOWNLEDGERSTATE;
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), e);
+            errorCode = BookieProtocol.EUA;
+        } catch (Throwable t) {
+            LOG.error("Unexpected exception reading at {}:{} : {}", request.getLedgerId(), request.getEntryId(),
+                      t.getMessage(), t);
+            errorCode = BookieProtocol.EBADREQ;
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Range read entries rc = {} for {}", errorCode, request);
+        }
+        sendResponse(entries, errorCode, startTimeNanos);
+    }
+
+    private void sendResponse(List<ByteBuf> entries, int errorCode, long startTimeNanos) {
+        final RequestStats stats = requestProcessor.getRequestStats();
+        final OpStatsLogger logger = stats.getRangeReadEntryStats();
+        BookieProtocol.Response response;
+        if (errorCode == BookieProtocol.EOK) {
+            logger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            response = ResponseBuilder.buildRangeReadResponse(entries, request);
+        } else {
+            logger.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            response = ResponseBuilder.buildErrorResponse(errorCode, request);
+        }
+
+        sendReadReqResponse(errorCode, response, stats.getRangeReadRequestStats(), throttleReadResponses);
+        recycle();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RangeReadEntry(%d, %d, %d, %d)", request.getLedgerId(), request.getEntryId(),
+                request.getMaxCount(), request.getMaxSize());
+    }
+
+    private void recycle() {
+        request.recycle();
+        super.reset();
+        this.recyclerHandle.recycle(this);
+    }
+
+    private final Recycler.Handle<RangeReadEntryProcessor> recyclerHandle;
+
+    private RangeReadEntryProcessor(Recycler.Handle<RangeReadEntryProcessor> recyclerHandle) {
+        this.recyclerHandle = recyclerHandle;
+    }
+
+    private static final Recycler<RangeReadEntryProcessor> RECYCLER = new Recycler<RangeReadEntryProcessor>() {
+        @Override
+        protected RangeReadEntryProcessor newObject(Recycler.Handle<RangeReadEntryProcessor> handle) {
+            return new RangeReadEntryProcessor(handle);
+        }
+    };
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.base.Stopwatch;
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processor of V3 range read requests, which return up to <i>maxCount</i> consecutive
+ * entries of a ledger in a single response.
+ */
+class RangeReadEntryProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RangeReadEntryProcessorV3.class);
+
+    private final RangeReadRequest rangeReadRequest;
+    private final long ledgerId;
+    private final long firstEntryId;
+
+    // Stats
+    private final OpStatsLogger readStats;
+    private final OpStatsLogger reqStats;
+
+    public RangeReadEntryProcessorV3(Request request,
+                                     BookieRequestHandler requestHandler,
+                                     BookieRequestProcessor requestProcessor) {
+        super(request, requestHandler, requestProcessor);
+        requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
+
+        this.rangeReadRequest = request.getRangeReadRequest();
+        this.ledgerId = rangeReadRequest.getLedgerId();
+        this.firstEntryId = rangeReadRequest.getFirstEntryId();
+        this.readStats = requestProcessor.getRequestStats().getRangeReadEntryStats();
+        this.reqStats = requestProcessor.getRequestStats().getRangeReadRequestStats();
+    }
+
+    private RangeReadResponse getRangeReadResponse() {
+        final Stopwatch startTimeSw = Stopwatch.createStarted();
+        final RangeReadResponse.Builder readResponse = RangeReadResponse.newBuilder()
+            .setLedgerId(ledgerId)
+            .setFirstEntryId(firstEntryId);
+        try {
+            long maxSize = Math.min(rangeReadRequest.getMaxSize(), requestProcessor.getMaxRangeReadSize());
+            List<ByteBuf> entries = RangeReadEntryProcessor.readEntries(requestProcessor.getBookie(),
+                    ledgerId, firstEntryId, rangeReadRequest.getMaxCount(), maxSize);
+            try {
+                for (ByteBuf entry : entries) {
+                    readResponse.addBody(ByteString.copyFrom(entry.nioBuffer()));
+                }
+            } finally {
+                entries.forEach(ReferenceCountUtil::release);
+            }
+            readResponse.setMaxLAC(requestProcessor.getBookie().readLastAddConfirmed(ledgerId));
+            return buildResponse(readResponse, StatusCode.EOK, startTimeSw);
+        } catch (Bookie.NoLedgerException e) {
+            LOG.info("No ledger found while range reading entries from: {} from ledger: {}", firstEntryId, ledgerId);
+            return buildResponse(readResponse, StatusCode.ENOLEDGER, startTimeSw);
+        } catch (Bookie.NoEntryException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No entry found while range reading entries from: {} from ledger: {}",
+                        firstEntryId, ledgerId);
+            }
+            return buildResponse(readResponse, StatusCode.ENOENTRY, startTimeSw);
+        } catch (IOException e) {
+            LOG.error("IOException while range reading entries from: {} from ledger {} ", firstEntryId, ledgerId, e);
+            return buildResponse(readResponse, StatusCode.EIO, startTimeSw);
+        } catch (BookieException.DataUnknownException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ledger has unknown state for entries from: {} from ledger {}", firstEntryId, ledgerId);
+            }
+            return buildResponse(readResponse, StatusCode.EUNKNOWNLEDGERSTATE, startTimeSw);
+        } catch (BookieException e) {
+            LOG.error(
+                "Unauthorized access to ledger:{} while range reading entries from:{} in request from address: {}",
+                    ledgerId, firstEntryId, requestHandler.ctx().channel().remoteAddress());
+            return buildResponse(readResponse, StatusCode.EUA, startTimeSw);
+        }
+    }
+
+    @Override
+    public void run() {
+        requestProcessor.getRequestStats().getReadEntrySchedulingDelayStats().registerSuccessfulEvent(
+            MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        if (!requestHandler.ctx().channel().isOpen()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Dropping range read request for closed channel: {}", requestHandler.ctx().channel());
+            }
+            requestProcessor.onReadRequestFinish();
+            return;
+        }
+
+        if (!isVersionCompatible()) {
+            RangeReadResponse readResponse = RangeReadResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId)
+                .setStatus(StatusCode.EBADVERSION)
+                .build();
+            sendResponse(readResponse);
+            return;
+        }
+
+        sendResponse(getRangeReadResponse());
+    }
+
+    private RangeReadResponse buildResponse(
+            RangeReadResponse.Builder readResponseBuilder,
+            StatusCode statusCode,
+            Stopwatch startTimeSw) {
+        long elapsedNanos = startTimeSw.elapsed(TimeUnit.NANOSECONDS);
+        if (StatusCode.EOK.equals(statusCode)) {
+            readStats.registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        } else {
+            readStats.registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+        readResponseBuilder.setStatus(statusCode);
+        return readResponseBuilder.build();
+    }
+
+    void sendResponse(RangeReadResponse readResponse) {
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(readResponse.getStatus())
+                .setRangeReadResponse(readResponse);
+        sendResponse(response.getStatus(),
+                     response.build(),
+                     reqStats);
+        requestProcessor.onReadRequestFinish();
+    }
+
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
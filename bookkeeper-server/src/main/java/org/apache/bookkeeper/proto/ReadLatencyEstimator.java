@@ -0,0 +1,76 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exponentially weighted moving average of the latencies of the reads completed by a bookie.
+ *
+ * <p>The estimate of a bookie that has not completed any read for a while decays towards zero, so
+ * the bookies reads are steered away from are probed again once they may have recovered, instead of
+ * being avoided forever on the strength of old samples.
+ */
+class ReadLatencyEstimator {
+
+    // weight of a new sample in the average
+    private static final double ALPHA = 0.2;
+    // the estimate is halved for every period without samples, after the first one
+    private static final long DECAY_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Ticker ticker;
+    private long estimateNanos = -1L;
+    private long lastSampleNanos;
+
+    ReadLatencyEstimator() {
+        this(Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    ReadLatencyEstimator(Ticker ticker) {
+        this.ticker = ticker;
+    }
+
+    synchronized void record(long latencyNanos) {
+        if (estimateNanos < 0) {
+            estimateNanos = latencyNanos;
+        } else {
+            estimateNanos += (long) (ALPHA * (latencyNanos - estimateNanos));
+        }
+        lastSampleNanos = ticker.read();
+    }
+
+    /**
+     * @return the estimated read latency in nanoseconds, or -1 if no read completed yet
+     */
+    synchronized long getEstimateNanos() {
+        if (estimateNanos < 0) {
+            return -1L;
+        }
+        long idleNanos = ticker.read() - lastSampleNanos - DECAY_PERIOD_NANOS;
+        if (idleNanos <= 0) {
+            return estimateNanos;
+        }
+        return (long) (estimateNanos * Math.pow(0.5, (double) idleNanos / DECAY_PERIOD_NANOS));
+    }
+}
@@ -33,6 +33,10 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_BOOKIE_INFO_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_ADD_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_ADD_ENTRY_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_READ_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.RANGE_READ_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_BLOCKED_WAIT;
@@ -107,6 +111,17 @@ public class RequestStats {
             parent = ADD_ENTRY_REQUEST
     )
     private final Counter addEntryRejectedCounter;
+    @StatsDoc(
+        name = RANGE_ADD_ENTRY_REQUEST,
+        help = "request stats of RangeAddEntry on a bookie"
+    )
+    final OpStatsLogger rangeAddRequestStats;
+    @StatsDoc(
+        name = RANGE_ADD_ENTRY,
+        help = "operation stats of RangeAddEntry on a bookie",
+        parent = RANGE_ADD_ENTRY_REQUEST
+    )
+    final OpStatsLogger rangeAddEntryStats;
     @StatsDoc(
         name = READ_ENTRY_REQUEST,
         help = "request stats of ReadEntry on a bookie"
@@ -183,6 +198,17 @@ public class RequestStats {
         help = "request stats of LongPoll Reads on a bookie"
     )
     final OpStatsLogger longPollReadRequestStats;
+    @StatsDoc(
+        name = RANGE_READ_ENTRY_REQUEST,
+        help = "request stats of RangeReadEntry on a bookie"
+    )
+    final OpStatsLogger rangeReadRequestStats;
+    @StatsDoc(
+        name = RANGE_READ_ENTRY,
+        help = "operation stats of RangeReadEntry on a bookie",
+        parent = RANGE_READ_ENTRY_REQUEST
+    )
+    final OpStatsLogger rangeReadEntryStats;
     @StatsDoc(
         name = READ_LAST_ENTRY_NOENTRY_ERROR,
         help = "total NOENTRY errors of reading last entry on a bookie"
@@ -252,6 +278,8 @@ public class RequestStats {
         this.writeThreadQueuedLatency = statsLogger.getThreadScopedOpStatsLogger(WRITE_THREAD_QUEUED_LATENCY);
         this.addRequestStats = statsLogger.getOpStatsLogger(ADD_ENTRY_REQUEST);
         this.addEntryRejectedCounter = statsLogger.getCounter(ADD_ENTRY_REJECTED);
+        this.rangeAddRequestStats = statsLogger.getOpStatsLogger(RANGE_ADD_ENTRY_REQUEST);
+        this.rangeAddEntryStats = statsLogger.getOpStatsLogger(RANGE_ADD_ENTRY);
         this.readEntryStats = statsLogger.getThreadScopedOpStatsLogger(READ_ENTRY);
         this.readEntryRejectedCounter = statsLogger.getCounter(READ_ENTRY_REJECTED);
         this.forceLedgerStats = statsLogger.getOpStatsLogger(FORCE_LEDGER);
@@ -265,6 +293,8 @@ public class RequestStats {
         this.longPollWaitStats = statsLogger.getOpStatsLogger(READ_ENTRY_LONG_POLL_WAIT);
         this.longPollReadStats = statsLogger.getOpStatsLogger(READ_ENTRY_LONG_POLL_READ);
         this.longPollReadRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_LONG_POLL_REQUEST);
+        this.rangeReadRequestStats = statsLogger.getOpStatsLogger(RANGE_READ_ENTRY_REQUEST);
+        this.rangeReadEntryStats = statsLogger.getOpStatsLogger(RANGE_READ_ENTRY);
         this.readLastEntryNoEntryErrorCounter = statsLogger.getCounter(READ_LAST_ENTRY_NOENTRY_ERROR);
         this.writeLacStats = statsLogger.getOpStatsLogger(WRITE_LAC);
         this.writeLacRequestStats = statsLogger.getOpStatsLogger(WRITE_LAC_REQUEST);
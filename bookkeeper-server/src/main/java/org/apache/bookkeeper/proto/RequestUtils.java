@@ -68,6 +68,16 @@ class RequestUtils {
                 stringHelper.add("writeFlags", addRequest.getWriteFlags());
             }
             return stringHelper.toString();
+        } else if (request.hasRangeAddRequest()) {
+            BookkeeperProtocol.RangeAddRequest rangeAddRequest = request.getRangeAddRequest();
+            includeHeaderFields(stringHelper, header);
+            stringHelper.add("ledgerId", rangeAddRequest.getLedgerId());
+            stringHelper.add("firstEntryId", rangeAddRequest.getFirstEntryId());
+            stringHelper.add("numEntries", rangeAddRequest.getBodyCount());
+            if (rangeAddRequest.hasWriteFlags()) {
+                stringHelper.add("writeFlags", rangeAddRequest.getWriteFlags());
+            }
+            return stringHelper.toString();
         } else if (request.hasReadRequest()) {
             BookkeeperProtocol.ReadRequest readRequest = request.getReadRequest();
             includeHeaderFields(stringHelper, header);
@@ -83,6 +93,14 @@ class RequestUtils {
                 stringHelper.add("timeOut", readRequest.getTimeOut());
             }
             return stringHelper.toString();
+        } else if (request.hasRangeReadRequest()) {
+            BookkeeperProtocol.RangeReadRequest rangeReadRequest = request.getRangeReadRequest();
+            includeHeaderFields(stringHelper, header);
+            stringHelper.add("ledgerId", rangeReadRequest.getLedgerId());
+            stringHelper.add("firstEntryId", rangeReadRequest.getFirstEntryId());
+            stringHelper.add("maxCount", rangeReadRequest.getMaxCount());
+            stringHelper.add("maxSize", rangeReadRequest.getMaxSize());
+            return stringHelper.toString();
         } else if (request.hasWriteLacRequest()) {
             BookkeeperProtocol.WriteLacRequest writeLacRequest = request.getWriteLacRequest();
             includeHeaderFields(stringHelper, header);
@@ -43,7 +43,19 @@ import org.slf4j.LoggerFactory;
  *           "lastMajorCompactionTime" : 1544578144944,
  *           "lastMinorCompactionTime" : 1544578144944,
  *           "majorCompactionCounter" : 1,
- *           "minorCompactionCounter" : 0
+ *           "minorCompactionCounter" : 0,
+ *           "compactionPendingEntryLogs" : 0,
+ *           "compactionRunningEntryLogs" : 0,
+ *           "compactionCompletedEntryLogs" : 3,
+ *           "compactionReclaimedBytes" : 2147483648,
+ *           "costBasedCompaction" : true,
+ *           "compactionDecision" : "compacting, 2147483648 bytes reclaimable below usage 0.35, disk usage 0.71",
+ *           "compactionUsageThreshold" : 0.35,
+ *           "diskUsage" : 0.71,
+ *           "foregroundLatencyMillis" : 1.2,
+ *           "compactionRateFactor" : 1.0,
+ *           "liveBytesByUsage" : [ 0, 107374182, 0, 0, 0, 0, 0, 0, 0, 10737418240 ],
+ *           "totalBytesByUsage" : [ 0, 1073741824, 0, 0, 0, 0, 0, 0, 0, 10737418240 ]
  *         } ]
  */
 public class GCDetailsService implements HttpEndpointService {
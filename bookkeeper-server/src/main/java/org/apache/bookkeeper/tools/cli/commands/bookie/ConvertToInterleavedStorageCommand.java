@@ -25,7 +25,6 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import lombok.Setter;
 import lombok.experimental.Accessors;
-import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.BookieResources;
 import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.Checkpointer;
@@ -53,6 +52,8 @@ public class ConvertToInterleavedStorageCommand extends BookieCommand<ConvertToI
     private static final String NAME = "converttointerleavedstorage";
     private static final String DESC = "Convert bookie indexes from DbLedgerStorage to InterleavedStorage format";
     private static final String NOT_INIT = "default formatter";
+    // Number of entry locations looked up at once
+    private static final int LOCATIONS_BATCH_SIZE = 1000;
 
     @Setter
     private LedgerIdFormatter ledgerIdFormatter;
@@ -140,14 +141,13 @@ public class ConvertToInterleavedStorageCommand extends BookieCommand<ConvertToI
             }
 
             long lastEntryInLedger = dbStorage.getLastEntryInLedger(ledgerId);
-            for (long entryId = 0; entryId <= lastEntryInLedger; entryId++) {
-                try {
-                    long location = dbStorage.getLocation(ledgerId, entryId);
-                    if (location != 0L) {
-                        interleavedLedgerCache.putEntryOffset(ledgerId, entryId, location);
+            for (long firstEntryId = 0; firstEntryId <= lastEntryInLedger; firstEntryId += LOCATIONS_BATCH_SIZE) {
+                long lastEntryId = Math.min(firstEntryId + LOCATIONS_BATCH_SIZE - 1, lastEntryInLedger);
+                long[] locations = dbStorage.getLocations(ledgerId, firstEntryId, lastEntryId);
+                for (int i = 0; i < locations.length; i++) {
+                    if (locations[i] != 0L) {
+                        interleavedLedgerCache.putEntryOffset(ledgerId, firstEntryId + i, locations[i]);
                     }
-                } catch (Bookie.NoEntryException e) {
-                    // Ignore entry
                 }
             }
 
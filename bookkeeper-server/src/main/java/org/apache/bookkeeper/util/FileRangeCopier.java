@@ -0,0 +1,132 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+
+/**
+ * Copies ranges of a file to another file within the kernel, without reading them in the JVM.
+ *
+ * <p>The ranges are copied with copy_file_range when possible, which can also share the blocks of the files
+ * on file systems supporting it. Otherwise, like when the files are on different file systems with some
+ * kernels, they are copied with {@link FileChannel#transferTo}, which relies on sendfile on Linux.
+ */
+@Slf4j
+public class FileRangeCopier implements Closeable {
+
+    private static final int ENOSYS = 38; /* errno.h */
+
+    private static final NativeIO NATIVE_IO;
+    private static volatile boolean copyFileRangePossible = true;
+
+    static {
+        NativeIO nativeIO = null;
+        try {
+            nativeIO = new NativeIOImpl();
+        } catch (Exception e) {
+            log.warn("Unable to initialize NativeIO for copy_file_range: {}", e.getMessage());
+            copyFileRangePossible = false;
+        }
+
+        NATIVE_IO = nativeIO;
+    }
+
+    private final RandomAccessFile src;
+    private final RandomAccessFile dst;
+    private final int srcFd;
+    private final int dstFd;
+    private boolean useCopyFileRange;
+
+    public FileRangeCopier(File srcFile, File dstFile) throws IOException {
+        this(srcFile, dstFile, true);
+    }
+
+    @VisibleForTesting
+    FileRangeCopier(File srcFile, File dstFile, boolean allowCopyFileRange) throws IOException {
+        this.src = new RandomAccessFile(srcFile, "r");
+        try {
+            this.dst = new RandomAccessFile(dstFile, "rw");
+        } catch (IOException e) {
+            src.close();
+            throw e;
+        }
+        this.srcFd = PageCacheUtil.getSysFileDescriptor(src.getFD());
+        this.dstFd = PageCacheUtil.getSysFileDescriptor(dst.getFD());
+        this.useCopyFileRange = allowCopyFileRange && copyFileRangePossible && srcFd >= 0 && dstFd >= 0;
+    }
+
+    /**
+     * Copy a range of the source file to the destination file.
+     */
+    public void copy(long srcPosition, long dstPosition, long length) throws IOException {
+        long copied = 0;
+        while (copied < length) {
+            long n = -1;
+            if (useCopyFileRange) {
+                n = tryCopyFileRange(srcPosition + copied, dstPosition + copied, length - copied);
+            }
+            if (n < 0) {
+                FileChannel dstChannel = dst.getChannel().position(dstPosition + copied);
+                n = src.getChannel().transferTo(srcPosition + copied, length - copied, dstChannel);
+            }
+            if (n <= 0) {
+                throw new IOException("Unexpected end of file when copying " + length + " bytes at "
+                        + srcPosition + ", " + copied + " bytes copied");
+            }
+            copied += n;
+        }
+    }
+
+    private long tryCopyFileRange(long srcPosition, long dstPosition, long length) {
+        try {
+            return NATIVE_IO.copy_file_range(srcFd, srcPosition, dstFd, dstPosition, length);
+        } catch (NativeIOException e) {
+            // Like EXDEV, when the files are on different file systems
+            log.info("Unable to use copy_file_range, falling back to sendfile: {}", e.getMessage());
+            if (e.getErrno() == ENOSYS) {
+                copyFileRangePossible = false;
+            }
+        } catch (Throwable t) {
+            log.warn("Failed to perform copy_file_range: {}", t.getMessage());
+            copyFileRangePossible = false;
+        }
+        useCopyFileRange = false;
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            src.close();
+        } finally {
+            dst.close();
+        }
+    }
+}
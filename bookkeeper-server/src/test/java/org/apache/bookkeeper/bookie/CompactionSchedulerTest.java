@@ -0,0 +1,150 @@
+package org.apache.bookkeeper.bookie;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class CompactionSchedulerTest {
+    // the disk usages are floats
+    private static final double DELTA = 1e-6;
+    private static final long MB = 1024 * 1024;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private ServerConfiguration conf;
+    private File dir;
+    private LedgerDirsManager ledgerDirsManager;
+
+    @Before
+    public void setUp() throws Exception {
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setMinorCompactionThreshold(0.2);
+        conf.setMajorCompactionThreshold(0.8);
+        // the pressure starts at half the warn threshold, at 45% of disk usage
+        conf.setDiskUsageWarnThreshold(0.9f);
+        conf.setEntryLogSizeLimit(4 * MB);
+        conf.setCompactionForegroundLatencyTargetMs(0);
+        dir = tmpDirs.createNew("compaction-scheduler", "");
+        ledgerDirsManager = new LedgerDirsManager(conf, new File[] {dir}, new DiskChecker(0.95f, 0.9f));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tmpDirs.cleanup();
+    }
+
+    @Test
+    public void testThresholdFollowsDiskUsage() {
+        CompactionScheduler scheduler = scheduler(entryLog(10 * MB, MB));
+
+        // below the start of the pressure, the minor compaction threshold
+        assertEquals(0.2, decide(scheduler, 0.1f), DELTA);
+        assertEquals(0.2, decide(scheduler, 0.45f), DELTA);
+        // half way to the warn threshold
+        assertEquals(0.5, decide(scheduler, 0.675f), DELTA);
+        // at and above the warn threshold, the major compaction threshold
+        assertEquals(0.8, decide(scheduler, 0.9f), DELTA);
+        assertEquals(0.8, decide(scheduler, 0.99f), DELTA);
+        assertEquals(0.8, scheduler.getUsageThreshold(), DELTA);
+    }
+
+    @Test
+    public void testEntryLogsAboveThresholdAreNotCounted() {
+        // 35% used, in the 30-40% usage bucket
+        CompactionScheduler scheduler = scheduler(entryLog(10 * MB, 3 * MB + MB / 2));
+
+        assertEquals(0, decide(scheduler, 0.45f), DELTA);
+        assertTrue(scheduler.getLastDecision(), scheduler.getLastDecision().startsWith("deferred, 0 bytes"));
+        // the threshold reaches the bucket of the entry log
+        assertEquals(0.5, decide(scheduler, 0.675f), DELTA);
+        assertTrue(scheduler.getLastDecision(), scheduler.getLastDecision().startsWith("compacting"));
+    }
+
+    @Test
+    public void testRequiredReclaimableBytes() {
+        long reclaimable = 9 * MB;
+        CompactionScheduler.LiveBytesHistogram histogram = histogram(entryLog(10 * MB, MB));
+
+        // without disk pressure, a full entry log of garbage is required
+        conf.setEntryLogSizeLimit(reclaimable);
+        assertEquals(0.2, decide(scheduler(histogram), 0.45f), DELTA);
+        conf.setEntryLogSizeLimit(reclaimable + 1);
+        CompactionScheduler scheduler = scheduler(histogram);
+        assertEquals(0, decide(scheduler, 0.45f), DELTA);
+        assertTrue(scheduler.getLastDecision(), scheduler.getLastDecision().startsWith("deferred"));
+
+        // under full pressure, any garbage is worth reclaiming
+        assertEquals(0.8, decide(scheduler, 0.9f), DELTA);
+    }
+
+    @Test
+    public void testReclaimedBytesWorthTheCost() {
+        conf.setEntryLogSizeLimit(0);
+        // at the 0.2 threshold, 4 bytes must be reclaimed for each byte of cost
+        long cost = MB + 2 * CompactionScheduler.LEDGER_INDEX_UPDATE_COST_BYTES;
+        CompactionScheduler scheduler = scheduler(entryLog(MB + 4 * cost, MB));
+        assertEquals(0.2, decide(scheduler, 0.1f), DELTA);
+
+        scheduler = scheduler(entryLog(MB + 4 * cost - 1, MB));
+        assertEquals(0, decide(scheduler, 0.1f), DELTA);
+        assertTrue(scheduler.getLastDecision(), scheduler.getLastDecision().contains("not worth a cost"));
+    }
+
+    @Test
+    public void testSuspendedCompactions() {
+        CompactionScheduler scheduler = scheduler(entryLog(10 * MB, MB));
+
+        // a suspended major compaction keeps the threshold to the minor one
+        ledgerDirsManager.getDiskUsages().put(dir, 0.9f);
+        assertEquals(0.2, scheduler.decide(true, false), DELTA);
+
+        // suspended by an administrator
+        assertEquals(0, scheduler.decide(true, true), DELTA);
+        assertEquals("suspended by an administrator", scheduler.getLastDecision());
+
+        // suspended because the disk is full
+        ledgerDirsManager.addToFilledDirs(dir);
+        assertEquals(0, scheduler.decide(true, true), DELTA);
+        assertEquals("suspended, disk full", scheduler.getLastDecision());
+    }
+
+    private double decide(CompactionScheduler scheduler, float diskUsage) {
+        ledgerDirsManager.getDiskUsages().put(dir, diskUsage);
+        return scheduler.decide(false, false);
+    }
+
+    private CompactionScheduler scheduler(EntryLogMetadata meta) {
+        return scheduler(histogram(meta));
+    }
+
+    private CompactionScheduler scheduler(CompactionScheduler.LiveBytesHistogram histogram) {
+        CompactionScheduler scheduler = new CompactionScheduler(conf, ledgerDirsManager);
+        scheduler.setHistogram(histogram);
+        return scheduler;
+    }
+
+    private static CompactionScheduler.LiveBytesHistogram histogram(EntryLogMetadata meta) {
+        CompactionScheduler.LiveBytesHistogram histogram = new CompactionScheduler.LiveBytesHistogram();
+        histogram.add(meta.getUsage(), meta);
+        return histogram;
+    }
+
+    /**
+     * An entry log with two live ledgers, the rest of it belonging to a deleted ledger.
+     */
+    private static EntryLogMetadata entryLog(long totalSize, long liveSize) {
+        EntryLogMetadata meta = new EntryLogMetadata(1);
+        meta.addLedgerSize(1, totalSize - liveSize);
+        meta.addLedgerSize(2, liveSize / 2);
+        meta.addLedgerSize(3, liveSize - liveSize / 2);
+        meta.removeLedgerIf(ledgerId -> ledgerId == 1);
+        return meta;
+    }
+}
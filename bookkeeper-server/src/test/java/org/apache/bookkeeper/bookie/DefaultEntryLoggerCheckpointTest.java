@@ -0,0 +1,210 @@
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.bookie.storage.CheckpointDamage;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogMetadataCheckpoint;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class DefaultEntryLoggerCheckpointTest {
+    private static final int ENTRY_SIZE = 100;
+    private static final long CHECKPOINT_ONLY_LEDGER = 999;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private ServerConfiguration conf;
+    private File curDir;
+    private DefaultEntryLogger entryLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        File ledgerDir = tmpDirs.createNew("ledgers", "");
+        curDir = BookieImpl.getCurrentDirectory(ledgerDir);
+        BookieImpl.checkDirectoryStructure(curDir);
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] {ledgerDir.getAbsolutePath()});
+        entryLogger = newEntryLogger();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entryLogger.close();
+        tmpDirs.cleanup();
+    }
+
+    @Test
+    public void testCheckpointOnFlush() throws Exception {
+        long logId = addEntries(1, 0, 10);
+        assertFalse(checkpointFile(logId).exists());
+
+        entryLogger.flush();
+        EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.read(checkpointFile(logId), logId);
+        assertEquals(logFile(logId).length(), checkpoint.getPosition());
+        assertEquals(10 * (ENTRY_SIZE + 4), checkpoint.getMetadata().getLedgersMap().get(1));
+
+        addEntries(2, 0, 5);
+        entryLogger.flush();
+        checkpoint = EntryLogMetadataCheckpoint.read(checkpointFile(logId), logId);
+        assertEquals(logFile(logId).length(), checkpoint.getPosition());
+        assertEquals(5 * (ENTRY_SIZE + 4), checkpoint.getMetadata().getLedgersMap().get(2));
+    }
+
+    @Test
+    public void testRecoverFromCheckpointAndTailScan() throws Exception {
+        long logId = addEntries(1, 0, 10);
+        entryLogger.flush();
+        // the checkpoint taken then is the last one written before the bookie stops, and a ledger only found
+        // in it tells that it was used
+        EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.read(checkpointFile(logId), logId);
+        checkpoint.getMetadata().addLedgerSize(CHECKPOINT_ONLY_LEDGER, ENTRY_SIZE + 4);
+
+        addEntries(2, 0, 5);
+        addEntries(1, 10, 2);
+        restart();
+        checkpoint.write(checkpointFile(logId));
+
+        EntryLogMetadata metadata = entryLogger.getEntryLogMetadata(logId, null);
+        assertTrue(metadata.containsLedger(CHECKPOINT_ONLY_LEDGER));
+        // the entries written after the checkpoint are found by the scan of the rest of the log
+        assertEquals(12 * (ENTRY_SIZE + 4), metadata.getLedgersMap().get(1));
+        assertEquals(5 * (ENTRY_SIZE + 4), metadata.getLedgersMap().get(2));
+        assertEquals(3, metadata.getLedgersMap().size());
+    }
+
+    @Test
+    public void testFallBackToScanOfDamagedCheckpoint() throws Exception {
+        long logId = addEntries(1, 0, 10);
+        addEntries(2, 0, 5);
+        restart();
+
+        for (CheckpointDamage damage : CheckpointDamage.values()) {
+            writeCheckpoint(logId, logFile(logId).length());
+            damage.apply(checkpointFile(logId));
+            assertScanned(entryLogger.getEntryLogMetadata(logId, null));
+        }
+    }
+
+    @Test
+    public void testFallBackToScanOfCheckpointOutOfLog() throws Exception {
+        long logId = addEntries(1, 0, 10);
+        addEntries(2, 0, 5);
+        restart();
+
+        writeCheckpoint(logId, logFile(logId).length() + 1);
+        assertScanned(entryLogger.getEntryLogMetadata(logId, null));
+        writeCheckpoint(logId, 0);
+        assertScanned(entryLogger.getEntryLogMetadata(logId, null));
+
+        // the checkpoint is used once valid
+        writeCheckpoint(logId, logFile(logId).length());
+        assertTrue(entryLogger.getEntryLogMetadata(logId, null).containsLedger(CHECKPOINT_ONLY_LEDGER));
+    }
+
+    @Test
+    public void testCheckpointDeletedWhenLogRolled() throws Exception {
+        long logId = addEntries(1, 0, 10);
+        entryLogger.flush();
+        assertTrue(checkpointFile(logId).exists());
+
+        ((EntryLogManagerBase) entryLogger.getEntryLogManager()).createNewLog(EntryLogger.UNASSIGNED_LEDGERID);
+        entryLogger.flush();
+        assertFalse(checkpointFile(logId).exists());
+        // the ledgers map is read from the index appended to the log
+        assertEquals(10 * (ENTRY_SIZE + 4), entryLogger.extractEntryLogMetadataFromIndex(logId)
+                .getLedgersMap().get(1));
+    }
+
+    @Test
+    public void testCheckpointDeletedWhenLogCompacted() throws Exception {
+        long logId = addEntries(1, 0, 10);
+        addEntries(2, 0, 10);
+        restart();
+        assertTrue(checkpointFile(logId).exists());
+
+        // ledger 2 was deleted, the entries of ledger 1 are copied to a new log
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(logId);
+        entryLogger.scanEntryLog(logId, new EntryLogScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId == 1;
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                compactionLog.addEntry(ledgerId, entry);
+            }
+        });
+        compactionLog.flush();
+        compactionLog.markCompacted();
+        compactionLog.makeAvailable();
+        compactionLog.finalizeAndCleanup();
+        assertTrue(entryLogger.removeEntryLog(logId));
+
+        assertFalse(logFile(logId).exists());
+        assertFalse(checkpointFile(logId).exists());
+        assertEquals(10 * (ENTRY_SIZE + 4),
+                entryLogger.getEntryLogMetadata(compactionLog.getDstLogId(), null).getLedgersMap().get(1));
+        assertArrayEquals(new File[0], curDir.listFiles(
+                (dir, name) -> name.endsWith(EntryLogMetadataCheckpoint.CHECKPOINT_FILE_SUFFIX)));
+    }
+
+    private DefaultEntryLogger newEntryLogger() throws IOException {
+        return new DefaultEntryLogger(conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold())));
+    }
+
+    /**
+     * Stop the entry logger without rolling its current log, which keeps its checkpoint instead of an index.
+     */
+    private void restart() throws IOException {
+        entryLogger.close();
+        entryLogger = newEntryLogger();
+    }
+
+    private long addEntries(long ledgerId, long firstEntryId, int count) throws IOException {
+        long location = 0;
+        for (long entryId = firstEntryId; entryId < firstEntryId + count; entryId++) {
+            ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+            entry.writeLong(ledgerId);
+            entry.writeLong(entryId);
+            entry.writerIndex(ENTRY_SIZE);
+            location = entryLogger.addEntry(ledgerId, entry);
+            entry.release();
+        }
+        return location >> 32;
+    }
+
+    private void writeCheckpoint(long logId, long position) throws IOException {
+        EntryLogMetadata metadata = new EntryLogMetadata(logId);
+        metadata.addLedgerSize(CHECKPOINT_ONLY_LEDGER, ENTRY_SIZE + 4);
+        EntryLogMetadataCheckpoint.of(metadata, position).write(checkpointFile(logId));
+    }
+
+    private static void assertScanned(EntryLogMetadata metadata) {
+        assertFalse(metadata.containsLedger(CHECKPOINT_ONLY_LEDGER));
+        assertEquals(10 * (ENTRY_SIZE + 4), metadata.getLedgersMap().get(1));
+        assertEquals(5 * (ENTRY_SIZE + 4), metadata.getLedgersMap().get(2));
+    }
+
+    private File logFile(long logId) {
+        return new File(curDir, Long.toHexString(logId) + ".log");
+    }
+
+    private File checkpointFile(long logId) {
+        return EntryLogMetadataCheckpoint.checkpointFile(curDir, logId);
+    }
+}
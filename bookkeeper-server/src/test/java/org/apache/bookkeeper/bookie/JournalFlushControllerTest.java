@@ -0,0 +1,155 @@
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JournalFlushControllerTest {
+    private static final long MAX_GROUP_WAIT = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long LATENCY_TARGET = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FSYNC_LATENCY = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FLUSH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int ENTRIES_PER_FLUSH = 10;
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void testConvergesWithinBounds() {
+        JournalFlushController controller = new JournalFlushController(true, true, MAX_GROUP_WAIT,
+                LATENCY_TARGET, ticker);
+        // before the first fsync, the journal sticks to the max wait
+        assertEquals(MAX_GROUP_WAIT, controller.getGroupWaitNanos());
+
+        for (int i = 0; i < 200; i++) {
+            long jitter = ThreadLocalRandom.current().nextLong(-FSYNC_LATENCY / 10, FSYNC_LATENCY / 10);
+            runGroup(controller, FSYNC_LATENCY + jitter, 0);
+            long wait = controller.getGroupWaitNanos();
+            assertTrue(wait >= 0 && wait <= MAX_GROUP_WAIT);
+        }
+
+        // the window gets what is left of the target after the p99 fsync latency
+        long wait = controller.getGroupWaitNanos();
+        assertTrue("wait " + wait, wait >= LATENCY_TARGET - 2 * FSYNC_LATENCY);
+        assertTrue("wait " + wait, wait <= LATENCY_TARGET - FSYNC_LATENCY + FSYNC_LATENCY / 10);
+        assertEquals(ENTRIES_PER_FLUSH, controller.getEntriesPerForceWrite());
+
+        // the force writes already queued eat into the window
+        runGroup(controller, FSYNC_LATENCY, 2);
+        assertTrue(controller.getGroupWaitNanos() < wait - 2 * FSYNC_LATENCY);
+    }
+
+    @Test
+    public void testCappedByMaxGroupWait() {
+        long maxGroupWait = TimeUnit.MILLISECONDS.toNanos(2);
+        JournalFlushController controller = new JournalFlushController(true, true, maxGroupWait,
+                LATENCY_TARGET, ticker);
+        for (int i = 0; i < 100; i++) {
+            runGroup(controller, FSYNC_LATENCY, 0);
+        }
+        assertEquals(maxGroupWait, controller.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testReactsToLatencySpike() {
+        JournalFlushController controller = new JournalFlushController(true, true, MAX_GROUP_WAIT,
+                LATENCY_TARGET, ticker);
+        for (int i = 0; i < 100; i++) {
+            runGroup(controller, FSYNC_LATENCY, 0);
+        }
+        long steadyWait = controller.getGroupWaitNanos();
+        assertTrue(steadyWait > 0);
+
+        // the disk stalls, the target cannot be met by waiting, so the journal flushes right away
+        int samples = 0;
+        while (controller.getGroupWaitNanos() > 0) {
+            runGroup(controller, LATENCY_TARGET, 0);
+            samples++;
+        }
+        assertTrue("reacted after " + samples + " samples", samples <= 3);
+
+        // and goes back to grouping once the disk recovers
+        for (int i = 0; i < 100; i++) {
+            runGroup(controller, FSYNC_LATENCY, 0);
+        }
+        assertTrue(controller.getGroupWaitNanos() > 0);
+        assertTrue(controller.getGroupWaitNanos() <= steadyWait + FSYNC_LATENCY / 10);
+    }
+
+    @Test
+    public void testNoWaitWithoutEntriesToGroup() {
+        JournalFlushController controller = new JournalFlushController(true, true, MAX_GROUP_WAIT,
+                LATENCY_TARGET, ticker);
+        for (int i = 0; i < 100; i++) {
+            // a single entry every second, nothing would be grouped with it
+            controller.onFlush(1, 0);
+            controller.onForceWrite(FSYNC_LATENCY, 1);
+            ticker.advance(TimeUnit.SECONDS.toNanos(1));
+        }
+        assertEquals(0, controller.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testWithoutSyncData() {
+        JournalFlushController controller = new JournalFlushController(true, false, MAX_GROUP_WAIT,
+                LATENCY_TARGET, ticker);
+        for (int i = 0; i < 100; i++) {
+            // the fsync latency does not count when the journal is not synced
+            runGroup(controller, 2 * LATENCY_TARGET, 0);
+        }
+        assertEquals(LATENCY_TARGET, controller.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testStaticWhenDisabled() {
+        JournalFlushController controller = new JournalFlushController(false, true, MAX_GROUP_WAIT,
+                LATENCY_TARGET, ticker);
+        for (int i = 0; i < 50; i++) {
+            runGroup(controller, FSYNC_LATENCY, 0);
+            assertEquals(MAX_GROUP_WAIT, controller.getGroupWaitNanos());
+        }
+        for (int i = 0; i < 50; i++) {
+            runGroup(controller, 2 * LATENCY_TARGET, 5);
+            assertEquals(MAX_GROUP_WAIT, controller.getGroupWaitNanos());
+        }
+        assertEquals(TimeUnit.NANOSECONDS.toMicros(MAX_GROUP_WAIT), controller.getGroupWaitMicros());
+        // the entries made durable by each fsync are still tracked
+        assertEquals(ENTRIES_PER_FLUSH, controller.getEntriesPerForceWrite());
+
+        // without any group wait, the journal flushes as soon as the queue is empty
+        controller = new JournalFlushController(false, true, 0, LATENCY_TARGET, ticker);
+        runGroup(controller, FSYNC_LATENCY, 0);
+        assertEquals(0, controller.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testAdaptiveWithoutMaxGroupWait() {
+        JournalFlushController controller = new JournalFlushController(true, true, 0, LATENCY_TARGET, ticker);
+        assertEquals(LATENCY_TARGET, controller.getGroupWaitNanos());
+    }
+
+    /**
+     * Flush a group of entries, then sync it with the given latency.
+     */
+    private void runGroup(JournalFlushController controller, long fsyncLatencyNanos, int pendingForceWrites) {
+        ticker.advance(FLUSH_INTERVAL);
+        controller.onFlush(ENTRIES_PER_FLUSH, pendingForceWrites);
+        controller.onForceWrite(fsyncLatencyNanos, ENTRIES_PER_FLUSH);
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos = 0;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long deltaNanos) {
+            nanos += deltaNanos;
+        }
+    }
+}
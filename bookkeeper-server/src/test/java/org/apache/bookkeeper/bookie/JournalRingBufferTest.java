@@ -0,0 +1,154 @@
+package org.apache.bookkeeper.bookie;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JournalRingBufferTest {
+    private static final int CAPACITY = 4;
+
+    @Test
+    public void testWrapAround() throws Exception {
+        JournalRingBuffer ring = new JournalRingBuffer(CAPACITY, false);
+        assertEquals(CAPACITY, ring.capacity());
+
+        long entryId = 0;
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < CAPACITY; i++) {
+                publish(ring, entryId + i);
+            }
+            assertEquals(CAPACITY, ring.size());
+
+            List<Journal.QueueEntry> entries = new ArrayList<>();
+            assertEquals(CAPACITY, ring.drainTo(entries));
+            assertEquals(0, ring.size());
+            for (Journal.QueueEntry qe : entries) {
+                assertEquals(entryId, qe.entryId);
+                assertEquals(entryId, qe.sequence);
+                ring.release(qe.sequence);
+                entryId++;
+            }
+        }
+        assertNull(ring.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testOutOfOrderRelease() throws Exception {
+        JournalRingBuffer ring = new JournalRingBuffer(CAPACITY, false);
+        for (int i = 0; i < CAPACITY; i++) {
+            publish(ring, i);
+        }
+        List<Journal.QueueEntry> entries = new ArrayList<>();
+        ring.drainTo(entries);
+
+        // release the slots backwards, every slot is free to be reused as soon as it is released
+        for (int i = CAPACITY - 1; i >= 0; i--) {
+            ring.release(entries.get(i).sequence);
+        }
+        for (int i = 0; i < CAPACITY; i++) {
+            publish(ring, CAPACITY + i);
+        }
+        for (int i = 0; i < CAPACITY; i++) {
+            Journal.QueueEntry qe = ring.take();
+            assertEquals(CAPACITY + i, qe.entryId);
+            ring.release(qe.sequence);
+        }
+    }
+
+    @Test
+    public void testNeverReleasedSlotTimesOut() throws Exception {
+        JournalRingBuffer ring = new JournalRingBuffer(CAPACITY, false, TimeUnit.MILLISECONDS.toNanos(100));
+        for (int i = 0; i < CAPACITY; i++) {
+            publish(ring, i);
+        }
+        List<Journal.QueueEntry> entries = new ArrayList<>();
+        ring.drainTo(entries);
+        // all but the first entry complete
+        for (int i = 1; i < CAPACITY; i++) {
+            ring.release(entries.get(i).sequence);
+        }
+
+        try {
+            publish(ring, CAPACITY);
+            fail("The slot of the first entry is never released");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // the failed producer did not claim the sequence, so the journal thread is not stuck on it
+        assertEquals(0, ring.size());
+
+        ring.release(entries.get(0).sequence);
+        publish(ring, CAPACITY);
+        Journal.QueueEntry qe = ring.take();
+        assertEquals(CAPACITY, qe.entryId);
+        assertEquals(CAPACITY, qe.sequence);
+    }
+
+    @Test
+    public void testConcurrentProducersWithShuffledRelease() throws Exception {
+        final int producers = 4;
+        final int entriesPerProducer = 10000;
+        JournalRingBuffer ring = new JournalRingBuffer(16, false);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                final long ledgerId = p;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < entriesPerProducer; i++) {
+                        ring.publish(null, false, ledgerId, i, null, null, 0L, null, null);
+                    }
+                }));
+            }
+
+            Random random = new Random(1);
+            long[] lastEntryIds = new long[producers];
+            Arrays.fill(lastEntryIds, -1);
+            long expectedSequence = 0;
+            int consumed = 0;
+            List<Journal.QueueEntry> batch = new ArrayList<>();
+            List<Long> sequences = new ArrayList<>();
+            while (consumed < producers * entriesPerProducer) {
+                Journal.QueueEntry qe = ring.poll(10, TimeUnit.SECONDS);
+                assertNotNull("The producers are stuck", qe);
+                batch.add(qe);
+                ring.drainTo(batch);
+                for (Journal.QueueEntry e : batch) {
+                    assertEquals(expectedSequence++, e.sequence);
+                    // the entries of each producer come in order
+                    assertEquals(lastEntryIds[(int) e.ledgerId] + 1, e.entryId);
+                    lastEntryIds[(int) e.ledgerId] = e.entryId;
+                    sequences.add(e.sequence);
+                }
+                consumed += batch.size();
+                batch.clear();
+
+                Collections.shuffle(sequences, random);
+                for (long sequence : sequences) {
+                    ring.release(sequence);
+                }
+                sequences.clear();
+            }
+            for (Future<?> f : futures) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(0, ring.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void publish(JournalRingBuffer ring, long entryId) {
+        ring.publish(null, false, 1L, entryId, null, null, 0L, null, null);
+    }
+}
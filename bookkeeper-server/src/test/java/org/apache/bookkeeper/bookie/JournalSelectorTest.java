@@ -0,0 +1,135 @@
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JournalSelectorTest {
+    private static final long REFRESH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void testHashedPlacementWhenNotLoadAware() {
+        List<Journal> journals = journals(4);
+        JournalSelector selector = new JournalSelector(journals, false, ticker);
+        setLoads(journals, 1000, 0, 0, 0);
+        ticker.advance(REFRESH_INTERVAL);
+
+        for (long ledgerId = 0; ledgerId < 8; ledgerId++) {
+            assertEquals(ledgerId % 4, selector.selectForAdd(ledgerId, false));
+            assertSame(journals.get((int) (ledgerId % 4)), selector.getJournal(ledgerId));
+            assertFalse(selector.markMasterKeyLogged(ledgerId, (int) (ledgerId % 4)));
+        }
+    }
+
+    @Test
+    public void testPlacementIsSticky() {
+        List<Journal> journals = journals(2);
+        JournalSelector selector = new JournalSelector(journals, true, ticker);
+
+        // ledgers start on their hashed journal
+        assertEquals(0, selector.selectForAdd(2, false));
+        assertEquals(1, selector.selectForAdd(3, false));
+
+        // a journal less than twice as loaded as the least loaded one keeps its ledgers
+        setLoads(journals, 150, 100);
+        for (int i = 0; i < 10; i++) {
+            ticker.advance(REFRESH_INTERVAL);
+            assertEquals(0, selector.selectForAdd(2, false));
+            assertEquals(1, selector.selectForAdd(3, false));
+        }
+        assertSame(journals.get(0), selector.getJournal(2));
+    }
+
+    @Test
+    public void testRebalanceToLeastLoadedJournal() {
+        List<Journal> journals = journals(3);
+        JournalSelector selector = new JournalSelector(journals, true, ticker);
+        assertEquals(0, selector.selectForAdd(3, false));
+        assertEquals(0, selector.selectForAdd(6, true));
+
+        setLoads(journals, 300, 100, 50);
+        // the loads are only refreshed periodically
+        assertEquals(0, selector.selectForAdd(3, false));
+        ticker.advance(REFRESH_INTERVAL);
+        assertEquals(2, selector.selectForAdd(3, false));
+        assertSame(journals.get(2), selector.getJournal(3));
+
+        // a ledger written with ack-before-sync stays on its journal
+        assertEquals(0, selector.selectForAdd(6, false));
+        assertSame(journals.get(0), selector.getJournal(6));
+
+        // the moved ledger sticks to its new journal once the load is balanced again
+        setLoads(journals, 100, 100, 100);
+        ticker.advance(REFRESH_INTERVAL);
+        assertEquals(2, selector.selectForAdd(3, false));
+
+        // a deleted ledger starts over from its hashed journal
+        selector.ledgerDeleted(3);
+        assertSame(journals.get(0), selector.getJournal(3));
+        assertEquals(0, selector.selectForAdd(3, false));
+    }
+
+    @Test
+    public void testMasterKeyLoggedOncePerJournal() {
+        // more journals than bits in a long
+        List<Journal> journals = journals(100);
+        JournalSelector selector = new JournalSelector(journals, true, ticker);
+        long ledgerId = 1;
+        assertFalse(selector.markMasterKeyLogged(ledgerId, 1));
+
+        int journalIndex = selector.selectForAdd(ledgerId, false);
+        assertTrue(selector.markMasterKeyLogged(ledgerId, journalIndex));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(journalIndex, selector.selectForAdd(ledgerId, false));
+            assertFalse(selector.markMasterKeyLogged(ledgerId, journalIndex));
+        }
+
+        for (int index : new int[] {63, 64, 99}) {
+            assertTrue(selector.markMasterKeyLogged(ledgerId, index));
+            assertFalse(selector.markMasterKeyLogged(ledgerId, index));
+        }
+
+        // once deleted, the ledger needs its master key again
+        selector.ledgerDeleted(ledgerId);
+        assertEquals(journalIndex, selector.selectForAdd(ledgerId, false));
+        assertTrue(selector.markMasterKeyLogged(ledgerId, journalIndex));
+    }
+
+    private static List<Journal> journals(int count) {
+        List<Journal> journals = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Journal journal = mock(Journal.class);
+            when(journal.getPendingWorkNanos()).thenReturn(0L);
+            journals.add(journal);
+        }
+        return journals;
+    }
+
+    private static void setLoads(List<Journal> journals, long... loads) {
+        for (int i = 0; i < loads.length; i++) {
+            when(journals.get(i).getPendingWorkNanos()).thenReturn(loads[i]);
+        }
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos = 0;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long deltaNanos) {
+            nanos += deltaNanos;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class MappedEntryLogCacheTest {
+    private static final int LOG_SIZE = 4096;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = tmpDirs.createNew("mapped-entry-logs", "");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tmpDirs.cleanup();
+    }
+
+    @Test
+    public void testUnmappedWhenEvictedAndReleased() throws Exception {
+        MappedEntryLogCache cache = new MappedEntryLogCache(2 * LOG_SIZE);
+        ByteBuf log0 = cache.map(0, logFile(0));
+        ByteBuf entry = log0.retainedSlice(100, 8);
+        log0.release();
+        ByteBuf log1 = cache.map(1, logFile(1));
+        log1.release();
+        assertEquals(2 * LOG_SIZE, cache.getMappedBytes());
+
+        // the least recently read log is evicted, but still mapped for the entry read from it
+        ByteBuf log2 = cache.map(2, logFile(2));
+        log2.release();
+        assertNull(cache.get(0));
+        assertEquals(2 * LOG_SIZE, cache.getMappedBytes());
+        assertEquals(1, log0.refCnt());
+        assertEquals(100, entry.getByte(0));
+        assertEquals(101, entry.getByte(1));
+
+        // unmapped with the last entry read from it
+        entry.release();
+        assertEquals(0, log0.refCnt());
+        // the logs still cached are only referenced by the cache
+        assertEquals(1, log1.refCnt());
+        assertEquals(1, log2.refCnt());
+    }
+
+    @Test
+    public void testUnmappedWhenRemovedAndReleased() throws Exception {
+        MappedEntryLogCache cache = new MappedEntryLogCache(4 * LOG_SIZE);
+        ByteBuf log = cache.map(0, logFile(0));
+        log.release();
+        ByteBuf mapped = cache.get(0);
+        assertSame(log, mapped);
+        assertEquals(2, log.refCnt());
+
+        cache.remove(0);
+        assertEquals(0, cache.getMappedBytes());
+        assertNull(cache.get(0));
+        assertEquals(1, log.refCnt());
+        mapped.release();
+        assertEquals(0, log.refCnt());
+
+        // mapped again when read again
+        ByteBuf remapped = cache.map(0, logFile(0));
+        assertNotSame(log, remapped);
+        remapped.release();
+        cache.clear();
+        assertEquals(0, remapped.refCnt());
+        assertEquals(0, cache.getMappedBytes());
+    }
+
+    @Test
+    public void testMappedReadOnly() throws Exception {
+        MappedEntryLogCache cache = new MappedEntryLogCache(LOG_SIZE);
+        File file = logFile(0);
+        assertTrue(file.setWritable(false));
+        ByteBuf log = cache.map(0, file);
+        assertTrue(log.isReadOnly());
+        assertEquals(LOG_SIZE, log.capacity());
+        assertEquals(LOG_SIZE, log.readableBytes());
+        try {
+            log.setByte(0, 1);
+            fail("Mapped entry log written");
+        } catch (ReadOnlyBufferException e) {
+            // expected
+        }
+        assertEquals(0, log.getByte(0));
+        log.release();
+        cache.clear();
+        assertEquals(0, log.refCnt());
+    }
+
+    @Test
+    public void testLogsOverBudgetAreNotMapped() throws Exception {
+        MappedEntryLogCache cache = new MappedEntryLogCache(LOG_SIZE - 1);
+        assertNull(cache.map(0, logFile(0)));
+        assertEquals(0, cache.getMappedBytes());
+    }
+
+    @Test
+    public void testReadMappedEntries() throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] {dir.getAbsolutePath()});
+        conf.setEntryLogMmapReadEnabled(true);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        DefaultEntryLogger entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager);
+        try {
+            long[] locations = new long[10];
+            for (int entryId = 0; entryId < locations.length; entryId++) {
+                locations[entryId] = entryLogger.addEntry(1L, entry(1, entryId));
+            }
+            // seal the entry log, so that it can be mapped
+            ((EntryLogManagerBase) entryLogger.getEntryLogManager())
+                    .createNewLog(DefaultEntryLogger.UNASSIGNED_LEDGERID);
+            entryLogger.flush();
+
+            ByteBuf first = entryLogger.readEntry(1, 0, locations[0]);
+            assertTrue(first.isReadOnly());
+            assertEquals(entry(1, 0), first);
+            for (int entryId = 1; entryId < locations.length; entryId++) {
+                ByteBuf entry = entryLogger.readEntry(1, entryId, locations[entryId]);
+                assertEquals(entry(1, entryId), entry);
+                entry.release();
+            }
+
+            // the entry is still readable after its entry log is removed, until it is released
+            entryLogger.removeEntryLog(0);
+            assertEquals(entry(1, 0), first);
+            assertTrue(first.release());
+        } finally {
+            entryLogger.close();
+        }
+    }
+
+    private File logFile(long logId) throws Exception {
+        File file = new File(dir, logId + ".log");
+        byte[] data = new byte[LOG_SIZE];
+        for (int i = 0; i < LOG_SIZE; i++) {
+            data[i] = (byte) (i % 127);
+        }
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(64);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,113 @@
+package org.apache.bookkeeper.bookie;
+
+import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.client.LedgerEntry;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.awaitility.Awaitility;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class ParallelCompactionTest extends BookKeeperClusterTestCase {
+    private static final int LEDGERS = 8;
+    private static final int KEPT_LEDGERS = 2;
+    private static final int ENTRIES = 300;
+    private static final byte[] PASSWORD = "pass".getBytes(StandardCharsets.UTF_8);
+
+    public ParallelCompactionTest(String ledgerStorageClass) {
+        super(1);
+        baseConf.setLedgerStorageClass(ledgerStorageClass);
+        baseConf.setNumCompactionThreads(4);
+        // Small entry logs, every one of them holding entries of all the ledgers
+        baseConf.setEntryLogSizeLimit(64 * 1024);
+        baseConf.setFlushInterval(100);
+        baseConf.setForceAllowCompaction(true);
+        baseConf.setMajorCompactionThreshold(0.8);
+        baseConf.setMinorCompactionThreshold(0.2);
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> ledgerStorages() {
+        return Arrays.asList(new Object[][] {
+                {InterleavedLedgerStorage.class.getName()},
+                {DbLedgerStorage.class.getName()},
+        });
+    }
+
+    @Test
+    public void testEntriesReadableAfterParallelCompaction() throws Exception {
+        List<LedgerHandle> ledgers = new ArrayList<>();
+        for (int i = 0; i < LEDGERS; i++) {
+            ledgers.add(bkc.createLedger(1, 1, BookKeeper.DigestType.CRC32, PASSWORD));
+        }
+        LedgerStorage storage = serverByIndex(0).getBookie().getLedgerStorage();
+        for (int entryId = 0; entryId < ENTRIES; entryId++) {
+            for (LedgerHandle lh : ledgers) {
+                lh.addEntry(entry(lh.getId(), entryId));
+            }
+            if (entryId % 20 == 19) {
+                // the write cache is flushed to the entry logs, rolled over at their size limit
+                storage.flush();
+            }
+        }
+        for (LedgerHandle lh : ledgers) {
+            lh.close();
+        }
+        List<LedgerHandle> kept = ledgers.subList(0, KEPT_LEDGERS);
+        for (LedgerHandle lh : ledgers.subList(KEPT_LEDGERS, LEDGERS)) {
+            bkc.deleteLedger(lh.getId());
+        }
+
+        storage.flush();
+        storage.forceGC(true, false);
+        Awaitility.await().atMost(30, TimeUnit.SECONDS).until(() ->
+                storage.getGarbageCollectionStatus().stream().allMatch(s -> s.getMajorCompactionCounter() > 0));
+
+        // several entry logs were compacted, by the concurrent compactors
+        int compacted = storage.getGarbageCollectionStatus().stream()
+                .mapToInt(GarbageCollectionStatus::getCompactionCompletedEntryLogs).sum();
+        assertTrue("Compacted entry logs: " + compacted, compacted > 4);
+
+        verifyEntries(kept);
+        // and once the caches are gone, from the index alone
+        restartBookies();
+        verifyEntries(kept);
+    }
+
+    private void verifyEntries(List<LedgerHandle> ledgers) throws Exception {
+        for (LedgerHandle lh : ledgers) {
+            try (LedgerHandle reader = bkc.openLedgerNoRecovery(lh.getId(), BookKeeper.DigestType.CRC32,
+                    PASSWORD)) {
+                Enumeration<LedgerEntry> entries = reader.readEntries(0, ENTRIES - 1);
+                int entryId = 0;
+                while (entries.hasMoreElements()) {
+                    LedgerEntry entry = entries.nextElement();
+                    assertEquals(entryId, entry.getEntryId());
+                    assertArrayEquals(entry(lh.getId(), entryId), entry.getEntry());
+                    entryId++;
+                }
+                assertEquals(ENTRIES, entryId);
+            }
+        }
+    }
+
+    private static byte[] entry(long ledgerId, long entryId) {
+        byte[] data = new byte[512];
+        Arrays.fill(data, (byte) (ledgerId * 31 + entryId));
+        byte[] id = (ledgerId + "@" + entryId).getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(id, 0, data, 0, id.length);
+        return data;
+    }
+}
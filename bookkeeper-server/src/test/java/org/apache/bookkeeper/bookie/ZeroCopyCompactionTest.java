@@ -0,0 +1,204 @@
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ZeroCopyCompactionTest {
+    private static final long LOG_TO_COMPACT = 0;
+    private static final long DELETED_LEDGER = 2;
+    private static final int ROUNDS = 50;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private ServerConfiguration conf;
+    private DefaultEntryLogger entryLogger;
+    private EntryLogMetadata metadata;
+    private final List<long[]> liveEntries = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        File dir = tmpDirs.createNew("zero-copy-compaction", "");
+        conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] {dir.getAbsolutePath()});
+        conf.setZeroCopyCompactionEnabled(true);
+        conf.setCompactionRateByBytes(Integer.MAX_VALUE);
+        conf.setIsThrottleByBytes(true);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager);
+
+        // Runs of 3 live entries, separated by an entry of the deleted ledger
+        metadata = new EntryLogMetadata(LOG_TO_COMPACT);
+        for (long entryId = 0; entryId < ROUNDS; entryId++) {
+            addEntry(1, 2 * entryId, true);
+            addEntry(1, 2 * entryId + 1, true);
+            addEntry(3, entryId, true);
+            addEntry(DELETED_LEDGER, entryId, false);
+        }
+        entryLogger.flush();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entryLogger.close();
+        tmpDirs.cleanup();
+    }
+
+    @Test
+    public void testCopiedEntriesLocations() throws Exception {
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(LOG_TO_COMPACT);
+        assertTrue(compactionLog.entryRangeCopier().isPresent());
+        verifyCompaction(compactionLog);
+    }
+
+    @Test
+    public void testFallbackToAddingEntries() throws Exception {
+        // a compaction log which can't copy the entries
+        CompactionEntryLog compactionLog = new AddOnlyCompactionLog(entryLogger.newCompactionLog(LOG_TO_COMPACT));
+        assertFalse(compactionLog.entryRangeCopier().isPresent());
+        verifyCompaction(compactionLog);
+    }
+
+    @Test
+    public void testCopyFailsWithoutCompactionLog() throws Exception {
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(LOG_TO_COMPACT);
+        CompactionEntryLog.EntryRangeCopier copier = compactionLog.entryRangeCopier().get();
+        compactionLog.abort();
+
+        EntryLogMetadata entries = new EntryLogMetadata(LOG_TO_COMPACT);
+        entries.addLedgerSize(1, 100);
+        try {
+            copier.copyEntries(DefaultEntryLogger.LOGFILE_HEADER_SIZE, 100, entries);
+            fail("The entries would be located in another compaction log");
+        } catch (IOException e) {
+            // expected
+        }
+        // no compaction log was created in place of the aborted one
+        File[] compactionLogs = new File(conf.getLedgerDirs()[0], "current")
+                .listFiles((dir, name) -> name.endsWith(TransactionalEntryLogCompactor.COMPACTING_SUFFIX));
+        assertEquals(0, compactionLogs.length);
+    }
+
+    private void verifyCompaction(CompactionEntryLog compactionLog) throws Exception {
+        TransactionalEntryLogCompactor compactor = new TransactionalEntryLogCompactor(conf, entryLogger, null,
+                logId -> {});
+        assertTrue(compactor.new ScanEntryLogPhase(metadata, compactionLog).run());
+        assertTrue(compactor.new FlushCompactionLogPhase(compactionLog).run());
+        compactionLog.makeAvailable();
+
+        assertEquals(liveEntries.size(), compactor.offsets.size());
+        for (int i = 0; i < liveEntries.size(); i++) {
+            EntryLocation location = compactor.offsets.get(i);
+            long[] expected = liveEntries.get(i);
+            assertEquals(expected[0], location.ledger);
+            assertEquals(expected[1], location.entry);
+            assertEquals(compactionLog.getDstLogId(), location.location >> 32L);
+
+            ByteBuf entry = entryLogger.readEntry(location.ledger, location.entry, location.location);
+            try {
+                assertEquals(entry(location.ledger, location.entry), entry);
+            } finally {
+                entry.release();
+            }
+        }
+
+        // the ledgers map of the compacted log only has the live ledgers, with their sizes
+        EntryLogMetadata compacted = entryLogger.getEntryLogMetadata(compactionLog.getDstLogId());
+        assertEquals(metadata.getLedgersMap().get(1), compacted.getLedgersMap().get(1));
+        assertEquals(metadata.getLedgersMap().get(3), compacted.getLedgersMap().get(3));
+        assertFalse(compacted.containsLedger(DELETED_LEDGER));
+    }
+
+    private void addEntry(long ledgerId, long entryId, boolean live) throws IOException {
+        ByteBuf entry = entry(ledgerId, entryId);
+        int size = entry.readableBytes();
+        entryLogger.addEntry(ledgerId, entry);
+        if (live) {
+            metadata.addLedgerSize(ledgerId, size + 4);
+            liveEntries.add(new long[] {ledgerId, entryId});
+        }
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        // entries of different sizes, so that every one of them is at its own offset in a run
+        int size = 16 + (int) ((ledgerId * 37 + entryId * 13) % 200);
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (ledgerId + entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    /**
+     * Delegates to a compaction log, without its entry range copier.
+     */
+    private static class AddOnlyCompactionLog implements CompactionEntryLog {
+        private final CompactionEntryLog delegate;
+
+        AddOnlyCompactionLog(CompactionEntryLog delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public long addEntry(long ledgerId, ByteBuf entry) throws IOException {
+            return delegate.addEntry(ledgerId, entry);
+        }
+
+        @Override
+        public void scan(EntryLogScanner scanner) throws IOException {
+            delegate.scan(scanner);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void abort() {
+            delegate.abort();
+        }
+
+        @Override
+        public void markCompacted() throws IOException {
+            delegate.markCompacted();
+        }
+
+        @Override
+        public void makeAvailable() throws IOException {
+            delegate.makeAvailable();
+        }
+
+        @Override
+        public void finalizeAndCleanup() {
+            delegate.finalizeAndCleanup();
+        }
+
+        @Override
+        public long getDstLogId() {
+            return delegate.getDstLogId();
+        }
+
+        @Override
+        public long getSrcLogId() {
+            return delegate.getSrcLogId();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.apache.bookkeeper.bookie.storage;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Ways to damage a ledgers map checkpoint file, keeping a valid CRC unless the CRC is what is damaged.
+ */
+public enum CheckpointDamage {
+    CORRUPT_CRC {
+        @Override
+        void damage(ByteBuffer buf) {
+            // flip a bit in the ledgers map, without updating the CRC
+            buf.put(buf.limit() - 9, (byte) (buf.get(buf.limit() - 9) ^ 1));
+        }
+    },
+    BAD_MAGIC {
+        @Override
+        void damage(ByteBuffer buf) {
+            buf.putInt(0, 0xdeadbeef);
+            updateCrc(buf);
+        }
+    },
+    BAD_VERSION {
+        @Override
+        void damage(ByteBuffer buf) {
+            buf.putInt(4, buf.getInt(4) + 1);
+            updateCrc(buf);
+        }
+    },
+    WRONG_LOG_ID {
+        @Override
+        void damage(ByteBuffer buf) {
+            buf.putLong(8, buf.getLong(8) + 1);
+            updateCrc(buf);
+        }
+    },
+    TRUNCATED {
+        @Override
+        void damage(ByteBuffer buf) {
+            // drop the last ledger of the map
+            buf.limit(buf.limit() - 16);
+            updateCrc(buf);
+        }
+    };
+
+    abstract void damage(ByteBuffer buf);
+
+    public void apply(File file) throws Exception {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        damage(buf);
+        Files.write(file.toPath(), Arrays.copyOf(buf.array(), buf.limit()));
+    }
+
+    private static void updateCrc(ByteBuffer buf) {
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.limit() - 8);
+        buf.putLong(buf.limit() - 8, crc.getValue());
+    }
+}
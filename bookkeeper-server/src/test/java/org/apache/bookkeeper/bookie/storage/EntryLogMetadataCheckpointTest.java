@@ -0,0 +1,119 @@
+package org.apache.bookkeeper.bookie.storage;
+
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class EntryLogMetadataCheckpointTest {
+    private static final long LOG_ID = 0x1234;
+    private static final long POSITION = 4096;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = tmpDirs.createNew("checkpoints", "");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tmpDirs.cleanup();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        EntryLogMetadata metadata = new EntryLogMetadata(LOG_ID);
+        for (long ledgerId = 1; ledgerId <= 100; ledgerId++) {
+            metadata.addLedgerSize(ledgerId, ledgerId * 104);
+        }
+        EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.of(metadata, POSITION);
+        // the checkpoint is a copy of the map at the time it was taken
+        metadata.addLedgerSize(101, 104);
+
+        File file = EntryLogMetadataCheckpoint.checkpointFile(dir, LOG_ID);
+        assertEquals("1234.lmap", file.getName());
+        checkpoint.write(file);
+        // the previous checkpoint is replaced
+        checkpoint.write(file);
+        assertArrayEquals(new String[] {file.getName()}, dir.list());
+
+        EntryLogMetadataCheckpoint read = EntryLogMetadataCheckpoint.read(file, LOG_ID);
+        assertEquals(POSITION, read.getPosition());
+        assertEquals(LOG_ID, read.getMetadata().getEntryLogId());
+        assertEquals(100, read.getMetadata().getLedgersMap().size());
+        for (long ledgerId = 1; ledgerId <= 100; ledgerId++) {
+            assertEquals(ledgerId * 104, read.getMetadata().getLedgersMap().get(ledgerId));
+        }
+        assertFalse(read.getMetadata().containsLedger(101));
+        assertEquals(checkpoint.getMetadata().getTotalSize(), read.getMetadata().getTotalSize());
+    }
+
+    @Test
+    public void testRoundTripOfEmptyMap() throws Exception {
+        File file = EntryLogMetadataCheckpoint.checkpointFile(dir, LOG_ID);
+        EntryLogMetadataCheckpoint.of(new EntryLogMetadata(LOG_ID), POSITION).write(file);
+
+        EntryLogMetadataCheckpoint read = EntryLogMetadataCheckpoint.read(file, LOG_ID);
+        assertEquals(POSITION, read.getPosition());
+        assertTrue(read.getMetadata().isEmpty());
+    }
+
+    @Test
+    public void testDamagedCheckpointIsRejected() throws Exception {
+        for (CheckpointDamage damage : CheckpointDamage.values()) {
+            File file = writeCheckpoint();
+            damage.apply(file);
+            try {
+                EntryLogMetadataCheckpoint.read(file, LOG_ID);
+                fail("Checkpoint read with " + damage);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testCheckpointOfAnotherLogIsRejected() throws Exception {
+        File file = writeCheckpoint();
+        try {
+            EntryLogMetadataCheckpoint.read(file, LOG_ID + 1);
+            fail("Checkpoint read for another log");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMissingCheckpoint() throws Exception {
+        File file = EntryLogMetadataCheckpoint.checkpointFile(dir, LOG_ID);
+        try {
+            EntryLogMetadataCheckpoint.read(file, LOG_ID);
+            fail("Missing checkpoint read");
+        } catch (IOException e) {
+            // expected
+        }
+        // deleting a missing checkpoint is a no-op
+        EntryLogMetadataCheckpoint.delete(file);
+
+        writeCheckpoint();
+        EntryLogMetadataCheckpoint.delete(file);
+        assertFalse(file.exists());
+    }
+
+    private File writeCheckpoint() throws IOException {
+        EntryLogMetadata metadata = new EntryLogMetadata(LOG_ID);
+        metadata.addLedgerSize(1, 1040);
+        metadata.addLedgerSize(2, 520);
+        File file = EntryLogMetadataCheckpoint.checkpointFile(dir, LOG_ID);
+        EntryLogMetadataCheckpoint.of(metadata, POSITION).write(file);
+        return file;
+    }
+}
@@ -0,0 +1,104 @@
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class DirectBufferedChannelTest {
+    private final NativeIO nativeIO = new NativeIOImpl();
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("direct-buffered-channel", ".txn");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private DirectBufferedChannel newChannel() throws IOException {
+        return new DirectBufferedChannel(nativeIO, new RandomAccessFile(file, "rw").getChannel(),
+                file.getPath(), Buffer.ALIGNMENT * 2);
+    }
+
+    private static ByteBuf data(int from, int length) {
+        ByteBuf buf = Unpooled.buffer(length);
+        for (int i = 0; i < length; i++) {
+            buf.writeByte((byte) (from + i));
+        }
+        return buf;
+    }
+
+    @Test
+    public void testReadFlushedAndBufferedData() throws Exception {
+        DirectBufferedChannel channel = newChannel();
+        try {
+            // several blocks written to the file, plus a partial block kept in the buffer
+            int flushedLength = Buffer.ALIGNMENT * 3 + 100;
+            channel.write(data(0, flushedLength));
+            channel.flush();
+            channel.write(data(flushedLength, 500));
+
+            int total = flushedLength + 500;
+            assertEquals(total, channel.position());
+
+            ByteBuf dest = Unpooled.buffer(total);
+            assertEquals(total, channel.read(dest, 0, total));
+            assertEquals(data(0, total), dest);
+
+            // a read spanning the file and the buffer
+            dest = Unpooled.buffer(700);
+            long pos = Buffer.ALIGNMENT * 3 - 200;
+            assertEquals(700, channel.read(dest, pos, 700));
+            assertEquals(data((int) pos, 700), dest);
+
+            try {
+                channel.read(Unpooled.buffer(10), total - 5, 10);
+                fail("Should not read past the data written");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            channel.close();
+        }
+
+        try {
+            channel.read(Unpooled.buffer(10), 0, 10);
+            fail("Should not read from a closed channel");
+        } catch (ClosedChannelException e) {
+            // expected
+        }
+        // closing again is a no-op
+        channel.close();
+    }
+
+    @Test
+    public void testReopenFromPartialBlock() throws Exception {
+        int length = Buffer.ALIGNMENT + 123;
+        DirectBufferedChannel channel = newChannel();
+        channel.write(data(0, length));
+        channel.flush();
+        channel.forceWrite(false);
+        channel.close();
+
+        // the file holds the data followed by the zero padding to the block
+        byte[] content = Files.readAllBytes(file.toPath());
+        assertEquals(Buffer.ALIGNMENT * 2, content.length);
+        assertEquals(0, content[length]);
+        assertEquals((byte) (length - 1), content[length - 1]);
+    }
+}
@@ -0,0 +1,270 @@
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.CheckpointDamage;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogIdsImpl;
+import org.apache.bookkeeper.bookie.storage.EntryLogMetadataCheckpoint;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.slogger.Slogger;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class DirectEntryLoggerCheckpointTest {
+    private static final int ENTRY_SIZE = 100;
+    private static final long CHECKPOINT_ONLY_LEDGER = 999;
+    private static final long MAX_FILE_SIZE = 1 << 20;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final List<DirectEntryLogger> entryLoggers = new ArrayList<>();
+    private LedgerDirsManager ledgerDirsManager;
+    private File curDir;
+    private ExecutorService writeExecutor;
+    private ExecutorService flushExecutor;
+    private DirectEntryLogger entryLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        File ledgerDir = tmpDirs.createNew("ledgers", "");
+        curDir = BookieImpl.getCurrentDirectory(ledgerDir);
+        BookieImpl.checkDirectoryStructure(curDir);
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] {ledgerDir.getAbsolutePath()});
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        writeExecutor = Executors.newSingleThreadExecutor();
+        flushExecutor = Executors.newSingleThreadExecutor();
+        entryLogger = newEntryLogger(MAX_FILE_SIZE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (DirectEntryLogger logger : entryLoggers) {
+            logger.close();
+        }
+        writeExecutor.shutdownNow();
+        flushExecutor.shutdownNow();
+        tmpDirs.cleanup();
+    }
+
+    @Test
+    public void testCheckpointOnFlush() throws Exception {
+        long location = addEntry(entryLogger, 1, 0);
+        long logId = location >> 32;
+        assertFalse(checkpointFile(logId).exists());
+
+        entryLogger.flush();
+        EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.read(checkpointFile(logId), logId);
+        assertEquals(ENTRY_SIZE + 4, checkpoint.getMetadata().getLedgersMap().get(1));
+        // the checkpoint covers the log up to the end of its last entry
+        assertEquals((location & 0xffffffffL) + ENTRY_SIZE, checkpoint.getPosition());
+
+        // the entries written after a flush start on the next block
+        addEntries(2, 0, 4);
+        location = addEntry(entryLogger, 2, 4);
+        entryLogger.flush();
+        checkpoint = EntryLogMetadataCheckpoint.read(checkpointFile(logId), logId);
+        assertEquals((location & 0xffffffffL) + ENTRY_SIZE, checkpoint.getPosition());
+        assertEquals(5 * (ENTRY_SIZE + 4), checkpoint.getMetadata().getLedgersMap().get(2));
+    }
+
+    @Test
+    public void testRecoverFromCheckpointAndTailScan() throws Exception {
+        long logId = addEntries(1, 0, 10);
+        entryLogger.flush();
+        // the checkpoint taken then is the last one written before the bookie stops, and a ledger only found
+        // in it tells that it was used
+        EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.read(checkpointFile(logId), logId);
+        checkpoint.getMetadata().addLedgerSize(CHECKPOINT_ONLY_LEDGER, ENTRY_SIZE + 4);
+
+        addEntries(2, 0, 5);
+        addEntries(1, 10, 2);
+        entryLogger.flush();
+        crash();
+        checkpoint.write(checkpointFile(logId));
+
+        EntryLogMetadata metadata = entryLogger.getEntryLogMetadata(logId, null);
+        assertTrue(metadata.containsLedger(CHECKPOINT_ONLY_LEDGER));
+        // the entries written after the checkpoint are found by the scan of the rest of the log
+        assertEquals(12 * (ENTRY_SIZE + 4), metadata.getLedgersMap().get(1));
+        assertEquals(5 * (ENTRY_SIZE + 4), metadata.getLedgersMap().get(2));
+        assertEquals(3, metadata.getLedgersMap().size());
+    }
+
+    @Test
+    public void testFallBackToScanOfDamagedCheckpoint() throws Exception {
+        long logId = addEntries(1, 0, 10);
+        addEntries(2, 0, 5);
+        entryLogger.flush();
+        long position = EntryLogMetadataCheckpoint.read(checkpointFile(logId), logId).getPosition();
+        crash();
+
+        for (CheckpointDamage damage : CheckpointDamage.values()) {
+            writeCheckpoint(logId, position);
+            damage.apply(checkpointFile(logId));
+            assertScanned(entryLogger.getEntryLogMetadata(logId, null));
+        }
+    }
+
+    @Test
+    public void testFallBackToScanOfCheckpointOutOfLog() throws Exception {
+        long logId = addEntries(1, 0, 10);
+        addEntries(2, 0, 5);
+        entryLogger.flush();
+        long position = EntryLogMetadataCheckpoint.read(checkpointFile(logId), logId).getPosition();
+        crash();
+
+        writeCheckpoint(logId, logFile(logId).length() + 1);
+        assertScanned(entryLogger.getEntryLogMetadata(logId, null));
+        writeCheckpoint(logId, 0);
+        assertScanned(entryLogger.getEntryLogMetadata(logId, null));
+
+        // the checkpoint is used once valid
+        writeCheckpoint(logId, position);
+        assertTrue(entryLogger.getEntryLogMetadata(logId, null).containsLedger(CHECKPOINT_ONLY_LEDGER));
+    }
+
+    @Test
+    public void testCheckpointDeletedWhenLogRolled() throws Exception {
+        DirectEntryLogger smallLogs = newEntryLogger(64 * 1024);
+        long firstLogId = addEntries(smallLogs, 1, 0, 1);
+        smallLogs.flush();
+        assertTrue(checkpointFile(firstLogId).exists());
+
+        long entryId = 1;
+        long logId = firstLogId;
+        while (logId == firstLogId) {
+            logId = addEntries(smallLogs, 1, entryId++, 1);
+        }
+        smallLogs.flush();
+        assertFalse(checkpointFile(firstLogId).exists());
+        assertTrue(checkpointFile(logId).exists());
+        // the ledgers map is read from the index appended to the log
+        assertEquals((entryId - 1) * (ENTRY_SIZE + 4),
+                smallLogs.readEntryLogIndex(firstLogId).getLedgersMap().get(1));
+
+        // and the current log is finalized on close
+        smallLogs.close();
+        entryLoggers.remove(smallLogs);
+        assertFalse(checkpointFile(logId).exists());
+        assertEquals(ENTRY_SIZE + 4, smallLogs.readEntryLogIndex(logId).getLedgersMap().get(1));
+    }
+
+    @Test
+    public void testCheckpointDeletedWhenLogCompacted() throws Exception {
+        long logId = addEntries(1, 0, 10);
+        addEntries(2, 0, 10);
+        entryLogger.flush();
+        crash();
+        assertTrue(checkpointFile(logId).exists());
+
+        // ledger 2 was deleted, the entries of ledger 1 are copied to a new log
+        CompactionEntryLog compactionLog = entryLogger.newCompactionLog(logId);
+        entryLogger.scanEntryLog(logId, new EntryLogScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId == 1;
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                compactionLog.addEntry(ledgerId, entry);
+            }
+        });
+        compactionLog.flush();
+        compactionLog.markCompacted();
+        compactionLog.makeAvailable();
+        compactionLog.finalizeAndCleanup();
+        assertTrue(entryLogger.removeEntryLog(logId));
+
+        assertFalse(logFile(logId).exists());
+        assertFalse(checkpointFile(logId).exists());
+        assertEquals(10 * (ENTRY_SIZE + 4),
+                entryLogger.getEntryLogMetadata(compactionLog.getDstLogId(), null).getLedgersMap().get(1));
+        assertArrayEquals(new File[0], curDir.listFiles(
+                (dir, name) -> name.endsWith(EntryLogMetadataCheckpoint.CHECKPOINT_FILE_SUFFIX)));
+    }
+
+    private DirectEntryLogger newEntryLogger(long maxFileSize) throws IOException {
+        DirectEntryLogger logger = new DirectEntryLogger(curDir, new EntryLogIdsImpl(ledgerDirsManager, Slogger.NULL),
+                new NativeIOImpl(), ByteBufAllocator.DEFAULT, writeExecutor, flushExecutor,
+                maxFileSize, 10 * 1024, 1 << 20, 1 << 20, 64 * 1024, 1, 300, Slogger.NULL,
+                NullStatsLogger.INSTANCE);
+        entryLoggers.add(logger);
+        return logger;
+    }
+
+    /**
+     * Start a new entry logger while the current log of the previous one is neither rolled nor closed, as if
+     * the bookie had crashed after flushing it.
+     */
+    private void crash() throws IOException {
+        entryLogger = newEntryLogger(MAX_FILE_SIZE);
+    }
+
+    private long addEntries(long ledgerId, long firstEntryId, int count) throws IOException {
+        return addEntries(entryLogger, ledgerId, firstEntryId, count);
+    }
+
+    private static long addEntries(DirectEntryLogger logger, long ledgerId, long firstEntryId, int count)
+            throws IOException {
+        long location = 0;
+        for (long entryId = firstEntryId; entryId < firstEntryId + count; entryId++) {
+            location = addEntry(logger, ledgerId, entryId);
+        }
+        return location >> 32;
+    }
+
+    private static long addEntry(DirectEntryLogger logger, long ledgerId, long entryId) throws IOException {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writerIndex(ENTRY_SIZE);
+        try {
+            return logger.addEntry(ledgerId, entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    private void writeCheckpoint(long logId, long position) throws IOException {
+        EntryLogMetadata metadata = new EntryLogMetadata(logId);
+        metadata.addLedgerSize(CHECKPOINT_ONLY_LEDGER, ENTRY_SIZE + 4);
+        EntryLogMetadataCheckpoint.of(metadata, position).write(checkpointFile(logId));
+    }
+
+    private static void assertScanned(EntryLogMetadata metadata) {
+        assertFalse(metadata.containsLedger(CHECKPOINT_ONLY_LEDGER));
+        assertEquals(10 * (ENTRY_SIZE + 4), metadata.getLedgersMap().get(1));
+        assertEquals(5 * (ENTRY_SIZE + 4), metadata.getLedgersMap().get(2));
+    }
+
+    private File logFile(long logId) {
+        return DirectEntryLogger.logFile(curDir, (int) logId);
+    }
+
+    private File checkpointFile(long logId) {
+        return EntryLogMetadataCheckpoint.checkpointFile(curDir, logId);
+    }
+}
@@ -0,0 +1,339 @@
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
+import org.apache.bookkeeper.slogger.Slogger;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DirectWriterIoUringTest {
+    private static final int BUFFER_SIZE = Buffer.ALIGNMENT * 4;
+    private static final int POOL_SIZE = 4;
+
+    private final NativeIO nativeIO = new NativeIOImpl();
+    private File dir;
+    private ExecutorService writeExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        long ring;
+        try {
+            ring = nativeIO.io_uring_setup(DirectWriter.IO_URING_ENTRIES);
+        } catch (NativeIOException | UnsatisfiedLinkError e) {
+            ring = 0;
+        }
+        Assume.assumeTrue("io_uring is not available", ring != 0);
+        nativeIO.io_uring_close(ring);
+
+        dir = Files.createTempDirectory("direct-writer-io-uring").toFile();
+        writeExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (writeExecutor != null) {
+            writeExecutor.shutdownNow();
+        }
+        if (dir != null) {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testRingReusableAfterFailedWrite() throws Exception {
+        long ring = nativeIO.io_uring_setup(DirectWriter.IO_URING_ENTRIES);
+        Buffer buffer = new Buffer(nativeIO, BUFFER_SIZE);
+        try {
+            buffer.writeInt(42);
+            int size = buffer.padToAlignment();
+            // more writes than the ring entries, so that the batch is split in several submissions
+            int count = DirectWriter.IO_URING_ENTRIES * 2 + 1;
+            long[] pointers = new long[count];
+            int[] sizes = new int[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                pointers[i] = buffer.pointer();
+                sizes[i] = size;
+                offsets[i] = (long) i * size;
+            }
+
+            // every write of the batch fails on the closed file descriptor
+            try {
+                nativeIO.io_uring_write(ring, Integer.MAX_VALUE, pointers, sizes, offsets, count,
+                        NativeIO.IO_URING_FDATASYNC);
+                fail("The write on a bad file descriptor should fail");
+            } catch (NativeIOException e) {
+                assertEquals(0, nativeIO.io_uring_inflight(ring));
+            }
+
+            // no completion of the failed batch is left in the ring to be mixed up with the next one
+            File file = new File(dir, "ring.log");
+            int fd = nativeIO.open(file.getPath(), NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+            try {
+                long written = nativeIO.io_uring_write(ring, fd, pointers, sizes, offsets, count,
+                        NativeIO.IO_URING_FDATASYNC);
+                assertEquals((long) count * size, written);
+            } finally {
+                nativeIO.close(fd);
+            }
+            assertEquals((long) count * size, file.length());
+        } finally {
+            buffer.free();
+            nativeIO.io_uring_close(ring);
+        }
+    }
+
+    @Test
+    public void testWriterErrorsOutOnFailedSubmission() throws Exception {
+        FailingNativeIO failingIO = new FailingNativeIO(nativeIO, 0);
+        File file = new File(dir, "failed-submission.log");
+        try (BufferPool pool = new BufferPool(nativeIO, BUFFER_SIZE, POOL_SIZE)) {
+            DirectWriter writer = new DirectWriter(1, file.getPath(), 1 << 20, writeExecutor, pool,
+                    failingIO, true, Slogger.NULL);
+
+            failingIO.failNextWrite();
+            writer.writeDelimited(entry(1));
+            try {
+                writer.flush();
+                fail("The flush should fail with the write");
+            } catch (IOException e) {
+                // expected
+            }
+            // the broken ring was replaced by a new one
+            assertEquals(2, failingIO.setups.get());
+            assertEquals(1, failingIO.closes.get());
+
+            // the next writes go through the new ring
+            writer.position(Buffer.ALIGNMENT);
+            int position = writer.writeDelimited(entry(2));
+            writer.flush();
+            writer.close();
+            assertEquals(2, failingIO.closes.get());
+
+            byte[] data = Files.readAllBytes(file.toPath());
+            assertEquals(2, data[position + 7]);
+
+            // all the buffers went back to the pool
+            assertPoolFull(pool);
+        }
+    }
+
+    @Test
+    public void testBuffersDiscardedWhenWritesMayBeInFlight() throws Exception {
+        FailingNativeIO failingIO = new FailingNativeIO(nativeIO, 1);
+        File file = new File(dir, "inflight.log");
+        try (BufferPool pool = new BufferPool(nativeIO, BUFFER_SIZE, POOL_SIZE)) {
+            DirectWriter writer = new DirectWriter(1, file.getPath(), 1 << 20, writeExecutor, pool,
+                    failingIO, true, Slogger.NULL);
+
+            failingIO.failNextWrite();
+            writer.writeDelimited(entry(1));
+            try {
+                writer.flush();
+                fail("The flush should fail with the write");
+            } catch (IOException e) {
+                // expected
+            }
+            assertEquals(1, failingIO.closes.get());
+            writer.close();
+
+            // the buffer which may still be written from was replaced, not returned to the pool
+            assertFalse(failingIO.failedPointers.isEmpty());
+            Buffer[] buffers = assertPoolFull(pool);
+            for (Buffer b : buffers) {
+                assertFalse(failingIO.failedPointers.contains(b.pointer()));
+            }
+        }
+    }
+
+    @Test
+    public void testShortWriteFailsFlush() throws Exception {
+        FailingNativeIO failingIO = new FailingNativeIO(nativeIO, 0);
+        File file = new File(dir, "short-write.log");
+        try (BufferPool pool = new BufferPool(nativeIO, BUFFER_SIZE, POOL_SIZE)) {
+            DirectWriter writer = new DirectWriter(1, file.getPath(), 1 << 20, writeExecutor, pool,
+                    failingIO, true, Slogger.NULL);
+
+            failingIO.shortNextWrite();
+            writer.writeDelimited(entry(1));
+            try {
+                writer.flush();
+                fail("The flush should fail with the short write");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("Incomplete write"));
+            }
+            assertEquals(0, failingIO.syncs.get());
+
+            // a short write does not break the ring
+            writer.position(Buffer.ALIGNMENT);
+            writer.writeDelimited(entry(2));
+            writer.flush();
+            assertEquals(1, failingIO.syncs.get());
+            writer.close();
+            assertEquals(1, failingIO.setups.get());
+            assertPoolFull(pool);
+        }
+    }
+
+    private static ByteBuf entry(int value) {
+        ByteBuf entry = Unpooled.buffer(8);
+        entry.writeLong(value);
+        return entry;
+    }
+
+    private static Buffer[] assertPoolFull(BufferPool pool) throws IOException {
+        Buffer[] buffers = new Buffer[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            buffers[i] = pool.acquire();
+        }
+        for (Buffer b : buffers) {
+            pool.release(b);
+        }
+        return buffers;
+    }
+
+    /**
+     * Delegates to the native implementation, except for the io_uring writes it is told to fail, as if
+     * io_uring_enter had failed with some of the writes left in flight, or to cut short.
+     */
+    private static class FailingNativeIO implements NativeIO {
+        private final NativeIO delegate;
+        private final int inflightOnFailure;
+        private volatile boolean failNextWrite = false;
+        private volatile boolean shortNextWrite = false;
+        private volatile long failedRing = 0;
+        final AtomicInteger setups = new AtomicInteger();
+        final AtomicInteger closes = new AtomicInteger();
+        final AtomicInteger syncs = new AtomicInteger();
+        final List<Long> failedPointers = new CopyOnWriteArrayList<>();
+
+        FailingNativeIO(NativeIO delegate, int inflightOnFailure) {
+            this.delegate = delegate;
+            this.inflightOnFailure = inflightOnFailure;
+        }
+
+        void failNextWrite() {
+            failNextWrite = true;
+        }
+
+        void shortNextWrite() {
+            shortNextWrite = true;
+        }
+
+        @Override
+        public int open(String pathname, int flags, int mode) throws NativeIOException {
+            return delegate.open(pathname, flags, mode);
+        }
+
+        @Override
+        public int fsync(int fd) throws NativeIOException {
+            return delegate.fsync(fd);
+        }
+
+        @Override
+        public int fallocate(int fd, int mode, long offset, long len) throws NativeIOException {
+            return delegate.fallocate(fd, mode, offset, len);
+        }
+
+        @Override
+        public int posix_fadvise(int fd, long offset, long len, int flag) throws NativeIOException {
+            return delegate.posix_fadvise(fd, offset, len, flag);
+        }
+
+        @Override
+        public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+            return delegate.pwrite(fd, pointer, count, offset);
+        }
+
+        @Override
+        public long posix_memalign(int alignment, int size) throws NativeIOException {
+            return delegate.posix_memalign(alignment, size);
+        }
+
+        @Override
+        public void free(long pointer) throws NativeIOException {
+            delegate.free(pointer);
+        }
+
+        @Override
+        public long lseek(int fd, long offset, int whence) throws NativeIOException {
+            return delegate.lseek(fd, offset, whence);
+        }
+
+        @Override
+        public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
+            return delegate.pread(fd, pointer, size, offset);
+        }
+
+        @Override
+        public int close(int fd) throws NativeIOException {
+            return delegate.close(fd);
+        }
+
+        @Override
+        public long copy_file_range(int fdIn, long offsetIn, int fdOut, long offsetOut, long len)
+                throws NativeIOException {
+            return delegate.copy_file_range(fdIn, offsetIn, fdOut, offsetOut, len);
+        }
+
+        @Override
+        public long io_uring_setup(int entries) throws NativeIOException {
+            setups.incrementAndGet();
+            return delegate.io_uring_setup(entries);
+        }
+
+        @Override
+        public long io_uring_write(long ring, int fd, long[] pointers, int[] sizes, long[] offsets, int count,
+                                   int syncFlags) throws NativeIOException {
+            if (failNextWrite) {
+                failNextWrite = false;
+                failedRing = ring;
+                for (int i = 0; i < count; i++) {
+                    failedPointers.add(pointers[i]);
+                }
+                throw new NativeIOException("Injected io_uring_enter failure", 5 /* EIO */);
+            }
+            if (shortNextWrite) {
+                // the kernel wrote part of the last buffer, so the sync is skipped
+                shortNextWrite = false;
+                int[] shortSizes = sizes.clone();
+                shortSizes[count - 1] -= Buffer.ALIGNMENT;
+                return delegate.io_uring_write(ring, fd, pointers, shortSizes, offsets, count, 0);
+            }
+            if (syncFlags != 0) {
+                syncs.incrementAndGet();
+            }
+            return delegate.io_uring_write(ring, fd, pointers, sizes, offsets, count, syncFlags);
+        }
+
+        @Override
+        public int io_uring_inflight(long ring) {
+            return ring == failedRing ? inflightOnFailure : delegate.io_uring_inflight(ring);
+        }
+
+        @Override
+        public void io_uring_close(long ring) throws NativeIOException {
+            closes.incrementAndGet();
+            delegate.io_uring_close(ring);
+        }
+    }
+}
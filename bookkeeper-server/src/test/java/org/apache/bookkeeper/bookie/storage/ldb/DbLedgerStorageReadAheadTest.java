@@ -0,0 +1,165 @@
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.BookieResources;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class DbLedgerStorageReadAheadTest {
+    private static final int BATCH_SIZE = 10;
+    private static final byte[] MASTER_KEY = "key".getBytes(StandardCharsets.UTF_8);
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private File ledgerDir;
+    private DbLedgerStorage storage;
+    private StatsLogger statsLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerDir = tmpDirs.createNew("ledgers", "");
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        conf.setLedgerDirNames(new String[] {ledgerDir.getAbsolutePath()});
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 4);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_BATCH_SIZE, BATCH_SIZE);
+        LedgerDirsManager ledgerDirsManager = BookieResources.createLedgerDirsManager(conf,
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()),
+                NullStatsLogger.INSTANCE);
+
+        StatsLogger rootStatsLogger = new TestStatsProvider().getStatsLogger("");
+        storage = new DbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, rootStatsLogger,
+                UnpooledByteBufAllocator.DEFAULT);
+        // the stats of the single directory storage
+        String currentDir = BookieImpl.getCurrentDirectory(ledgerDir).getPath();
+        statsLogger = rootStatsLogger.scopeLabel("ledgerDir", currentDir).scopeLabel("indexDir", currentDir);
+        storage.setMasterKey(1, MASTER_KEY);
+        storage.setMasterKey(2, MASTER_KEY);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.shutdown();
+        tmpDirs.cleanup();
+    }
+
+    @Test
+    public void testReadAheadStopsAtEndOfEntryLog() throws Exception {
+        for (long entryId = 0; entryId < 5; entryId++) {
+            addEntry(1, entryId);
+        }
+        storage.flush();
+
+        // the read-ahead reaches the end of the entry log after the last entry of the ledger
+        readEntry(1, 0);
+        assertEquals(1, (long) counter("read-cache-misses").get());
+        assertEquals(0, (long) counter("readahead-errors").get());
+
+        // and the entries read before are in the read cache
+        for (long entryId = 1; entryId < 5; entryId++) {
+            readEntry(1, entryId);
+        }
+        assertEquals(4, (long) counter("read-cache-hits").get());
+        assertEquals(1, (long) counter("read-cache-misses").get());
+    }
+
+    @Test
+    public void testReadAheadCountsReadErrors() throws Exception {
+        for (long entryId = 0; entryId < 5; entryId++) {
+            addEntry(1, entryId);
+        }
+        for (long entryId = 0; entryId < 5; entryId++) {
+            addEntry(2, entryId);
+        }
+        storage.flush();
+        for (long entryId = 5; entryId < 10; entryId++) {
+            addEntry(1, entryId);
+        }
+        storage.flush();
+
+        // the entry found from its location once the sequential read-ahead stopped is corrupted
+        corruptLedgerId(1, 5);
+
+        readEntry(1, 0);
+        assertEquals(1, (long) counter("readahead-errors").get());
+
+        // the entries read before the error are in the read cache, the ones after it are not
+        for (long entryId = 1; entryId < 5; entryId++) {
+            readEntry(1, entryId);
+        }
+        assertEquals(4, (long) counter("read-cache-hits").get());
+        readEntry(1, 6);
+        assertEquals(4, (long) counter("read-cache-hits").get());
+        assertEquals(2, (long) counter("read-cache-misses").get());
+    }
+
+    private void addEntry(long ledgerId, long entryId) throws Exception {
+        ByteBuf entry = Unpooled.buffer(1024);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        // last add confirmed
+        entry.writeLong(entryId - 1);
+        while (entry.isWritable()) {
+            entry.writeByte('x');
+        }
+        storage.addEntry(entry);
+        entry.release();
+    }
+
+    private void readEntry(long ledgerId, long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(ledgerId, entryId);
+        try {
+            assertEquals(ledgerId, entry.getLong(0));
+            assertEquals(entryId, entry.getLong(8));
+        } finally {
+            entry.release();
+        }
+    }
+
+    private void corruptLedgerId(long ledgerId, long entryId) throws Exception {
+        ByteBuffer header = ByteBuffer.allocate(16).putLong(ledgerId).putLong(entryId);
+        header.flip();
+        // the next entry log can already be preallocated
+        File[] logs = BookieImpl.getCurrentDirectory(ledgerDir).listFiles((dir, name) -> name.endsWith(".log"));
+        for (File log : logs) {
+            byte[] data = Files.readAllBytes(log.toPath());
+            for (int pos = 0; pos + 16 <= data.length; pos++) {
+                if (ByteBuffer.wrap(data, pos, 16).equals(header)) {
+                    try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+                        file.seek(pos);
+                        file.writeLong(Long.MAX_VALUE);
+                    }
+                    return;
+                }
+            }
+        }
+        fail("Entry " + ledgerId + "@" + entryId + " not found in the entry logs");
+    }
+
+    private Counter counter(String name) {
+        return statsLogger.getCounter(name);
+    }
+}
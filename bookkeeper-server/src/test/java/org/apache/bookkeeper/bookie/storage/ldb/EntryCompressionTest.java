@@ -0,0 +1,179 @@
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class EntryCompressionTest {
+    private static final ByteBufAllocator ALLOCATOR = UnpooledByteBufAllocator.DEFAULT;
+    private static final int MIN_ENTRY_SIZE = 64;
+
+    private final EntryCompression.Codec codec;
+    private final boolean direct;
+    private final EntryCompression compression;
+
+    public EntryCompressionTest(EntryCompression.Codec codec, boolean direct) {
+        this.codec = codec;
+        this.direct = direct;
+        this.compression = new EntryCompression(codec, MIN_ENTRY_SIZE, ALLOCATOR);
+    }
+
+    @Parameterized.Parameters(name = "{0}, direct={1}")
+    public static Collection<Object[]> codecs() {
+        return Arrays.asList(new Object[][] {
+                {EntryCompression.Codec.SNAPPY, true},
+                {EntryCompression.Codec.SNAPPY, false},
+                {EntryCompression.Codec.DEFLATE, true},
+                {EntryCompression.Codec.DEFLATE, false},
+        });
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ByteBuf entry = compressibleEntry(1, 2, 10_000);
+        ByteBuf compressed = compression.compress(entry);
+        assertNotNull(compressed);
+        assertTrue(compressed.readableBytes() < entry.readableBytes());
+        // the ids stay in front, for the entry logs to be scanned
+        assertEquals(1, compressed.getLong(0));
+        assertEquals(2, compressed.getLong(8));
+        assertEquals(EntryCompression.MAGIC, compressed.getInt(16));
+        // the entry is left as it was
+        assertEquals(0, entry.readerIndex());
+        assertEquals(10_000, entry.readableBytes());
+
+        ByteBuf decompressed = compression.decompress(stored(compressed));
+        try {
+            assertEquals(entry, decompressed);
+        } finally {
+            decompressed.release();
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testRoundTripFromReaderIndex() throws Exception {
+        // the entry to compress is a part of a larger buffer
+        ByteBuf buffer = buffer(10_100);
+        buffer.writeZero(100);
+        ByteBuf entry = compressibleEntry(3, 4, 10_000);
+        buffer.writeBytes(entry);
+        entry.release();
+        buffer.readerIndex(100);
+
+        ByteBuf compressed = compression.compress(buffer);
+        assertNotNull(compressed);
+        ByteBuf decompressed = compression.decompress(stored(compressed));
+        try {
+            assertEquals(buffer, decompressed);
+        } finally {
+            decompressed.release();
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testDecompressWithAnotherCodec() throws Exception {
+        ByteBuf entry = compressibleEntry(1, 2, 1000);
+        ByteBuf compressed = compression.compress(entry);
+        assertNotNull(compressed);
+
+        // the codec was changed, or compression disabled, since the entry was stored
+        EntryCompression none = new EntryCompression(EntryCompression.Codec.NONE, MIN_ENTRY_SIZE, ALLOCATOR);
+        assertNull(none.compress(entry));
+        ByteBuf decompressed = none.decompress(stored(compressed));
+        try {
+            assertEquals(entry, decompressed);
+        } finally {
+            decompressed.release();
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testIncompressibleEntriesPassThrough() throws Exception {
+        ByteBuf entry = buffer(1000);
+        entry.writeLong(1);
+        entry.writeLong(2);
+        entry.writeLong(-1);
+        byte[] payload = new byte[1000 - 24];
+        new Random(1).nextBytes(payload);
+        entry.writeBytes(payload);
+
+        assertNull(compression.compress(entry));
+        // stored as is, and read back as is
+        assertSame(entry, compression.decompress(entry));
+        assertEquals(1, entry.refCnt());
+        entry.release();
+    }
+
+    @Test
+    public void testSmallEntriesPassThrough() throws Exception {
+        ByteBuf entry = compressibleEntry(1, 2, MIN_ENTRY_SIZE - 1);
+        assertNull(compression.compress(entry));
+        assertSame(entry, compression.decompress(entry));
+        assertEquals(1, entry.refCnt());
+
+        // too short to have a header
+        ByteBuf shortEntry = buffer(16);
+        shortEntry.writeLong(1);
+        shortEntry.writeLong(2);
+        assertSame(shortEntry, compression.decompress(shortEntry));
+        entry.release();
+        shortEntry.release();
+    }
+
+    @Test
+    public void testTruncatedEntry() throws Exception {
+        ByteBuf entry = compressibleEntry(1, 2, 10_000);
+        ByteBuf compressed = compression.compress(entry);
+        assertNotNull(compressed);
+        compressed.writerIndex(compressed.writerIndex() - 10);
+        try {
+            compression.decompress(stored(compressed));
+            fail("The compressed payload is truncated");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            entry.release();
+        }
+    }
+
+    private ByteBuf buffer(int size) {
+        return direct ? ALLOCATOR.directBuffer(size, size) : ALLOCATOR.heapBuffer(size, size);
+    }
+
+    /**
+     * The compressed entry, as read back from the entry logger: in a new buffer, on or off the heap.
+     */
+    private ByteBuf stored(ByteBuf compressed) {
+        ByteBuf stored = buffer(compressed.readableBytes());
+        stored.writeBytes(compressed);
+        compressed.release();
+        return direct ? stored.asReadOnly() : stored;
+    }
+
+    private ByteBuf compressibleEntry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        byte[] text = ("entry " + ledgerId + "@" + entryId + " of codec " + codec + ", ")
+                .getBytes(StandardCharsets.UTF_8);
+        while (entry.isWritable()) {
+            entry.writeBytes(text, 0, Math.min(text.length, entry.writableBytes()));
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,103 @@
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class EntryLocationCacheTest {
+
+    @Test
+    public void testCountEntries() {
+        EntryLocationCache cache = new EntryLocationCache(EntryLocationCache.SEGMENT_SIZE * 10);
+        for (long entryId = 0; entryId < 10; entryId++) {
+            cache.put(1, entryId, 100 + entryId);
+        }
+        // overwriting a location does not count the entry twice
+        cache.put(1, 5, 200);
+        cache.put(2, EntryLocationCache.SEGMENT_SIZE * 3, 300);
+
+        assertEquals(11, cache.count());
+        assertEquals(2, cache.segmentsCount());
+        assertEquals(200, cache.get(1, 5));
+        assertEquals(300, cache.get(2, EntryLocationCache.SEGMENT_SIZE * 3));
+        assertEquals(0, cache.get(2, 0));
+
+        cache.deleteLedger(1);
+        assertEquals(1, cache.count());
+        assertEquals(1, cache.segmentsCount());
+    }
+
+    @Test
+    public void testCountWhenDroppingOldSegments() {
+        EntryLocationCache cache = new EntryLocationCache(EntryLocationCache.SEGMENT_SIZE * 2);
+        cache.put(1, 0, 1);
+        cache.put(1, 1, 2);
+        cache.put(1, EntryLocationCache.SEGMENT_SIZE, 3);
+        assertEquals(3, cache.count());
+
+        // the ledger alone does not fit the cache any more, its oldest segment is dropped
+        cache.put(1, EntryLocationCache.SEGMENT_SIZE * 2, 4);
+        assertEquals(2, cache.count());
+        assertEquals(2, cache.segmentsCount());
+        assertEquals(0, cache.get(1, 0));
+        assertEquals(3, cache.get(1, EntryLocationCache.SEGMENT_SIZE));
+    }
+
+    @Test
+    public void testPutAfterDeleteIsIgnored() {
+        EntryLocationCache cache = new EntryLocationCache(EntryLocationCache.SEGMENT_SIZE * 10);
+        cache.put(1, 0, 100);
+
+        Set<Long> deletedBeforeFlush = cache.deletedLedgers();
+        cache.deleteLedger(1);
+        // a flush in progress still adds the location of an entry of the deleted ledger
+        cache.put(1, 1, 101);
+        assertEquals(0, cache.get(1, 1));
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.segmentsCount());
+
+        // the ledger was deleted during the flush, so it is still remembered after it
+        cache.forgetDeletedLedgers(deletedBeforeFlush);
+        cache.put(1, 2, 102);
+        assertEquals(0, cache.get(1, 2));
+
+        // forgotten once a flush which started after the deletion is done
+        cache.forgetDeletedLedgers(cache.deletedLedgers());
+        assertTrue(cache.deletedLedgers().isEmpty());
+    }
+
+    @Test
+    public void testEvictedLedgerIsCachedAgain() throws Exception {
+        EntryLocationCache cache = new EntryLocationCache(EntryLocationCache.SEGMENT_SIZE * 2);
+        cache.put(1, 0, 100);
+        Thread.sleep(1);
+        cache.put(2, 0, 200);
+        Thread.sleep(1);
+        cache.put(3, 0, 300);
+        cache.evictIfNeeded();
+
+        // the least recently used ledger was evicted
+        assertEquals(0, cache.get(1, 0));
+        assertEquals(300, cache.get(3, 0));
+        assertTrue(cache.segmentsCount() <= 2);
+
+        cache.put(1, 1, 101);
+        assertEquals(101, cache.get(1, 1));
+    }
+
+    @Test
+    public void testUpdateOnlyCachedEntries() {
+        EntryLocationCache cache = new EntryLocationCache(EntryLocationCache.SEGMENT_SIZE);
+        cache.put(1, 0, 100);
+        cache.update(1, 0, 500);
+        cache.update(1, 1, 501);
+        cache.update(2, 0, 502);
+
+        assertEquals(500, cache.get(1, 0));
+        assertEquals(0, cache.get(1, 1));
+        assertEquals(0, cache.get(2, 0));
+        assertEquals(1, cache.count());
+    }
+}
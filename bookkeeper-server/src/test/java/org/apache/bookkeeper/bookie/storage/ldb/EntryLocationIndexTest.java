@@ -0,0 +1,208 @@
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class EntryLocationIndexTest {
+    private static final int ENTRIES = 3000;
+    private static final long FLUSHED_LOG = 1;
+    private static final long COMPACTED_LOG = 2;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private final boolean compactFormat;
+    private EntryLocationIndex index;
+    private ExecutorService executor;
+
+    public EntryLocationIndexTest(boolean compactFormat) {
+        this.compactFormat = compactFormat;
+    }
+
+    @Parameterized.Parameters(name = "compactFormat={0}")
+    public static Collection<Object[]> formats() {
+        return Arrays.asList(new Object[][] {{true}, {false}});
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        ServerConfiguration conf = TestBKConfiguration.newServerConfiguration();
+        index = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory,
+                tmpDirs.createNew("locations", "").getAbsolutePath(), NullStatsLogger.INSTANCE, compactFormat);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        index.close();
+        tmpDirs.cleanup();
+    }
+
+    @Test
+    public void testOverlappingRecordsAreReplaced() throws Exception {
+        for (long entryId = 0; entryId < ENTRIES; entryId++) {
+            index.addLocation(1, entryId, location(FLUSHED_LOG, entryId));
+        }
+        List<EntryLocation> relocated = new ArrayList<>();
+        for (long entryId = 100; entryId < 200; entryId++) {
+            relocated.add(new EntryLocation(1, entryId, location(COMPACTED_LOG, entryId)));
+        }
+        index.updateLocations(relocated);
+
+        for (long entryId = 0; entryId < ENTRIES; entryId++) {
+            long log = entryId >= 100 && entryId < 200 ? COMPACTED_LOG : FLUSHED_LOG;
+            assertEquals(location(log, entryId), index.getLocation(1, entryId));
+        }
+        assertEquals(ENTRIES - 1, index.getLastEntryInLedger(1));
+    }
+
+    @Test
+    public void testConcurrentCompactionAndFlush() throws Exception {
+        for (long ledgerId = 1; ledgerId <= 10; ledgerId++) {
+            final long ledger = ledgerId;
+            CountDownLatch added = new CountDownLatch(1);
+
+            // the checkpoint flush writes all the entries of the ledger in a single batch
+            Future<?> flush = executor.submit(() -> {
+                try (Batch batch = index.newBatch()) {
+                    for (long entryId = 0; entryId < ENTRIES; entryId++) {
+                        index.addLocation(batch, ledger, entryId, location(FLUSHED_LOG, entryId));
+                    }
+                    added.countDown();
+                    // as if flushing the entry log
+                    Thread.sleep(50);
+                    batch.flush();
+                }
+                return null;
+            });
+
+            // compaction relocates some of the entries while the flush is in progress
+            Future<?> compaction = executor.submit(() -> {
+                added.await();
+                for (long first = 10; first < ENTRIES; first += 700) {
+                    List<EntryLocation> relocated = new ArrayList<>();
+                    for (long entryId = first; entryId < first + 20; entryId++) {
+                        relocated.add(new EntryLocation(ledger, entryId, location(COMPACTED_LOG, entryId)));
+                    }
+                    index.updateLocations(relocated);
+                }
+                return null;
+            });
+
+            flush.get(30, TimeUnit.SECONDS);
+            compaction.get(30, TimeUnit.SECONDS);
+
+            // the records do not overlap, so every entry is found at one of its locations
+            long[] locations = index.getLocations(ledger, 0, ENTRIES - 1);
+            for (long entryId = 0; entryId < ENTRIES; entryId++) {
+                long location = index.getLocation(ledger, entryId);
+                assertTrue("Missing location of " + ledger + "@" + entryId,
+                        location == location(FLUSHED_LOG, entryId) || location == location(COMPACTED_LOG, entryId));
+                assertEquals(location, locations[(int) entryId]);
+            }
+            assertEquals(ENTRIES - 1, index.getLastEntryInLedger(ledger));
+        }
+    }
+
+    @Test
+    public void testGetLocationsOfHitsAndMisses() throws Exception {
+        for (long entryId = 0; entryId < 10; entryId++) {
+            index.addLocation(1, entryId, location(FLUSHED_LOG, entryId));
+        }
+        for (long entryId = 20; entryId < 30; entryId++) {
+            index.addLocation(1, entryId, location(COMPACTED_LOG, entryId));
+        }
+        index.addLocation(1, 35, location(FLUSHED_LOG, 35));
+        // the entries of the next ledger are not returned for the missing entries of the range
+        index.addLocation(2, 0, location(FLUSHED_LOG, 0));
+
+        long[] locations = index.getLocations(1, 5, 40);
+        assertEquals(36, locations.length);
+        for (long entryId = 5; entryId <= 40; entryId++) {
+            long expected;
+            if (entryId < 10 || entryId == 35) {
+                expected = location(FLUSHED_LOG, entryId);
+            } else if (entryId >= 20 && entryId < 30) {
+                expected = location(COMPACTED_LOG, entryId);
+            } else {
+                expected = 0;
+            }
+            assertEquals("Location of 1@" + entryId, expected, locations[(int) (entryId - 5)]);
+        }
+
+        // a range of misses only
+        assertArrayEquals(new long[5], index.getLocations(1, 100, 104));
+        assertArrayEquals(new long[5], index.getLocations(3, 0, 4));
+    }
+
+    @Test
+    public void testGetLocationsOfDeletedLedger() throws Exception {
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                index.addLocation(ledgerId, entryId, location(FLUSHED_LOG, entryId));
+            }
+        }
+
+        index.delete(2);
+        index.removeOffsetFromDeletedLedgers();
+
+        assertArrayEquals(new long[100], index.getLocations(2, 0, 99));
+        for (long ledgerId : new long[] {1, 3}) {
+            long[] locations = index.getLocations(ledgerId, 0, 99);
+            for (long entryId = 0; entryId < 100; entryId++) {
+                assertEquals(location(FLUSHED_LOG, entryId), locations[(int) entryId]);
+            }
+        }
+    }
+
+    @Test
+    public void testGetLocationsPreservesEntryOrder() throws Exception {
+        // the entries are added out of order, at locations not sorted by entry id
+        List<Long> entryIds = new ArrayList<>();
+        for (long entryId = 0; entryId < ENTRIES; entryId++) {
+            entryIds.add(entryId);
+        }
+        Random random = new Random(1);
+        Collections.shuffle(entryIds, random);
+        long[] expected = new long[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            long entryId = entryIds.get(i);
+            expected[(int) entryId] = location(i % 2 == 0 ? FLUSHED_LOG : COMPACTED_LOG, i);
+            index.addLocation(1, entryId, expected[(int) entryId]);
+        }
+
+        assertArrayEquals(expected, index.getLocations(1, 0, ENTRIES - 1));
+        for (int i = 0; i < 100; i++) {
+            int first = random.nextInt(ENTRIES);
+            int last = first + random.nextInt(ENTRIES - first);
+            assertArrayEquals(Arrays.copyOfRange(expected, first, last + 1), index.getLocations(1, first, last));
+        }
+    }
+
+    private static long location(long logId, long entryId) {
+        return (logId << 32) | (entryId * 64 + 8);
+    }
+}
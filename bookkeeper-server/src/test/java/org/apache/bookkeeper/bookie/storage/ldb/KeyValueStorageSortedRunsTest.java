@@ -0,0 +1,291 @@
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import com.google.common.primitives.UnsignedBytes;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class KeyValueStorageSortedRunsTest {
+    private static final String SUB_PATH = "locations";
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private ServerConfiguration conf;
+    private String basePath;
+    private KeyValueStorageSortedRuns storage;
+
+    @Before
+    public void setUp() throws Exception {
+        conf = TestBKConfiguration.newServerConfiguration();
+        // Small memory tables and few runs, so that the tests go through the runs writes and merges
+        conf.setProperty("dbStorage_sortedRuns_memTableSizeMB", 1);
+        conf.setProperty("dbStorage_sortedRuns_maxRuns", 3);
+        basePath = tmpDirs.createNew("sorted-runs", "").getAbsolutePath();
+        storage = open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (storage != null) {
+            storage.close();
+        }
+        tmpDirs.cleanup();
+    }
+
+    private KeyValueStorageSortedRuns open() throws Exception {
+        return new KeyValueStorageSortedRuns(basePath, SUB_PATH, conf, false);
+    }
+
+    private KeyValueStorageSortedRuns reopen() throws Exception {
+        storage.close();
+        storage = open();
+        return storage;
+    }
+
+    @Test
+    public void testRandomizedAgainstTreeMap() throws Exception {
+        Random random = new Random(42);
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+
+        for (int i = 0; i < 4000; i++) {
+            try (Batch batch = storage.newBatch()) {
+                int ops = 1 + random.nextInt(20);
+                for (int j = 0; j < ops; j++) {
+                    int op = random.nextInt(100);
+                    byte[] key = randomKey(random);
+                    if (op < 80) {
+                        byte[] value = new byte[8 + random.nextInt(400)];
+                        random.nextBytes(value);
+                        batch.put(key, value);
+                        expected.put(key, value);
+                    } else if (op < 95) {
+                        batch.remove(key);
+                        expected.remove(key);
+                    } else {
+                        byte[] end = key(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8) + random.nextInt(50));
+                        batch.deleteRange(key, end);
+                        expected.subMap(key, end).clear();
+                    }
+                }
+                batch.flush();
+            }
+
+            if (i % 500 == 0) {
+                verifyLookups(random, expected);
+            }
+        }
+        verify(expected);
+        verifyLookups(random, expected);
+
+        storage.compact();
+        verify(expected);
+        verifyLookups(random, expected);
+
+        // Everything is found again from the runs and the write-ahead log
+        reopen();
+        verify(expected);
+        verifyLookups(random, expected);
+    }
+
+    @Test
+    public void testWalReplay() throws Exception {
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+        try (Batch batch = storage.newBatch()) {
+            for (long entryId = 0; entryId < 100; entryId++) {
+                batch.put(key(1, entryId), value(entryId));
+                expected.put(key(1, entryId), value(entryId));
+            }
+            batch.deleteRange(key(1, 10), key(1, 20));
+            expected.subMap(key(1, 10), key(1, 20)).clear();
+            batch.flush();
+        }
+        storage.put(key(2, 0), value(0));
+        expected.put(key(2, 0), value(0));
+        storage.delete(key(1, 50));
+        expected.remove(key(1, 50));
+
+        // The memory table was not written as a run, it is only in the write-ahead log
+        assertEquals(0, listFiles("run-").length);
+        assertEquals(1, listFiles("wal-").length);
+
+        reopen();
+        verify(expected);
+        assertNull(storage.get(key(1, 15)));
+        assertNull(storage.get(key(1, 50)));
+
+        // Once replayed, the records are written as a run and the log is replaced
+        assertTrue(listFiles("run-").length > 0);
+        reopen();
+        verify(expected);
+    }
+
+    @Test
+    public void testRecoveryFromTornWalAndLeftoverRuns() throws Exception {
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+        for (long entryId = 0; entryId < 50; entryId++) {
+            storage.put(key(1, entryId), value(entryId));
+            expected.put(key(1, entryId), value(entryId));
+        }
+        File[] wals = listFiles("wal-");
+        assertEquals(1, wals.length);
+        storage.close();
+        storage = null;
+
+        // Crash in the middle of a write: a partial record at the end of the log
+        try (FileOutputStream out = new FileOutputStream(wals[0], true)) {
+            out.write(new byte[] {0, 0, 0x10, 0, 1, 2, 3});
+        }
+        // Crash while writing a run, before the manifest was updated
+        File leftover = new File(new File(basePath, SUB_PATH), "run-1000-0.sst");
+        Files.write(leftover.toPath(), new byte[] {1, 2, 3, 4});
+        // Log of a memory table already written in a run of the manifest
+        File stale = new File(new File(basePath, SUB_PATH), "wal-0.log");
+        Files.write(stale.toPath(), new byte[] {1, 2, 3, 4});
+
+        storage = open();
+        verify(expected);
+        assertFalse(leftover.exists());
+        assertFalse(stale.exists());
+
+        // The storage is still writable after the recovery
+        storage.put(key(1, 100), value(100));
+        expected.put(key(1, 100), value(100));
+        reopen();
+        verify(expected);
+    }
+
+    @Test
+    public void testManifestRecoveryAfterMerges() throws Exception {
+        TreeMap<byte[], byte[]> expected = new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+        Random random = new Random(7);
+        // Enough data for several runs to be written and merged
+        for (long entryId = 0; entryId < 20000; entryId++) {
+            byte[] value = new byte[200];
+            random.nextBytes(value);
+            storage.put(key(entryId % 7, entryId), value);
+            expected.put(key(entryId % 7, entryId), value);
+        }
+        storage.compact();
+        assertTrue(new File(new File(basePath, SUB_PATH), KeyValueStorageSortedRuns.MANIFEST).exists());
+
+        reopen();
+        verify(expected);
+        assertEquals(expected.size(), storage.count());
+    }
+
+    @Test
+    public void testBatchesAreVisibleAtomically() throws Exception {
+        byte[] first = key(1, 0);
+        byte[] middle = key(1, 50);
+        byte[] sentinel = key(1, 200);
+        storage.put(middle, value(0));
+        storage.put(sentinel, value(0));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (long i = 0; i < 20000; i++) {
+                    try (Batch batch = storage.newBatch()) {
+                        // Deletes the middle key, then writes it again
+                        batch.deleteRange(first, key(1, 100));
+                        batch.put(middle, value(i));
+                        batch.flush();
+                    }
+                }
+                running.set(false);
+                return null;
+            });
+
+            while (running.get()) {
+                Map.Entry<byte[], byte[]> ceil = storage.getCeil(first);
+                assertNotNull(ceil);
+                assertArrayEquals("Half applied batch", middle, ceil.getKey());
+                assertNotNull("Half applied batch", storage.get(middle));
+            }
+            writer.get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void verify(TreeMap<byte[], byte[]> expected) throws Exception {
+        try (CloseableIterator<Map.Entry<byte[], byte[]>> iterator = storage.iterator()) {
+            for (Map.Entry<byte[], byte[]> e : expected.entrySet()) {
+                assertTrue(iterator.hasNext());
+                Map.Entry<byte[], byte[]> found = iterator.next();
+                assertArrayEquals(e.getKey(), found.getKey());
+                assertArrayEquals(e.getValue(), found.getValue());
+            }
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    private void verifyLookups(Random random, TreeMap<byte[], byte[]> expected) throws Exception {
+        for (int i = 0; i < 200; i++) {
+            byte[] key = randomKey(random);
+            assertArrayEquals(expected.get(key), storage.get(key));
+            assertEntry(expected.lowerEntry(key), storage.getFloor(key));
+            assertEntry(expected.ceilingEntry(key), storage.getCeil(key));
+
+            byte[] end = key(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8) + 20);
+            try (CloseableIterator<byte[]> keys = storage.keys(key, end)) {
+                for (byte[] k : expected.subMap(key, end).keySet()) {
+                    assertTrue(keys.hasNext());
+                    assertArrayEquals(k, keys.next());
+                }
+                assertFalse(keys.hasNext());
+            }
+        }
+    }
+
+    private static void assertEntry(Map.Entry<byte[], byte[]> expected, Map.Entry<byte[], byte[]> found) {
+        if (expected == null) {
+            assertNull(found);
+            return;
+        }
+        assertNotNull(found);
+        assertArrayEquals(expected.getKey(), found.getKey());
+        assertArrayEquals(expected.getValue(), found.getValue());
+    }
+
+    private File[] listFiles(String prefix) {
+        File[] files = new File(basePath, SUB_PATH).listFiles((dir, name) -> name.startsWith(prefix));
+        return files != null ? files : new File[0];
+    }
+
+    private static byte[] randomKey(Random random) {
+        return key(random.nextInt(10), random.nextInt(2000));
+    }
+
+    private static byte[] key(long ledgerId, long entryId) {
+        byte[] key = new byte[16];
+        ArrayUtil.setLong(key, 0, ledgerId);
+        ArrayUtil.setLong(key, 8, entryId);
+        return key;
+    }
+
+    private static byte[] value(long v) {
+        byte[] value = new byte[8];
+        ArrayUtil.setLong(value, 0, v);
+        return value;
+    }
+}
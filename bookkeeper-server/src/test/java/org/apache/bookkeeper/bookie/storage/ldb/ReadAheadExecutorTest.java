@@ -0,0 +1,141 @@
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ReadAheadExecutorTest {
+    private static final int QUEUE_SIZE = 4;
+
+    private DbLedgerStorageStats stats;
+    private ReadAheadExecutor executor;
+    private CountDownLatch running;
+    private CountDownLatch release;
+    private long idleLedgerId = Long.MAX_VALUE;
+
+    @Before
+    public void setUp() {
+        stats = new DbLedgerStorageStats(new TestStatsProvider().getStatsLogger(""),
+                () -> 0L, () -> 0L, () -> 0L, () -> 0L, () -> 0L);
+        executor = new ReadAheadExecutor(QUEUE_SIZE, stats);
+        running = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testDeduplicateInFlightRange() throws Exception {
+        blockExecutor();
+
+        AtomicInteger prefetches = new AtomicInteger();
+        assertTrue(executor.submit(1, 10, 5, prefetches::incrementAndGet));
+        // the reader catches up with the prefetch in flight
+        assertFalse(executor.submit(1, 10, 5, prefetches::incrementAndGet));
+        assertFalse(executor.submit(1, 14, 5, prefetches::incrementAndGet));
+        assertEquals(2, (long) stats.getReadAheadDeduplicatedCounter().get());
+
+        // other ledgers and other parts of the ledger are still prefetched
+        assertTrue(executor.submit(2, 10, 5, prefetches::incrementAndGet));
+        release.countDown();
+        waitForIdle();
+        assertEquals(2, prefetches.get());
+
+        // the range can be prefetched again once its prefetch completed
+        assertTrue(executor.submit(1, 10, 5, prefetches::incrementAndGet));
+        assertTrue(executor.submit(1, 100, 5, prefetches::incrementAndGet));
+        waitForIdle();
+        assertEquals(4, prefetches.get());
+        assertEquals(2, (long) stats.getReadAheadDeduplicatedCounter().get());
+        assertEquals(0, (long) stats.getReadAheadRejectedCounter().get());
+    }
+
+    @Test
+    public void testDropWhenQueueFull() throws Exception {
+        blockExecutor();
+
+        AtomicInteger prefetches = new AtomicInteger();
+        for (int ledgerId = 1; ledgerId <= QUEUE_SIZE; ledgerId++) {
+            assertTrue(executor.submit(ledgerId, 0, 5, prefetches::incrementAndGet));
+        }
+        assertFalse(executor.submit(100, 0, 5, prefetches::incrementAndGet));
+        assertEquals(1, (long) stats.getReadAheadRejectedCounter().get());
+
+        release.countDown();
+        waitForIdle();
+        assertEquals(QUEUE_SIZE, prefetches.get());
+
+        // the dropped prefetch is not considered in flight
+        assertTrue(executor.submit(100, 0, 5, prefetches::incrementAndGet));
+        waitForIdle();
+        assertEquals(QUEUE_SIZE + 1, prefetches.get());
+        assertEquals(0, (long) stats.getReadAheadDeduplicatedCounter().get());
+    }
+
+    @Test
+    public void testShutdownWaitsForRunningPrefetch() throws Exception {
+        blockExecutor();
+        AtomicInteger prefetches = new AtomicInteger();
+        assertTrue(executor.submit(1, 0, 5, prefetches::incrementAndGet));
+
+        CompletableFuture<Void> shutdown = CompletableFuture.runAsync(() -> {
+            try {
+                executor.shutdown();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try {
+            shutdown.get(200, TimeUnit.MILLISECONDS);
+            fail("Shutdown should wait for the running prefetch");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        // the running prefetch completes without being interrupted, the pending one is dropped
+        release.countDown();
+        shutdown.get(10, TimeUnit.SECONDS);
+        assertEquals(0, prefetches.get());
+        assertFalse(executor.submit(2, 0, 5, prefetches::incrementAndGet));
+    }
+
+    /**
+     * Keep the read-ahead thread busy with a prefetch until {@link #release} is counted down.
+     */
+    private void blockExecutor() throws Exception {
+        assertTrue(executor.submit(0, 0, 1, () -> {
+            running.countDown();
+            try {
+                assertTrue(release.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                fail("The prefetch must not be interrupted");
+            }
+        }));
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Wait for the prefetches submitted so far to complete.
+     */
+    private void waitForIdle() throws Exception {
+        CountDownLatch idle = new CountDownLatch(1);
+        long ledgerId = idleLedgerId--;
+        while (!executor.submit(ledgerId, 0, 1, idle::countDown)) {
+            Thread.sleep(10);
+        }
+        assertTrue(idle.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,152 @@
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReadAheadPolicyTest {
+    private static final int INITIAL_BATCH_SIZE = 4;
+    private static final int MAX_BATCH_SIZE = 16;
+
+    private DbLedgerStorageStats stats;
+
+    @Before
+    public void setUp() {
+        stats = new DbLedgerStorageStats(new TestStatsProvider().getStatsLogger(""),
+                () -> 0L, () -> 0L, () -> 0L, () -> 0L, () -> 0L);
+    }
+
+    @Test
+    public void testBatchSizeGrowsOnSequentialHits() {
+        ReadAheadPolicy policy = new ReadAheadPolicy(true, INITIAL_BATCH_SIZE, MAX_BATCH_SIZE, stats);
+
+        long entryId = 0;
+        int batchSize = policy.onCacheMiss(1, entryId);
+        assertEquals(INITIAL_BATCH_SIZE, batchSize);
+        for (int expected : new int[] {8, 16, 16, 16}) {
+            // the whole window is read, then the reader misses right past its end
+            entryId = readWindow(policy, 1, entryId, batchSize);
+            batchSize = policy.onCacheMiss(1, entryId);
+            assertEquals(expected, batchSize);
+        }
+
+        assertEquals(4 + 8 + 16 + 16, (long) stats.getReadAheadHitCounter().get());
+        assertEquals(0, (long) stats.getReadAheadWastedCounter().get());
+    }
+
+    @Test
+    public void testBatchSizeShrinksOnRandomAccess() {
+        ReadAheadPolicy policy = new ReadAheadPolicy(true, INITIAL_BATCH_SIZE, MAX_BATCH_SIZE, stats);
+
+        long entryId = 0;
+        int batchSize = policy.onCacheMiss(1, entryId);
+        for (int expected : new int[] {2, 1, 0, 0}) {
+            // nothing of the window is read
+            policy.onReadAhead(1, entryId + 1, batchSize);
+            entryId += 1000;
+            batchSize = policy.onCacheMiss(1, entryId);
+            assertEquals(expected, batchSize);
+        }
+
+        assertEquals(0, (long) stats.getReadAheadHitCounter().get());
+        assertEquals(4 + 2 + 1, (long) stats.getReadAheadWastedCounter().get());
+    }
+
+    @Test
+    public void testBatchSizeShrinksOnMostlyUnreadWindow() {
+        ReadAheadPolicy policy = new ReadAheadPolicy(true, INITIAL_BATCH_SIZE, MAX_BATCH_SIZE, stats);
+
+        assertEquals(INITIAL_BATCH_SIZE, policy.onCacheMiss(1, 0));
+        policy.onReadAhead(1, 1, 4);
+        policy.onCacheHit(1, 1);
+        // the reader skips the rest of the window
+        assertEquals(INITIAL_BATCH_SIZE / 2, policy.onCacheMiss(1, 10));
+        assertEquals(1, (long) stats.getReadAheadHitCounter().get());
+        assertEquals(3, (long) stats.getReadAheadWastedCounter().get());
+
+        // half of the window read is enough to keep the batch size
+        policy.onReadAhead(1, 11, 2);
+        policy.onCacheHit(1, 11);
+        assertEquals(INITIAL_BATCH_SIZE / 2, policy.onCacheMiss(1, 20));
+    }
+
+    @Test
+    public void testReadAheadReenabledBySequentialReads() {
+        ReadAheadPolicy policy = new ReadAheadPolicy(true, 1, MAX_BATCH_SIZE, stats);
+
+        assertEquals(1, policy.onCacheMiss(1, 0));
+        policy.onReadAhead(1, 1, 1);
+        assertEquals(0, policy.onCacheMiss(1, 100));
+
+        // a few sequential misses turn read-ahead back on
+        for (int i = 1; i < ReadAheadPolicy.SEQUENTIAL_STREAK_THRESHOLD; i++) {
+            assertEquals(0, policy.onCacheMiss(1, 100 + i));
+        }
+        assertEquals(1, policy.onCacheMiss(1, 100 + ReadAheadPolicy.SEQUENTIAL_STREAK_THRESHOLD));
+    }
+
+    @Test
+    public void testLedgersAreIsolated() {
+        ReadAheadPolicy policy = new ReadAheadPolicy(true, INITIAL_BATCH_SIZE, MAX_BATCH_SIZE, stats);
+
+        // ledger 1 is read sequentially, ledger 2 randomly
+        long entryId1 = 0;
+        long entryId2 = 0;
+        int batchSize1 = policy.onCacheMiss(1, entryId1);
+        int batchSize2 = policy.onCacheMiss(2, entryId2);
+        for (int i = 0; i < 2; i++) {
+            entryId1 = readWindow(policy, 1, entryId1, batchSize1);
+            batchSize1 = policy.onCacheMiss(1, entryId1);
+
+            policy.onReadAhead(2, entryId2 + 1, batchSize2);
+            entryId2 += 1000;
+            batchSize2 = policy.onCacheMiss(2, entryId2);
+        }
+        assertEquals(INITIAL_BATCH_SIZE * 4, batchSize1);
+        assertEquals(INITIAL_BATCH_SIZE / 4, batchSize2);
+
+        // a ledger read for the first time starts from the initial batch size
+        assertEquals(INITIAL_BATCH_SIZE, policy.onCacheMiss(3, 0));
+
+        // hits of a ledger do not count for the window of another one
+        policy.onReadAhead(3, 1, INITIAL_BATCH_SIZE);
+        policy.onCacheHit(1, 1);
+        policy.onCacheHit(4, 1);
+        assertEquals(INITIAL_BATCH_SIZE / 2, policy.onCacheMiss(3, 100));
+
+        // a deleted ledger starts over
+        policy.ledgerDeleted(2);
+        assertEquals(INITIAL_BATCH_SIZE, policy.onCacheMiss(2, 0));
+    }
+
+    @Test
+    public void testNotAdaptive() {
+        ReadAheadPolicy policy = new ReadAheadPolicy(false, INITIAL_BATCH_SIZE, MAX_BATCH_SIZE, stats);
+
+        long entryId = 0;
+        assertEquals(INITIAL_BATCH_SIZE, policy.onCacheMiss(1, entryId));
+        entryId = readWindow(policy, 1, entryId, INITIAL_BATCH_SIZE);
+        assertEquals(INITIAL_BATCH_SIZE, policy.onCacheMiss(1, entryId));
+        policy.onReadAhead(1, entryId + 1, INITIAL_BATCH_SIZE);
+        assertEquals(INITIAL_BATCH_SIZE, policy.onCacheMiss(1, entryId + 1000));
+
+        // the prefetch effectiveness is still tracked
+        assertEquals(INITIAL_BATCH_SIZE, (long) stats.getReadAheadHitCounter().get());
+        assertEquals(INITIAL_BATCH_SIZE, (long) stats.getReadAheadWastedCounter().get());
+    }
+
+    /**
+     * Prefetch <i>count</i> entries after the miss of <i>entryId</i> and read all of them.
+     *
+     * @return the entry following the window
+     */
+    private static long readWindow(ReadAheadPolicy policy, long ledgerId, long entryId, int count) {
+        policy.onReadAhead(ledgerId, entryId + 1, count);
+        for (int i = 1; i <= count; i++) {
+            policy.onCacheHit(ledgerId, entryId + i);
+        }
+        return entryId + count + 1;
+    }
+}
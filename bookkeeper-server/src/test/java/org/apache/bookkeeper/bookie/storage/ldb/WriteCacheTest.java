@@ -0,0 +1,271 @@
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class WriteCacheTest {
+    private static final ByteBufAllocator allocator = UnpooledByteBufAllocator.DEFAULT;
+    private static final int ENTRY_SIZE = 1024;
+
+    private final boolean sortedRuns;
+    private WriteCache cache;
+
+    public WriteCacheTest(boolean sortedRuns) {
+        this.sortedRuns = sortedRuns;
+    }
+
+    @Parameterized.Parameters(name = "sortedRuns={0}")
+    public static Collection<Object[]> modes() {
+        return Arrays.asList(new Object[][] {{false}, {true}});
+    }
+
+    @Before
+    public void setUp() {
+        cache = new WriteCache(allocator, 1024 * 1024, 16 * 1024, sortedRuns);
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    public void testSimple() throws Exception {
+        assertTrue(cache.isEmpty());
+        assertTrue(put(1, 0, 'a'));
+        assertFalse(cache.isEmpty());
+        assertEquals(1, cache.count());
+        assertEquals(ENTRY_SIZE, cache.size());
+
+        assertTrue(cache.hasEntry(1, 0));
+        assertFalse(cache.hasEntry(1, 1));
+        assertFalse(cache.hasEntry(2, 0));
+        assertEntry(1, 0, 'a', cache.get(1, 0));
+        assertNull(cache.get(1, 1));
+        assertEntry(1, 0, 'a', cache.getLastEntry(1));
+        assertNull(cache.getLastEntry(2));
+
+        assertEquals(Arrays.asList("1:0:a"), flush());
+    }
+
+    @Test
+    public void testCacheFull() {
+        int entries = 1024 * 1024 / ENTRY_SIZE;
+        for (int i = 0; i < entries; i++) {
+            assertTrue(put(1, i, 'a'));
+        }
+        assertFalse(put(1, entries, 'a'));
+        assertEquals(entries, cache.count());
+        assertNull(cache.get(1, entries));
+        assertEntry(1, entries - 1, 'a', cache.getLastEntry(1));
+    }
+
+    @Test
+    public void testOutOfOrderPuts() throws Exception {
+        long[] entryIds = {5, 3, 4, 0, 2, 1};
+        for (long entryId : entryIds) {
+            assertTrue(put(1, entryId, (char) ('a' + entryId)));
+        }
+        assertTrue(put(1, 10, 'k'));
+        assertTrue(put(1, 7, 'h'));
+
+        for (long entryId : entryIds) {
+            assertEntry(1, entryId, (char) ('a' + entryId), cache.get(1, entryId));
+        }
+        // the last entry is the highest entry id, not the last one added
+        assertEntry(1, 10, 'k', cache.getLastEntry(1));
+
+        assertEquals(Arrays.asList("1:0:a", "1:1:b", "1:2:c", "1:3:d", "1:4:e", "1:5:f", "1:7:h", "1:10:k"),
+                flush());
+    }
+
+    @Test
+    public void testIterationOrderAcrossLedgers() throws Exception {
+        // the entries of the ledgers are interleaved, and span several segments
+        for (int entryId = 0; entryId < 20; entryId++) {
+            for (long ledgerId : new long[] {3, 1, 2}) {
+                assertTrue(put(ledgerId, entryId, (char) ('a' + ledgerId)));
+            }
+        }
+
+        List<String> entries = flush();
+        assertEquals(60, entries.size());
+        int i = 0;
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            for (int entryId = 0; entryId < 20; entryId++) {
+                assertEquals(ledgerId + ":" + entryId + ":" + (char) ('a' + ledgerId), entries.get(i++));
+            }
+        }
+    }
+
+    @Test
+    public void testOverwrittenEntry() throws Exception {
+        assertTrue(put(1, 0, 'a'));
+        assertTrue(put(1, 1, 'b'));
+        assertTrue(put(1, 0, 'c'));
+
+        assertEntry(1, 0, 'c', cache.get(1, 0));
+        // only the latest copy of the entry is flushed
+        assertEquals(Arrays.asList("1:0:c", "1:1:b"), flush());
+    }
+
+    @Test
+    public void testPartiallyFilledRun() throws Exception {
+        for (long entryId = 0; entryId < 5; entryId++) {
+            assertTrue(put(1, entryId, 'a'));
+        }
+        assertEquals(5, flush().size());
+
+        // the run keeps growing after being iterated, out of order this time
+        assertTrue(put(1, 7, 'c'));
+        assertTrue(put(1, 5, 'b'));
+        assertEntry(1, 7, 'c', cache.getLastEntry(1));
+        assertEntry(1, 5, 'b', cache.get(1, 5));
+        assertNull(cache.get(1, 6));
+        assertTrue(put(1, 6, 'b'));
+        assertEntry(1, 6, 'b', cache.get(1, 6));
+        assertEntry(1, 7, 'c', cache.getLastEntry(1));
+
+        List<String> entries = flush();
+        assertEquals(8, entries.size());
+        assertEquals(Arrays.asList("1:5:b", "1:6:b", "1:7:c"), entries.subList(5, 8));
+    }
+
+    @Test
+    public void testDeleteLedger() throws Exception {
+        for (long entryId = 0; entryId < 3; entryId++) {
+            assertTrue(put(1, entryId, 'a'));
+            assertTrue(put(2, entryId, 'b'));
+        }
+
+        cache.deleteLedger(1);
+        assertEquals(Arrays.asList("2:0:b", "2:1:b", "2:2:b"), flush());
+
+        // the deleted ledger stays out of the flush until the cache is cleared
+        assertTrue(put(1, 3, 'a'));
+        assertEquals(Arrays.asList("2:0:b", "2:1:b", "2:2:b"), flush());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        for (long entryId = 0; entryId < 3; entryId++) {
+            assertTrue(put(1, entryId, 'a'));
+        }
+        cache.deleteLedger(2);
+
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.size());
+        assertNull(cache.get(1, 0));
+        assertNull(cache.getLastEntry(1));
+        assertTrue(flush().isEmpty());
+
+        // the cache is reused from scratch
+        assertTrue(put(2, 1, 'c'));
+        assertTrue(put(1, 0, 'b'));
+        assertEntry(1, 0, 'b', cache.getLastEntry(1));
+        assertEquals(Arrays.asList("1:0:b", "2:1:c"), flush());
+    }
+
+    @Test
+    public void testConcurrentPuts() throws Exception {
+        int threads = 4;
+        int entriesPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                long ledgerId = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    // every other ledger is written backwards
+                    for (int i = 0; i < entriesPerThread; i++) {
+                        long entryId = ledgerId % 2 == 0 ? i : entriesPerThread - 1 - i;
+                        assertTrue(put(ledgerId, entryId, (char) ('a' + ledgerId)));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(threads * entriesPerThread, cache.count());
+        List<String> entries = flush();
+        assertEquals(threads * entriesPerThread, entries.size());
+        int i = 0;
+        for (long ledgerId = 0; ledgerId < threads; ledgerId++) {
+            assertEntry(ledgerId, entriesPerThread - 1, (char) ('a' + ledgerId), cache.getLastEntry(ledgerId));
+            for (int entryId = 0; entryId < entriesPerThread; entryId++) {
+                assertEquals(ledgerId + ":" + entryId + ":" + (char) ('a' + ledgerId), entries.get(i++));
+            }
+        }
+    }
+
+    private boolean put(long ledgerId, long entryId, char content) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte(content);
+        }
+        try {
+            return cache.put(ledgerId, entryId, entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    /**
+     * @return the entries of the cache, in iteration order, as "ledgerId:entryId:content"
+     */
+    private List<String> flush() throws Exception {
+        List<String> entries = new ArrayList<>();
+        cache.forEach((ledgerId, entryId, entry) -> {
+            assertEquals(ENTRY_SIZE, entry.readableBytes());
+            assertEquals(ledgerId, entry.getLong(entry.readerIndex()));
+            assertEquals(entryId, entry.getLong(entry.readerIndex() + 8));
+            entries.add(ledgerId + ":" + entryId + ":" + (char) entry.getByte(entry.readerIndex() + 16));
+        });
+        return entries;
+    }
+
+    private static void assertEntry(long ledgerId, long entryId, char content, ByteBuf entry) {
+        assertNotNull(entry);
+        try {
+            assertEquals(ENTRY_SIZE, entry.readableBytes());
+            assertEquals(ledgerId, entry.getLong(0));
+            assertEquals(entryId, entry.getLong(8));
+            for (int i = 16; i < ENTRY_SIZE; i++) {
+                assertEquals(content, (char) entry.getByte(i));
+            }
+        } finally {
+            entry.release();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ZeroCopyReadCacheTest {
+    private static final int ENTRY_SIZE = 64;
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int ENTRIES_PER_SEGMENT = SEGMENT_SIZE / ENTRY_SIZE;
+    private static final int SEGMENTS_COUNT = 4;
+
+    private static ZeroCopyReadCache newCache() {
+        return new ZeroCopyReadCache(UnpooledByteBufAllocator.DEFAULT, SEGMENTS_COUNT * SEGMENT_SIZE, SEGMENT_SIZE);
+    }
+
+    @Test
+    public void testPutGetAcrossRollovers() {
+        ZeroCopyReadCache cache = newCache();
+        int entries = 10 * ENTRIES_PER_SEGMENT;
+        for (int entryId = 0; entryId < entries; entryId++) {
+            putEntry(cache, 1, entryId);
+        }
+
+        // only the entries of the last segments are still cached
+        int firstCached = entries - SEGMENTS_COUNT * ENTRIES_PER_SEGMENT;
+        assertEquals(SEGMENTS_COUNT * ENTRIES_PER_SEGMENT, cache.count());
+        assertEquals(SEGMENTS_COUNT * SEGMENT_SIZE, cache.size());
+        for (int entryId = 0; entryId < entries; entryId++) {
+            ByteBuf entry = cache.get(1, entryId);
+            if (entryId < firstCached) {
+                assertNull(entry);
+                assertFalse(cache.hasEntry(1, entryId));
+            } else {
+                assertTrue(cache.hasEntry(1, entryId));
+                assertEntry(1, entryId, entry);
+                entry.release();
+            }
+        }
+        assertNull(cache.get(2, firstCached));
+
+        cache.close();
+    }
+
+    @Test
+    public void testSliceHeldAcrossEviction() {
+        ZeroCopyReadCache cache = newCache();
+        putEntry(cache, 1, 0);
+        ByteBuf held = cache.get(1, 0);
+        assertEntry(1, 0, held);
+
+        // rotate the segment of the held entry, then fill the segment that took its slot
+        for (int entryId = 1; entryId < (SEGMENTS_COUNT + 1) * ENTRIES_PER_SEGMENT; entryId++) {
+            putEntry(cache, 2, entryId);
+        }
+        assertNull(cache.get(1, 0));
+        assertFalse(cache.hasEntry(1, 0));
+
+        // the buffer referenced by the slice was not reused
+        assertEntry(1, 0, held);
+        assertEquals(1, held.refCnt());
+        held.release();
+        assertEquals(0, held.refCnt());
+
+        cache.close();
+    }
+
+    @Test
+    public void testStaleIndexEntryAfterRotation() {
+        ZeroCopyReadCache cache = newCache();
+        putEntry(cache, 1, 0);
+        long position = cache.index.get(1, 0).first;
+        assertEquals(0, cache.index.get(1, 0).second);
+
+        // the first segment gets rotated, its entries are dropped from the index
+        for (int entryId = 0; entryId < SEGMENTS_COUNT * ENTRIES_PER_SEGMENT; entryId++) {
+            putEntry(cache, 2, entryId);
+        }
+        assertNull(cache.index.get(1, 0));
+
+        // an entry indexed by a writer which raced with the rotation points to the old epoch
+        cache.index.put(1, 0, position, 0);
+        assertFalse(cache.hasEntry(1, 0));
+        assertNull(cache.get(1, 0));
+        assertNull(cache.index.get(1, 0));
+
+        cache.close();
+    }
+
+    @Test
+    public void testCloseWithOutstandingSlices() {
+        ZeroCopyReadCache cache = newCache();
+        List<ByteBuf> held = new ArrayList<>();
+        for (int entryId = 0; entryId < 2 * ENTRIES_PER_SEGMENT; entryId += 5) {
+            putEntry(cache, 1, entryId);
+            held.add(cache.get(1, entryId));
+        }
+
+        cache.close();
+        assertEquals(0, cache.count());
+        assertNull(cache.get(1, 0));
+        // writes after close are ignored
+        putEntry(cache, 1, 100);
+        assertNull(cache.get(1, 100));
+
+        // the slices keep their segments alive until they are released
+        for (int i = 0; i < held.size(); i++) {
+            assertEntry(1, i * 5, held.get(i));
+        }
+        for (ByteBuf entry : held) {
+            entry.release();
+        }
+        for (ByteBuf entry : held) {
+            assertEquals(0, entry.refCnt());
+        }
+    }
+
+    @Test
+    public void testMultipleThreads() throws Exception {
+        ZeroCopyReadCache cache = newCache();
+        int writers = 4;
+        int readers = 4;
+        int entriesPerWriter = 20_000;
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong hits = new AtomicLong();
+        AtomicLong[] written = new AtomicLong[writers];
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < writers; i++) {
+            long ledgerId = i;
+            written[i] = new AtomicLong(-1);
+            AtomicLong lastEntry = written[i];
+            threads.add(new Thread(() -> {
+                for (int entryId = 0; entryId < entriesPerWriter; entryId++) {
+                    putEntry(cache, ledgerId, entryId);
+                    lastEntry.set(entryId);
+                }
+            }));
+        }
+        for (int i = 0; i < readers; i++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while (written[0].get() < entriesPerWriter - 1 && failure.get() == null) {
+                        int ledgerId = random.nextInt(writers);
+                        long last = written[ledgerId].get();
+                        if (last < 0) {
+                            continue;
+                        }
+                        long entryId = Math.max(0, last - random.nextInt(SEGMENTS_COUNT * ENTRIES_PER_SEGMENT));
+                        ByteBuf entry = cache.get(ledgerId, entryId);
+                        if (entry != null) {
+                            try {
+                                assertEntry(ledgerId, entryId, entry);
+                                hits.incrementAndGet();
+                            } finally {
+                                entry.release();
+                            }
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(hits.get() > 0);
+        // no entry was left in the index for an evicted segment
+        assertTrue(cache.count() <= SEGMENTS_COUNT * ENTRIES_PER_SEGMENT);
+        cache.close();
+    }
+
+    private static void putEntry(ZeroCopyReadCache cache, long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        cache.put(ledgerId, entryId, entry);
+        entry.release();
+    }
+
+    private static void assertEntry(long ledgerId, long entryId, ByteBuf entry) {
+        assertNotNull(entry);
+        assertEquals(ENTRY_SIZE, entry.readableBytes());
+        assertEquals(ledgerId, entry.getLong(0));
+        assertEquals(entryId, entry.getLong(8));
+        for (int i = 16; i < ENTRY_SIZE; i++) {
+            assertEquals((byte) entryId, entry.getByte(i));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.apache.bookkeeper.client;
+
+import com.google.common.util.concurrent.Futures;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class AdaptiveSpeculativeRequestExecutionPolicyTest {
+    private static final int FIRST_TIMEOUT_MS = 10;
+    private static final int MAX_TIMEOUT_MS = 5000;
+    private static final int WINDOW_REQUESTS = 1000;
+
+    @Test
+    public void testTimeoutFromPercentile() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = policy(99, 10);
+        assertEquals(FIRST_TIMEOUT_MS, policy.getSpeculativeRequestTimeout());
+
+        // the 99th percentile is among the fast requests
+        complete(policy, 990, 1);
+        complete(policy, 10, 100);
+        assertTimeout(1, policy.getSpeculativeRequestTimeout());
+
+        // and among the slow ones
+        complete(policy, 989, 1);
+        complete(policy, 11, 100);
+        assertTimeout(100, policy.getSpeculativeRequestTimeout());
+    }
+
+    @Test
+    public void testTimeoutCappedToMax() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = policy(50, 10);
+        complete(policy, WINDOW_REQUESTS, 2 * MAX_TIMEOUT_MS);
+        assertEquals(MAX_TIMEOUT_MS, policy.getSpeculativeRequestTimeout());
+    }
+
+    @Test
+    public void testWindowRollover() throws Exception {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = policy(50, 10);
+
+        // not until the window is complete
+        complete(policy, WINDOW_REQUESTS - 1, 50);
+        assertEquals(FIRST_TIMEOUT_MS, policy.getSpeculativeRequestTimeout());
+        complete(policy, 1, 50);
+        assertTimeout(50, policy.getSpeculativeRequestTimeout());
+
+        // the previous window is forgotten
+        complete(policy, WINDOW_REQUESTS, 200);
+        assertTimeout(200, policy.getSpeculativeRequestTimeout());
+
+        // a second after the window started, a smaller window is enough
+        complete(policy, 99, 20);
+        Thread.sleep(1100);
+        assertTimeout(200, policy.getSpeculativeRequestTimeout());
+        complete(policy, 1, 20);
+        assertTimeout(20, policy.getSpeculativeRequestTimeout());
+    }
+
+    @Test
+    public void testSpeculativeRequestsBudget() {
+        // 10% of the requests, with a burst of 100 speculative requests
+        AdaptiveSpeculativeRequestExecutionPolicy policy = policy(99, 10);
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        AtomicInteger issued = new AtomicInteger();
+        SpeculativeRequestExecutor executor = () -> {
+            issued.incrementAndGet();
+            return Futures.immediateFuture(false);
+        };
+
+        for (int i = 0; i < 300; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+        runScheduled(scheduler, 300);
+        assertEquals(100, issued.get());
+
+        // the budget is saved up again by the following requests
+        issued.set(0);
+        scheduler = mock(ScheduledExecutorService.class);
+        for (int i = 0; i < 55; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+        runScheduled(scheduler, 55);
+        assertEquals(5, issued.get());
+    }
+
+    @Test
+    public void testNoBudget() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = policy(99, 0);
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        AtomicInteger issued = new AtomicInteger();
+        SpeculativeRequestExecutor executor = () -> {
+            issued.incrementAndGet();
+            return Futures.immediateFuture(false);
+        };
+
+        for (int i = 0; i < 100; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+        runScheduled(scheduler, 100);
+        // a single speculative request, however many requests there are
+        assertEquals(1, issued.get());
+    }
+
+    private static AdaptiveSpeculativeRequestExecutionPolicy policy(double percentile, double budgetPercent) {
+        return new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 2, percentile,
+                budgetPercent);
+    }
+
+    private static void complete(AdaptiveSpeculativeRequestExecutionPolicy policy, int requests, long latencyMs) {
+        for (int i = 0; i < requests; i++) {
+            policy.onRequestComplete(TimeUnit.MILLISECONDS.toNanos(latencyMs));
+        }
+    }
+
+    /**
+     * The timeout is the upper bound of the bucket of the latency, each 20% wider than the previous one.
+     */
+    private static void assertTimeout(long latencyMs, int timeoutMs) {
+        assertTrue("Timeout " + timeoutMs + " ms for a latency of " + latencyMs + " ms",
+                timeoutMs >= latencyMs && timeoutMs <= latencyMs * 1.2 + 1);
+    }
+
+    /**
+     * Run the speculative requests scheduled so far, once their timeout expired.
+     */
+    private static void runScheduled(ScheduledExecutorService scheduler, int scheduled) {
+        ArgumentCaptor<Runnable> tasks = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(scheduled)).schedule(tasks.capture(), anyLong(), any(TimeUnit.class));
+        for (Runnable task : tasks.getAllValues()) {
+            task.run();
+        }
+    }
+}
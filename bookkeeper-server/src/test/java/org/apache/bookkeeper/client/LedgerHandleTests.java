@@ -788,4 +788,89 @@ public class LedgerHandleTests {
 
     }
 
+    @RunWith(Parameterized.class)
+    public static class BatchReadTest extends BookKeeperClusterTestCase {
+        private static final int NUM_ENTRIES = 5;
+        private final boolean useV2WireProtocol;
+        private final long startEntry;
+        private final int maxCount;
+        private final long maxSize;
+        private final int expCount;
+        private final boolean expException;
+        private BookKeeper bk;
+        private LedgerHandle lh;
+
+        public BatchReadTest(boolean useV2WireProtocol, long startEntry, int maxCount, long maxSize,
+                             int expCount, boolean expException) {
+            super(3);
+            this.useV2WireProtocol = useV2WireProtocol;
+            this.startEntry = startEntry;
+            this.maxCount = maxCount;
+            this.maxSize = maxSize;
+            this.expCount = expCount;
+            this.expException = expException;
+        }
+
+        @Parameterized.Parameters
+        public static Collection<Object[]> testCasesArgument() {
+
+            return Arrays.asList(new Object[][]{
+                    {false, 0, NUM_ENTRIES, Long.MAX_VALUE, NUM_ENTRIES, false},
+                    {true, 0, NUM_ENTRIES, Long.MAX_VALUE, NUM_ENTRIES, false},
+                    {false, 1, 2, Long.MAX_VALUE, 2, false},
+                    {true, 1, 2, Long.MAX_VALUE, 2, false},
+                    {false, 3, 10, Long.MAX_VALUE, 2, false},
+                    {true, 3, 10, Long.MAX_VALUE, 2, false},
+                    {false, 0, NUM_ENTRIES, 1, 1, false},
+                    {true, 0, NUM_ENTRIES, 1, 1, false},
+                    {false, -1, 1, Long.MAX_VALUE, 0, true},
+                    {false, 0, 0, Long.MAX_VALUE, 0, true},
+                    {true, 0, 1, 0, 0, true},
+                    {true, NUM_ENTRIES, 1, Long.MAX_VALUE, 0, true},
+            });
+        }
+
+        @Before
+        public void setup() throws Exception {
+            ClientConfiguration bkConf = TestBKConfiguration.newClientConfiguration();
+            bkConf.setMetadataServiceUri(zkUtil.getMetadataServiceUri());
+            bkConf.setUseV2WireProtocol(useV2WireProtocol);
+            bk = new BookKeeper(bkConf);
+
+            // every bookie stores every entry, so that ranges are served by a single bookie
+            lh = bk.createLedger(3, 3, 2, BookKeeper.DigestType.CRC32, "password".getBytes());
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                lh.addEntry(("entry" + i).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        @After
+        public void tearDown() {
+            try {
+                DeleteTempFiles.deleteTempFiles();
+                lh.close();
+                bk.close();
+            } catch (Exception e) {
+                // non fa nulla se fallisce
+            }
+        }
+
+        @Test
+        public void batchReadTest() throws InterruptedException {
+            try (LedgerEntries entries = lh.batchRead(this.startEntry, this.maxCount, this.maxSize)) {
+                assertFalse(this.expException);
+                int count = 0;
+                for (org.apache.bookkeeper.client.api.LedgerEntry entry : entries) {
+                    assertEquals(this.startEntry + count, entry.getEntryId());
+                    assertEquals("entry" + entry.getEntryId(),
+                            new String(entry.getEntryBytes(), StandardCharsets.UTF_8));
+                    count++;
+                }
+                assertEquals(this.expCount, count);
+            } catch (org.apache.bookkeeper.client.api.BKException e) {
+                assertTrue(this.expException);
+            }
+        }
+    }
+
 }
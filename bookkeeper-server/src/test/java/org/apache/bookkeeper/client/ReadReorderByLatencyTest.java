@@ -0,0 +1,177 @@
+package org.apache.bookkeeper.client;
+
+import com.google.common.collect.Sets;
+import io.netty.util.HashedWheelTimer;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.NetworkTopology;
+import org.apache.bookkeeper.test.TestStatsProvider;
+import org.apache.bookkeeper.test.TestStatsProvider.TestStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.apache.bookkeeper.client.BookKeeperClientStats.BOOKIE_LABEL;
+import static org.apache.bookkeeper.client.BookKeeperClientStats.READ_REQUESTS_SELECTED;
+import static org.junit.Assert.*;
+
+public class ReadReorderByLatencyTest {
+    private final BookieId bookie0 = BookieId.parse("127.0.0.1:3181");
+    private final BookieId bookie1 = BookieId.parse("127.0.0.2:3181");
+    private final BookieId bookie2 = BookieId.parse("127.0.0.3:3181");
+    private final List<BookieId> ensemble = Arrays.asList(bookie0, bookie1, bookie2);
+
+    private final TestStatsProvider statsProvider = new TestStatsProvider();
+    private final TestStatsLogger statsLogger = statsProvider.getStatsLogger("");
+    private final HealthInfo healthInfo = new HealthInfo();
+    private HashedWheelTimer timer;
+    private RackawareEnsemblePlacementPolicyImpl repp;
+
+    @Before
+    public void setUp() throws Exception {
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setReorderReadsByLatencyEnabled(true);
+        timer = new HashedWheelTimer();
+        repp = new RackawareEnsemblePlacementPolicyImpl();
+        repp.initialize(conf,
+                Optional.of(new TopologyAwareEnsemblePlacementPolicy.DefaultResolver(
+                        () -> NetworkTopology.DEFAULT_REGION_AND_RACK)),
+                timer, SettableFeatureProvider.DISABLE_ALL, statsLogger,
+                BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+        repp.onClusterChanged(Sets.newHashSet(ensemble), Collections.emptySet());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        repp.uninitalize();
+        timer.stop();
+    }
+
+    @Test
+    public void testLatencyWeightedByCubedPendingRequests() {
+        healthInfo.set(bookie0, 100, 0);
+        healthInfo.set(bookie1, 10, 2);
+        healthInfo.set(bookie2, 50, 1);
+        // 100 * 1^3 < 10 * 3^3 < 50 * 2^3, the slowest bookie is the least loaded enough to be first
+        assertOrder(reorder(), 0, 1, 2);
+
+        // 10 * 3^3 < 50 * 2^3 < 100 * 3^3
+        healthInfo.set(bookie0, 100, 2);
+        assertOrder(reorder(), 1, 0, 2);
+
+        // 50 * 1^3 < 10 * 3^3
+        healthInfo.set(bookie2, 50, 0);
+        assertOrder(reorder(), 2, 0, 1);
+    }
+
+    @Test
+    public void testBookieWithoutLatencyTriedFirst() {
+        healthInfo.set(bookie0, 100, 0);
+        healthInfo.set(bookie1, 10, 0);
+        healthInfo.set(bookie2, -1, 0);
+        assertOrder(reorder(), 2, 0, 1);
+
+        // unless it is loaded
+        healthInfo.set(bookie2, -1, 3);
+        assertOrder(reorder(), 1, 0, 2);
+    }
+
+    @Test
+    public void testReadsSelectedCounted() {
+        healthInfo.set(bookie0, 100, 0);
+        healthInfo.set(bookie1, 10, 0);
+        healthInfo.set(bookie2, 50, 0);
+        for (int i = 0; i < 3; i++) {
+            reorder();
+        }
+        healthInfo.set(bookie1, 10, 2);
+        reorder();
+
+        assertEquals(0L, readsSelected(bookie0).longValue());
+        assertEquals(3L, readsSelected(bookie1).longValue());
+        assertEquals(1L, readsSelected(bookie2).longValue());
+    }
+
+    @Test
+    public void testUnavailableBookieDemoted() {
+        // the fastest bookie left the cluster
+        repp.onClusterChanged(Sets.newHashSet(bookie0, bookie2), Collections.emptySet());
+        healthInfo.set(bookie0, 100, 0);
+        healthInfo.set(bookie1, 1, 0);
+        healthInfo.set(bookie2, 50, 0);
+
+        // moved first by its latency, then behind the available bookies, and the read is counted for the
+        // bookie it is sent to
+        assertOrder(reorder(), 0, 2, 1);
+        assertEquals(1L, readsSelected(bookie0).longValue());
+        assertEquals(0L, readsSelected(bookie1).longValue());
+    }
+
+    @Test
+    public void testFailedBookieDemoted() {
+        repp.onClusterChanged(Sets.newHashSet(bookie0, bookie1), Collections.emptySet());
+        healthInfo.set(bookie0, 100, 0);
+        healthInfo.set(bookie1, 10, 0);
+        healthInfo.set(bookie2, 1, 0);
+        healthInfo.failures.put(bookie1, 5L);
+
+        // behind the available bookies without failures, and ahead of the unavailable ones
+        assertOrder(reorder(), 0, 1, 2);
+        assertEquals(1L, readsSelected(bookie0).longValue());
+        assertEquals(0L, readsSelected(bookie1).longValue());
+        assertEquals(0L, readsSelected(bookie2).longValue());
+    }
+
+    private DistributionSchedule.WriteSet reorder() {
+        return repp.reorderReadSequence(ensemble, healthInfo,
+                RoundRobinDistributionSchedule.writeSetFromValues(0, 1, 2));
+    }
+
+    private Long readsSelected(BookieId bookie) {
+        return statsLogger.scopeLabel(BOOKIE_LABEL, bookie.toString()).getCounter(READ_REQUESTS_SELECTED).get();
+    }
+
+    private static void assertOrder(DistributionSchedule.WriteSet writeSet, Integer... expected) {
+        Integer[] actual = new Integer[writeSet.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = writeSet.get(i);
+        }
+        writeSet.recycle();
+        assertArrayEquals(expected, actual);
+    }
+
+    private static class HealthInfo implements BookiesHealthInfo {
+        final Map<BookieId, Long> latencies = new HashMap<>();
+        final Map<BookieId, Long> pendingRequests = new HashMap<>();
+        final Map<BookieId, Long> failures = new HashMap<>();
+
+        void set(BookieId bookie, long latency, long pending) {
+            latencies.put(bookie, latency);
+            pendingRequests.put(bookie, pending);
+        }
+
+        @Override
+        public long getBookieFailureHistory(BookieId bookie) {
+            return failures.getOrDefault(bookie, -1L);
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookie) {
+            return pendingRequests.getOrDefault(bookie, 0L);
+        }
+
+        @Override
+        public long getBookieReadLatency(BookieId bookie) {
+            return latencies.getOrDefault(bookie, -1L);
+        }
+    }
+}
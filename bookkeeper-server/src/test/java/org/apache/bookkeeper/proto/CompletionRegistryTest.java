@@ -0,0 +1,203 @@
+package org.apache.bookkeeper.proto;
+
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class CompletionRegistryTest {
+    // the capacity of the V2 tables, until they grow
+    private static final int SECTIONS = 16;
+    private static final int CAPACITY = 64;
+
+    private final CompletionRegistry<Object> registry = new CompletionRegistry<>();
+
+    @Test
+    public void testV3Completions() {
+        Object first = new Object();
+        Object second = new Object();
+        registry.put(1, first);
+        registry.put(2, second);
+        assertSame(first, registry.get(1));
+        assertEquals(2, registry.size());
+
+        // only removed if still registered with the txnId
+        assertFalse(registry.remove(1, second));
+        assertTrue(registry.remove(1, first));
+        assertNull(registry.get(1));
+        assertSame(second, registry.remove(2));
+        assertNull(registry.remove(2));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testRemoveWithCollisionsAndWrapAround() {
+        // runs of colliding keys from the last buckets of a table, wrapping around to its first buckets
+        List<long[]> keys = new ArrayList<>();
+        keys.addAll(keysInBucket(CAPACITY - 2, 3));
+        keys.addAll(keysInBucket(CAPACITY - 1, 3));
+        keys.addAll(keysInBucket(0, 2));
+        keys.addAll(keysInBucket(1, 2));
+
+        Random random = new Random(1);
+        for (int round = 0; round < 50; round++) {
+            Map<long[], Object> values = new IdentityHashMap<>();
+            Collections.shuffle(keys, random);
+            for (long[] key : keys) {
+                Object value = new Object();
+                values.put(key, value);
+                registry.putV2(key[0], key[1], OperationType.READ_ENTRY, value);
+            }
+            assertEquals(keys.size(), registry.size());
+
+            // the remaining keys are still found, whatever the order of the removals
+            Collections.shuffle(keys, random);
+            for (int i = 0; i < keys.size(); i++) {
+                long[] key = keys.get(i);
+                assertSame(values.get(key), registry.removeV2(key[0], key[1], OperationType.READ_ENTRY));
+                assertNull(registry.getV2(key[0], key[1], OperationType.READ_ENTRY));
+                for (long[] remaining : keys.subList(i + 1, keys.size())) {
+                    assertSame(values.get(remaining),
+                            registry.getV2(remaining[0], remaining[1], OperationType.READ_ENTRY));
+                }
+            }
+            assertEquals(0, registry.size());
+        }
+    }
+
+    @Test
+    public void testDuplicateV2Keys() {
+        Object first = new Object();
+        Object second = new Object();
+        Object third = new Object();
+        registry.putV2(1, 2, OperationType.READ_ENTRY, first);
+        registry.putV2(1, 2, OperationType.READ_ENTRY, second);
+        registry.putV2(1, 2, OperationType.READ_ENTRY, third);
+        // another operation on the same entry
+        Object add = new Object();
+        registry.putV2(1, 2, OperationType.ADD_ENTRY, add);
+        assertEquals(4, registry.size());
+
+        // the completion removed by identity, among the ones with the same key
+        assertTrue(registry.removeV2(1, 2, OperationType.READ_ENTRY, second));
+        assertFalse(registry.removeV2(1, 2, OperationType.READ_ENTRY, second));
+        assertFalse(registry.removeV2(1, 2, OperationType.READ_ENTRY, add));
+
+        // a response completes any of them
+        Set<Object> removed = new HashSet<>();
+        removed.add(registry.removeV2(1, 2, OperationType.READ_ENTRY));
+        removed.add(registry.removeV2(1, 2, OperationType.READ_ENTRY));
+        assertEquals(new HashSet<>(Arrays.asList(first, third)), removed);
+        assertNull(registry.removeV2(1, 2, OperationType.READ_ENTRY));
+        assertSame(add, registry.getV2(1, 2, OperationType.ADD_ENTRY));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testRemoveIf() {
+        // colliding keys wrapping around, among other keys, too few for the tables to grow
+        List<long[]> keys = new ArrayList<>();
+        keys.addAll(keysInBucket(CAPACITY - 1, 4));
+        keys.addAll(keysInBucket(0, 4));
+        for (long entryId = 0; entryId < SECTIONS * CAPACITY / 4; entryId++) {
+            keys.add(new long[] {2, entryId});
+        }
+        Map<Object, long[]> v2Values = new IdentityHashMap<>();
+        for (long[] key : keys) {
+            Object value = new Object();
+            v2Values.put(value, key);
+            registry.putV2(key[0], key[1], OperationType.READ_ENTRY, value);
+        }
+        List<Object> v3Values = new ArrayList<>();
+        for (long txnId = 0; txnId < 100; txnId++) {
+            Object value = new Object();
+            v3Values.add(value);
+            registry.put(txnId, value);
+        }
+
+        // every other completion, each tested once
+        Set<Object> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<Object, Integer> tested = new IdentityHashMap<>();
+        int count = registry.removeIf(value -> {
+            tested.merge(value, 1, Integer::sum);
+            if (tested.size() % 2 == 0) {
+                removed.add(value);
+                return true;
+            }
+            return false;
+        });
+        assertEquals(keys.size() + v3Values.size(), tested.size());
+        assertTrue(tested.values().stream().allMatch(times -> times == 1));
+        assertEquals(removed.size(), count);
+        assertEquals(keys.size() + v3Values.size() - count, registry.size());
+
+        for (Map.Entry<Object, long[]> e : v2Values.entrySet()) {
+            long[] key = e.getValue();
+            if (removed.contains(e.getKey())) {
+                assertFalse(registry.removeV2(key[0], key[1], OperationType.READ_ENTRY, e.getKey()));
+            } else {
+                assertSame(e.getKey(), registry.getV2(key[0], key[1], OperationType.READ_ENTRY));
+            }
+        }
+        for (int txnId = 0; txnId < v3Values.size(); txnId++) {
+            Object value = v3Values.get(txnId);
+            assertSame(removed.contains(value) ? null : value, registry.get(txnId));
+        }
+        assertEquals(0, registry.removeIf(value -> false));
+    }
+
+    @Test
+    public void testRemoveAll() {
+        List<long[]> keys = keysInBucket(CAPACITY - 1, 4);
+        Set<Object> values = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (long[] key : keys) {
+            Object value = new Object();
+            values.add(value);
+            registry.putV2(key[0], key[1], OperationType.READ_ENTRY, value);
+        }
+        for (long txnId = 0; txnId < 10; txnId++) {
+            Object value = new Object();
+            values.add(value);
+            registry.put(txnId, value);
+        }
+
+        List<Object> removed = new ArrayList<>();
+        registry.removeAll(removed::add);
+        assertEquals(values.size(), removed.size());
+        assertTrue(values.containsAll(removed));
+        assertEquals(0, registry.size());
+        for (long[] key : keys) {
+            assertNull(registry.getV2(key[0], key[1], OperationType.READ_ENTRY));
+        }
+        assertNull(registry.get(0));
+
+        // the tables are still usable
+        Object value = new Object();
+        registry.putV2(keys.get(0)[0], keys.get(0)[1], OperationType.READ_ENTRY, value);
+        assertSame(value, registry.getV2(keys.get(0)[0], keys.get(0)[1], OperationType.READ_ENTRY));
+    }
+
+    /**
+     * Keys of the first V2 table, which hash to a bucket of it.
+     */
+    private static List<long[]> keysInBucket(int bucket, int count) {
+        List<long[]> keys = new ArrayList<>();
+        for (long entryId = 0; keys.size() < count; entryId++) {
+            long hash = CompletionRegistry.hash(1, entryId);
+            if (((int) (hash >>> 32) & (SECTIONS - 1)) == 0 && ((int) hash & (CAPACITY - 1)) == bucket) {
+                keys.add(new long[] {1, entryId});
+            }
+        }
+        return keys;
+    }
+}
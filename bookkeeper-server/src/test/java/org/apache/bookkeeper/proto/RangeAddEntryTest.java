@@ -0,0 +1,186 @@
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.bookie.BookKeeperClusterTestCase;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.TestBookieImpl;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RangeAddEntryTest extends BookKeeperClusterTestCase {
+    private static final long LEDGER_ID = 1;
+    private static final byte[] MASTER_KEY = "masterKey".getBytes(StandardCharsets.UTF_8);
+
+    private RecordingBookie bookie;
+    private BookieId bookieId;
+
+    public RangeAddEntryTest() {
+        super(0);
+        baseClientConf.setAddBatchMaxEntries(100);
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        ServerConfiguration conf = newServerConfiguration();
+        bookie = new RecordingBookie(conf);
+        bookieId = startAndAddBookie(conf, bookie).getServer().getBookieId();
+    }
+
+    @Test
+    public void testRangeAddWithPartialFailure() throws Exception {
+        bookie.failedEntryId = 3;
+        List<CompletableFuture<Integer>> results = addEntries(0, 6, BookieProtocol.FLAG_NONE);
+
+        // only the failed entry of the range fails on the client
+        for (int entryId = 0; entryId < 6; entryId++) {
+            int expected = entryId == 3 ? BKException.Code.WriteException : BKException.Code.OK;
+            assertEquals("Entry " + entryId, expected, (int) results.get(entryId).get(10, TimeUnit.SECONDS));
+        }
+        // all of them were sent in a single range add
+        assertEquals(Collections.singletonList(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L)), bookie.requests);
+
+        // the entries of the range were all stored, in their own place
+        for (int entryId = 0; entryId < 6; entryId++) {
+            assertEquals(entry(entryId), readEntry(entryId));
+        }
+    }
+
+    @Test
+    public void testUnbatchedAddsDoNotOvertakeBatchedAdds() throws Exception {
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        PerChannelBookieClient client = client();
+        // from the event loop, where an unbatched add is written before the pending batch would be
+        client.channel.eventLoop().submit(() -> {
+            results.addAll(addEntries(client, 0, 5, BookieProtocol.FLAG_NONE));
+            results.addAll(addEntries(client, 5, 1, BookieProtocol.FLAG_RECOVERY_ADD));
+            results.addAll(addEntries(client, 6, 2, BookieProtocol.FLAG_NONE));
+        }).get(10, TimeUnit.SECONDS);
+
+        for (CompletableFuture<Integer> result : results) {
+            assertEquals(BKException.Code.OK, (int) result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(Arrays.asList(Arrays.asList(0L, 1L, 2L, 3L, 4L), Collections.singletonList(5L),
+                Arrays.asList(6L, 7L)), bookie.requests);
+    }
+
+    private List<CompletableFuture<Integer>> addEntries(long firstEntryId, int count, int options)
+            throws Exception {
+        PerChannelBookieClient client = client();
+        // from the event loop, so that all of them are batched before the batch is sent
+        return client.channel.eventLoop().submit(() -> addEntries(client, firstEntryId, count, options))
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    private static List<CompletableFuture<Integer>> addEntries(PerChannelBookieClient client, long firstEntryId,
+                                                               int count, int options) {
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (long entryId = firstEntryId; entryId < firstEntryId + count; entryId++) {
+            CompletableFuture<Integer> result = new CompletableFuture<>();
+            ByteBufList toSend = ByteBufList.get(entry(entryId));
+            client.addEntry(LEDGER_ID, MASTER_KEY, entryId, toSend,
+                    (rc, ledgerId, entryId1, addr, ctx) -> result.complete(rc), null, options, false,
+                    WriteFlag.NONE);
+            toSend.release();
+            results.add(result);
+        }
+        return results;
+    }
+
+    private PerChannelBookieClient client() throws Exception {
+        CompletableFuture<PerChannelBookieClient> client = new CompletableFuture<>();
+        ((BookieClientImpl) bkc.getBookieClient()).lookupClient(bookieId).obtain((rc, pcbc) -> {
+            if (rc == BKException.Code.OK) {
+                client.complete(pcbc);
+            } else {
+                client.completeExceptionally(BKException.create(rc));
+            }
+        }, LEDGER_ID);
+        return client.get(10, TimeUnit.SECONDS);
+    }
+
+    private ByteBuf readEntry(long entryId) throws Exception {
+        CompletableFuture<ByteBuf> entry = new CompletableFuture<>();
+        bkc.getBookieClient().readEntry(bookieId, LEDGER_ID, entryId, (rc, ledgerId, entryId1, buffer, ctx) -> {
+            if (rc == BKException.Code.OK) {
+                entry.complete(Unpooled.copiedBuffer(buffer));
+            } else {
+                entry.completeExceptionally(BKException.create(rc));
+            }
+        }, null, BookieProtocol.FLAG_NONE);
+        return entry.get(10, TimeUnit.SECONDS);
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(128);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        // last add confirmed
+        entry.writeLong(entryId - 1);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+
+    /**
+     * Records the entries of each add request, and fails the journal callback of an entry.
+     */
+    private static class RecordingBookie extends TestBookieImpl {
+        final List<List<Long>> requests = Collections.synchronizedList(new ArrayList<>());
+        volatile long failedEntryId = -1;
+
+        RecordingBookie(ServerConfiguration conf) throws Exception {
+            super(conf);
+        }
+
+        @Override
+        public void addEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+                throws IOException, BookieException, InterruptedException {
+            requests.add(Collections.singletonList(entry.getLong(entry.readerIndex() + 8)));
+            super.addEntry(entry, ackBeforeSync, failing(cb), ctx, masterKey);
+        }
+
+        @Override
+        public void recoveryAddEntry(ByteBuf entry, WriteCallback cb, Object ctx, byte[] masterKey)
+                throws IOException, BookieException, InterruptedException {
+            requests.add(Collections.singletonList(entry.getLong(entry.readerIndex() + 8)));
+            super.recoveryAddEntry(entry, failing(cb), ctx, masterKey);
+        }
+
+        @Override
+        public void addEntries(List<ByteBuf> entries, boolean ackBeforeSync, WriteCallback cb, Object ctx,
+                               byte[] masterKey) throws IOException, BookieException, InterruptedException {
+            List<Long> entryIds = new ArrayList<>();
+            for (ByteBuf entry : entries) {
+                entryIds.add(entry.getLong(entry.readerIndex() + 8));
+            }
+            requests.add(entryIds);
+            super.addEntries(entries, ackBeforeSync, failing(cb), ctx, masterKey);
+        }
+
+        private WriteCallback failing(WriteCallback cb) {
+            return (rc, ledgerId, entryId, addr, ctx) -> cb.writeComplete(
+                    entryId == failedEntryId ? BookieProtocol.EIO : rc, ledgerId, entryId, addr, ctx);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+import org.apache.bookkeeper.bookie.BookKeeperClusterTestCase;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(Parameterized.class)
+public class RangeReadEntryTest extends BookKeeperClusterTestCase {
+    private static final long LEDGER_ID = 1;
+    // the V2 protocol sends master keys of a fixed length
+    private static final byte[] MASTER_KEY = Arrays.copyOf("masterKey".getBytes(StandardCharsets.UTF_8),
+            BookieProtocol.MASTER_KEY_LENGTH);
+
+    private final boolean useV2WireProtocol;
+    private BookieId bookieId;
+
+    public RangeReadEntryTest(boolean useV2WireProtocol) {
+        super(1);
+        this.useV2WireProtocol = useV2WireProtocol;
+        baseClientConf.setUseV2WireProtocol(useV2WireProtocol);
+    }
+
+    @Parameterized.Parameters(name = "useV2WireProtocol={0}")
+    public static Collection<Object[]> protocols() {
+        return Arrays.asList(new Object[][] {{true}, {false}});
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        bookieId = getBookie(0);
+    }
+
+    @Test
+    public void testRangeReadBoundedByBookie() throws Exception {
+        int count = RangeReadEntryProcessor.MAX_RANGE_READ_ENTRIES + 10;
+        List<CompletableFuture<Integer>> adds = new ArrayList<>();
+        for (long entryId = 0; entryId < count; entryId++) {
+            adds.add(addEntry(entryId));
+        }
+        for (CompletableFuture<Integer> add : adds) {
+            assertEquals(BKException.Code.OK, (int) add.get(10, TimeUnit.SECONDS));
+        }
+
+        // the client asks for more entries than the bookie returns in a response
+        List<ByteBuf> entries = readEntries(0, Integer.MAX_VALUE);
+        try {
+            assertEquals(RangeReadEntryProcessor.MAX_RANGE_READ_ENTRIES, entries.size());
+            for (int entryId = 0; entryId < entries.size(); entryId++) {
+                assertEquals(entryId, entries.get(entryId).getLong(8));
+            }
+        } finally {
+            entries.forEach(ReferenceCountUtil::release);
+        }
+
+        // and at least the first entry, however few it asks for
+        entries = readEntries(count - 1, 0);
+        try {
+            assertEquals(1, entries.size());
+            assertEquals(count - 1, entries.get(0).getLong(8));
+        } finally {
+            entries.forEach(ReferenceCountUtil::release);
+        }
+    }
+
+    @Test
+    public void testRangeReadOfMissingLedger() throws Exception {
+        try {
+            readEntries(0, 10);
+            fail("The ledger does not exist");
+        } catch (BKException e) {
+            assertEquals(BKException.Code.NoSuchLedgerExistsException, e.getCode());
+        }
+    }
+
+    @Test
+    public void testNonRangeResponseCompletesRangeRead() throws Exception {
+        assumeTrue(useV2WireProtocol);
+        PerChannelBookieClient client = client();
+
+        // a bookie which does not know range reads answers with a plain read response
+        assertEquals(BKException.Code.ProtocolVersionException,
+                handleReadResponse(client, StatusCode.EOK, BookieProtocol.EOK));
+        assertEquals(BKException.Code.NoSuchLedgerExistsException,
+                handleReadResponse(client, StatusCode.ENOLEDGER, BookieProtocol.ENOLEDGER));
+        assertEquals(BKException.Code.ReadException,
+                handleReadResponse(client, StatusCode.EBADREQ, BookieProtocol.EBADREQ));
+    }
+
+    private static int handleReadResponse(PerChannelBookieClient client, StatusCode status, int errorCode)
+            throws Exception {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        PerChannelBookieClient.CompletionKey key =
+                client.acquireV2Key(LEDGER_ID, 0, OperationType.RANGE_READ_ENTRY);
+        PerChannelBookieClient.RangeReadCompletion completion = client.new RangeReadCompletion(key,
+                (rc, ledgerId, firstEntryId, entries, ctx) -> {
+                    assertTrue(entries.isEmpty());
+                    result.complete(rc);
+                }, null, LEDGER_ID, 0);
+        BookieProtocol.Response response = new BookieProtocol.ReadResponse(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, errorCode, LEDGER_ID, 0);
+        completion.handleV2Response(LEDGER_ID, 0, status, response);
+        response.release();
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    private CompletableFuture<Integer> addEntry(long entryId) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        ByteBufList toSend = ByteBufList.get(entry(entryId));
+        bkc.getBookieClient().addEntry(bookieId, LEDGER_ID, MASTER_KEY, entryId, toSend,
+                (rc, ledgerId, entryId1, addr, ctx) -> result.complete(rc), null, BookieProtocol.FLAG_NONE, false,
+                WriteFlag.NONE);
+        toSend.release();
+        return result;
+    }
+
+    private List<ByteBuf> readEntries(long firstEntryId, int maxCount) throws Exception {
+        CompletableFuture<List<ByteBuf>> result = new CompletableFuture<>();
+        bkc.getBookieClient().readEntries(bookieId, LEDGER_ID, firstEntryId, maxCount, Long.MAX_VALUE,
+                (rc, ledgerId, firstEntryId1, entries, ctx) -> {
+                    if (rc == BKException.Code.OK) {
+                        List<ByteBuf> copies = new ArrayList<>();
+                        entries.forEach(entry -> copies.add(Unpooled.copiedBuffer(entry)));
+                        result.complete(copies);
+                    } else {
+                        result.completeExceptionally(BKException.create(rc));
+                    }
+                }, null, BookieProtocol.FLAG_NONE, false);
+        try {
+            return result.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private PerChannelBookieClient client() throws Exception {
+        CompletableFuture<PerChannelBookieClient> client = new CompletableFuture<>();
+        ((BookieClientImpl) bkc.getBookieClient()).lookupClient(bookieId).obtain((rc, pcbc) -> {
+            if (rc == BKException.Code.OK) {
+                client.complete(pcbc);
+            } else {
+                client.completeExceptionally(BKException.create(rc));
+            }
+        }, LEDGER_ID);
+        return client.get(10, TimeUnit.SECONDS);
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(64);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        // last add confirmed
+        entry.writeLong(entryId - 1);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,84 @@
+package org.apache.bookkeeper.proto;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ReadLatencyEstimatorTest {
+    private static final long DECAY_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final FakeTicker ticker = new FakeTicker();
+    private final ReadLatencyEstimator estimator = new ReadLatencyEstimator(ticker);
+
+    @Test
+    public void testMovingAverage() {
+        assertEquals(-1L, estimator.getEstimateNanos());
+
+        // the first sample is the estimate
+        estimator.record(100);
+        assertEquals(100, estimator.getEstimateNanos());
+
+        // and the next ones are weighted by 0.2
+        estimator.record(200);
+        assertEquals(120, estimator.getEstimateNanos());
+        estimator.record(20);
+        assertEquals(100, estimator.getEstimateNanos());
+
+        // a single outlier does not take over the estimate
+        estimator.record(10_100);
+        assertEquals(2100, estimator.getEstimateNanos());
+        for (int i = 0; i < 50; i++) {
+            estimator.record(100);
+        }
+        // within the rounding of the increments
+        assertEquals(100, estimator.getEstimateNanos(), 4);
+    }
+
+    @Test
+    public void testIdleDecay() {
+        estimator.record(1000);
+
+        // not decayed during the first period without samples
+        ticker.advance(DECAY_PERIOD_NANOS);
+        assertEquals(1000, estimator.getEstimateNanos());
+
+        // then halved for every period
+        ticker.advance(DECAY_PERIOD_NANOS);
+        assertEquals(500, estimator.getEstimateNanos());
+        ticker.advance(DECAY_PERIOD_NANOS / 2);
+        assertEquals(353, estimator.getEstimateNanos(), 1);
+        ticker.advance(DECAY_PERIOD_NANOS / 2);
+        assertEquals(250, estimator.getEstimateNanos());
+        ticker.advance(30 * DECAY_PERIOD_NANOS);
+        assertEquals(0, estimator.getEstimateNanos());
+    }
+
+    @Test
+    public void testSampleEndsDecay() {
+        estimator.record(1000);
+        ticker.advance(3 * DECAY_PERIOD_NANOS);
+        assertEquals(250, estimator.getEstimateNanos());
+
+        // the sample is averaged with the estimate it had, which then stops decaying
+        estimator.record(2000);
+        assertEquals(1200, estimator.getEstimateNanos());
+        ticker.advance(DECAY_PERIOD_NANOS);
+        assertEquals(1200, estimator.getEstimateNanos());
+    }
+
+    private static class FakeTicker extends Ticker {
+        private long nanos = 0;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long deltaNanos) {
+            nanos += deltaNanos;
+        }
+    }
+}
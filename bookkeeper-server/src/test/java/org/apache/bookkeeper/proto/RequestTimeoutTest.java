@@ -0,0 +1,206 @@
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.TimerTask;
+import org.apache.bookkeeper.bookie.BookKeeperClusterTestCase;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.TestBKConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(Parameterized.class)
+public class RequestTimeoutTest extends BookKeeperClusterTestCase {
+    private static final long LEDGER_ID = 1;
+    // the V2 protocol sends master keys of a fixed length
+    private static final byte[] MASTER_KEY = Arrays.copyOf("masterKey".getBytes(StandardCharsets.UTF_8),
+            BookieProtocol.MASTER_KEY_LENGTH);
+    private static final int TIMEOUT_SEC = 1;
+
+    private final boolean useV2WireProtocol;
+
+    private EventLoopGroup eventLoopGroup;
+    private OrderedExecutor executor;
+    private ScheduledExecutorService scheduler;
+    private HashedWheelTimer requestTimer;
+    private BookieClientImpl bookieClient;
+    private BookieId bookieId;
+
+    public RequestTimeoutTest(boolean useV2WireProtocol) {
+        super(1);
+        this.useV2WireProtocol = useV2WireProtocol;
+    }
+
+    @Parameterized.Parameters(name = "useV2WireProtocol={0}")
+    public static Collection<Object[]> protocols() {
+        return Arrays.asList(new Object[][] {{true}, {false}});
+    }
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        ClientConfiguration conf = TestBKConfiguration.newClientConfiguration()
+                .setUseV2WireProtocol(useV2WireProtocol)
+                .setAddEntryTimeout(TIMEOUT_SEC)
+                .setReadEntryTimeout(TIMEOUT_SEC);
+        eventLoopGroup = new NioEventLoopGroup(1);
+        executor = OrderedExecutor.newBuilder().name("RequestTimeoutTest").numThreads(1).build();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        requestTimer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+        bookieClient = new BookieClientImpl(conf, eventLoopGroup, UnpooledByteBufAllocator.DEFAULT, executor,
+                scheduler, NullStatsLogger.INSTANCE, bkc.getBookieAddressResolver(), requestTimer);
+        bookieId = getBookie(0);
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        bookieClient.close();
+        requestTimer.stop();
+        scheduler.shutdown();
+        executor.shutdown();
+        eventLoopGroup.shutdownGracefully();
+        super.tearDown();
+    }
+
+    @Test
+    public void testRequestsTimeOut() throws Exception {
+        assertEquals(BKException.Code.OK, (int) addEntry(0).get(10, TimeUnit.SECONDS));
+
+        CountDownLatch resume = new CountDownLatch(1);
+        sleepBookie(bookieId, resume);
+        try {
+            CompletableFuture<Integer> add = addEntry(1);
+            CompletableFuture<Integer> read = readEntry(0);
+            long startTime = System.nanoTime();
+            assertEquals(BKException.Code.TimeoutException, (int) add.get(10, TimeUnit.SECONDS));
+            assertEquals(BKException.Code.TimeoutException, (int) read.get(10, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - startTime >= TimeUnit.SECONDS.toNanos(TIMEOUT_SEC) / 2);
+        } finally {
+            resume.countDown();
+        }
+
+        // the late responses find nothing to complete, and the channel is still usable
+        assertEquals(BKException.Code.OK, (int) addEntry(2).get(10, TimeUnit.SECONDS));
+        assertEquals(BKException.Code.OK, (int) readEntry(2).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRequestsFailWhenTimerStopped() throws Exception {
+        assertEquals(BKException.Code.OK, (int) addEntry(0).get(10, TimeUnit.SECONDS));
+
+        // the timer is stopped with the client, before its channels are closed
+        requestTimer.stop();
+        assertEquals(BKException.Code.ClientClosedException, (int) addEntry(1).get(10, TimeUnit.SECONDS));
+        assertEquals(BKException.Code.ClientClosedException, (int) readEntry(0).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTimeoutOfRecycledV2AddCompletion() throws Exception {
+        assumeTrue(useV2WireProtocol);
+        PerChannelBookieClient client = client();
+
+        PerChannelBookieClient.CompletionKey key = client.acquireV2Key(LEDGER_ID, 0, OperationType.ADD_ENTRY);
+        PerChannelBookieClient.AddCompletion completion = client.acquireAddCompletion(key,
+                (rc, ledgerId, entryId, addr, ctx) -> { }, null, LEDGER_ID, 0);
+        TimerTask firstTimeout = key.newTimeoutTask(completion);
+        key.register(completion);
+
+        // the add completes, and its completion is recycled for another add of the same entry
+        assertSame(completion, key.unregister());
+        CompletableFuture<Integer> second = new CompletableFuture<>();
+        key = client.acquireV2Key(LEDGER_ID, 0, OperationType.ADD_ENTRY);
+        completion.reset(key, (rc, ledgerId, entryId, addr, ctx) -> second.complete(rc), null, LEDGER_ID, 0);
+        TimerTask secondTimeout = key.newTimeoutTask(completion);
+        key.register(completion);
+
+        // the timeout of the first add does not time out the second one
+        firstTimeout.run(null);
+        assertSame(completion, key.lookup());
+        assertFalse(second.isDone());
+
+        // nor does the timeout of the second add time out a third add of the same entry
+        CompletableFuture<Integer> third = new CompletableFuture<>();
+        PerChannelBookieClient.CompletionKey thirdKey =
+                client.acquireV2Key(LEDGER_ID, 0, OperationType.ADD_ENTRY);
+        PerChannelBookieClient.AddCompletion thirdCompletion = client.acquireAddCompletion(thirdKey,
+                (rc, ledgerId, entryId, addr, ctx) -> third.complete(rc), null, LEDGER_ID, 0);
+        thirdKey.register(thirdCompletion);
+        completion.startTime -= TimeUnit.SECONDS.toNanos(TIMEOUT_SEC);
+        secondTimeout.run(null);
+        assertEquals(BKException.Code.TimeoutException, (int) second.get(10, TimeUnit.SECONDS));
+        assertSame(thirdCompletion, thirdKey.unregister());
+        assertNull(thirdKey.lookup());
+        assertFalse(third.isDone());
+        thirdCompletion.writeComplete(BKException.Code.OK, LEDGER_ID, 0, bookieId, null);
+    }
+
+    private CompletableFuture<Integer> addEntry(long entryId) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        ByteBufList toSend = ByteBufList.get(entry(entryId));
+        bookieClient.addEntry(bookieId, LEDGER_ID, MASTER_KEY, entryId, toSend,
+                (rc, ledgerId, entryId1, addr, ctx) -> result.complete(rc), null, BookieProtocol.FLAG_NONE, false,
+                WriteFlag.NONE);
+        toSend.release();
+        return result;
+    }
+
+    private CompletableFuture<Integer> readEntry(long entryId) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        bookieClient.readEntry(bookieId, LEDGER_ID, entryId, (rc, ledgerId, entryId1, buffer, ctx) -> {
+            result.complete(rc);
+        }, null, BookieProtocol.FLAG_NONE);
+        return result;
+    }
+
+    private PerChannelBookieClient client() throws Exception {
+        CompletableFuture<PerChannelBookieClient> client = new CompletableFuture<>();
+        bookieClient.lookupClient(bookieId).obtain((rc, pcbc) -> {
+            if (rc == BKException.Code.OK) {
+                client.complete(pcbc);
+            } else {
+                client.completeExceptionally(BKException.create(rc));
+            }
+        }, LEDGER_ID);
+        return client.get(10, TimeUnit.SECONDS);
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(128);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        // last add confirmed
+        entry.writeLong(entryId - 1);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,82 @@
+package org.apache.bookkeeper.util;
+
+import org.apache.bookkeeper.test.TmpDirs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FileRangeCopierTest {
+    private static final int SIZE = 64 * 1024;
+
+    private final TmpDirs tmpDirs = new TmpDirs();
+    private File src;
+    private File dst;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws Exception {
+        File dir = tmpDirs.createNew("file-range-copier", "");
+        src = new File(dir, "src.log");
+        dst = new File(dir, "dst.log");
+        data = new byte[SIZE];
+        new Random(1).nextBytes(data);
+        Files.write(src.toPath(), data);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        tmpDirs.cleanup();
+    }
+
+    @Test
+    public void testCopyRanges() throws Exception {
+        verifyCopyRanges(true);
+    }
+
+    @Test
+    public void testCopyRangesWithTransferTo() throws Exception {
+        verifyCopyRanges(false);
+    }
+
+    @Test
+    public void testCopyPastEndOfFile() throws Exception {
+        try (FileRangeCopier copier = new FileRangeCopier(src, dst, false)) {
+            copier.copy(SIZE - 10, 0, 20);
+            fail("The range is past the end of the source file");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void verifyCopyRanges(boolean allowCopyFileRange) throws Exception {
+        byte[] expected = new byte[SIZE + 100];
+        try (FileRangeCopier copier = new FileRangeCopier(src, dst, allowCopyFileRange)) {
+            // to the start of the destination
+            copier.copy(1000, 0, 500);
+            System.arraycopy(data, 1000, expected, 0, 500);
+            // after a gap, from the start of the source
+            copier.copy(0, 600, 4096);
+            System.arraycopy(data, 0, expected, 600, 4096);
+            // overwriting part of a previous range, up to the end of the source
+            copier.copy(SIZE - 8192, 4000, 8192);
+            System.arraycopy(data, SIZE - 8192, expected, 4000, 8192);
+            // larger than the previous ones, at an unaligned position
+            copier.copy(3, 12292, SIZE - 12292 + 100);
+            System.arraycopy(data, 3, expected, 12292, SIZE - 12292 + 100);
+        }
+
+        byte[] copied = Files.readAllBytes(dst.toPath());
+        assertEquals(expected.length, copied.length);
+        assertArrayEquals(expected, copied);
+        // the source is left untouched
+        assertTrue(Arrays.equals(data, Files.readAllBytes(src.toPath())));
+    }
+}
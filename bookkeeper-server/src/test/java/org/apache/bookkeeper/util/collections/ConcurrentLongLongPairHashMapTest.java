@@ -0,0 +1,60 @@
+package org.apache.bookkeeper.util.collections;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentLongLongPairHashMapTest {
+
+    @Test
+    public void testRemoveIf() {
+        ConcurrentLongLongPairHashMap map = ConcurrentLongLongPairHashMap.newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(2)
+                .build();
+        for (long i = 0; i < 1000; i++) {
+            map.put(i % 10, i, i * 2, i % 3);
+        }
+
+        assertEquals(334, map.removeIf((key1, key2, value1, value2) -> value2 == 0));
+        assertEquals(666, map.size());
+        for (long i = 0; i < 1000; i++) {
+            LongPair value = map.get(i % 10, i);
+            if (i % 3 == 0) {
+                assertNull(value);
+            } else {
+                assertEquals(new LongPair(i * 2, i % 3), value);
+            }
+        }
+
+        assertEquals(0, map.removeIf((key1, key2, value1, value2) -> key2 >= 1000));
+        assertEquals(666, map.size());
+    }
+
+    @Test
+    public void testRemoveIfWithAutoShrink() {
+        ConcurrentLongLongPairHashMap map = ConcurrentLongLongPairHashMap.newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .autoShrink(true)
+                .build();
+        for (long i = 0; i < 1000; i++) {
+            map.put(1, i, i, 0);
+        }
+        long capacity = map.capacity();
+
+        assertEquals(990, map.removeIf((key1, key2, value1, value2) -> key2 >= 10));
+        assertEquals(10, map.size());
+        assertTrue(map.capacity() < capacity);
+
+        // the shrunk map is still usable
+        for (long i = 0; i < 10; i++) {
+            assertEquals(new LongPair(i, 0), map.get(1, i));
+        }
+        assertTrue(map.put(1, 500, 500, 0));
+        assertEquals(new LongPair(500, 0), map.get(1, 500));
+        assertEquals(11, map.removeIf((key1, key2, value1, value2) -> true));
+        assertTrue(map.isEmpty());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.collections.BlockingMpscQueue;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks of the handoff of entries from the add threads to the journal thread, with recycled
+ * entries passed through a blocking queue and with the ring of pre-allocated entries.
+ *
+ * <p>The consumer drains the queue in batches and runs the callback of each entry, which recycles the
+ * entry or releases its slot, like the journal does once the entries are durable.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class JournalQueueBenchmark {
+
+    private static final int QUEUE_SIZE = 10_000;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        private final BlockingQueue<Journal.QueueEntry> arrayBlockingQueue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+        private final BlockingQueue<Journal.QueueEntry> mpscQueue = new BlockingMpscQueue<>(QUEUE_SIZE);
+
+        private final JournalRingBuffer ringBuffer = new JournalRingBuffer(QUEUE_SIZE, false);
+
+        private final WriteCallback cb = (rc, ledgerId, entryId, addr, ctx) -> {};
+
+        private final OpStatsLogger addEntryStats = NullStatsLogger.INSTANCE.getOpStatsLogger("add-entry");
+
+        private final Counter callbackTime = NullStatsLogger.INSTANCE.getCounter("callback-time");
+
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+
+        @Setup(Level.Trial)
+        public void setup() {
+            executor.execute(() -> consume(JournalQueue.of(arrayBlockingQueue)));
+            executor.execute(() -> consume(JournalQueue.of(mpscQueue)));
+            executor.execute(() -> consume(ringBuffer));
+        }
+
+        private void consume(JournalQueue queue) {
+            List<Journal.QueueEntry> localList = new ArrayList<>();
+
+            try {
+                while (true) {
+                    if (queue.drainTo(localList) == 0) {
+                        localList.add(queue.take());
+                    }
+                    for (int i = 0; i < localList.size(); i++) {
+                        localList.get(i).run();
+                    }
+                    localList.clear();
+                }
+            } catch (InterruptedException ie) {
+            }
+        }
+
+        private Journal.QueueEntry newEntry(long entryId) {
+            return Journal.QueueEntry.create(null, false, 1L, entryId, cb, null, MathUtils.nowInNano(),
+                    addEntryStats, callbackTime);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            executor.shutdownNow();
+        }
+
+        @TearDown(Level.Iteration)
+        public void cleanupQueue() throws InterruptedException {
+            Thread.sleep(1_000);
+        }
+    }
+
+    @Benchmark
+    public void arrayBlockingQueue(TestState s) throws Exception {
+        s.arrayBlockingQueue.put(s.newEntry(0L));
+    }
+
+    @Benchmark
+    public void blockingMpscQueue(TestState s) throws Exception {
+        s.mpscQueue.put(s.newEntry(0L));
+    }
+
+    @Benchmark
+    public void ringBuffer(TestState s) {
+        s.ringBuffer.publish(null, false, 1L, 0L, s.cb, null, MathUtils.nowInNano(),
+                s.addEntryStats, s.callbackTime);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageRocksDB;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageSortedRuns;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks of the storages of the locations index, with the access patterns of a bookie: batches of
+ * locations written in increasing entry order for a set of ledgers, point lookups of recent and old entries,
+ * and floor lookups used to find the last entry of a ledger.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class KeyValueStorageBenchmark {
+
+    private static final int LEDGERS = 100;
+    private static final int PRELOADED_ENTRIES_PER_LEDGER = 10_000;
+    private static final int BATCH_SIZE = 1_000;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+
+        @Param({"rocksdb", "sortedRuns"})
+        private String storageType;
+
+        private File dir;
+        private KeyValueStorage storage;
+
+        // Next entry to write for each ledger
+        private final long[] nextEntries = new long[LEDGERS];
+        private int nextLedger = 0;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            dir = Files.createTempDirectory("bk-kv-storage-benchmark").toFile();
+            ServerConfiguration conf = new ServerConfiguration();
+            if ("rocksdb".equals(storageType)) {
+                storage = new KeyValueStorageRocksDB(dir.getAbsolutePath(), "locations",
+                        DbConfigType.EntryLocation, conf);
+            } else {
+                storage = new KeyValueStorageSortedRuns(dir.getAbsolutePath(), "locations", conf, false);
+            }
+
+            for (int i = 0; i < PRELOADED_ENTRIES_PER_LEDGER / BATCH_SIZE; i++) {
+                for (int ledger = 0; ledger < LEDGERS; ledger++) {
+                    writeBatch();
+                }
+            }
+        }
+
+        private void writeBatch() throws IOException {
+            int ledger = nextLedger;
+            nextLedger = (nextLedger + 1) % LEDGERS;
+            try (KeyValueStorage.Batch batch = storage.newBatch()) {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    long entryId = nextEntries[ledger]++;
+                    batch.put(key(ledger, entryId), value(entryId));
+                }
+                batch.flush();
+            }
+        }
+
+        private long randomLedger() {
+            return ThreadLocalRandom.current().nextInt(LEDGERS);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws IOException {
+            storage.close();
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private static byte[] key(long ledgerId, long entryId) {
+        return ByteBuffer.allocate(16).putLong(ledgerId).putLong(entryId).array();
+    }
+
+    private static byte[] value(long location) {
+        return ByteBuffer.allocate(8).putLong(location).array();
+    }
+
+    @Benchmark
+    public void sequentialBatchPut(TestState s) throws IOException {
+        s.writeBatch();
+    }
+
+    @Benchmark
+    public byte[] getRecentEntry(TestState s) throws IOException {
+        long ledger = s.randomLedger();
+        return s.storage.get(key(ledger, s.nextEntries[(int) ledger] - 1));
+    }
+
+    @Benchmark
+    public byte[] getRandomEntry(TestState s) throws IOException {
+        long ledger = s.randomLedger();
+        long entryId = ThreadLocalRandom.current().nextLong(PRELOADED_ENTRIES_PER_LEDGER);
+        return s.storage.get(key(ledger, entryId));
+    }
+
+    @Benchmark
+    public Map.Entry<byte[], byte[]> getLastEntryInLedger(TestState s) throws IOException {
+        return s.storage.getFloor(key(s.randomLedger() + 1, 0));
+    }
+}
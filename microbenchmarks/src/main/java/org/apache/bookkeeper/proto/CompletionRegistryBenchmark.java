@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarking the registration and the completion of the requests in flight on a channel, with the
+ * {@link CompletionRegistry} against a map keyed by completion key objects.
+ *
+ * <p>Each operation registers a request and completes the oldest one, keeping {@code inFlight} requests
+ * registered, as a channel does under a steady load.
+ */
+@BenchmarkMode({Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class CompletionRegistryBenchmark {
+
+    @Param({"100", "10000"})
+    int inFlight;
+
+    long ledgerId;
+    long nextId;
+    Object completion;
+
+    ConcurrentOpenHashMap<Object, Object> keyedMap;
+    CompletionRegistry<Object> registry;
+
+    @Setup
+    public void prepare() {
+        this.ledgerId = 1234L;
+        this.completion = new Object();
+        this.keyedMap = ConcurrentOpenHashMap.newBuilder().build();
+        this.registry = new CompletionRegistry<>();
+        for (nextId = 0; nextId < inFlight; nextId++) {
+            keyedMap.put(new TxnKey(nextId, OperationType.READ_ENTRY), completion);
+            keyedMap.put(new EntryKey(ledgerId, nextId, OperationType.READ_ENTRY), completion);
+            registry.put(nextId, completion);
+            registry.putV2(ledgerId, nextId, OperationType.READ_ENTRY, completion);
+        }
+    }
+
+    @Benchmark
+    public Object keyedMapV3() {
+        keyedMap.put(new TxnKey(nextId, OperationType.READ_ENTRY), completion);
+        return keyedMap.remove(new TxnKey(nextId++ - inFlight, OperationType.READ_ENTRY));
+    }
+
+    @Benchmark
+    public Object registryV3() {
+        registry.put(nextId, completion);
+        return registry.remove(nextId++ - inFlight);
+    }
+
+    @Benchmark
+    public Object keyedMapV2() {
+        keyedMap.put(new EntryKey(ledgerId, nextId, OperationType.READ_ENTRY), completion);
+        return keyedMap.remove(new EntryKey(ledgerId, nextId++ - inFlight, OperationType.READ_ENTRY));
+    }
+
+    @Benchmark
+    public Object registryV2() {
+        registry.putV2(ledgerId, nextId, OperationType.READ_ENTRY, completion);
+        return registry.removeV2(ledgerId, nextId++ - inFlight, OperationType.READ_ENTRY);
+    }
+
+    // the keys the channels used to allocate for each request and response
+
+    private static final class TxnKey {
+        final long txnId;
+        final OperationType operationType;
+
+        TxnKey(long txnId, OperationType operationType) {
+            this.txnId = txnId;
+            this.operationType = operationType;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TxnKey)) {
+                return false;
+            }
+            TxnKey that = (TxnKey) obj;
+            return this.txnId == that.txnId && this.operationType == that.operationType;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) txnId;
+        }
+    }
+
+    private static final class EntryKey {
+        final long ledgerId;
+        final long entryId;
+        final OperationType operationType;
+
+        EntryKey(long ledgerId, long entryId, OperationType operationType) {
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+            this.operationType = operationType;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof EntryKey)) {
+                return false;
+            }
+            EntryKey that = (EntryKey) obj;
+            return this.entryId == that.entryId && this.ledgerId == that.ledgerId
+                && this.operationType == that.operationType;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(ledgerId) * 31 + Long.hashCode(entryId);
+        }
+    }
+}
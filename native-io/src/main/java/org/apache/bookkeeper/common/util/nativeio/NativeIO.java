@@ -37,6 +37,10 @@ public interface NativeIO {
 
     int FALLOC_FL_ZERO_RANGE = 0x10;
 
+    // Sync to append to an io_uring write batch
+    int IO_URING_FSYNC = 0x01;
+    int IO_URING_FDATASYNC = 0x02;
+
     int open(String pathname, int flags, int mode) throws NativeIOException;
 
     int fsync(int fd) throws NativeIOException;
@@ -64,4 +68,51 @@ public interface NativeIO {
     long pread(int fd, long pointer, long size, long offset) throws NativeIOException;
 
     int close(int fd) throws NativeIOException;
+
+    /**
+     * copy_file_range is a linux-only syscall, which fails with EXDEV on some kernels when the
+     * files are on different file systems, so callers must handle the possibility that it does
+     * not exist or can't be used.
+     *
+     * <p>Copy <i>len</i> bytes from <i>fdIn</i> at <i>offsetIn</i> to <i>fdOut</i> at
+     * <i>offsetOut</i> within the kernel, without changing the offsets of the files.
+     *
+     * @return the number of bytes copied, which can be less than requested
+     */
+    long copy_file_range(int fdIn, long offsetIn, int fdOut, long offsetOut, long len) throws NativeIOException;
+
+    /**
+     * io_uring is a linux-only facility, which can also be missing from or disabled in the
+     * running kernel, so callers must handle the possibility that it does not exist.
+     *
+     * @return a handle to a new io_uring instance, with at least <i>entries</i> submission queue entries
+     */
+    long io_uring_setup(int entries) throws NativeIOException;
+
+    /**
+     * Write the first <i>count</i> buffers to <i>fd</i>, each one at its own offset, submitting them
+     * together through io_uring and waiting for all of them to complete.
+     *
+     * <p>If <i>syncFlags</i> is {@link #IO_URING_FSYNC} or {@link #IO_URING_FDATASYNC}, the writes are
+     * followed by a fsync or a fdatasync of the file, which is only submitted once all the writes completed.
+     * If a write is short, the remaining writes and the sync are skipped, and the bytes written so far
+     * are returned.
+     * The same io_uring instance must not be used concurrently by multiple threads.
+     *
+     * <p>On failure, every write accepted by the kernel is waited for before throwing, unless the
+     * completions cannot be reaped, which {@link #io_uring_inflight(long)} tells. A ring is not usable
+     * anymore after a failed submission, it must be closed and a new one set up.
+     *
+     * @return the total number of bytes written
+     */
+    long io_uring_write(long ring, int fd, long[] pointers, int[] sizes, long[] offsets, int count, int syncFlags)
+            throws NativeIOException;
+
+    /**
+     * @return the number of operations of the last failed {@link #io_uring_write} which may still be
+     *         in flight, whose buffers must not be reused
+     */
+    int io_uring_inflight(long ring);
+
+    void io_uring_close(long ring) throws NativeIOException;
 }
@@ -74,4 +74,31 @@ public class NativeIOImpl implements NativeIO {
     public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
         return NativeIOJni.pread(fd, pointer, size, offset);
     }
+
+    @Override
+    public long copy_file_range(int fdIn, long offsetIn, int fdOut, long offsetOut, long len)
+            throws NativeIOException {
+        return NativeIOJni.copy_file_range(fdIn, offsetIn, fdOut, offsetOut, len);
+    }
+
+    @Override
+    public long io_uring_setup(int entries) throws NativeIOException {
+        return NativeIOJni.io_uring_setup(entries);
+    }
+
+    @Override
+    public long io_uring_write(long ring, int fd, long[] pointers, int[] sizes, long[] offsets, int count,
+                               int syncFlags) throws NativeIOException {
+        return NativeIOJni.io_uring_write(ring, fd, pointers, sizes, offsets, count, syncFlags);
+    }
+
+    @Override
+    public int io_uring_inflight(long ring) {
+        return NativeIOJni.io_uring_inflight(ring);
+    }
+
+    @Override
+    public void io_uring_close(long ring) throws NativeIOException {
+        NativeIOJni.io_uring_close(ring);
+    }
 }
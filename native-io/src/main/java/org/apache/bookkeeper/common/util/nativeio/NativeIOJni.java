@@ -48,6 +48,18 @@ class NativeIOJni {
 
     static native int close(int fd) throws NativeIOException;
 
+    static native long copy_file_range(int fdIn, long offsetIn, int fdOut, long offsetOut, long len)
+            throws NativeIOException;
+
+    static native long io_uring_setup(int entries) throws NativeIOException;
+
+    static native long io_uring_write(long ring, int fd, long[] pointers, int[] sizes, long[] offsets, int count,
+                                      int syncFlags) throws NativeIOException;
+
+    static native int io_uring_inflight(long ring);
+
+    static native void io_uring_close(long ring) throws NativeIOException;
+
     static {
         try {
             if (SystemUtils.IS_OS_MAC_OSX) {
@@ -26,6 +26,20 @@
 #include <string.h>
 #include <unistd.h>
 
+#ifdef __linux__
+#include <sys/syscall.h>
+#endif
+
+#if defined(__linux__) && defined(__has_include)
+#if __has_include(<linux/io_uring.h>)
+#define HAVE_IO_URING 1
+#include <sys/mman.h>
+#include <sys/syscall.h>
+#include <sys/uio.h>
+#include <linux/io_uring.h>
+#endif
+#endif
+
 #include <org_apache_bookkeeper_common_util_nativeio_NativeIOJni.h>
 
 #ifdef _WIN32
@@ -311,3 +325,355 @@ JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJ
      free((const void*) pointer);
 }
 
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    copy_file_range
+ * Signature: (IJIJJ)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_copy_1file_1range
+  (JNIEnv * env, jclass clazz, jint fdIn, jlong offsetIn, jint fdOut, jlong offsetOut, jlong len) {
+#if defined(__linux__) && defined(SYS_copy_file_range)
+    // Go through the raw syscall, since the glibc wrapper is only available from glibc 2.27
+    loff_t offIn = offsetIn;
+    loff_t offOut = offsetOut;
+    long res = syscall(SYS_copy_file_range, fdIn, &offIn, fdOut, &offOut, (size_t) len, 0);
+
+    if (res == -1) {
+      throwExceptionWithErrno(env, "Failed to copy file range");
+    }
+
+    return res;
+#else
+    errno = ENOSYS;
+    throwExceptionWithErrno(env, "copy_file_range is not available");
+    return -1;
+#endif
+}
+
+
+#ifdef HAVE_IO_URING
+
+/*
+ * Minimal io_uring ring, driven through the raw syscalls so that there is no
+ * dependency on liburing. A ring must not be used by more than one thread at a time.
+ */
+struct nio_uring {
+    int ring_fd;
+    unsigned sq_entries;
+    unsigned cq_entries;
+
+    void *sq_ptr;
+    size_t sq_len;
+    void *cq_ptr;
+    size_t cq_len;
+    struct io_uring_sqe *sqes;
+    size_t sqes_len;
+
+    unsigned *sq_tail;
+    unsigned *sq_mask;
+    unsigned *sq_array;
+
+    unsigned *cq_head;
+    unsigned *cq_tail;
+    unsigned *cq_mask;
+    struct io_uring_cqe *cqes;
+
+    // Operations submitted to the kernel whose completion could not be reaped, the
+    // memory they read from may still be in use while this is not 0
+    unsigned inflight;
+    // Set once the ring is left in a state it cannot be reused from, with operations
+    // still in flight or submission entries queued but never consumed by the kernel
+    int broken;
+};
+
+static int nio_uring_enter(int ring_fd, unsigned to_submit, unsigned min_complete, unsigned flags) {
+    return (int) syscall(__NR_io_uring_enter, ring_fd, to_submit, min_complete, flags, NULL, 0);
+}
+
+static void nio_uring_free(struct nio_uring *ring) {
+    if (ring->sqes != NULL && ring->sqes != MAP_FAILED) {
+        munmap(ring->sqes, ring->sqes_len);
+    }
+    if (ring->cq_ptr != NULL && ring->cq_ptr != MAP_FAILED && ring->cq_ptr != ring->sq_ptr) {
+        munmap(ring->cq_ptr, ring->cq_len);
+    }
+    if (ring->sq_ptr != NULL && ring->sq_ptr != MAP_FAILED) {
+        munmap(ring->sq_ptr, ring->sq_len);
+    }
+    if (ring->ring_fd >= 0) {
+        close(ring->ring_fd);
+    }
+    free(ring);
+}
+
+/*
+ * Submit the count SQEs queued in the ring, with the user_data first to first + count - 1,
+ * and wait for all of them to complete. The result of each operation is stored in results
+ * at the index given by its user_data.
+ *
+ * Whatever happens, every operation the kernel accepted is waited for before returning,
+ * since it may be reading from the caller buffers. If the submission fails part way, the
+ * SQEs not consumed by the kernel stay queued, and the ring is marked as broken.
+ *
+ * Returns 0 on success or the errno of the io_uring_enter failure.
+ */
+static int nio_uring_submit_and_wait(struct nio_uring *ring, unsigned first, unsigned count, int *results) {
+    int failure = 0;
+    unsigned submitted = 0;
+    while (submitted < count) {
+        int ret = nio_uring_enter(ring->ring_fd, count - submitted, 0, 0);
+        if (ret < 0) {
+            if (errno == EINTR || errno == EAGAIN || errno == EBUSY) {
+                continue;
+            }
+            failure = errno;
+            ring->broken = 1;
+            break;
+        }
+        submitted += ret;
+    }
+    ring->inflight = submitted;
+
+    while (ring->inflight > 0) {
+        unsigned head = *ring->cq_head;
+        unsigned tail = __atomic_load_n(ring->cq_tail, __ATOMIC_ACQUIRE);
+        if (head == tail) {
+            int ret = nio_uring_enter(ring->ring_fd, 0, 1, IORING_ENTER_GETEVENTS);
+            if (ret < 0 && errno != EINTR && errno != EAGAIN && errno != EBUSY) {
+                // The completions cannot be reaped, inflight tells how many are missing
+                ring->broken = 1;
+                return failure != 0 ? failure : errno;
+            }
+            continue;
+        }
+
+        struct io_uring_cqe *cqe = &ring->cqes[head & *ring->cq_mask];
+        if (cqe->user_data >= first && cqe->user_data < (__u64) first + count) {
+            results[cqe->user_data] = cqe->res;
+            ring->inflight--;
+        }
+        __atomic_store_n(ring->cq_head, head + 1, __ATOMIC_RELEASE);
+    }
+    return failure;
+}
+
+#endif
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_setup
+ * Signature: (I)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1setup
+    (JNIEnv* env, jclass clazz, jint entries) {
+#ifdef HAVE_IO_URING
+    struct io_uring_params params;
+    memset(&params, 0, sizeof(params));
+
+    struct nio_uring *ring = calloc(1, sizeof(struct nio_uring));
+    if (ring == NULL) {
+        throwExceptionWithErrno(env, "Failed to allocate io_uring");
+        return 0;
+    }
+
+    ring->ring_fd = (int) syscall(__NR_io_uring_setup, entries, &params);
+    if (ring->ring_fd < 0) {
+        // ENOSYS when the kernel does not support io_uring, EPERM when it is disabled
+        throwExceptionWithErrno(env, "Failed to setup io_uring");
+        ring->ring_fd = -1;
+        nio_uring_free(ring);
+        return 0;
+    }
+
+    ring->sq_entries = params.sq_entries;
+    ring->cq_entries = params.cq_entries;
+    ring->sq_len = params.sq_off.array + params.sq_entries * sizeof(unsigned);
+    ring->cq_len = params.cq_off.cqes + params.cq_entries * sizeof(struct io_uring_cqe);
+    if (params.features & IORING_FEAT_SINGLE_MMAP) {
+        if (ring->cq_len > ring->sq_len) {
+            ring->sq_len = ring->cq_len;
+        }
+        ring->cq_len = ring->sq_len;
+    }
+
+    ring->sq_ptr = mmap(NULL, ring->sq_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                        ring->ring_fd, IORING_OFF_SQ_RING);
+    if (ring->sq_ptr == MAP_FAILED) {
+        throwExceptionWithErrno(env, "Failed to map io_uring submission queue");
+        nio_uring_free(ring);
+        return 0;
+    }
+
+    if (params.features & IORING_FEAT_SINGLE_MMAP) {
+        ring->cq_ptr = ring->sq_ptr;
+    } else {
+        ring->cq_ptr = mmap(NULL, ring->cq_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                            ring->ring_fd, IORING_OFF_CQ_RING);
+        if (ring->cq_ptr == MAP_FAILED) {
+            throwExceptionWithErrno(env, "Failed to map io_uring completion queue");
+            nio_uring_free(ring);
+            return 0;
+        }
+    }
+
+    ring->sqes_len = params.sq_entries * sizeof(struct io_uring_sqe);
+    ring->sqes = mmap(NULL, ring->sqes_len, PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE,
+                      ring->ring_fd, IORING_OFF_SQES);
+    if (ring->sqes == MAP_FAILED) {
+        throwExceptionWithErrno(env, "Failed to map io_uring submission entries");
+        nio_uring_free(ring);
+        return 0;
+    }
+
+    char *sq = (char *) ring->sq_ptr;
+    ring->sq_tail = (unsigned *) (sq + params.sq_off.tail);
+    ring->sq_mask = (unsigned *) (sq + params.sq_off.ring_mask);
+    ring->sq_array = (unsigned *) (sq + params.sq_off.array);
+
+    char *cq = (char *) ring->cq_ptr;
+    ring->cq_head = (unsigned *) (cq + params.cq_off.head);
+    ring->cq_tail = (unsigned *) (cq + params.cq_off.tail);
+    ring->cq_mask = (unsigned *) (cq + params.cq_off.ring_mask);
+    ring->cqes = (struct io_uring_cqe *) (cq + params.cq_off.cqes);
+
+    return (jlong) ring;
+#else
+    throwException(env, "io_uring is not available");
+    return 0;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_write
+ * Signature: (JI[J[I[JII)J
+ */
+JNIEXPORT jlong JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1write
+    (JNIEnv* env, jclass clazz, jlong ringPointer, jint fd, jlongArray pointers, jintArray sizes,
+     jlongArray offsets, jint count, jint syncFlags) {
+#ifdef HAVE_IO_URING
+    struct nio_uring *ring = (struct nio_uring *) ringPointer;
+    if (ring->broken) {
+        errno = EBADFD;
+        throwExceptionWithErrno(env, "io_uring instance is broken by a previous failure");
+        return -1;
+    }
+    int sync = (syncFlags & 0x03) != 0;
+    unsigned total = count + (sync ? 1 : 0);
+
+    jlong *cPointers = (*env)->GetLongArrayElements(env, pointers, NULL);
+    jint *cSizes = (*env)->GetIntArrayElements(env, sizes, NULL);
+    jlong *cOffsets = (*env)->GetLongArrayElements(env, offsets, NULL);
+    struct iovec *iovecs = malloc((count > 0 ? count : 1) * sizeof(struct iovec));
+    int *results = malloc(total * sizeof(int));
+
+    jlong written = 0;
+    int failure = 0;
+    const char *failureMessage = NULL;
+
+    if (iovecs == NULL || results == NULL) {
+        failure = ENOMEM;
+        failureMessage = "Failed to allocate io_uring batch";
+    }
+
+    // The writes are split in chunks no bigger than the rings, each of them is
+    // completed before submitting the next one. The sync is submitted on its own,
+    // once all the writes completed in full, so that a short write is not synced
+    unsigned chunkSize = ring->sq_entries < ring->cq_entries ? ring->sq_entries : ring->cq_entries;
+    unsigned next = 0;
+    int shortWrite = 0;
+    while (failure == 0 && !shortWrite && next < total) {
+        unsigned chunkEnd = total;
+        if (next < (unsigned) count) {
+            chunkEnd = next + chunkSize < (unsigned) count ? next + chunkSize : (unsigned) count;
+        }
+        unsigned tail = *ring->sq_tail;
+        for (unsigned i = next; i < chunkEnd; i++) {
+            unsigned index = tail & *ring->sq_mask;
+            struct io_uring_sqe *sqe = &ring->sqes[index];
+            memset(sqe, 0, sizeof(*sqe));
+            sqe->fd = fd;
+            sqe->user_data = i;
+            if (i < (unsigned) count) {
+                // IORING_OP_WRITEV is the write operation available since the first io_uring kernels
+                iovecs[i].iov_base = (void *) cPointers[i];
+                iovecs[i].iov_len = cSizes[i];
+                sqe->opcode = IORING_OP_WRITEV;
+                sqe->addr = (unsigned long) &iovecs[i];
+                sqe->len = 1;
+                sqe->off = cOffsets[i];
+            } else {
+                sqe->opcode = IORING_OP_FSYNC;
+                sqe->fsync_flags = (syncFlags & 0x02) ? IORING_FSYNC_DATASYNC : 0;
+            }
+            ring->sq_array[index] = index;
+            tail++;
+        }
+        __atomic_store_n(ring->sq_tail, tail, __ATOMIC_RELEASE);
+
+        failure = nio_uring_submit_and_wait(ring, next, chunkEnd - next, results);
+        if (failure != 0) {
+            failureMessage = "Failed to submit to io_uring";
+            break;
+        }
+
+        for (unsigned i = next; i < chunkEnd; i++) {
+            if (results[i] < 0) {
+                failure = -results[i];
+                failureMessage = i < (unsigned) count ? "Failed to write on file" : "Failed to fsync";
+                break;
+            } else if (i < (unsigned) count) {
+                written += results[i];
+                // Stop before the next chunk and the sync, the caller sees the missing bytes
+                shortWrite |= results[i] != cSizes[i];
+            }
+        }
+        next = chunkEnd;
+    }
+
+    free(iovecs);
+    free(results);
+    (*env)->ReleaseLongArrayElements(env, pointers, cPointers, JNI_ABORT);
+    (*env)->ReleaseIntArrayElements(env, sizes, cSizes, JNI_ABORT);
+    (*env)->ReleaseLongArrayElements(env, offsets, cOffsets, JNI_ABORT);
+
+    if (failure != 0) {
+        errno = failure;
+        throwExceptionWithErrno(env, failureMessage);
+        return -1;
+    }
+    return written;
+#else
+    throwException(env, "io_uring is not available");
+    return -1;
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_close
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1close
+    (JNIEnv* env, jclass clazz, jlong ringPointer) {
+#ifdef HAVE_IO_URING
+    if (ringPointer != 0) {
+        nio_uring_free((struct nio_uring *) ringPointer);
+    }
+#endif
+}
+
+/*
+ * Class:     org_apache_bookkeeper_common_util_nativeio_NativeIOJni
+ * Method:    io_uring_inflight
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_org_apache_bookkeeper_common_util_nativeio_NativeIOJni_io_1uring_1inflight
+    (JNIEnv* env, jclass clazz, jlong ringPointer) {
+#ifdef HAVE_IO_URING
+    if (ringPointer != 0) {
+        return (jint) ((struct nio_uring *) ringPointer)->inflight;
+    }
+#endif
+    return 0;
+}